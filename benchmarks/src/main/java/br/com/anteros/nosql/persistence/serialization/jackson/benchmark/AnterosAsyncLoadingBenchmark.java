@@ -0,0 +1,131 @@
+/*******************************************************************************
+ * Copyright 2012 Anteros Tecnologia
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package br.com.anteros.nosql.persistence.serialization.jackson.benchmark;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import br.com.anteros.nosql.persistence.serialization.jackson.AnterosLazyPrefetcher;
+import br.com.anteros.nosql.persistence.serialization.jackson.AnterosNoSQLObjectMapper;
+import br.com.anteros.nosql.persistence.serialization.jackson.AnterosPersistenceJacksonModule.Feature;
+import br.com.anteros.nosql.persistence.serialization.jackson.benchmark.model.BenchCustomer;
+import br.com.anteros.nosql.persistence.serialization.jackson.benchmark.model.BenchItem;
+import br.com.anteros.nosql.persistence.serialization.jackson.benchmark.model.BenchOrder;
+
+/**
+ * Compara a latência da escrita com FORCE_LAZY_LOADING quando as referências
+ * lazy são carregadas uma a uma na thread de serialização ({@code sync}),
+ * quando são carregadas em paralelo pelo {@link AnterosLazyPrefetcher}
+ * ({@code async}) e quando os proxies são escritos como referência, sem
+ * carregamento ({@code reference}).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AnterosAsyncLoadingBenchmark {
+
+	@Param({ "sync", "async", "reference" })
+	public String loading;
+
+	@Param({ "50", "500" })
+	public long loadLatencyMicros;
+
+	@Param({ "16" })
+	public int maxConcurrentLoads;
+
+	@Param({ "100" })
+	public int size;
+
+	protected AnterosNoSQLObjectMapper mapper;
+	protected ExecutorService executor;
+	protected List<SimulatedLoad> loads;
+	protected List<BenchOrder> orders;
+
+	@Setup(Level.Trial)
+	public void setUp() throws Exception {
+		mapper = new AnterosNoSQLObjectMapper(
+				new InMemorySessionFactory().entity(BenchCustomer.class).entity(BenchOrder.class).build());
+		mapper.enable(Feature.FORCE_LAZY_LOADING);
+		if ("async".equals(loading)) {
+			executor = AnterosLazyPrefetcher.newDefaultExecutor(maxConcurrentLoads);
+			mapper.getModule().setLoadingExecutor(executor).setMaxConcurrentLoads(maxConcurrentLoads);
+		} else if ("reference".equals(loading)) {
+			mapper.enable(Feature.SERIALIZE_IDENTIFIER_FOR_LAZY_NOT_LOADED_OBJECTS);
+		}
+		loads = new ArrayList<SimulatedLoad>();
+		orders = new ArrayList<BenchOrder>();
+		for (int i = 0; i < size; i++) {
+			BenchOrder order = new BenchOrder();
+			order.setId("order-" + i);
+			order.setCreatedAt(new Date(1546300800000L + i * 60000L));
+			order.setCustomer(LazyStandIns.proxyOf(
+					new BenchCustomer("customer-" + i, "Customer " + i, "customer" + i + "@anteros.com.br"),
+					newLoad()));
+			order.setItems(LazyStandIns.persistentListOf(
+					Arrays.asList(new BenchItem("product-" + i, 1, new BigDecimal("19.90")),
+							new BenchItem("product-" + (i + 1), 2, new BigDecimal("7.50"))),
+					newLoad()));
+			orders.add(order);
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		if (executor != null) {
+			executor.shutdownNow();
+		}
+	}
+
+	@Setup(Level.Invocation)
+	public void resetLoads() {
+		for (SimulatedLoad load : loads) {
+			load.reset();
+		}
+	}
+
+	@Benchmark
+	public String serializeLazyGraph() throws Exception {
+		return mapper.writeValueAsString(orders);
+	}
+
+	protected SimulatedLoad newLoad() {
+		SimulatedLoad load = new SimulatedLoad(loadLatencyMicros);
+		loads.add(load);
+		return load;
+	}
+}
@@ -0,0 +1,95 @@
+/*******************************************************************************
+ * Copyright 2012 Anteros Tecnologia
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package br.com.anteros.nosql.persistence.serialization.jackson.benchmark;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import br.com.anteros.nosql.persistence.serialization.jackson.AnterosBsonObjectMapper;
+import br.com.anteros.nosql.persistence.serialization.jackson.AnterosNoSQLObjectMapper;
+import br.com.anteros.nosql.persistence.serialization.jackson.benchmark.model.BenchCardPayment;
+import br.com.anteros.nosql.persistence.serialization.jackson.benchmark.model.BenchCustomer;
+import br.com.anteros.nosql.persistence.serialization.jackson.benchmark.model.BenchItem;
+import br.com.anteros.nosql.persistence.serialization.jackson.benchmark.model.BenchOrder;
+import br.com.anteros.nosql.persistence.serialization.jackson.benchmark.model.BenchPayment;
+import br.com.anteros.nosql.persistence.session.NoSQLSessionFactory;
+
+/**
+ * Compara o caminho JSON textual com o caminho BSON direto do
+ * {@link AnterosBsonObjectMapper} na gravação e leitura de um documento.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AnterosBsonBenchmark {
+
+	@Param({ "json", "bson" })
+	public String format;
+
+	protected AnterosNoSQLObjectMapper mapper;
+	protected BenchOrder order;
+	protected byte[] document;
+
+	@Setup(Level.Trial)
+	public void setUp() throws Exception {
+		NoSQLSessionFactory sessionFactory = new InMemorySessionFactory().entity(BenchCustomer.class)
+				.entity(BenchOrder.class).hierarchy(BenchPayment.class, BenchCardPayment.class).build();
+		mapper = "bson".equals(format) ? new AnterosBsonObjectMapper(sessionFactory)
+				: AnterosNoSQLObjectMapper.production(sessionFactory);
+		order = new BenchOrder();
+		order.setId("order-1");
+		order.setCreatedAt(new Date(1546300800000L));
+		order.setCustomer(new BenchCustomer("customer-1", "Customer 1", "customer1@anteros.com.br"));
+		order.setItems(Arrays.asList(new BenchItem("product-1", 1, new BigDecimal("19.90")),
+				new BenchItem("product-2", 2, new BigDecimal("7.50")),
+				new BenchItem("product-3", 1, new BigDecimal("120.00"))));
+		BenchCardPayment payment = new BenchCardPayment();
+		payment.setId("payment-1");
+		payment.setAmount(new BigDecimal("154.90"));
+		payment.setCardHolder("Customer 1");
+		payment.setInstallments(3);
+		order.setPayment(payment);
+		document = mapper.writeValueAsBytes(order);
+	}
+
+	@Benchmark
+	public byte[] write() throws Exception {
+		return mapper.writeValueAsBytes(order);
+	}
+
+	@Benchmark
+	public BenchOrder read() throws Exception {
+		return mapper.readValue(document, BenchOrder.class);
+	}
+}
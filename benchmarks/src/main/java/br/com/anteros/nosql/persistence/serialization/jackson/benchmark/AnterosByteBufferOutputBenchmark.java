@@ -0,0 +1,113 @@
+/*******************************************************************************
+ * Copyright 2012 Anteros Tecnologia
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package br.com.anteros.nosql.persistence.serialization.jackson.benchmark;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import br.com.anteros.nosql.persistence.serialization.jackson.AnterosByteBufferPool;
+import br.com.anteros.nosql.persistence.serialization.jackson.AnterosNoSQLObjectMapper;
+import br.com.anteros.nosql.persistence.serialization.jackson.benchmark.model.BenchCustomer;
+
+/**
+ * Compara a entrega de um documento a um buffer direto (como o de um driver
+ * ou socket) via {@code writeValueAsBytes} seguido de cópia com a escrita
+ * direta em buffers do pool e em um canal.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AnterosByteBufferOutputBenchmark {
+
+	@Param({ "10", "1000" })
+	public int size;
+
+	protected AnterosNoSQLObjectMapper mapper;
+	protected List<BenchCustomer> customers;
+	protected ByteBuffer driverBuffer;
+	protected WritableByteChannel channel;
+
+	@Setup(Level.Trial)
+	public void setUp() throws Exception {
+		mapper = AnterosNoSQLObjectMapper.production(new InMemorySessionFactory().entity(BenchCustomer.class).build());
+		mapper.setByteBufferPool(new AnterosByteBufferPool(true));
+		customers = new ArrayList<BenchCustomer>();
+		for (int i = 0; i < size; i++) {
+			customers.add(new BenchCustomer("customer-" + i, "Customer " + i, "customer" + i + "@anteros.com.br"));
+		}
+		driverBuffer = ByteBuffer.allocateDirect(mapper.writeValueAsBytes(customers).length * 2);
+		channel = new WritableByteChannel() {
+
+			public boolean isOpen() {
+				return true;
+			}
+
+			public void close() {
+			}
+
+			public int write(ByteBuffer src) {
+				int written = src.remaining();
+				src.position(src.limit());
+				return written;
+			}
+		};
+	}
+
+	@Benchmark
+	public ByteBuffer writeValueAsBytesAndCopy() throws Exception {
+		driverBuffer.clear();
+		return driverBuffer.put(mapper.writeValueAsBytes(customers));
+	}
+
+	@Benchmark
+	public ByteBuffer writeValueIntoBuffer() throws Exception {
+		driverBuffer.clear();
+		mapper.writeValue(driverBuffer, customers);
+		return driverBuffer;
+	}
+
+	@Benchmark
+	public int writeValueAsPooledByteBuffer() throws Exception {
+		ByteBuffer buffer = mapper.writeValueAsByteBuffer(customers);
+		int written = buffer.remaining();
+		mapper.releaseByteBuffer(buffer);
+		return written;
+	}
+
+	@Benchmark
+	public void writeValueToChannel() throws Exception {
+		mapper.writeValue(channel, customers);
+	}
+}
@@ -0,0 +1,166 @@
+/*******************************************************************************
+ * Copyright 2012 Anteros Tecnologia
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package br.com.anteros.nosql.persistence.serialization.jackson.benchmark;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+
+import br.com.anteros.nosql.persistence.serialization.jackson.AnterosIdentityStrategy;
+import br.com.anteros.nosql.persistence.serialization.jackson.AnterosNoSQLObjectMapper;
+import br.com.anteros.nosql.persistence.serialization.jackson.AnterosPersistenceJacksonModule.Feature;
+import br.com.anteros.nosql.persistence.serialization.jackson.benchmark.model.BenchBoletoPayment;
+import br.com.anteros.nosql.persistence.serialization.jackson.benchmark.model.BenchCardPayment;
+import br.com.anteros.nosql.persistence.serialization.jackson.benchmark.model.BenchCustomer;
+import br.com.anteros.nosql.persistence.serialization.jackson.benchmark.model.BenchItem;
+import br.com.anteros.nosql.persistence.serialization.jackson.benchmark.model.BenchOrder;
+import br.com.anteros.nosql.persistence.serialization.jackson.benchmark.model.BenchPayment;
+
+/**
+ * Mede a escrita e a leitura de uma lista de pedidos, com itens e pagamentos
+ * polimórficos, e de uma lista de clientes (beans sem aninhamento), como arrays
+ * de objetos ou no formato de {@link Feature#COLUMNAR_COLLECTIONS}. O tamanho
+ * de cada documento é impresso por {@link #main(String[])}, fora das medições.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AnterosColumnarCollectionBenchmark {
+
+	private static final TypeReference<List<BenchOrder>> ORDER_LIST = new TypeReference<List<BenchOrder>>() {
+	};
+
+	private static final TypeReference<List<BenchCustomer>> CUSTOMER_LIST = new TypeReference<List<BenchCustomer>>() {
+	};
+
+	@Param({ "false", "true" })
+	public boolean columnar;
+
+	@Param({ "1000" })
+	public int size;
+
+	protected List<BenchOrder> orders;
+	protected List<BenchCustomer> customers;
+	protected ObjectWriter writer;
+	protected ObjectReader reader;
+	protected byte[] document;
+	protected ObjectWriter customerWriter;
+	protected ObjectReader customerReader;
+	protected byte[] customerDocument;
+
+	@Setup(Level.Trial)
+	public void setUp() throws Exception {
+		AnterosNoSQLObjectMapper mapper = AnterosNoSQLObjectMapper.production(new InMemorySessionFactory()
+				.entity(BenchCustomer.class).entity(BenchOrder.class)
+				.hierarchy(BenchPayment.class, BenchCardPayment.class, BenchBoletoPayment.class).build());
+		mapper.setIdentityStrategy(AnterosIdentityStrategy.ENTITY_ID);
+		customers = new ArrayList<BenchCustomer>();
+		for (int i = 0; i < size; i++) {
+			customers.add(new BenchCustomer("customer-" + i, "Customer " + i, "customer" + i + "@anteros.com.br"));
+		}
+		orders = new ArrayList<BenchOrder>();
+		for (int i = 0; i < size; i++) {
+			BenchOrder order = new BenchOrder();
+			order.setId("order-" + i);
+			order.setCreatedAt(new Date(1546300800000L + i * 60000L));
+			order.setCustomer(customers.get(i % 100));
+			order.setItems(Arrays.asList(new BenchItem("product-" + (i % 7), 1, new BigDecimal("19.90")),
+					new BenchItem("product-" + (i % 11), 2, new BigDecimal("7.50")),
+					new BenchItem("product-" + (i % 13), 1, new BigDecimal("120.00"))));
+			BenchPayment payment;
+			if (i % 10 == 0) {
+				BenchBoletoPayment boleto = new BenchBoletoPayment();
+				boleto.setBarcode("23790.50400 41990." + i);
+				payment = boleto;
+			} else {
+				BenchCardPayment card = new BenchCardPayment();
+				card.setCardHolder("Customer " + (i % 100));
+				card.setInstallments(i % 12 + 1);
+				payment = card;
+			}
+			payment.setId("payment-" + i);
+			payment.setAmount(new BigDecimal("186.70"));
+			order.setPayment(payment);
+			orders.add(order);
+		}
+		ObjectWriter base = columnar ? mapper.writerWith(Feature.COLUMNAR_COLLECTIONS)
+				: mapper.writerWithout(Feature.COLUMNAR_COLLECTIONS);
+		writer = base.forType(ORDER_LIST);
+		reader = mapper.readerFor(ORDER_LIST);
+		document = writer.writeValueAsBytes(orders);
+		customerWriter = base.forType(CUSTOMER_LIST);
+		customerReader = mapper.readerFor(CUSTOMER_LIST);
+		customerDocument = customerWriter.writeValueAsBytes(customers);
+	}
+
+	/**
+	 * Imprime o tamanho dos documentos nos dois formatos, com o tamanho da
+	 * lista informado (padrão 1000).
+	 */
+	public static void main(String[] args) throws Exception {
+		for (boolean columnar : new boolean[] { false, true }) {
+			AnterosColumnarCollectionBenchmark benchmark = new AnterosColumnarCollectionBenchmark();
+			benchmark.columnar = columnar;
+			benchmark.size = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+			benchmark.setUp();
+			System.out.println("columnar=" + columnar + ": orders " + benchmark.document.length
+					+ " bytes, customers " + benchmark.customerDocument.length + " bytes");
+		}
+	}
+
+	@Benchmark
+	public byte[] writeOrders() throws Exception {
+		return writer.writeValueAsBytes(orders);
+	}
+
+	@Benchmark
+	public List<BenchOrder> readOrders() throws Exception {
+		return reader.readValue(document);
+	}
+
+	@Benchmark
+	public byte[] writeCustomers() throws Exception {
+		return customerWriter.writeValueAsBytes(customers);
+	}
+
+	@Benchmark
+	public List<BenchCustomer> readCustomers() throws Exception {
+		return customerReader.readValue(customerDocument);
+	}
+}
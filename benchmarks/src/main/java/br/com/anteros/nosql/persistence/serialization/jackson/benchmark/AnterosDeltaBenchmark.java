@@ -0,0 +1,101 @@
+/*******************************************************************************
+ * Copyright 2012 Anteros Tecnologia
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package br.com.anteros.nosql.persistence.serialization.jackson.benchmark;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import br.com.anteros.nosql.persistence.serialization.jackson.AnterosDelta;
+import br.com.anteros.nosql.persistence.serialization.jackson.AnterosNoSQLObjectMapper;
+import br.com.anteros.nosql.persistence.serialization.jackson.AnterosSnapshot;
+import br.com.anteros.nosql.persistence.serialization.jackson.benchmark.model.BenchCustomer;
+import br.com.anteros.nosql.persistence.serialization.jackson.benchmark.model.BenchItem;
+import br.com.anteros.nosql.persistence.serialization.jackson.benchmark.model.BenchOrder;
+
+/**
+ * Compara a escrita do pedido inteiro com a escrita apenas do que mudou
+ * ({@link AnterosDelta}) depois de alterar uma propriedade, para pedidos com
+ * {@code items} itens embutidos e o cliente como proxy não carregado.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AnterosDeltaBenchmark {
+
+	@Param({ "10", "1000" })
+	public int items;
+
+	protected AnterosNoSQLObjectMapper mapper;
+	protected BenchOrder order;
+	protected AnterosSnapshot snapshot;
+	protected long createdAt;
+
+	@Setup(Level.Trial)
+	public void setUp() throws Exception {
+		mapper = AnterosNoSQLObjectMapper.production(
+				new InMemorySessionFactory().entity(BenchCustomer.class).entity(BenchOrder.class).build());
+		order = new BenchOrder();
+		order.setId("order-1");
+		order.setCreatedAt(new Date(1546300800000L));
+		order.setCustomer(LazyStandIns.proxyOf(new BenchCustomer("customer-1", "Customer 1", "customer1@anteros.com.br"),
+				new SimulatedLoad(0)));
+		List<BenchItem> list = new ArrayList<BenchItem>();
+		for (int i = 0; i < items; i++) {
+			list.add(new BenchItem("product-" + i, i, new BigDecimal("19.90")));
+		}
+		order.setItems(list);
+		snapshot = mapper.snapshot(order);
+	}
+
+	@Setup(Level.Invocation)
+	public void touch() {
+		order.setCreatedAt(new Date(1546300800000L + (++createdAt) * 1000L));
+	}
+
+	@Benchmark
+	public byte[] writeWholeDocument() throws Exception {
+		return mapper.writeValueAsBytes(order);
+	}
+
+	@Benchmark
+	public byte[] writeDelta() throws Exception {
+		return mapper.writeValueAsBytes(mapper.delta(order, snapshot).toUpdateDocument());
+	}
+
+	@Benchmark
+	public AnterosSnapshot captureSnapshot() {
+		return mapper.snapshot(order);
+	}
+}
@@ -0,0 +1,105 @@
+/*******************************************************************************
+ * Copyright 2012 Anteros Tecnologia
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package br.com.anteros.nosql.persistence.serialization.jackson.benchmark;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import br.com.anteros.nosql.persistence.serialization.jackson.AnterosDocumentView;
+import br.com.anteros.nosql.persistence.serialization.jackson.AnterosNoSQLObjectMapper;
+import br.com.anteros.nosql.persistence.serialization.jackson.benchmark.model.BenchBoletoPayment;
+import br.com.anteros.nosql.persistence.serialization.jackson.benchmark.model.BenchCardPayment;
+import br.com.anteros.nosql.persistence.serialization.jackson.benchmark.model.BenchCustomer;
+import br.com.anteros.nosql.persistence.serialization.jackson.benchmark.model.BenchItem;
+import br.com.anteros.nosql.persistence.serialization.jackson.benchmark.model.BenchOrder;
+import br.com.anteros.nosql.persistence.serialization.jackson.benchmark.model.BenchPayment;
+
+/**
+ * Compara a leitura completa de um pedido com {@code items} itens com as
+ * visões de {@link AnterosNoSQLObjectMapper#readView(byte[], Class)}: sem
+ * nenhum acesso (só a indexação dos campos) e acessando apenas o id e o
+ * cliente.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AnterosDocumentViewBenchmark {
+
+	@Param({ "10", "200" })
+	public int items;
+
+	protected AnterosNoSQLObjectMapper mapper;
+	protected byte[] document;
+
+	@Setup(Level.Trial)
+	public void setUp() throws Exception {
+		mapper = AnterosNoSQLObjectMapper.production(new InMemorySessionFactory().entity(BenchCustomer.class)
+				.entity(BenchOrder.class)
+				.hierarchy(BenchPayment.class, BenchCardPayment.class, BenchBoletoPayment.class).build());
+		BenchOrder order = new BenchOrder();
+		order.setId("order-1");
+		order.setCreatedAt(new Date(1546300800000L));
+		order.setCustomer(new BenchCustomer("customer-1", "Customer 1", "customer1@anteros.com.br"));
+		List<BenchItem> orderItems = new ArrayList<BenchItem>();
+		for (int i = 0; i < items; i++) {
+			orderItems.add(new BenchItem("product-" + i, i % 7 + 1, new BigDecimal("19.90")));
+		}
+		order.setItems(orderItems);
+		BenchCardPayment payment = new BenchCardPayment();
+		payment.setId("payment-1");
+		payment.setAmount(new BigDecimal("199.00"));
+		payment.setCardHolder("Customer 1");
+		payment.setInstallments(3);
+		order.setPayment(payment);
+		document = mapper.writeValueAsBytes(order);
+	}
+
+	@Benchmark
+	public BenchOrder readFull() throws Exception {
+		return mapper.readValue(document, BenchOrder.class);
+	}
+
+	@Benchmark
+	public AnterosDocumentView<BenchOrder> readViewUntouched() {
+		return mapper.readView(document, BenchOrder.class);
+	}
+
+	@Benchmark
+	public Object readViewIdAndCustomer() {
+		AnterosDocumentView<BenchOrder> view = mapper.readView(document, BenchOrder.class);
+		view.get("id");
+		return view.get("customer");
+	}
+}
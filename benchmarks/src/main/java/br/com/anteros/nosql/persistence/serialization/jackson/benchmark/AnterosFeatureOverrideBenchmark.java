@@ -0,0 +1,83 @@
+/*******************************************************************************
+ * Copyright 2012 Anteros Tecnologia
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package br.com.anteros.nosql.persistence.serialization.jackson.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.fasterxml.jackson.databind.ObjectWriter;
+
+import br.com.anteros.nosql.persistence.serialization.jackson.AnterosNoSQLObjectMapper;
+import br.com.anteros.nosql.persistence.serialization.jackson.AnterosPersistenceJacksonModule.Feature;
+import br.com.anteros.nosql.persistence.serialization.jackson.benchmark.model.BenchCustomer;
+import br.com.anteros.nosql.persistence.serialization.jackson.benchmark.model.BenchOrder;
+
+/**
+ * Mede, com várias threads escrevendo no mesmo mapper, o custo de escolher as
+ * features por chamada: writer padrão, writer com features fixas e writer
+ * criado a cada chamada com {@code writerWith}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+public class AnterosFeatureOverrideBenchmark {
+
+	protected AnterosNoSQLObjectMapper mapper;
+	protected ObjectWriter forceWriter;
+	protected BenchOrder order;
+
+	@Setup(Level.Trial)
+	public void setUp() throws Exception {
+		mapper = AnterosNoSQLObjectMapper
+				.production(new InMemorySessionFactory().entity(BenchCustomer.class).entity(BenchOrder.class).build());
+		forceWriter = mapper.writerWith(Feature.FORCE_LAZY_LOADING);
+		order = new BenchOrder();
+		order.setId("order-1");
+		order.setCustomer(LazyStandIns.proxyOf(
+				new BenchCustomer("customer-1", "Customer 1", "customer1@anteros.com.br"), new SimulatedLoad(0)));
+	}
+
+	@Benchmark
+	public String defaultWriter() throws Exception {
+		return mapper.writeValueAsString(order);
+	}
+
+	@Benchmark
+	public String sharedOverrideWriter() throws Exception {
+		return forceWriter.writeValueAsString(order);
+	}
+
+	@Benchmark
+	public String perCallOverrideWriter() throws Exception {
+		return mapper.writerWith(Feature.FORCE_LAZY_LOADING).writeValueAsString(order);
+	}
+}
@@ -0,0 +1,117 @@
+/*******************************************************************************
+ * Copyright 2012 Anteros Tecnologia
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package br.com.anteros.nosql.persistence.serialization.jackson.benchmark;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+
+import br.com.anteros.nosql.persistence.serialization.jackson.AnterosNoSQLObjectMapper;
+import br.com.anteros.nosql.persistence.serialization.jackson.benchmark.model.BenchCustomer;
+import br.com.anteros.nosql.persistence.serialization.jackson.benchmark.model.BenchItem;
+
+/**
+ * Compara a leitura e a escrita de entidades simples pelo acesso reflexivo
+ * padrão e pelas classes geradas com
+ * {@link AnterosNoSQLObjectMapper#enableGeneratedAccessors()}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AnterosGeneratedAccessorsBenchmark {
+
+	@Param({ "reflection", "generated" })
+	public String accessors;
+
+	@Param({ "100" })
+	public int size;
+
+	protected ObjectWriter customerWriter;
+	protected ObjectReader customerReader;
+	protected ObjectWriter itemWriter;
+	protected ObjectReader itemReader;
+	protected List<BenchCustomer> customers;
+	protected List<BenchItem> items;
+	protected String customersJson;
+	protected String itemsJson;
+
+	@Setup(Level.Trial)
+	public void setUp() throws Exception {
+		AnterosNoSQLObjectMapper mapper = AnterosNoSQLObjectMapper
+				.production(new InMemorySessionFactory().entity(BenchCustomer.class).entity(BenchItem.class).build());
+		if ("generated".equals(accessors)) {
+			mapper.enableGeneratedAccessors();
+		}
+		TypeReference<List<BenchCustomer>> customerList = new TypeReference<List<BenchCustomer>>() {
+		};
+		TypeReference<List<BenchItem>> itemList = new TypeReference<List<BenchItem>>() {
+		};
+		customerWriter = mapper.writerFor(customerList);
+		customerReader = mapper.readerFor(customerList);
+		itemWriter = mapper.writerFor(itemList);
+		itemReader = mapper.readerFor(itemList);
+
+		customers = new ArrayList<BenchCustomer>();
+		items = new ArrayList<BenchItem>();
+		for (int i = 0; i < size; i++) {
+			customers.add(new BenchCustomer("customer-" + i, "Customer " + i, "customer" + i + "@anteros.com.br"));
+			items.add(new BenchItem("product-" + i, i % 10 + 1, BigDecimal.valueOf(i, 2)));
+		}
+		customersJson = customerWriter.writeValueAsString(customers);
+		itemsJson = itemWriter.writeValueAsString(items);
+	}
+
+	@Benchmark
+	public String serializeCustomers() throws Exception {
+		return customerWriter.writeValueAsString(customers);
+	}
+
+	@Benchmark
+	public List<BenchCustomer> deserializeCustomers() throws Exception {
+		return customerReader.readValue(customersJson);
+	}
+
+	@Benchmark
+	public String serializeItems() throws Exception {
+		return itemWriter.writeValueAsString(items);
+	}
+
+	@Benchmark
+	public List<BenchItem> deserializeItems() throws Exception {
+		return itemReader.readValue(itemsJson);
+	}
+}
@@ -0,0 +1,83 @@
+/*******************************************************************************
+ * Copyright 2012 Anteros Tecnologia
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package br.com.anteros.nosql.persistence.serialization.jackson.benchmark;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import br.com.anteros.nosql.persistence.serialization.jackson.AnterosIdentityStrategy;
+import br.com.anteros.nosql.persistence.serialization.jackson.AnterosNoSQLObjectMapper;
+import br.com.anteros.nosql.persistence.serialization.jackson.benchmark.model.BenchCustomer;
+import br.com.anteros.nosql.persistence.serialization.jackson.benchmark.model.BenchOrder;
+
+/**
+ * Mede a escrita de uma lista grande de pedidos com cada
+ * {@link AnterosIdentityStrategy}. Cada pedido tem um cliente próprio, o caso
+ * comum de uma consulta, em que a identidade não economiza nenhuma referência
+ * e só custa a geração dos ids e os bytes de {@code "@id"}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AnterosIdentityStrategyBenchmark {
+
+	@Param({ "UUID", "ENTITY_ID", "SEQUENCE", "NONE" })
+	public AnterosIdentityStrategy identityStrategy;
+
+	@Param({ "1000" })
+	public int size;
+
+	protected AnterosNoSQLObjectMapper mapper;
+	protected List<BenchOrder> orders;
+
+	@Setup(Level.Trial)
+	public void setUp() throws Exception {
+		mapper = AnterosNoSQLObjectMapper.production(
+				new InMemorySessionFactory().entity(BenchCustomer.class).entity(BenchOrder.class).build());
+		mapper.setIdentityStrategy(identityStrategy);
+		orders = new ArrayList<BenchOrder>();
+		for (int i = 0; i < size; i++) {
+			BenchOrder order = new BenchOrder();
+			order.setId("order-" + i);
+			order.setCreatedAt(new Date(1546300800000L + i * 60000L));
+			order.setCustomer(new BenchCustomer("customer-" + i, "Customer " + i, "customer" + i + "@anteros.com.br"));
+			orders.add(order);
+		}
+	}
+
+	@Benchmark
+	public byte[] serializeOrders() throws Exception {
+		return mapper.writeValueAsBytes(orders);
+	}
+}
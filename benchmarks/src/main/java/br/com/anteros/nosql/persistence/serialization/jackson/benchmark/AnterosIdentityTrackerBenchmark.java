@@ -0,0 +1,98 @@
+/*******************************************************************************
+ * Copyright 2012 Anteros Tecnologia
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package br.com.anteros.nosql.persistence.serialization.jackson.benchmark;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+import br.com.anteros.nosql.persistence.serialization.jackson.AnterosIdentityStrategy;
+import br.com.anteros.nosql.persistence.serialization.jackson.AnterosNoSQLObjectMapper;
+import br.com.anteros.nosql.persistence.serialization.jackson.benchmark.model.BenchCustomer;
+import br.com.anteros.nosql.persistence.serialization.jackson.benchmark.model.BenchOrder;
+
+/**
+ * Mede a escrita de um grafo grande de pedidos que compartilham poucos
+ * clientes, comparando o mapa de object ids do Jackson
+ * ({@code JACKSON}, forçado com
+ * {@link SerializationFeature#USE_EQUALITY_FOR_OBJECT_ID}), o rastreador de
+ * identidade do módulo ({@code TRACKER}) e o rastreador com os pedidos
+ * marcados como acíclicos ({@code ACYCLIC}). Rode com {@code -prof gc} para
+ * comparar as alocações.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AnterosIdentityTrackerBenchmark {
+
+	@Param({ "JACKSON", "TRACKER", "ACYCLIC" })
+	public String tracking;
+
+	@Param({ "10000" })
+	public int size;
+
+	protected ObjectWriter writer;
+	protected List<BenchOrder> orders;
+
+	@Setup(Level.Trial)
+	public void setUp() throws Exception {
+		AnterosNoSQLObjectMapper mapper = AnterosNoSQLObjectMapper.production(
+				new InMemorySessionFactory().entity(BenchCustomer.class).entity(BenchOrder.class).build());
+		mapper.setIdentityStrategy(AnterosIdentityStrategy.ENTITY_ID);
+		if ("ACYCLIC".equals(tracking)) {
+			mapper.setAcyclicEntities(BenchOrder.class);
+		}
+		writer = "JACKSON".equals(tracking) ? mapper.writer().with(SerializationFeature.USE_EQUALITY_FOR_OBJECT_ID)
+				: mapper.writer();
+		BenchCustomer[] customers = new BenchCustomer[50];
+		for (int i = 0; i < customers.length; i++) {
+			customers[i] = new BenchCustomer("customer-" + i, "Customer " + i, "customer" + i + "@anteros.com.br");
+		}
+		orders = new ArrayList<BenchOrder>();
+		for (int i = 0; i < size; i++) {
+			BenchOrder order = new BenchOrder();
+			order.setId("order-" + i);
+			order.setCreatedAt(new Date(1546300800000L + i * 60000L));
+			order.setCustomer(customers[i % customers.length]);
+			orders.add(order);
+		}
+	}
+
+	@Benchmark
+	public byte[] serializeOrders() throws Exception {
+		return writer.writeValueAsBytes(orders);
+	}
+}
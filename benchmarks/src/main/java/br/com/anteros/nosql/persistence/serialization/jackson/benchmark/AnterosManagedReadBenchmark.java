@@ -0,0 +1,103 @@
+/*******************************************************************************
+ * Copyright 2012 Anteros Tecnologia
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package br.com.anteros.nosql.persistence.serialization.jackson.benchmark;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectReader;
+
+import br.com.anteros.nosql.persistence.serialization.jackson.AnterosIdentityStrategy;
+import br.com.anteros.nosql.persistence.serialization.jackson.AnterosManagedEntityResolver;
+import br.com.anteros.nosql.persistence.serialization.jackson.AnterosNoSQLObjectMapper;
+import br.com.anteros.nosql.persistence.serialization.jackson.benchmark.model.BenchCustomer;
+import br.com.anteros.nosql.persistence.serialization.jackson.benchmark.model.BenchOrder;
+
+/**
+ * Mede a leitura de uma lista de pedidos cujas entidades já estão na sessão:
+ * com {@code managed} falso cada documento gera novas instâncias (que ainda
+ * precisariam ser copiadas para as gerenciadas); com verdadeiro as instâncias
+ * gerenciadas são atualizadas no lugar por
+ * {@link AnterosNoSQLObjectMapper#readerForManaged(TypeReference, AnterosManagedEntityResolver)}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AnterosManagedReadBenchmark {
+
+	private static final TypeReference<List<BenchOrder>> ORDER_LIST = new TypeReference<List<BenchOrder>>() {
+	};
+
+	@Param({ "false", "true" })
+	public boolean managed;
+
+	@Param({ "1000" })
+	public int size;
+
+	protected ObjectReader reader;
+	protected String json;
+
+	@Setup(Level.Trial)
+	public void setUp() throws Exception {
+		AnterosNoSQLObjectMapper mapper = AnterosNoSQLObjectMapper.production(
+				new InMemorySessionFactory().entity(BenchCustomer.class).entity(BenchOrder.class).build());
+		mapper.setIdentityStrategy(AnterosIdentityStrategy.ENTITY_ID);
+		final Map<Object, Object> session = new HashMap<Object, Object>();
+		List<BenchOrder> orders = new ArrayList<BenchOrder>();
+		for (int i = 0; i < size; i++) {
+			BenchOrder order = new BenchOrder();
+			order.setId("order-" + i);
+			order.setCreatedAt(new Date(1546300800000L + i * 60000L));
+			order.setCustomer(new BenchCustomer("customer-" + i, "Customer " + i, "customer" + i + "@anteros.com.br"));
+			orders.add(order);
+			session.put(order.getId(), order);
+			session.put(order.getCustomer().getId(), order.getCustomer());
+		}
+		json = mapper.writeValueAsString(orders);
+		reader = managed ? mapper.readerForManaged(ORDER_LIST, new AnterosManagedEntityResolver() {
+			@Override
+			public Object findManagedEntity(Class<?> entityClass, Object id) {
+				return session.get(id);
+			}
+		}) : mapper.readerFor(ORDER_LIST);
+	}
+
+	@Benchmark
+	public List<BenchOrder> readOrders() throws Exception {
+		return reader.readValue(json);
+	}
+}
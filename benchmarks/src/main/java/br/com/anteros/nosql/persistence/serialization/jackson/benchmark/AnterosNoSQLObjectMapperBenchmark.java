@@ -0,0 +1,208 @@
+/*******************************************************************************
+ * Copyright 2012 Anteros Tecnologia
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package br.com.anteros.nosql.persistence.serialization.jackson.benchmark;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import br.com.anteros.nosql.persistence.serialization.jackson.AnterosNoSQLObjectMapper;
+import br.com.anteros.nosql.persistence.serialization.jackson.AnterosPersistenceJacksonModule.Feature;
+import br.com.anteros.nosql.persistence.serialization.jackson.benchmark.model.BenchBoletoPayment;
+import br.com.anteros.nosql.persistence.serialization.jackson.benchmark.model.BenchCardPayment;
+import br.com.anteros.nosql.persistence.serialization.jackson.benchmark.model.BenchCustomer;
+import br.com.anteros.nosql.persistence.serialization.jackson.benchmark.model.BenchItem;
+import br.com.anteros.nosql.persistence.serialization.jackson.benchmark.model.BenchOrder;
+import br.com.anteros.nosql.persistence.serialization.jackson.benchmark.model.BenchPayment;
+import br.com.anteros.nosql.persistence.session.NoSQLSessionFactory;
+
+/**
+ * Mede vazão, latência e (com o GCProfiler do {@link BenchmarkRunner}) taxa de
+ * alocação do {@link AnterosNoSQLObjectMapper} nos cenários que o módulo trata
+ * de forma especial: proxies, coleções persistentes e hierarquias com
+ * {@code @DiscriminatorValue}, com e sem FORCE_LAZY_LOADING.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AnterosNoSQLObjectMapperBenchmark {
+
+	private static final TypeReference<List<BenchPayment>> PAYMENT_LIST = new TypeReference<List<BenchPayment>>() {
+	};
+
+	@Param({ "false", "true" })
+	public boolean forceLazyLoading;
+
+	@Param({ "0", "50" })
+	public long loadLatencyMicros;
+
+	@Param({ "100" })
+	public int size;
+
+	protected AnterosNoSQLObjectMapper mapper;
+	protected List<SimulatedLoad> loads;
+	protected List<BenchOrder> proxiedOrders;
+	protected List<BenchOrder> collectionOrders;
+	protected List<BenchPayment> payments;
+	protected ObjectWriter paymentWriter;
+	protected ObjectReader paymentReader;
+	protected String paymentsJson;
+	protected String paymentsTypeLastJson;
+
+	@Setup(Level.Trial)
+	public void setUp() throws Exception {
+		mapper = new AnterosNoSQLObjectMapper(createSessionFactory());
+		if (forceLazyLoading) {
+			mapper.enable(Feature.FORCE_LAZY_LOADING);
+		}
+		loads = new ArrayList<SimulatedLoad>();
+		proxiedOrders = new ArrayList<BenchOrder>();
+		collectionOrders = new ArrayList<BenchOrder>();
+		payments = new ArrayList<BenchPayment>();
+		for (int i = 0; i < size; i++) {
+			BenchOrder proxied = createOrder(i);
+			proxied.setCustomer(LazyStandIns.proxyOf(createCustomer(i), newLoad()));
+			proxiedOrders.add(proxied);
+
+			BenchOrder withItems = createOrder(i);
+			withItems.setCustomer(createCustomer(i));
+			withItems.setItems(LazyStandIns.persistentListOf(createItems(i), newLoad()));
+			collectionOrders.add(withItems);
+
+			payments.add(createPayment(i));
+		}
+		paymentWriter = mapper.writerFor(PAYMENT_LIST);
+		paymentReader = mapper.readerFor(PAYMENT_LIST);
+		paymentsJson = paymentWriter.writeValueAsString(payments);
+		paymentsTypeLastJson = moveTypeToEnd(paymentsJson);
+	}
+
+	@Setup(Level.Invocation)
+	public void resetLoads() {
+		for (SimulatedLoad load : loads) {
+			load.reset();
+		}
+	}
+
+	@Benchmark
+	public String serializeProxiedReferences() throws Exception {
+		return mapper.writeValueAsString(proxiedOrders);
+	}
+
+	@Benchmark
+	public String serializePersistentCollections() throws Exception {
+		return mapper.writeValueAsString(collectionOrders);
+	}
+
+	@Benchmark
+	public String serializeDiscriminatorHierarchy() throws Exception {
+		return paymentWriter.writeValueAsString(payments);
+	}
+
+	@Benchmark
+	public List<BenchPayment> deserializeDiscriminatorHierarchy() throws Exception {
+		return paymentReader.readValue(paymentsJson);
+	}
+
+	@Benchmark
+	public List<BenchPayment> deserializeDiscriminatorHierarchyTypeLast() throws Exception {
+		return paymentReader.readValue(paymentsTypeLastJson);
+	}
+
+	/**
+	 * Reescreve os documentos com o discriminador como último campo, como
+	 * chegam de outras ferramentas.
+	 */
+	protected String moveTypeToEnd(String json) throws Exception {
+		ArrayNode documents = (ArrayNode) mapper.readTree(json);
+		for (JsonNode document : documents) {
+			ObjectNode object = (ObjectNode) document;
+			object.set("type", object.remove("type"));
+		}
+		return mapper.writeValueAsString(documents);
+	}
+
+	protected NoSQLSessionFactory createSessionFactory() {
+		return new InMemorySessionFactory().entity(BenchCustomer.class).entity(BenchOrder.class)
+				.hierarchy(BenchPayment.class, BenchCardPayment.class, BenchBoletoPayment.class).build();
+	}
+
+	protected SimulatedLoad newLoad() {
+		SimulatedLoad load = new SimulatedLoad(loadLatencyMicros);
+		loads.add(load);
+		return load;
+	}
+
+	protected BenchOrder createOrder(int i) {
+		BenchOrder order = new BenchOrder();
+		order.setId("order-" + i);
+		order.setCreatedAt(new Date(1546300800000L + i * 60000L));
+		return order;
+	}
+
+	protected BenchCustomer createCustomer(int i) {
+		return new BenchCustomer("customer-" + i, "Customer " + i, "customer" + i + "@anteros.com.br");
+	}
+
+	protected List<BenchItem> createItems(int i) {
+		return Arrays.asList(new BenchItem("product-" + i, 1 + (i % 5), new BigDecimal("19.90")),
+				new BenchItem("product-" + (i + 1), 2, new BigDecimal("7.50")),
+				new BenchItem("product-" + (i + 2), 1, new BigDecimal("120.00")));
+	}
+
+	protected BenchPayment createPayment(int i) {
+		if (i % 2 == 0) {
+			BenchCardPayment payment = new BenchCardPayment();
+			payment.setId("payment-" + i);
+			payment.setAmount(new BigDecimal("147.40"));
+			payment.setCardHolder("Customer " + i);
+			payment.setInstallments(1 + (i % 12));
+			return payment;
+		}
+		BenchBoletoPayment payment = new BenchBoletoPayment();
+		payment.setId("payment-" + i);
+		payment.setAmount(new BigDecimal("147.40"));
+		payment.setBarcode("23790.50400 4" + i);
+		payment.setDueDate(new Date(1546300800000L + i * 86400000L));
+		return payment;
+	}
+}
@@ -0,0 +1,111 @@
+/*******************************************************************************
+ * Copyright 2012 Anteros Tecnologia
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package br.com.anteros.nosql.persistence.serialization.jackson.benchmark;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.fasterxml.jackson.databind.ObjectWriter;
+
+import br.com.anteros.nosql.persistence.serialization.jackson.AnterosNoSQLObjectMapper;
+import br.com.anteros.nosql.persistence.serialization.jackson.AnterosPersistenceJacksonModule.Feature;
+import br.com.anteros.nosql.persistence.serialization.jackson.AnterosProjection;
+import br.com.anteros.nosql.persistence.serialization.jackson.benchmark.model.BenchCustomer;
+import br.com.anteros.nosql.persistence.serialization.jackson.benchmark.model.BenchItem;
+import br.com.anteros.nosql.persistence.serialization.jackson.benchmark.model.BenchOrder;
+
+/**
+ * Mede a escrita de pedidos com FORCE_LAZY_LOADING, inteira e com projeções
+ * que deixam de fora as referências lazy, cujo carregamento custa
+ * {@code loadLatencyMicros}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AnterosProjectionBenchmark {
+
+	@Param({ "", "id", "id,customer.name" })
+	public String projection;
+
+	@Param({ "0", "50" })
+	public long loadLatencyMicros;
+
+	@Param({ "100" })
+	public int size;
+
+	protected ObjectWriter writer;
+	protected List<SimulatedLoad> loads;
+	protected List<BenchOrder> orders;
+
+	@Setup(Level.Trial)
+	public void setUp() throws Exception {
+		AnterosNoSQLObjectMapper mapper = AnterosNoSQLObjectMapper.production(
+				new InMemorySessionFactory().entity(BenchCustomer.class).entity(BenchOrder.class).build());
+		mapper.enable(Feature.FORCE_LAZY_LOADING);
+		writer = projection.isEmpty() ? mapper.writer() : mapper.writerWithProjection(AnterosProjection.parse(projection));
+		loads = new ArrayList<SimulatedLoad>();
+		orders = new ArrayList<BenchOrder>();
+		for (int i = 0; i < size; i++) {
+			BenchOrder order = new BenchOrder();
+			order.setId("order-" + i);
+			order.setCreatedAt(new Date(1546300800000L + i * 60000L));
+			order.setCustomer(LazyStandIns.proxyOf(
+					new BenchCustomer("customer-" + i, "Customer " + i, "customer" + i + "@anteros.com.br"),
+					newLoad()));
+			order.setItems(LazyStandIns.persistentListOf(
+					Arrays.asList(new BenchItem("product-" + i, 1, new BigDecimal("19.90"))), newLoad()));
+			orders.add(order);
+		}
+	}
+
+	@Setup(Level.Invocation)
+	public void resetLoads() {
+		for (SimulatedLoad load : loads) {
+			load.reset();
+		}
+	}
+
+	@Benchmark
+	public String serializeOrders() throws Exception {
+		return writer.writeValueAsString(orders);
+	}
+
+	protected SimulatedLoad newLoad() {
+		SimulatedLoad load = new SimulatedLoad(loadLatencyMicros);
+		loads.add(load);
+		return load;
+	}
+}
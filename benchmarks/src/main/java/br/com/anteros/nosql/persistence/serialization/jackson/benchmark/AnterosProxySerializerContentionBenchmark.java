@@ -0,0 +1,113 @@
+/*******************************************************************************
+ * Copyright 2012 Anteros Tecnologia
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package br.com.anteros.nosql.persistence.serialization.jackson.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import br.com.anteros.nosql.persistence.serialization.jackson.AnterosNoSQLObjectMapper;
+import br.com.anteros.nosql.persistence.serialization.jackson.AnterosPersistenceJacksonModule.Feature;
+import br.com.anteros.nosql.persistence.serialization.jackson.benchmark.model.BenchBoletoPayment;
+import br.com.anteros.nosql.persistence.serialization.jackson.benchmark.model.BenchCardPayment;
+import br.com.anteros.nosql.persistence.serialization.jackson.benchmark.model.BenchCustomer;
+import br.com.anteros.nosql.persistence.serialization.jackson.benchmark.model.BenchOrder;
+import br.com.anteros.nosql.persistence.serialization.jackson.benchmark.model.BenchPayment;
+
+/**
+ * Mede a escalabilidade da serialização de proxies já inicializados com
+ * várias threads escrevendo no mesmo mapper. A vazão por thread deve se manter
+ * de 1 para N threads, tanto com uma única classe alvo (caminho monomórfico)
+ * quanto com alvos de classes diferentes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AnterosProxySerializerContentionBenchmark {
+
+	@Param({ "true", "false" })
+	public boolean polymorphic;
+
+	@Param({ "50" })
+	public int size;
+
+	protected AnterosNoSQLObjectMapper mapper;
+	protected List<BenchOrder> orders;
+
+	@Setup(Level.Trial)
+	public void setUp() throws Exception {
+		mapper = AnterosNoSQLObjectMapper.production(new InMemorySessionFactory().entity(BenchCustomer.class)
+				.entity(BenchOrder.class).hierarchy(BenchPayment.class, BenchCardPayment.class, BenchBoletoPayment.class)
+				.build());
+		mapper.enable(Feature.FORCE_LAZY_LOADING);
+		orders = new ArrayList<BenchOrder>();
+		for (int i = 0; i < size; i++) {
+			BenchOrder order = new BenchOrder();
+			order.setId("order-" + i);
+			order.setCustomer(LazyStandIns.proxyOf(
+					new BenchCustomer("customer-" + i, "Customer " + i, "customer" + i + "@anteros.com.br"),
+					loaded()));
+			if (polymorphic) {
+				BenchPayment payment = (i % 2 == 0) ? new BenchCardPayment() : new BenchBoletoPayment();
+				payment.setId("payment-" + i);
+				order.setPayment(LazyStandIns.proxyOf(payment, loaded()));
+			}
+			orders.add(order);
+		}
+		mapper.writeValueAsString(orders);
+	}
+
+	@Benchmark
+	@Threads(1)
+	public String oneThread() throws Exception {
+		return mapper.writeValueAsString(orders);
+	}
+
+	@Benchmark
+	@Threads(4)
+	public String fourThreads() throws Exception {
+		return mapper.writeValueAsString(orders);
+	}
+
+	@Benchmark
+	@Threads(Threads.MAX)
+	public String allCores() throws Exception {
+		return mapper.writeValueAsString(orders);
+	}
+
+	protected SimulatedLoad loaded() {
+		SimulatedLoad load = new SimulatedLoad(0);
+		load.load();
+		return load;
+	}
+}
@@ -0,0 +1,97 @@
+/*******************************************************************************
+ * Copyright 2012 Anteros Tecnologia
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package br.com.anteros.nosql.persistence.serialization.jackson.benchmark;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import br.com.anteros.nosql.persistence.serialization.jackson.AnterosNoSQLObjectMapper;
+import br.com.anteros.nosql.persistence.serialization.jackson.AnterosSerializationStatistics;
+import br.com.anteros.nosql.persistence.serialization.jackson.benchmark.model.BenchCustomer;
+import br.com.anteros.nosql.persistence.serialization.jackson.benchmark.model.BenchItem;
+import br.com.anteros.nosql.persistence.serialization.jackson.benchmark.model.BenchOrder;
+
+/**
+ * Mede o custo da instrumentação da serialização: escrita de pedidos com
+ * proxies e coleções persistentes com as métricas desligadas e ligadas.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AnterosSerializationMetricsBenchmark {
+
+	@Param({ "false", "true" })
+	public boolean metrics;
+
+	@Param({ "1", "100" })
+	public int size;
+
+	protected AnterosNoSQLObjectMapper mapper;
+	protected List<BenchOrder> orders;
+	protected BenchOrder order;
+
+	@Setup(Level.Trial)
+	public void setUp() throws Exception {
+		mapper = AnterosNoSQLObjectMapper.production(
+				new InMemorySessionFactory().entity(BenchCustomer.class).entity(BenchOrder.class).build());
+		if (metrics) {
+			mapper.setSerializationMetrics(new AnterosSerializationStatistics());
+		}
+		orders = new ArrayList<BenchOrder>();
+		for (int i = 0; i < size; i++) {
+			BenchOrder order = new BenchOrder();
+			order.setId("order-" + i);
+			order.setCreatedAt(new Date(1546300800000L + i * 60000L));
+			order.setCustomer(LazyStandIns.proxyOf(
+					new BenchCustomer("customer-" + i, "Customer " + i, "customer" + i + "@anteros.com.br"),
+					new SimulatedLoad(0)));
+			order.setItems(LazyStandIns.persistentListOf(
+					Arrays.asList(new BenchItem("product-" + i, 1, new BigDecimal("19.90"))), new SimulatedLoad(0)));
+			orders.add(order);
+		}
+		order = orders.get(0);
+	}
+
+	@Benchmark
+	public String serializeOrder() throws Exception {
+		return mapper.writeValueAsString(order);
+	}
+
+	@Benchmark
+	public String serializeOrders() throws Exception {
+		return mapper.writeValueAsString(orders);
+	}
+}
@@ -0,0 +1,102 @@
+/*******************************************************************************
+ * Copyright 2012 Anteros Tecnologia
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package br.com.anteros.nosql.persistence.serialization.jackson.benchmark;
+
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import br.com.anteros.nosql.persistence.serialization.jackson.AnterosCollectionPageLoader;
+import br.com.anteros.nosql.persistence.serialization.jackson.AnterosNoSQLObjectMapper;
+import br.com.anteros.nosql.persistence.serialization.jackson.AnterosPersistenceJacksonModule.Feature;
+import br.com.anteros.nosql.persistence.serialization.jackson.benchmark.model.BenchCustomer;
+import br.com.anteros.nosql.persistence.serialization.jackson.benchmark.model.BenchOrder;
+
+/**
+ * Compara a escrita de uma coleção persistente grande carregada por inteiro
+ * com a escrita em páginas de {@link Feature#STREAM_LAZY_COLLECTIONS}. Com o
+ * GCProfiler, a diferença aparece na alocação por operação.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgs = { "-Xmx256m" })
+public class AnterosStreamingCollectionBenchmark {
+
+	private static final OutputStream DISCARD = new OutputStream() {
+		@Override
+		public void write(int b) {
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) {
+		}
+	};
+
+	@Param({ "false", "true" })
+	public boolean streaming;
+
+	@Param({ "100000" })
+	public int size;
+
+	@Param({ "500" })
+	public int pageSize;
+
+	protected AnterosNoSQLObjectMapper mapper;
+	protected GeneratedListStandIn items;
+	protected BenchOrder order;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		mapper = new AnterosNoSQLObjectMapper(
+				new InMemorySessionFactory().entity(BenchCustomer.class).entity(BenchOrder.class).build());
+		mapper.enable(Feature.FORCE_LAZY_LOADING);
+		if (streaming) {
+			mapper.enable(Feature.STREAM_LAZY_COLLECTIONS);
+			mapper.getModule().setCollectionPageSize(pageSize)
+					.setCollectionPageLoader((AnterosCollectionPageLoader) (collection, firstResult,
+							maxResults) -> ((GeneratedListStandIn) collection).page(firstResult, maxResults));
+		}
+		items = LazyStandIns.generatedListOf(size);
+		order = new BenchOrder();
+		order.setId("order-1");
+		order.setItems(items);
+	}
+
+	@Setup(Level.Invocation)
+	public void resetItems() {
+		items.reset();
+	}
+
+	@Benchmark
+	public void serializeLargeCollection() throws Exception {
+		mapper.writeValue(DISCARD, order);
+	}
+}
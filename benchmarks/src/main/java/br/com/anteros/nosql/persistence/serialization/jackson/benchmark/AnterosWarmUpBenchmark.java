@@ -0,0 +1,87 @@
+/*******************************************************************************
+ * Copyright 2012 Anteros Tecnologia
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package br.com.anteros.nosql.persistence.serialization.jackson.benchmark;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import br.com.anteros.nosql.persistence.serialization.jackson.AnterosNoSQLObjectMapper;
+import br.com.anteros.nosql.persistence.serialization.jackson.benchmark.model.BenchBoletoPayment;
+import br.com.anteros.nosql.persistence.serialization.jackson.benchmark.model.BenchCardPayment;
+import br.com.anteros.nosql.persistence.serialization.jackson.benchmark.model.BenchCustomer;
+import br.com.anteros.nosql.persistence.serialization.jackson.benchmark.model.BenchItem;
+import br.com.anteros.nosql.persistence.serialization.jackson.benchmark.model.BenchOrder;
+import br.com.anteros.nosql.persistence.serialization.jackson.benchmark.model.BenchPayment;
+
+/**
+ * Mede a latência da primeira requisição (escrita de um pedido e leitura de um
+ * pagamento) num mapper recém-criado, com e sem
+ * {@link AnterosNoSQLObjectMapper#warmUp()} antes dela.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 10)
+@Measurement(iterations = 50)
+@Fork(1)
+public class AnterosWarmUpBenchmark {
+
+	private static final String PAYMENT_JSON = "{\"type\":\"CARD\",\"id\":\"payment-1\",\"amount\":147.40,\"cardHolder\":\"Customer 1\",\"installments\":3}";
+
+	@Param({ "false", "true" })
+	public boolean warmUp;
+
+	protected AnterosNoSQLObjectMapper mapper;
+	protected BenchOrder order;
+
+	@Setup(Level.Iteration)
+	public void setUp() throws Exception {
+		mapper = AnterosNoSQLObjectMapper.production(new InMemorySessionFactory().entity(BenchCustomer.class)
+				.entity(BenchOrder.class).entity(BenchItem.class)
+				.hierarchy(BenchPayment.class, BenchCardPayment.class, BenchBoletoPayment.class).build());
+		if (warmUp) {
+			mapper.warmUp().join();
+		}
+		order = new BenchOrder();
+		order.setId("order-1");
+		order.setCreatedAt(new Date(1546300800000L));
+		order.setCustomer(LazyStandIns.proxyOf(
+				new BenchCustomer("customer-1", "Customer 1", "customer1@anteros.com.br"), new SimulatedLoad(0)));
+		order.setItems(LazyStandIns.persistentListOf(
+				Arrays.asList(new BenchItem("product-1", 1, new BigDecimal("19.90"))), new SimulatedLoad(0)));
+	}
+
+	@Benchmark
+	public Object firstRequest() throws Exception {
+		mapper.writeValueAsString(order);
+		return mapper.readValue(PAYMENT_JSON, BenchPayment.class);
+	}
+}
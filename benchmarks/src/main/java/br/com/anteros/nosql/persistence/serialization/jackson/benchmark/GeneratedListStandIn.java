@@ -0,0 +1,76 @@
+/*******************************************************************************
+ * Copyright 2012 Anteros Tecnologia
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package br.com.anteros.nosql.persistence.serialization.jackson.benchmark;
+
+import java.math.BigDecimal;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.List;
+
+import br.com.anteros.nosql.persistence.proxy.AnterosPersistentCollection;
+import br.com.anteros.nosql.persistence.serialization.jackson.benchmark.model.BenchItem;
+
+/**
+ * Coleção persistente de teste cujos elementos são gerados sob demanda, como
+ * se viessem de um cursor: {@link #initialize()} materializa todos eles,
+ * enquanto {@link #page(int, int)} gera apenas os da página pedida.
+ */
+public abstract class GeneratedListStandIn extends AbstractList<BenchItem> implements AnterosPersistentCollection {
+
+	private final int size;
+	private List<BenchItem> elements;
+
+	public GeneratedListStandIn(Integer size) {
+		this.size = size;
+	}
+
+	@Override
+	public boolean isInitialized() {
+		return elements != null;
+	}
+
+	@Override
+	public void initialize() {
+		if (elements == null) {
+			elements = page(0, size);
+		}
+	}
+
+	public void reset() {
+		elements = null;
+	}
+
+	public List<BenchItem> page(int firstResult, int maxResults) {
+		int last = Math.min(size, firstResult + maxResults);
+		List<BenchItem> result = new ArrayList<BenchItem>(Math.max(0, last - firstResult));
+		for (int i = firstResult; i < last; i++) {
+			result.add(new BenchItem("product-" + i, 1 + (i % 5), BigDecimal.valueOf(i, 2)));
+		}
+		return result;
+	}
+
+	@Override
+	public BenchItem get(int index) {
+		initialize();
+		return elements.get(index);
+	}
+
+	@Override
+	public int size() {
+		initialize();
+		return size;
+	}
+}
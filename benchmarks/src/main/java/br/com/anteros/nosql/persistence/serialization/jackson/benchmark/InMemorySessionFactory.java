@@ -0,0 +1,86 @@
+/*******************************************************************************
+ * Copyright 2012 Anteros Tecnologia
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package br.com.anteros.nosql.persistence.serialization.jackson.benchmark;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.RETURNS_DEEP_STUBS;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import br.com.anteros.nosql.persistence.metadata.NoSQLDescriptionEntity;
+import br.com.anteros.nosql.persistence.metadata.annotations.DiscriminatorValue;
+import br.com.anteros.nosql.persistence.session.NoSQLSessionFactory;
+
+/**
+ * Substituto em memória de um {@link NoSQLSessionFactory}. Responde apenas às
+ * consultas de metadados que o módulo de serialização faz ao gerenciador de
+ * descrição de entidades, sem nenhuma conexão com o banco de dados.
+ */
+public class InMemorySessionFactory {
+
+	private final Map<Class<?>, NoSQLDescriptionEntity> descriptions = new LinkedHashMap<Class<?>, NoSQLDescriptionEntity>();
+	private final Map<Class<?>, Class<?>> rootEntities = new LinkedHashMap<Class<?>, Class<?>>();
+
+	public InMemorySessionFactory entity(Class<?> entityClass) {
+		return hierarchy(entityClass);
+	}
+
+	public InMemorySessionFactory hierarchy(Class<?> rootClass, Class<?>... subClasses) {
+		register(rootClass, rootClass);
+		for (Class<?> subClass : subClasses) {
+			register(rootClass, subClass);
+		}
+		return this;
+	}
+
+	protected void register(Class<?> rootClass, Class<?> entityClass) {
+		NoSQLDescriptionEntity description = mock(NoSQLDescriptionEntity.class);
+		doReturn(entityClass).when(description).getEntityClass();
+		DiscriminatorValue discriminatorValue = entityClass.getAnnotation(DiscriminatorValue.class);
+		when(description.getDiscriminatorValue())
+				.thenReturn(discriminatorValue == null ? null : discriminatorValue.value());
+		descriptions.put(entityClass, description);
+		rootEntities.put(entityClass, rootClass);
+	}
+
+	public NoSQLSessionFactory build() {
+		NoSQLSessionFactory sessionFactory = mock(NoSQLSessionFactory.class, RETURNS_DEEP_STUBS);
+		when(sessionFactory.getDescriptionEntityManager().getEntitySuperClass(any(Class.class)))
+				.thenAnswer(invocation -> descriptions.get(rootEntities.get(invocation.getArgument(0))));
+		when(sessionFactory.getDescriptionEntityManager().getEntitiesBySuperClass(any(Class.class)))
+				.thenAnswer(invocation -> entitiesBySuperClass(invocation.getArgument(0)));
+		when(sessionFactory.getDescriptionEntityManager().getDescriptionEntity(any(Class.class)))
+				.thenAnswer(invocation -> descriptions.get(invocation.getArgument(0)));
+		when(sessionFactory.getDescriptionEntityManager().getEntities()).thenReturn(descriptions);
+		return sessionFactory;
+	}
+
+	protected NoSQLDescriptionEntity[] entitiesBySuperClass(Class<?> rootClass) {
+		List<NoSQLDescriptionEntity> result = new ArrayList<NoSQLDescriptionEntity>();
+		for (Map.Entry<Class<?>, Class<?>> entry : rootEntities.entrySet()) {
+			if (entry.getValue().equals(rootClass)) {
+				result.add(descriptions.get(entry.getKey()));
+			}
+		}
+		return result.toArray(new NoSQLDescriptionEntity[] {});
+	}
+}
@@ -0,0 +1,75 @@
+/*******************************************************************************
+ * Copyright 2012 Anteros Tecnologia
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package br.com.anteros.nosql.persistence.serialization.jackson.benchmark;
+
+import static org.mockito.Mockito.CALLS_REAL_METHODS;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.withSettings;
+
+import java.lang.reflect.Field;
+import java.util.List;
+
+import br.com.anteros.nosql.persistence.metadata.annotations.Id;
+import br.com.anteros.nosql.persistence.proxy.AnterosProxyObject;
+
+/**
+ * Cria objetos que se comportam como os proxies e coleções persistentes do
+ * Anteros: não inicializados até o primeiro acesso, que paga a latência de um
+ * {@link SimulatedLoad}.
+ * <p>
+ * São criados com Mockito porque as implementações reais dependem de uma
+ * sessão ativa. O custo de despacho do Mockito é constante entre versões do
+ * módulo, portanto as comparações entre releases continuam válidas.
+ */
+public class LazyStandIns {
+
+	/**
+	 * Cria um proxy do objeto. Como os proxies reais, ele já carrega o
+	 * identificador (campo anotado com {@link Id}) antes de ser inicializado.
+	 */
+	@SuppressWarnings("unchecked")
+	public static <T> T proxyOf(final T target, final SimulatedLoad load) throws Exception {
+		T proxy = (T) mock(target.getClass(),
+				withSettings().withoutAnnotations().extraInterfaces(AnterosProxyObject.class));
+		for (Class<?> type = target.getClass(); type != Object.class; type = type.getSuperclass()) {
+			for (Field field : type.getDeclaredFields()) {
+				if (field.isAnnotationPresent(Id.class)) {
+					field.setAccessible(true);
+					field.set(proxy, field.get(target));
+				}
+			}
+		}
+		AnterosProxyObject proxyObject = (AnterosProxyObject) proxy;
+		doAnswer(invocation -> load.isLoaded()).when(proxyObject).isInitialized();
+		doAnswer(invocation -> {
+			load.load();
+			return target;
+		}).when(proxyObject).initializeAndReturnObject();
+		return proxy;
+	}
+
+	@SuppressWarnings("unchecked")
+	public static <E> List<E> persistentListOf(List<E> elements, SimulatedLoad load) {
+		return mock(PersistentListStandIn.class,
+				withSettings().useConstructor(elements, load).defaultAnswer(CALLS_REAL_METHODS));
+	}
+
+	public static GeneratedListStandIn generatedListOf(int size) {
+		return mock(GeneratedListStandIn.class,
+				withSettings().useConstructor(size).defaultAnswer(CALLS_REAL_METHODS));
+	}
+}
@@ -0,0 +1,77 @@
+/*******************************************************************************
+ * Copyright 2012 Anteros Tecnologia
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package br.com.anteros.nosql.persistence.serialization.jackson.benchmark;
+
+import java.util.AbstractList;
+import java.util.List;
+
+import br.com.anteros.nosql.persistence.proxy.AnterosPersistentCollection;
+
+/**
+ * Lista persistente de teste: os elementos só ficam disponíveis depois do
+ * carregamento simulado, disparado pelo primeiro acesso ou por
+ * {@link #initialize()}. Alterações são feitas na lista recebida.
+ */
+public abstract class PersistentListStandIn<E> extends AbstractList<E> implements AnterosPersistentCollection {
+
+	private final List<E> elements;
+	private final SimulatedLoad load;
+
+	public PersistentListStandIn(List<E> elements, SimulatedLoad load) {
+		this.elements = elements;
+		this.load = load;
+	}
+
+	@Override
+	public boolean isInitialized() {
+		return load.isLoaded();
+	}
+
+	@Override
+	public void initialize() {
+		load.load();
+	}
+
+	@Override
+	public E get(int index) {
+		load.load();
+		return elements.get(index);
+	}
+
+	@Override
+	public int size() {
+		load.load();
+		return elements.size();
+	}
+
+	@Override
+	public E set(int index, E element) {
+		load.load();
+		return elements.set(index, element);
+	}
+
+	@Override
+	public void add(int index, E element) {
+		load.load();
+		elements.add(index, element);
+	}
+
+	@Override
+	public E remove(int index) {
+		load.load();
+		return elements.remove(index);
+	}
+}
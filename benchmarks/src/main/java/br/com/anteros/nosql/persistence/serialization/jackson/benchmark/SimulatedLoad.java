@@ -0,0 +1,59 @@
+/*******************************************************************************
+ * Copyright 2012 Anteros Tecnologia
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package br.com.anteros.nosql.persistence.serialization.jackson.benchmark;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Simula o custo de ida ao banco de dados de um carregamento lazy. Cada
+ * instância representa um objeto ou coleção ainda não carregado; o primeiro
+ * acesso paga a latência configurada e os seguintes não, até que
+ * {@link #reset()} seja chamado.
+ */
+public class SimulatedLoad {
+
+	private final long latencyNanos;
+	private boolean loaded;
+	private int loadCount;
+
+	public SimulatedLoad(long latencyMicros) {
+		this.latencyNanos = TimeUnit.MICROSECONDS.toNanos(latencyMicros);
+	}
+
+	public boolean isLoaded() {
+		return loaded;
+	}
+
+	public void load() {
+		if (loaded) {
+			return;
+		}
+		if (latencyNanos > 0) {
+			LockSupport.parkNanos(latencyNanos);
+		}
+		loaded = true;
+		loadCount++;
+	}
+
+	public void reset() {
+		loaded = false;
+	}
+
+	public int getLoadCount() {
+		return loadCount;
+	}
+}
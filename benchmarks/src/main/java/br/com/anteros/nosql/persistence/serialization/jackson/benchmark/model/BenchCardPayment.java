@@ -0,0 +1,43 @@
+/*******************************************************************************
+ * Copyright 2012 Anteros Tecnologia
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package br.com.anteros.nosql.persistence.serialization.jackson.benchmark.model;
+
+import br.com.anteros.nosql.persistence.metadata.annotations.DiscriminatorValue;
+import br.com.anteros.nosql.persistence.metadata.annotations.Entity;
+
+@Entity
+@DiscriminatorValue("CARD")
+public class BenchCardPayment extends BenchPayment {
+
+	private String cardHolder;
+	private int installments;
+
+	public String getCardHolder() {
+		return cardHolder;
+	}
+
+	public void setCardHolder(String cardHolder) {
+		this.cardHolder = cardHolder;
+	}
+
+	public int getInstallments() {
+		return installments;
+	}
+
+	public void setInstallments(int installments) {
+		this.installments = installments;
+	}
+}
@@ -0,0 +1,76 @@
+/*******************************************************************************
+ * Copyright 2012 Anteros Tecnologia
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package br.com.anteros.nosql.persistence.serialization.jackson.benchmark.model;
+
+import java.util.Date;
+import java.util.List;
+
+import br.com.anteros.nosql.persistence.metadata.annotations.Entity;
+import br.com.anteros.nosql.persistence.metadata.annotations.Id;
+import br.com.anteros.nosql.persistence.metadata.annotations.Reference;
+
+@Entity
+public class BenchOrder {
+
+	@Id
+	private String id;
+	private Date createdAt;
+	@Reference(lazy = true)
+	private BenchCustomer customer;
+	@Reference(lazy = true)
+	private List<BenchItem> items;
+	private BenchPayment payment;
+
+	public String getId() {
+		return id;
+	}
+
+	public void setId(String id) {
+		this.id = id;
+	}
+
+	public Date getCreatedAt() {
+		return createdAt;
+	}
+
+	public void setCreatedAt(Date createdAt) {
+		this.createdAt = createdAt;
+	}
+
+	public BenchCustomer getCustomer() {
+		return customer;
+	}
+
+	public void setCustomer(BenchCustomer customer) {
+		this.customer = customer;
+	}
+
+	public List<BenchItem> getItems() {
+		return items;
+	}
+
+	public void setItems(List<BenchItem> items) {
+		this.items = items;
+	}
+
+	public BenchPayment getPayment() {
+		return payment;
+	}
+
+	public void setPayment(BenchPayment payment) {
+		this.payment = payment;
+	}
+}
@@ -0,0 +1,47 @@
+/*******************************************************************************
+ * Copyright 2012 Anteros Tecnologia
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package br.com.anteros.nosql.persistence.serialization.jackson.benchmark.model;
+
+import java.math.BigDecimal;
+
+import br.com.anteros.nosql.persistence.metadata.annotations.DiscriminatorValue;
+import br.com.anteros.nosql.persistence.metadata.annotations.Entity;
+import br.com.anteros.nosql.persistence.metadata.annotations.Id;
+
+@Entity
+@DiscriminatorValue("PAYMENT")
+public abstract class BenchPayment {
+
+	@Id
+	private String id;
+	private BigDecimal amount;
+
+	public String getId() {
+		return id;
+	}
+
+	public void setId(String id) {
+		this.id = id;
+	}
+
+	public BigDecimal getAmount() {
+		return amount;
+	}
+
+	public void setAmount(BigDecimal amount) {
+		this.amount = amount;
+	}
+}
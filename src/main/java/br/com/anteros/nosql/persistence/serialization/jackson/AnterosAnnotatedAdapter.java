@@ -17,9 +17,8 @@ package br.com.anteros.nosql.persistence.serialization.jackson;
 
 import java.lang.annotation.Annotation;
 import java.lang.reflect.AnnotatedElement;
+import java.lang.reflect.Field;
 import java.lang.reflect.Type;
-import java.util.ArrayList;
-import java.util.List;
 
 import com.fasterxml.jackson.annotation.JsonIdentityInfo;
 import com.fasterxml.jackson.annotation.JsonSubTypes;
@@ -31,19 +30,55 @@ import com.fasterxml.jackson.annotation.SimpleObjectIdResolver;
 import com.fasterxml.jackson.databind.JavaType;
 import com.fasterxml.jackson.databind.introspect.Annotated;
 
-import br.com.anteros.nosql.persistence.metadata.NoSQLDescriptionEntity;
 import br.com.anteros.nosql.persistence.metadata.annotations.DiscriminatorValue;
 import br.com.anteros.nosql.persistence.metadata.annotations.Entity;
 import br.com.anteros.nosql.persistence.session.NoSQLSessionFactory;
 
 public class AnterosAnnotatedAdapter extends Annotated {
 
-	private Annotated annotated;
-	private NoSQLSessionFactory sessionFactory;
+	private static final JsonTypeInfo JSON_TYPE_INFO = new JsonTypeInfoImpl();
+
+	private static final JsonIdentityInfo UUID_IDENTITY_INFO = new JsonIdentityInfoImpl("@id",
+			ObjectIdGenerators.UUIDGenerator.class, Object.class);
+
+	private static final JsonIdentityInfo SEQUENCE_IDENTITY_INFO = new JsonIdentityInfoImpl("@id",
+			ObjectIdGenerators.IntSequenceGenerator.class, Object.class);
 
+	private Annotated annotated;
+	private AnterosSubtypeRegistry subtypeRegistry;
+	private AnterosIdentityStrategy identityStrategy;
+	private AnterosAnnotationIntrospector introspector;
+
+	/**
+	 * Cria um {@link AnterosSubtypeRegistry} a cada chamada.
+	 * 
+	 * @deprecated use
+	 *             {@link #AnterosAnnotatedAdapter(AnterosSubtypeRegistry, Annotated)}
+	 *             com {@link AnterosPersistenceJacksonModule#getSubtypeRegistry()}.
+	 */
+	@Deprecated
 	public AnterosAnnotatedAdapter(NoSQLSessionFactory sessionFactory, Annotated annotated) {
+		this(new AnterosSubtypeRegistry(sessionFactory), annotated);
+	}
+
+	public AnterosAnnotatedAdapter(AnterosSubtypeRegistry subtypeRegistry, Annotated annotated) {
+		this(subtypeRegistry, AnterosIdentityStrategy.UUID, annotated);
+	}
+
+	public AnterosAnnotatedAdapter(AnterosSubtypeRegistry subtypeRegistry, AnterosIdentityStrategy identityStrategy,
+			Annotated annotated) {
 		this.annotated = annotated;
-		this.sessionFactory = sessionFactory;
+		this.subtypeRegistry = subtypeRegistry;
+		this.identityStrategy = identityStrategy;
+	}
+
+	/**
+	 * Adapta o elemento com a configuração do introspector, que também resolve
+	 * o nome no JSON do identificador usado como object id.
+	 */
+	public AnterosAnnotatedAdapter(AnterosAnnotationIntrospector introspector, Annotated annotated) {
+		this(introspector.getSubtypeRegistry(), introspector.getIdentityStrategy(), annotated);
+		this.introspector = introspector;
 	}
 
 	@Override
@@ -61,16 +96,30 @@ public class AnterosAnnotatedAdapter extends Annotated {
 	}
 
 	protected <A extends Annotation> A processJsonIdentityInfo(Class<A> acls) {
-		if (annotated.getAnnotation(Entity.class) != null)
-			return  (A) new JsonIdentityInfoImpl();
-		else
+		if (annotated.getAnnotation(Entity.class) == null)
+			return null;
+		switch (identityStrategy) {
+		case NONE:
 			return null;
+		case ENTITY_ID:
+			Field idField = AnterosProxyReferenceWriter.idFieldOf(annotated.getRawType());
+			if (idField == null)
+				return (A) SEQUENCE_IDENTITY_INFO;
+			String idName = introspector == null ? idField.getName()
+					: introspector.findIdPropertyName(annotated, idField);
+			return (A) new JsonIdentityInfoImpl(idName, ObjectIdGenerators.PropertyGenerator.class,
+					idField.getDeclaringClass());
+		case SEQUENCE:
+			return (A) SEQUENCE_IDENTITY_INFO;
+		default:
+			return (A) UUID_IDENTITY_INFO;
+		}
 	}
 
 	protected <A extends Annotation> A processJsonSubTypes(Class<A> acls) {
 		DiscriminatorValue discriminatorValue = annotated.getAnnotation(DiscriminatorValue.class);
 		if (discriminatorValue != null) {
-			return (A) new JsonSubTypesImpl(discriminatorValue);
+			return (A) new JsonSubTypesImpl();
 		} else
 			return annotated.getAnnotation(acls);
 	}
@@ -78,7 +127,7 @@ public class AnterosAnnotatedAdapter extends Annotated {
 	protected <A extends Annotation> A processJsonTypeInfo(Class<A> acls) {
 		DiscriminatorValue discriminatorValue = annotated.getAnnotation(DiscriminatorValue.class);
 		if (discriminatorValue != null) {
-			return (A) new JsonTypeInfoImpl();
+			return (A) JSON_TYPE_INFO;
 		} else
 			return annotated.getAnnotation(acls);
 	}
@@ -123,7 +172,7 @@ public class AnterosAnnotatedAdapter extends Annotated {
 //		throw new RuntimeException("Not implemented method.");
 //	}
 
-	class JsonTypeInfoImpl implements JsonTypeInfo {
+	static class JsonTypeInfoImpl implements JsonTypeInfo {
 
 		public Class<? extends Annotation> annotationType() {
 			return JsonTypeInfo.class;
@@ -151,22 +200,32 @@ public class AnterosAnnotatedAdapter extends Annotated {
 
 	}
 
-	class JsonIdentityInfoImpl implements JsonIdentityInfo {
+	static class JsonIdentityInfoImpl implements JsonIdentityInfo {
+
+		private String _property;
+		private Class<? extends ObjectIdGenerator<?>> _generator;
+		private Class<?> _scope;
+
+		public JsonIdentityInfoImpl(String property, Class<? extends ObjectIdGenerator<?>> generator, Class<?> scope) {
+			this._property = property;
+			this._generator = generator;
+			this._scope = scope;
+		}
 
 		public Class<? extends Annotation> annotationType() {
 			return JsonIdentityInfo.class;
 		}
 
 		public String property() {
-			return "@id";
+			return _property;
 		}
 
 		public Class<? extends ObjectIdGenerator<?>> generator() {
-			return ObjectIdGenerators.UUIDGenerator.class;
+			return _generator;
 		}
 
 		public Class<?> scope() {
-			return Object.class;
+			return _scope;
 		}
 
 		@Override
@@ -178,34 +237,17 @@ public class AnterosAnnotatedAdapter extends Annotated {
 
 	class JsonSubTypesImpl implements JsonSubTypes {
 
-		private DiscriminatorValue discriminatorValue;
-
-		public JsonSubTypesImpl(DiscriminatorValue discriminatorValue) {
-			this.discriminatorValue = discriminatorValue;
-		}
-
 		public Class<? extends Annotation> annotationType() {
 			return JsonSubTypes.class;
 		}
 
 		public Type[] value() {
-			List<Type> result = new ArrayList<Type>();
-			Class<?> rawType = annotated.getRawType();
-			if (discriminatorValue != null) {
-				NoSQLDescriptionEntity descriptionEntity = sessionFactory.getDescriptionEntityManager().getEntitySuperClass(rawType);
-				rawType = descriptionEntity.getEntityClass();
-			}
-			NoSQLDescriptionEntity[] entities = sessionFactory.getDescriptionEntityManager().getEntitiesBySuperClass(rawType);
-			for (NoSQLDescriptionEntity entity : entities) {
-				TypeImpl t = new TypeImpl(entity.getEntityClass(), entity.getDiscriminatorValue());
-				result.add(t);
-			}
-			return result.toArray(new Type[] {});
+			return subtypeRegistry.getSubtypeAnnotations(annotated.getRawType());
 		}
 
 	}
 
-	class TypeImpl implements JsonSubTypes.Type {
+	static class TypeImpl implements JsonSubTypes.Type {
 
 		private Class<?> _value;
 		private String _name;
@@ -231,38 +273,40 @@ public class AnterosAnnotatedAdapter extends Annotated {
 
 	@Override
 	public boolean hasAnnotation(Class<?> acls) {
-		// TODO Auto-generated method stub
-		return false;
+		return annotated.hasAnnotation(acls);
 	}
 
 	@Override
 	public boolean hasOneOf(Class<? extends Annotation>[] annoClasses) {
-		// TODO Auto-generated method stub
-		return false;
+		return annotated.hasOneOf(annoClasses);
 	}
 
 	@Override
 	public JavaType getType() {
-		// TODO Auto-generated method stub
-		return null;
+		return annotated.getType();
 	}
 
 	@Override
 	public boolean equals(Object o) {
-		// TODO Auto-generated method stub
-		return false;
+		if (o == this) {
+			return true;
+		}
+		if (o == null || o.getClass() != getClass()) {
+			return false;
+		}
+		AnterosAnnotatedAdapter other = (AnterosAnnotatedAdapter) o;
+		return annotated.equals(other.annotated) && subtypeRegistry == other.subtypeRegistry
+				&& identityStrategy == other.identityStrategy;
 	}
 
 	@Override
 	public int hashCode() {
-		// TODO Auto-generated method stub
-		return 0;
+		return annotated.hashCode();
 	}
 
 	@Override
 	public String toString() {
-		// TODO Auto-generated method stub
-		return null;
+		return "[AnterosAnnotatedAdapter for " + annotated + "]";
 	}
 
 }
@@ -15,38 +15,182 @@
  *******************************************************************************/
 package br.com.anteros.nosql.persistence.serialization.jackson;
 
+import java.lang.reflect.Field;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Set;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import com.fasterxml.jackson.core.Version;
 import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.PropertyName;
+import com.fasterxml.jackson.databind.PropertyNamingStrategy;
 import com.fasterxml.jackson.databind.cfg.MapperConfig;
 import com.fasterxml.jackson.databind.introspect.Annotated;
 import com.fasterxml.jackson.databind.introspect.AnnotatedClass;
+import com.fasterxml.jackson.databind.introspect.AnnotatedField;
 import com.fasterxml.jackson.databind.introspect.AnnotatedMember;
+import com.fasterxml.jackson.databind.introspect.AnnotatedMethod;
 import com.fasterxml.jackson.databind.introspect.JacksonAnnotationIntrospector;
 import com.fasterxml.jackson.databind.introspect.ObjectIdInfo;
 import com.fasterxml.jackson.databind.jsontype.NamedType;
 import com.fasterxml.jackson.databind.jsontype.TypeResolverBuilder;
+import com.fasterxml.jackson.databind.jsontype.impl.StdTypeResolverBuilder;
 
+import br.com.anteros.nosql.persistence.metadata.annotations.DiscriminatorValue;
 import br.com.anteros.nosql.persistence.metadata.annotations.Transient;
 import br.com.anteros.nosql.persistence.session.NoSQLSessionFactory;
 
+/**
+ * Introspector que traduz as anotações do Anteros NoSQL para o Jackson.
+ * <p>
+ * Os resultados de {@link #findObjectIdInfo(Annotated)},
+ * {@link #findSubtypes(Annotated)}, {@link #hasIgnoreMarker(AnnotatedMember)}
+ * e dos type resolvers das hierarquias com {@link DiscriminatorValue} são
+ * memorizados por classe/membro, de modo que a construção de serializadores e
+ * deserializadores só paga a introspecção uma vez por elemento anotado. Como a
+ * igualdade dos elementos anotados do Jackson ignora os mix-ins, cada mapper
+ * precisa do seu próprio introspector (veja {@link #copy()}).
+ */
 public class AnterosAnnotationIntrospector extends JacksonAnnotationIntrospector {
 	private static final long serialVersionUID = 1L;
 
-	protected boolean _cfgCheckTransient;
+	private static final Object NONE = new Object();
 
-	private NoSQLSessionFactory sessionFactory;
+	private AnterosSubtypeRegistry subtypeRegistry;
 
+	private Settings settings = Settings.DEFAULT;
+
+	private final ConcurrentMap<AnnotatedMember, Boolean> ignoreMarkers = new ConcurrentHashMap<AnnotatedMember, Boolean>();
+
+	private final ConcurrentMap<Annotated, Object> objectIdInfos = new ConcurrentHashMap<Annotated, Object>();
+
+	private final ConcurrentMap<Annotated, Object> subtypes = new ConcurrentHashMap<Annotated, Object>();
+
+	/**
+	 * Por elemento anotado, tipo base e tipo da configuração (serialização ou
+	 * deserialização).
+	 */
+	private final ConcurrentMap<List<Object>, TypeResolverBuilder<?>> typeResolvers = new ConcurrentHashMap<List<Object>, TypeResolverBuilder<?>>();
+
+	/**
+	 * Cria um {@link AnterosSubtypeRegistry} próprio, que resolve de novo as
+	 * hierarquias já resolvidas pelo módulo.
+	 * 
+	 * @deprecated use
+	 *             {@link #AnterosAnnotationIntrospector(AnterosSubtypeRegistry)}
+	 *             com {@link AnterosPersistenceJacksonModule#getSubtypeRegistry()}.
+	 */
+	@Deprecated
 	public AnterosAnnotationIntrospector(NoSQLSessionFactory sessionFactory) {
-		this.sessionFactory = sessionFactory;
+		this(new AnterosSubtypeRegistry(sessionFactory));
 	}
 
-	public AnterosAnnotationIntrospector setUseTransient(boolean state) {
-		_cfgCheckTransient = state;
+	public AnterosAnnotationIntrospector(AnterosSubtypeRegistry subtypeRegistry) {
+		this.subtypeRegistry = subtypeRegistry;
+	}
+
+	public Settings getSettings() {
+		return settings;
+	}
+
+	public AnterosAnnotationIntrospector setSettings(Settings settings) {
+		if (settings.useTransient != this.settings.useTransient) {
+			ignoreMarkers.clear();
+		}
+		this.settings = settings;
+		objectIdInfos.clear();
 		return this;
 	}
 
+	/**
+	 * Retorna um introspector com a configuração informada, sem alterar este,
+	 * que pode estar em uso por outro mapper.
+	 */
+	public AnterosAnnotationIntrospector withSettings(Settings settings) {
+		if (settings.equals(this.settings)) {
+			return this;
+		}
+		return new AnterosAnnotationIntrospector(subtypeRegistry).setSettings(settings);
+	}
+
+	/**
+	 * Cópia com a mesma configuração e caches vazios, para outro mapper, que
+	 * pode ter outros mix-ins.
+	 */
+	public AnterosAnnotationIntrospector copy() {
+		return new AnterosAnnotationIntrospector(subtypeRegistry).setSettings(settings);
+	}
+
+	public AnterosAnnotationIntrospector setUseTransient(boolean state) {
+		return setSettings(settings.withUseTransient(state));
+	}
+
+	public boolean isUseTransient() {
+		return settings.useTransient;
+	}
+
+	public AnterosAnnotationIntrospector setIdentityStrategy(AnterosIdentityStrategy identityStrategy) {
+		return setSettings(settings.withIdentityStrategy(identityStrategy));
+	}
+
+	public AnterosIdentityStrategy getIdentityStrategy() {
+		return settings.identityStrategy;
+	}
+
+	/**
+	 * Entidades (e suas subclasses) que nunca aparecem duas vezes no mesmo
+	 * grafo: não recebem object id nem são rastreadas na serialização.
+	 */
+	public AnterosAnnotationIntrospector setAcyclicEntities(Set<Class<?>> acyclicEntities) {
+		return setSettings(settings.withAcyclicEntities(acyclicEntities));
+	}
+
+	public Set<Class<?>> getAcyclicEntities() {
+		return settings.acyclicEntities;
+	}
+
+	public AnterosSubtypeRegistry getSubtypeRegistry() {
+		return subtypeRegistry;
+	}
+
+	/**
+	 * Nome no JSON do campo identificador da entidade, usado como object id
+	 * em {@link AnterosIdentityStrategy#ENTITY_ID}: o nome explícito (como o
+	 * de {@code @JsonProperty}) ou o nome do campo traduzido pela
+	 * {@link PropertyNamingStrategy} da configuração.
+	 */
+	public String findIdPropertyName(Annotated entity, Field idField) {
+		if (entity instanceof AnnotatedClass) {
+			for (AnnotatedField field : ((AnnotatedClass) entity).fields()) {
+				if (field.getName().equals(idField.getName()) && field.getDeclaringClass() == idField.getDeclaringClass()) {
+					PropertyName explicit = findNameForSerialization(field);
+					if (explicit != null && explicit.hasSimpleName()) {
+						return explicit.getSimpleName();
+					}
+					break;
+				}
+			}
+		}
+		PropertyNamingStrategy namingStrategy = settings.namingStrategy;
+		return namingStrategy == null ? idField.getName() : namingStrategy.nameForField(null, null, idField.getName());
+	}
+
+	protected boolean isAcyclic(Annotated ann) {
+		Set<Class<?>> acyclicEntities = settings.acyclicEntities;
+		if (acyclicEntities.isEmpty() || !(ann instanceof AnnotatedClass)) {
+			return false;
+		}
+		for (Class<?> type = ann.getRawType(); type != null; type = type.getSuperclass()) {
+			if (acyclicEntities.contains(type)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
 	@Override
 	public Version version() {
 		return ModuleVersion.instance.version();
@@ -54,10 +198,32 @@ public class AnterosAnnotationIntrospector extends JacksonAnnotationIntrospector
 
 	@Override
 	public boolean hasIgnoreMarker(AnnotatedMember m) {
-		if (m.hasAnnotation(Transient.class))
-			return _cfgCheckTransient && m.hasAnnotation(Transient.class);
-		else
-			return _isIgnorable(m);
+		Boolean result = ignoreMarkers.get(m);
+		if (result == null) {
+			if (isTransient(m))
+				result = settings.useTransient;
+			else
+				result = _isIgnorable(m);
+			ignoreMarkers.putIfAbsent(m, result);
+		}
+		return result;
+	}
+
+	/**
+	 * Consulta o {@link AnterosEntityIndex} quando a classe que declara o
+	 * membro está no índice e, se ele não marca o membro, a anotação: um
+	 * índice desatualizado (por exemplo, de uma compilação sem o processador)
+	 * não esconde um {@link Transient} novo.
+	 */
+	protected boolean isTransient(AnnotatedMember m) {
+		Class<?> declaringClass = m.getDeclaringClass();
+		AnterosEntityIndex.Entry entry = declaringClass == null ? null
+				: AnterosEntityIndex.forClass(declaringClass).get(declaringClass);
+		if (entry != null && (m instanceof AnnotatedField || m instanceof AnnotatedMethod)
+				&& entry.isTransient(m.getName())) {
+			return true;
+		}
+		return m.hasAnnotation(Transient.class);
 	}
 
 	@Override
@@ -67,23 +233,128 @@ public class AnterosAnnotationIntrospector extends JacksonAnnotationIntrospector
 	
 	@Override
 	protected TypeResolverBuilder<?> _findTypeResolver(MapperConfig<?> config, Annotated ann, JavaType baseType) {
-		Annotated annotatedAdapter = new AnterosAnnotatedAdapter(sessionFactory, ann);
-		TypeResolverBuilder<?> _findTypeResolver = super._findTypeResolver(config, annotatedAdapter, baseType);
-		return _findTypeResolver;
+		if (ann.getAnnotation(DiscriminatorValue.class) == null) {
+			return super._findTypeResolver(config, ann, baseType);
+		}
+		List<Object> key = Arrays.<Object> asList(ann, baseType, config.getClass());
+		TypeResolverBuilder<?> result = typeResolvers.get(key);
+		if (result == null) {
+			Annotated annotatedAdapter = new AnterosAnnotatedAdapter(subtypeRegistry, ann);
+			result = super._findTypeResolver(config, annotatedAdapter, baseType);
+			if (!(result instanceof AnterosTypeResolverBuilder)) {
+				return result;
+			}
+			((AnterosTypeResolverBuilder) result).subtypeRegistry(subtypeRegistry).freeze();
+			TypeResolverBuilder<?> previous = typeResolvers.putIfAbsent(key, result);
+			if (previous != null) {
+				result = previous;
+			}
+		}
+		return result;
+	}
+
+	@Override
+	protected StdTypeResolverBuilder _constructStdTypeResolverBuilder() {
+		return new AnterosTypeResolverBuilder();
 	}
 
+	@SuppressWarnings("unchecked")
 	@Override
 	public List<NamedType> findSubtypes(Annotated a) {
-		return super.findSubtypes(new AnterosAnnotatedAdapter(sessionFactory, a));
+		if (a.getAnnotation(DiscriminatorValue.class) != null) {
+			return subtypeRegistry.getSubtypes(a.getRawType());
+		}
+		Object result = subtypes.get(a);
+		if (result == null) {
+			List<NamedType> found = super.findSubtypes(a);
+			result = (found == null ? NONE : Collections.unmodifiableList(found));
+			subtypes.putIfAbsent(a, result);
+		}
+		return result == NONE ? null : (List<NamedType>) result;
 	}
 	
 	@Override
 	public ObjectIdInfo findObjectIdInfo(Annotated ann) {
-		return super.findObjectIdInfo(new AnterosAnnotatedAdapter(sessionFactory, ann));
+		Object result = objectIdInfos.get(ann);
+		if (result == null) {
+			ObjectIdInfo found = isAcyclic(ann) ? null
+					: super.findObjectIdInfo(new AnterosAnnotatedAdapter(this, ann));
+			result = (found == null ? NONE : found);
+			objectIdInfos.putIfAbsent(ann, result);
+		}
+		return result == NONE ? null : (ObjectIdInfo) result;
 	}
-	
-	@Override
-	public ObjectIdInfo findObjectReferenceInfo(Annotated ann, ObjectIdInfo objectIdInfo) {
-		return super.findObjectReferenceInfo(new AnterosAnnotatedAdapter(sessionFactory, ann), objectIdInfo);
+
+	/**
+	 * Configuração imutável de um {@link AnterosAnnotationIntrospector}; cada
+	 * alteração gera outra instância.
+	 */
+	public static final class Settings {
+
+		public static final Settings DEFAULT = new Settings(false, AnterosIdentityStrategy.UUID,
+				Collections.<Class<?>>emptySet(), null);
+
+		private final boolean useTransient;
+		private final AnterosIdentityStrategy identityStrategy;
+		private final Set<Class<?>> acyclicEntities;
+		private final PropertyNamingStrategy namingStrategy;
+
+		private Settings(boolean useTransient, AnterosIdentityStrategy identityStrategy, Set<Class<?>> acyclicEntities,
+				PropertyNamingStrategy namingStrategy) {
+			this.useTransient = useTransient;
+			this.identityStrategy = identityStrategy;
+			this.acyclicEntities = acyclicEntities;
+			this.namingStrategy = namingStrategy;
+		}
+
+		public boolean isUseTransient() {
+			return useTransient;
+		}
+
+		public AnterosIdentityStrategy getIdentityStrategy() {
+			return identityStrategy;
+		}
+
+		public Set<Class<?>> getAcyclicEntities() {
+			return acyclicEntities;
+		}
+
+		public PropertyNamingStrategy getNamingStrategy() {
+			return namingStrategy;
+		}
+
+		public Settings withUseTransient(boolean useTransient) {
+			return new Settings(useTransient, identityStrategy, acyclicEntities, namingStrategy);
+		}
+
+		public Settings withIdentityStrategy(AnterosIdentityStrategy identityStrategy) {
+			return new Settings(useTransient, identityStrategy, acyclicEntities, namingStrategy);
+		}
+
+		public Settings withAcyclicEntities(Set<Class<?>> acyclicEntities) {
+			return new Settings(useTransient, identityStrategy, acyclicEntities, namingStrategy);
+		}
+
+		public Settings withNamingStrategy(PropertyNamingStrategy namingStrategy) {
+			return new Settings(useTransient, identityStrategy, acyclicEntities, namingStrategy);
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj) {
+				return true;
+			}
+			if (!(obj instanceof Settings)) {
+				return false;
+			}
+			Settings other = (Settings) obj;
+			return useTransient == other.useTransient && identityStrategy == other.identityStrategy
+					&& acyclicEntities.equals(other.acyclicEntities) && namingStrategy == other.namingStrategy;
+		}
+
+		@Override
+		public int hashCode() {
+			return (useTransient ? 1 : 0) + 31 * identityStrategy.hashCode() + 961 * acyclicEntities.hashCode();
+		}
 	}
 }
@@ -0,0 +1,118 @@
+/*******************************************************************************
+ * Copyright 2012 Anteros Tecnologia
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package br.com.anteros.nosql.persistence.serialization.jackson;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import com.fasterxml.jackson.databind.SerializerProvider;
+
+import br.com.anteros.nosql.persistence.proxy.AnterosPersistentCollection;
+import br.com.anteros.nosql.persistence.proxy.AnterosProxyObject;
+
+/**
+ * Inicializa, antes da escrita, todos os proxies e coleções persistentes
+ * alcançáveis a partir do objeto que será serializado, usando um
+ * {@link AnterosBatchLoader} para fazer uma consulta por grupo (de até
+ * {@code batchSize} elementos) em vez de uma consulta por objeto.
+ * <p>
+ * O processo é feito em rodadas: os objetos carregados numa rodada são
+ * percorridos em busca de novas referências não inicializadas, que são
+ * carregadas na rodada seguinte.
+ */
+public class AnterosBatchInitializer {
+
+	private final AnterosBatchLoader loader;
+	private final int batchSize;
+	private final AnterosBatchLoadingStatistics statistics;
+	private final boolean collectProxies;
+	private final boolean collectCollections;
+	private final AnterosProjection projection;
+
+	public AnterosBatchInitializer(AnterosBatchLoader loader, int batchSize,
+			AnterosBatchLoadingStatistics statistics) {
+		this(loader, batchSize, statistics, true, true);
+	}
+
+	public AnterosBatchInitializer(AnterosBatchLoader loader, int batchSize,
+			AnterosBatchLoadingStatistics statistics, boolean collectProxies, boolean collectCollections) {
+		this(loader, batchSize, statistics, collectProxies, collectCollections, null);
+	}
+
+	/**
+	 * @param projection
+	 *            projeção da escrita; referências fora dela não são carregadas
+	 */
+	public AnterosBatchInitializer(AnterosBatchLoader loader, int batchSize,
+			AnterosBatchLoadingStatistics statistics, boolean collectProxies, boolean collectCollections,
+			AnterosProjection projection) {
+		this.collectProxies = collectProxies;
+		this.loader = loader;
+		this.batchSize = batchSize;
+		this.statistics = statistics;
+		this.collectCollections = collectCollections;
+		this.projection = projection;
+	}
+
+	/**
+	 * @param provider
+	 *            provider da escrita; só as propriedades que ele escreverá
+	 *            são percorridas
+	 */
+	public void initialize(Object root, SerializerProvider provider) throws Exception {
+		AnterosLazyGraphCollector collector = new AnterosLazyGraphCollector(provider, collectProxies,
+				collectCollections, projection).collect(root);
+		while (!collector.isEmpty()) {
+			List<Object> loaded = new ArrayList<Object>();
+			for (Map.Entry<Class<?>, List<AnterosProxyObject>> group : collector.getProxies().entrySet()) {
+				for (List<AnterosProxyObject> batch : partition(group.getValue())) {
+					loader.loadProxies(group.getKey(), batch);
+					statistics.proxyBatch(batch.size());
+					for (AnterosProxyObject proxy : batch) {
+						if (proxy.isInitialized()) {
+							loaded.add(proxy);
+						}
+					}
+				}
+			}
+			for (Map.Entry<Field, List<AnterosPersistentCollection>> group : collector.getCollections().entrySet()) {
+				for (List<AnterosPersistentCollection> batch : partition(group.getValue())) {
+					loader.loadCollections(group.getKey(), batch);
+					statistics.collectionBatch(batch.size());
+					for (AnterosPersistentCollection collection : batch) {
+						if (collection.isInitialized()) {
+							loaded.add(collection);
+						}
+					}
+				}
+			}
+			collector.clearGroups();
+			for (Object lazy : loaded) {
+				collector.collectInitialized(lazy);
+			}
+		}
+	}
+
+	protected <T> List<List<T>> partition(List<T> values) {
+		List<List<T>> result = new ArrayList<List<T>>();
+		for (int start = 0; start < values.size(); start += batchSize) {
+			result.add(values.subList(start, Math.min(start + batchSize, values.size())));
+		}
+		return result;
+	}
+}
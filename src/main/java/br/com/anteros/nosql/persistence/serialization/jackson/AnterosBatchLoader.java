@@ -0,0 +1,47 @@
+/*******************************************************************************
+ * Copyright 2012 Anteros Tecnologia
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package br.com.anteros.nosql.persistence.serialization.jackson;
+
+import java.lang.reflect.Field;
+import java.util.List;
+
+import br.com.anteros.nosql.persistence.proxy.AnterosPersistentCollection;
+import br.com.anteros.nosql.persistence.proxy.AnterosProxyObject;
+
+/**
+ * Carrega em lote proxies e coleções persistentes ainda não inicializados.
+ * <p>
+ * Implementado pela camada de persistência (normalmente com uma consulta por
+ * lista de ids através da sessão do {@link
+ * br.com.anteros.nosql.persistence.session.NoSQLSessionFactory}) e
+ * registrado com
+ * {@link AnterosPersistenceJacksonModule#setBatchLoader(AnterosBatchLoader)}.
+ * Ao retornar, cada proxy/coleção recebido deve estar inicializado, de modo
+ * que a serialização os leia sem novas consultas.
+ */
+public interface AnterosBatchLoader {
+
+	/**
+	 * Inicializa, com uma única consulta, os proxies de uma mesma entidade.
+	 */
+	void loadProxies(Class<?> entityClass, List<AnterosProxyObject> proxies) throws Exception;
+
+	/**
+	 * Inicializa, com uma única consulta, coleções persistentes do mesmo campo
+	 * de entidades diferentes.
+	 */
+	void loadCollections(Field field, List<AnterosPersistentCollection> collections) throws Exception;
+}
@@ -0,0 +1,74 @@
+/*******************************************************************************
+ * Copyright 2012 Anteros Tecnologia
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package br.com.anteros.nosql.persistence.serialization.jackson;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Contadores do carregamento em lote feito durante a serialização com
+ * {@link AnterosPersistenceJacksonModule.Feature#FORCE_LAZY_LOADING}.
+ */
+public class AnterosBatchLoadingStatistics {
+
+	private final LongAdder batches = new LongAdder();
+	private final LongAdder proxiesLoaded = new LongAdder();
+	private final LongAdder collectionsLoaded = new LongAdder();
+
+	void proxyBatch(int size) {
+		batches.increment();
+		proxiesLoaded.add(size);
+	}
+
+	void collectionBatch(int size) {
+		batches.increment();
+		collectionsLoaded.add(size);
+	}
+
+	/**
+	 * Número de consultas em lote executadas.
+	 */
+	public long getBatches() {
+		return batches.sum();
+	}
+
+	public long getProxiesLoaded() {
+		return proxiesLoaded.sum();
+	}
+
+	public long getCollectionsLoaded() {
+		return collectionsLoaded.sum();
+	}
+
+	/**
+	 * Consultas que teriam sido feitas carregando um objeto por vez e que foram
+	 * evitadas pelo carregamento em lote.
+	 */
+	public long getQueriesSaved() {
+		return getProxiesLoaded() + getCollectionsLoaded() - getBatches();
+	}
+
+	public void reset() {
+		batches.reset();
+		proxiesLoaded.reset();
+		collectionsLoaded.reset();
+	}
+
+	@Override
+	public String toString() {
+		return "AnterosBatchLoadingStatistics [batches=" + getBatches() + ", proxiesLoaded=" + getProxiesLoaded()
+				+ ", collectionsLoaded=" + getCollectionsLoaded() + ", queriesSaved=" + getQueriesSaved() + "]";
+	}
+}
@@ -0,0 +1,101 @@
+/*******************************************************************************
+ * Copyright 2012 Anteros Tecnologia
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package br.com.anteros.nosql.persistence.serialization.jackson;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.deser.std.NumberDeserializers;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+
+import br.com.anteros.nosql.persistence.session.NoSQLSessionFactory;
+import de.undercouch.bson4jackson.BsonFactory;
+import de.undercouch.bson4jackson.BsonGenerator;
+import de.undercouch.bson4jackson.deserializers.BsonObjectIdDeserializer;
+import de.undercouch.bson4jackson.serializers.BsonObjectIdSerializer;
+import de.undercouch.bson4jackson.types.Decimal128;
+import de.undercouch.bson4jackson.types.ObjectId;
+
+/**
+ * {@link AnterosNoSQLObjectMapper} que lê e grava BSON diretamente, usando o
+ * par {@link de.undercouch.bson4jackson.BsonGenerator}/
+ * {@link de.undercouch.bson4jackson.BsonParser} no lugar do JSON textual.
+ * <p>
+ * Os serializadores do {@link AnterosPersistenceJacksonModule} não dependem do
+ * formato, portanto proxies e coleções persistentes são tratados exatamente como
+ * no mapper JSON. {@link #writeValueAsBytes(Object)} produz o documento BSON
+ * pronto para o driver, sem passar por uma String JSON intermediária; o
+ * {@link de.undercouch.bson4jackson.BsonGenerator} monta o documento no seu
+ * próprio buffer, porque o tamanho de cada documento precede o conteúdo, e o
+ * copia para o array devolvido. {@link #readValue(byte[], Class)} lê esse
+ * mesmo documento.
+ * <p>
+ * {@link ObjectId} é gravado e lido como o tipo nativo do BSON, {@code byte[]}
+ * como binário e {@link java.math.BigDecimal} como decimal128, sem perda de
+ * precisão nem de escala. Datas continuam gravadas como texto no formato
+ * {@value AnterosNoSQLObjectMapper#DATE_TIME_PATTERN}, para manter
+ * compatibilidade com os documentos gravados pelo caminho JSON.
+ */
+public class AnterosBsonObjectMapper extends AnterosNoSQLObjectMapper {
+
+	private static final long serialVersionUID = 1L;
+
+	public AnterosBsonObjectMapper(NoSQLSessionFactory sessionFactory) {
+		super(sessionFactory, new BsonFactory().enable(BsonGenerator.Feature.WRITE_BIGDECIMALS_AS_DECIMAL128));
+		this.disable(SerializationFeature.INDENT_OUTPUT);
+		SimpleModule bsonTypes = new SimpleModule("anteros-bson-types");
+		bsonTypes.addSerializer(ObjectId.class, new BsonObjectIdSerializer());
+		bsonTypes.addDeserializer(ObjectId.class, new BsonObjectIdDeserializer());
+		bsonTypes.addDeserializer(BigDecimal.class, new Decimal128Deserializer());
+		this.registerModule(bsonTypes);
+	}
+
+	protected AnterosBsonObjectMapper(AnterosBsonObjectMapper src) {
+		super(src);
+	}
+
+	@Override
+	public AnterosBsonObjectMapper copy() {
+		_checkInvalidCopy(AnterosBsonObjectMapper.class);
+		return new AnterosBsonObjectMapper(this);
+	}
+
+	@Override
+	public BsonFactory getFactory() {
+		return (BsonFactory) super.getFactory();
+	}
+
+	/**
+	 * Lê o decimal128 gravado pelo {@link BsonGenerator}; os demais tokens
+	 * seguem o deserializador padrão de {@link BigDecimal}.
+	 */
+	static class Decimal128Deserializer extends NumberDeserializers.BigDecimalDeserializer {
+
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		public BigDecimal deserialize(JsonParser p, DeserializationContext ctxt) throws IOException {
+			if (p.hasToken(JsonToken.VALUE_EMBEDDED_OBJECT) && p.getEmbeddedObject() instanceof Decimal128) {
+				return ((Decimal128) p.getEmbeddedObject()).bigDecimalValue();
+			}
+			return super.deserialize(p, ctxt);
+		}
+	}
+}
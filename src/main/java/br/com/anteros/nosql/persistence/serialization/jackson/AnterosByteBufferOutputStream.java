@@ -0,0 +1,175 @@
+/*******************************************************************************
+ * Copyright 2012 Anteros Tecnologia
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package br.com.anteros.nosql.persistence.serialization.jackson;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * {@link OutputStream} que grava os blocos do gerador diretamente em um
+ * {@link ByteBuffer}, sem {@code byte[]} ou {@code String} intermediários do
+ * tamanho do documento. Há três modos:
+ * <ul>
+ * <li>buffer do chamador: o documento precisa caber no espaço restante,
+ * senão a escrita falha com uma {@link IOException} causada por
+ * {@link BufferOverflowException};</li>
+ * <li>buffer do {@link AnterosByteBufferPool}: quando enche, é trocado por um
+ * maior do pool (a única cópia, que a estimativa de tamanho do pool torna
+ * rara);</li>
+ * <li>canal: o buffer é só um bloco, esvaziado no
+ * {@link WritableByteChannel} sempre que enche e ao final. O canal deve
+ * estar em modo bloqueante e não é fechado.</li>
+ * </ul>
+ */
+public class AnterosByteBufferOutputStream extends OutputStream {
+
+	private final AnterosByteBufferPool pool;
+
+	private final WritableByteChannel channel;
+
+	private ByteBuffer buffer;
+
+	private long count;
+
+	public AnterosByteBufferOutputStream(ByteBuffer target) {
+		this(target, null, null);
+	}
+
+	public AnterosByteBufferOutputStream(AnterosByteBufferPool pool, int initialCapacity) {
+		this(pool.acquire(initialCapacity), pool, null);
+	}
+
+	public AnterosByteBufferOutputStream(WritableByteChannel channel, ByteBuffer chunk) {
+		this(chunk, null, channel);
+	}
+
+	protected AnterosByteBufferOutputStream(ByteBuffer buffer, AnterosByteBufferPool pool,
+			WritableByteChannel channel) {
+		this.buffer = buffer;
+		this.pool = pool;
+		this.channel = channel;
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		if (!buffer.hasRemaining()) {
+			makeRoom(1);
+		}
+		buffer.put((byte) b);
+		count++;
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		if (channel != null) {
+			writeToChannel(b, off, len);
+		} else {
+			if (buffer.remaining() < len) {
+				makeRoom(len);
+			}
+			buffer.put(b, off, len);
+		}
+		count += len;
+	}
+
+	protected void writeToChannel(byte[] b, int off, int len) throws IOException {
+		if (len >= buffer.capacity()) {
+			drain();
+			writeFully(ByteBuffer.wrap(b, off, len));
+			return;
+		}
+		while (len > 0) {
+			if (!buffer.hasRemaining()) {
+				drain();
+			}
+			int n = Math.min(len, buffer.remaining());
+			buffer.put(b, off, n);
+			off += n;
+			len -= n;
+		}
+	}
+
+	protected void makeRoom(int needed) throws IOException {
+		if (channel != null) {
+			drain();
+		} else if (pool != null) {
+			long required = (long) buffer.position() + needed;
+			if (required > Integer.MAX_VALUE - 8) {
+				throw new IOException("Document exceeds the maximum buffer size.", new BufferOverflowException());
+			}
+			ByteBuffer larger = pool.acquire((int) Math.max(required, Math.min((long) buffer.capacity() << 1,
+					Integer.MAX_VALUE - 8)));
+			buffer.flip();
+			larger.put(buffer);
+			pool.release(buffer);
+			buffer = larger;
+		} else {
+			throw new IOException("Document does not fit in the buffer: " + buffer.remaining() + " bytes remaining, "
+					+ needed + " needed.", new BufferOverflowException());
+		}
+	}
+
+	protected void drain() throws IOException {
+		buffer.flip();
+		writeFully(buffer);
+		buffer.clear();
+	}
+
+	protected void writeFully(ByteBuffer source) throws IOException {
+		while (source.hasRemaining()) {
+			channel.write(source);
+		}
+	}
+
+	@Override
+	public void flush() throws IOException {
+		if (channel != null && buffer.position() > 0) {
+			drain();
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		flush();
+	}
+
+	/**
+	 * Buffer com o documento escrito, a partir da posição inicial; no modo do
+	 * pool pode ser diferente do buffer inicial.
+	 */
+	public ByteBuffer getBuffer() {
+		return buffer;
+	}
+
+	/**
+	 * Bytes escritos.
+	 */
+	public long getCount() {
+		return count;
+	}
+
+	/**
+	 * Devolve o buffer ao pool, no modo do pool; usado quando a escrita falha.
+	 */
+	public void release() {
+		if (pool != null) {
+			pool.release(buffer);
+		}
+	}
+}
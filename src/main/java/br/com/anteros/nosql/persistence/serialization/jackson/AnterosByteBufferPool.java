@@ -0,0 +1,258 @@
+/*******************************************************************************
+ * Copyright 2012 Anteros Tecnologia
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package br.com.anteros.nosql.persistence.serialization.jackson;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Pool de {@link ByteBuffer}s para a escrita sem cópias do
+ * {@link AnterosNoSQLObjectMapper}, com buffers de heap ou diretos (fora do
+ * heap).
+ * <p>
+ * Os buffers são agrupados por capacidade, em potências de dois entre
+ * {@link #MIN_CAPACITY} e {@link #MAX_POOLED_CAPACITY}; maiores que isso são
+ * alocados e descartados a cada uso. A capacidade pedida para um documento
+ * vem da média móvel exponencial do tamanho dos documentos já escritos da
+ * mesma classe (veja {@link #capacityFor(Class)}), de modo que o primeiro
+ * buffer normalmente já comporta o documento inteiro.
+ * <p>
+ * O pool retém no máximo {@code maxBuffersPerSize} buffers livres por
+ * capacidade e {@code maxRetainedBytes} no total; um buffer devolvido duas
+ * vezes só é guardado uma.
+ */
+public class AnterosByteBufferPool {
+
+	public static final int MIN_CAPACITY = 512;
+
+	public static final int MAX_POOLED_CAPACITY = 1 << 24;
+
+	public static final int DEFAULT_MAX_BUFFERS_PER_SIZE = 16;
+
+	public static final long DEFAULT_MAX_RETAINED_BYTES = 64L << 20;
+
+	private static final int MIN_SHIFT = Integer.numberOfTrailingZeros(MIN_CAPACITY);
+
+	private static final int SIZE_CLASSES = Integer.numberOfTrailingZeros(MAX_POOLED_CAPACITY) - MIN_SHIFT + 1;
+
+	/**
+	 * Peso de cada novo tamanho na média móvel: 1/8.
+	 */
+	private static final int AVERAGE_SHIFT = 3;
+
+	private final boolean direct;
+
+	private final int maxBuffersPerSize;
+
+	private final long maxRetainedBytes;
+
+	private final AtomicLong retainedBytes = new AtomicLong();
+
+	private final ConcurrentLinkedDeque<ByteBuffer>[] free;
+
+	private final AtomicInteger[] freeCounts;
+
+	private final ConcurrentMap<Class<?>, SizeAverage> averages = new ConcurrentHashMap<Class<?>, SizeAverage>();
+
+	public AnterosByteBufferPool() {
+		this(false);
+	}
+
+	public AnterosByteBufferPool(boolean direct) {
+		this(direct, DEFAULT_MAX_BUFFERS_PER_SIZE);
+	}
+
+	public AnterosByteBufferPool(boolean direct, int maxBuffersPerSize) {
+		this(direct, maxBuffersPerSize, DEFAULT_MAX_RETAINED_BYTES);
+	}
+
+	@SuppressWarnings("unchecked")
+	public AnterosByteBufferPool(boolean direct, int maxBuffersPerSize, long maxRetainedBytes) {
+		if (maxBuffersPerSize < 0) {
+			throw new JacksonSerializationException("Max buffers per size must not be negative.");
+		}
+		if (maxRetainedBytes < 0) {
+			throw new JacksonSerializationException("Max retained bytes must not be negative.");
+		}
+		this.direct = direct;
+		this.maxBuffersPerSize = maxBuffersPerSize;
+		this.maxRetainedBytes = maxRetainedBytes;
+		this.free = new ConcurrentLinkedDeque[SIZE_CLASSES];
+		this.freeCounts = new AtomicInteger[SIZE_CLASSES];
+		for (int i = 0; i < SIZE_CLASSES; i++) {
+			free[i] = new ConcurrentLinkedDeque<ByteBuffer>();
+			freeCounts[i] = new AtomicInteger();
+		}
+	}
+
+	public boolean isDirect() {
+		return direct;
+	}
+
+	/**
+	 * Retorna um buffer limpo com pelo menos a capacidade informada.
+	 */
+	public ByteBuffer acquire(int minCapacity) {
+		int sizeClass = sizeClassOf(minCapacity);
+		if (sizeClass < 0) {
+			return allocate(minCapacity);
+		}
+		ByteBuffer buffer = free[sizeClass].pollFirst();
+		if (buffer == null) {
+			return allocate(MIN_CAPACITY << sizeClass);
+		}
+		freeCounts[sizeClass].decrementAndGet();
+		retainedBytes.addAndGet(-buffer.capacity());
+		buffer.clear();
+		return buffer;
+	}
+
+	/**
+	 * Retorna um buffer com a capacidade estimada para um documento da classe
+	 * informada.
+	 */
+	public ByteBuffer acquireFor(Class<?> type) {
+		return acquire(capacityFor(type));
+	}
+
+	/**
+	 * Devolve um buffer obtido deste pool. Buffers de outro tipo (heap/direto)
+	 * ou capacidade, além dos limites do pool ou que já estão livres nele são
+	 * descartados.
+	 */
+	public void release(ByteBuffer buffer) {
+		if (buffer == null || buffer.isDirect() != direct || buffer.isReadOnly()) {
+			return;
+		}
+		int sizeClass = sizeClassOf(buffer.capacity());
+		if (sizeClass < 0 || (MIN_CAPACITY << sizeClass) != buffer.capacity()) {
+			return;
+		}
+		ConcurrentLinkedDeque<ByteBuffer> buffers = free[sizeClass];
+		synchronized (buffers) {
+			if (freeCounts[sizeClass].get() >= maxBuffersPerSize || contains(buffers, buffer)) {
+				return;
+			}
+			if (retainedBytes.addAndGet(buffer.capacity()) > maxRetainedBytes) {
+				retainedBytes.addAndGet(-buffer.capacity());
+				return;
+			}
+			freeCounts[sizeClass].incrementAndGet();
+			buffers.offerFirst(buffer);
+		}
+	}
+
+	private static boolean contains(ConcurrentLinkedDeque<ByteBuffer> buffers, ByteBuffer buffer) {
+		for (ByteBuffer pooled : buffers) {
+			if (pooled == buffer) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Capacidade sugerida para um documento da classe: a média móvel dos
+	 * tamanhos já registrados com folga de 25%, ou {@link #MIN_CAPACITY} se
+	 * ainda não há registro.
+	 */
+	public int capacityFor(Class<?> type) {
+		SizeAverage average = averages.get(type);
+		if (average == null) {
+			return MIN_CAPACITY;
+		}
+		long estimate = average.value + (average.value >> 2);
+		return (int) Math.max(MIN_CAPACITY, Math.min(estimate, Integer.MAX_VALUE - 8));
+	}
+
+	/**
+	 * Registra o tamanho de um documento escrito, atualizando a média móvel
+	 * da classe. Atualizações concorrentes podem se sobrepor, o que só atrasa
+	 * a convergência da média.
+	 */
+	public void recordSize(Class<?> type, int size) {
+		SizeAverage average = averages.get(type);
+		if (average == null) {
+			average = new SizeAverage(size);
+			SizeAverage previous = averages.putIfAbsent(type, average);
+			if (previous == null) {
+				return;
+			}
+			average = previous;
+		}
+		long current = average.value;
+		average.value = current + ((size - current) >> AVERAGE_SHIFT);
+	}
+
+	/**
+	 * Quantidade de buffers livres no pool.
+	 */
+	public int getFreeCount() {
+		int count = 0;
+		for (AtomicInteger freeCount : freeCounts) {
+			count += freeCount.get();
+		}
+		return count;
+	}
+
+	/**
+	 * Total de bytes dos buffers livres no pool.
+	 */
+	public long getRetainedBytes() {
+		return retainedBytes.get();
+	}
+
+	/**
+	 * Descarta os buffers livres e as médias de tamanho.
+	 */
+	public void clear() {
+		for (int i = 0; i < SIZE_CLASSES; i++) {
+			ByteBuffer buffer;
+			while ((buffer = free[i].pollFirst()) != null) {
+				freeCounts[i].decrementAndGet();
+				retainedBytes.addAndGet(-buffer.capacity());
+			}
+		}
+		averages.clear();
+	}
+
+	protected ByteBuffer allocate(int capacity) {
+		return direct ? ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity);
+	}
+
+	static int sizeClassOf(int capacity) {
+		if (capacity > MAX_POOLED_CAPACITY) {
+			return -1;
+		}
+		if (capacity <= MIN_CAPACITY) {
+			return 0;
+		}
+		return 32 - Integer.numberOfLeadingZeros(capacity - 1) - MIN_SHIFT;
+	}
+
+	static final class SizeAverage {
+
+		volatile long value;
+
+		SizeAverage(long value) {
+			this.value = value;
+		}
+	}
+}
@@ -0,0 +1,40 @@
+/*******************************************************************************
+ * Copyright 2012 Anteros Tecnologia
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package br.com.anteros.nosql.persistence.serialization.jackson;
+
+import java.util.List;
+
+import br.com.anteros.nosql.persistence.proxy.AnterosPersistentCollection;
+
+/**
+ * Lê, página a página, os elementos de uma coleção persistente não
+ * inicializada, sem carregá-la por inteiro.
+ * <p>
+ * Usado quando {@link AnterosPersistenceJacksonModule.Feature#STREAM_LAZY_COLLECTIONS}
+ * está habilitada e registrado com
+ * {@link AnterosPersistenceJacksonModule#setCollectionPageLoader(AnterosCollectionPageLoader)}.
+ * Cada página é escrita e descartada antes da leitura da próxima, e a coleção
+ * permanece não inicializada.
+ */
+public interface AnterosCollectionPageLoader {
+
+	/**
+	 * Retorna até {@code maxResults} elementos da coleção a partir da posição
+	 * {@code firstResult}. Uma página menor que {@code maxResults} (ou vazia)
+	 * indica o fim da coleção.
+	 */
+	List<?> loadPage(AnterosPersistentCollection collection, int firstResult, int maxResults) throws Exception;
+}
@@ -0,0 +1,254 @@
+/*******************************************************************************
+ * Copyright 2012 Anteros Tecnologia
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package br.com.anteros.nosql.persistence.serialization.jackson;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.util.InternCache;
+import com.fasterxml.jackson.databind.BeanProperty;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.JsonDeserializer;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.deser.std.CollectionDeserializer;
+import com.fasterxml.jackson.databind.deser.std.DelegatingDeserializer;
+import com.fasterxml.jackson.databind.jsontype.TypeDeserializer;
+
+/**
+ * Deserializador das coleções de beans que, além dos arrays, lê o formato de
+ * {@link AnterosPersistenceJacksonModule.Feature#COLUMNAR_COLLECTIONS}. Cada
+ * linha é entregue ao deserializador da classe das linhas como um objeto (veja
+ * {@link AnterosColumnarRowParser}); elementos escritos como objetos ou como
+ * referências por object id são lidos pelo deserializador dos elementos.
+ */
+public class AnterosColumnarCollectionDeserializer extends DelegatingDeserializer {
+	private static final long serialVersionUID = 1L;
+
+	protected final BeanProperty _property;
+
+	protected final TypeDeserializer _typeDeserializer;
+
+	private final transient ConcurrentMap<String, JsonDeserializer<Object>> _rowDeserializers = new ConcurrentHashMap<String, JsonDeserializer<Object>>();
+
+	/**
+	 * Colunas da última coleção lida, com os nomes internalizados, como os das
+	 * propriedades dos deserializadores; coleções com as mesmas colunas
+	 * reutilizam o array.
+	 */
+	private transient volatile String[] _lastColumns;
+
+	public AnterosColumnarCollectionDeserializer(JsonDeserializer<?> delegatee) {
+		this(delegatee, null, null);
+	}
+
+	protected AnterosColumnarCollectionDeserializer(JsonDeserializer<?> delegatee, BeanProperty property,
+			TypeDeserializer typeDeserializer) {
+		super(delegatee);
+		_property = property;
+		_typeDeserializer = typeDeserializer;
+	}
+
+	@Override
+	protected JsonDeserializer<?> newDelegatingInstance(JsonDeserializer<?> newDelegatee) {
+		return new AnterosColumnarCollectionDeserializer(newDelegatee, _property, _typeDeserializer);
+	}
+
+	@Override
+	public JsonDeserializer<?> createContextual(DeserializationContext ctxt, BeanProperty property)
+			throws JsonMappingException {
+		JsonDeserializer<?> delegatee = ctxt.handleSecondaryContextualization(_delegatee, property,
+				ctxt.constructType(_delegatee.handledType()));
+		TypeDeserializer typeDeserializer = null;
+		if (delegatee instanceof CollectionDeserializer) {
+			typeDeserializer = ctxt.getFactory().findTypeDeserializer(ctxt.getConfig(),
+					((CollectionDeserializer) delegatee).getContentType());
+			if (typeDeserializer != null) {
+				typeDeserializer = typeDeserializer.forProperty(property);
+			}
+		}
+		return new AnterosColumnarCollectionDeserializer(delegatee, property, typeDeserializer);
+	}
+
+	@Override
+	public Object deserialize(JsonParser p, DeserializationContext ctxt) throws IOException {
+		if (p.hasToken(JsonToken.START_OBJECT) && _delegatee instanceof CollectionDeserializer
+				&& ((CollectionDeserializer) _delegatee).getValueInstantiator().canCreateUsingDefault()) {
+			String name = p.nextFieldName();
+			if (isColumnarField(name)) {
+				@SuppressWarnings("unchecked")
+				Collection<Object> result = (Collection<Object>) ((CollectionDeserializer) _delegatee)
+						.getValueInstantiator().createUsingDefault(ctxt);
+				return deserializeColumnar(p, ctxt, name, result);
+			}
+		}
+		return _delegatee.deserialize(p, ctxt);
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public Object deserialize(JsonParser p, DeserializationContext ctxt, Object intoValue) throws IOException {
+		if (p.hasToken(JsonToken.START_OBJECT) && intoValue instanceof Collection
+				&& _delegatee instanceof CollectionDeserializer) {
+			String name = p.nextFieldName();
+			if (isColumnarField(name)) {
+				return deserializeColumnar(p, ctxt, name, (Collection<Object>) intoValue);
+			}
+		}
+		return ((JsonDeserializer<Object>) _delegatee).deserialize(p, ctxt, intoValue);
+	}
+
+	protected static boolean isColumnarField(String name) {
+		return AnterosPersistenceJacksonModule.COLUMNAR_COLUMNS_FIELD.equals(name)
+				|| AnterosPersistenceJacksonModule.COLUMNAR_TYPE_FIELD.equals(name)
+				|| AnterosPersistenceJacksonModule.COLUMNAR_NULLS_FIELD.equals(name)
+				|| AnterosPersistenceJacksonModule.COLUMNAR_ROWS_FIELD.equals(name);
+	}
+
+	/**
+	 * Lê os campos do objeto colunar, a partir do nome corrente, adicionando os
+	 * elementos à coleção.
+	 */
+	protected Collection<Object> deserializeColumnar(JsonParser p, DeserializationContext ctxt, String name,
+			Collection<Object> result) throws IOException {
+		String typeId = null;
+		String[] columns = null;
+		List<String> nullColumns = null;
+		for (; name != null; name = p.nextFieldName()) {
+			p.nextToken();
+			if (AnterosPersistenceJacksonModule.COLUMNAR_TYPE_FIELD.equals(name)) {
+				typeId = p.getValueAsString();
+			} else if (AnterosPersistenceJacksonModule.COLUMNAR_COLUMNS_FIELD.equals(name)) {
+				columns = readColumns(p, ctxt);
+			} else if (AnterosPersistenceJacksonModule.COLUMNAR_NULLS_FIELD.equals(name)) {
+				nullColumns = readNames(p, ctxt);
+			} else if (AnterosPersistenceJacksonModule.COLUMNAR_ROWS_FIELD.equals(name)) {
+				readRows(p, ctxt, columns, explicitNullsOf(columns, nullColumns), typeId, result);
+			} else {
+				p.skipChildren();
+			}
+		}
+		return result;
+	}
+
+	protected String[] readColumns(JsonParser p, DeserializationContext ctxt) throws IOException {
+		List<String> names = readNames(p, ctxt);
+		String[] columns = names.toArray(new String[names.size()]);
+		String[] last = _lastColumns;
+		if (last != null && Arrays.equals(last, columns)) {
+			return last;
+		}
+		for (int i = 0; i < columns.length; i++) {
+			columns[i] = InternCache.instance.intern(columns[i]);
+		}
+		_lastColumns = columns;
+		return columns;
+	}
+
+	protected List<String> readNames(JsonParser p, DeserializationContext ctxt) throws IOException {
+		if (!p.isExpectedStartArrayToken()) {
+			return ctxt.reportInputMismatch(this, "Columns of a columnar collection must be an array, not %s.",
+					p.getCurrentToken());
+		}
+		List<String> names = new ArrayList<String>();
+		while (p.nextToken() != JsonToken.END_ARRAY) {
+			names.add(p.getText());
+		}
+		return names;
+	}
+
+	/**
+	 * Marca as colunas em que o null é um valor (veja
+	 * {@link AnterosPersistenceJacksonModule#COLUMNAR_NULLS_FIELD}); null se
+	 * nenhuma.
+	 */
+	protected boolean[] explicitNullsOf(String[] columns, List<String> nullColumns) {
+		if (columns == null || nullColumns == null || nullColumns.isEmpty()) {
+			return null;
+		}
+		boolean[] explicitNulls = new boolean[columns.length];
+		for (int i = 0; i < columns.length; i++) {
+			explicitNulls[i] = nullColumns.contains(columns[i]);
+		}
+		return explicitNulls;
+	}
+
+	protected void readRows(JsonParser p, DeserializationContext ctxt, String[] columns, boolean[] explicitNulls,
+			String typeId, Collection<Object> result) throws IOException {
+		if (!p.isExpectedStartArrayToken()) {
+			ctxt.reportInputMismatch(this, "Rows of a columnar collection must be an array, not %s.",
+					p.getCurrentToken());
+		}
+		@SuppressWarnings("unchecked")
+		JsonDeserializer<Object> elementDeserializer = (JsonDeserializer<Object>) ((CollectionDeserializer) _delegatee)
+				.getContentDeserializer();
+		JsonDeserializer<Object> rowDeserializer = null;
+		AnterosColumnarRowParser row = null;
+		for (JsonToken t = p.nextToken(); t != JsonToken.END_ARRAY; t = p.nextToken()) {
+			if (t == JsonToken.VALUE_NULL) {
+				result.add(elementDeserializer.getNullValue(ctxt));
+			} else if (t == JsonToken.START_ARRAY) {
+				if (row == null) {
+					if (columns == null) {
+						ctxt.reportInputMismatch(this, "Columnar collection has rows before its columns.");
+					}
+					rowDeserializer = findRowDeserializer(ctxt, typeId, elementDeserializer);
+					row = new AnterosColumnarRowParser(p, columns, explicitNulls);
+				}
+				result.add(rowDeserializer.deserialize(row.reset(), ctxt));
+			} else if (_typeDeserializer == null) {
+				result.add(elementDeserializer.deserialize(p, ctxt));
+			} else {
+				result.add(elementDeserializer.deserializeWithType(p, ctxt, _typeDeserializer));
+			}
+		}
+	}
+
+	/**
+	 * Deserializador da classe das linhas: a do discriminador, resolvido pelo
+	 * tipo declarado dos elementos como na escrita, senão o dos elementos. Sem
+	 * informação de tipo no tipo declarado a escrita não grava discriminador,
+	 * pois as linhas só podem ser da classe declarada.
+	 */
+	protected JsonDeserializer<Object> findRowDeserializer(DeserializationContext ctxt, String typeId,
+			JsonDeserializer<Object> elementDeserializer) throws IOException {
+		if (typeId == null) {
+			return elementDeserializer;
+		}
+		if (_typeDeserializer == null) {
+			return ctxt.reportInputMismatch(this,
+					"Columnar collection has type id '%s' but its element type %s has no type information.", typeId,
+					((CollectionDeserializer) _delegatee).getContentType());
+		}
+		JsonDeserializer<Object> deserializer = _rowDeserializers.get(typeId);
+		if (deserializer == null) {
+			JavaType type = _typeDeserializer.getTypeIdResolver().typeFromId(ctxt, typeId);
+			if (type == null) {
+				return ctxt.reportInputMismatch(this, "Unknown type id '%s' of columnar collection.", typeId);
+			}
+			deserializer = ctxt.findContextualValueDeserializer(type, _property);
+			_rowDeserializers.putIfAbsent(typeId, deserializer);
+		}
+		return deserializer;
+	}
+}
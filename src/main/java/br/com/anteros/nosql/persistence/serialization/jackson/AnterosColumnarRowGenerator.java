@@ -0,0 +1,162 @@
+/*******************************************************************************
+ * Copyright 2012 Anteros Tecnologia
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package br.com.anteros.nosql.persistence.serialization.jackson;
+
+import java.io.IOException;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.SerializableString;
+import com.fasterxml.jackson.core.util.JsonGeneratorDelegate;
+
+/**
+ * Gerador usado na escrita de uma linha do formato de
+ * {@link AnterosPersistenceJacksonModule.Feature#COLUMNAR_COLLECTIONS}: o
+ * objeto escrito pelo serializador do bean vira um array com os valores na
+ * ordem das colunas. Propriedades omitidas pelo serializador (por exemplo
+ * nulas com {@link com.fasterxml.jackson.annotation.JsonInclude.Include#NON_NULL})
+ * são escritas como null, exceto no fim da linha, onde são descartadas; isso
+ * só é permitido nas colunas sem nulos explícitos (veja
+ * {@link AnterosPersistenceJacksonModule#COLUMNAR_NULLS_FIELD}), nas quais o
+ * null não é um valor. Valores escalares (referências por object id) e
+ * objetos aninhados passam inalterados.
+ */
+final class AnterosColumnarRowGenerator extends JsonGeneratorDelegate {
+
+	private final String[] columns;
+	/**
+	 * Colunas em que o null é um valor escrito pelo serializador e que,
+	 * portanto, não podem ser omitidas.
+	 */
+	private final boolean[] explicitNulls;
+	private int depth;
+	private int column;
+
+	AnterosColumnarRowGenerator(JsonGenerator delegate, String[] columns, boolean[] explicitNulls) {
+		super(delegate, true);
+		this.columns = columns;
+		this.explicitNulls = explicitNulls;
+	}
+
+	@Override
+	public void writeStartObject() throws IOException {
+		if (depth++ == 0) {
+			column = 0;
+			delegate.writeStartArray();
+		} else {
+			delegate.writeStartObject();
+		}
+	}
+
+	@Override
+	public void writeStartObject(Object forValue) throws IOException {
+		if (depth++ == 0) {
+			column = 0;
+			delegate.writeStartArray();
+			delegate.setCurrentValue(forValue);
+		} else {
+			delegate.writeStartObject(forValue);
+		}
+	}
+
+	@Override
+	public void writeEndObject() throws IOException {
+		if (--depth == 0) {
+			for (int i = column; i < columns.length; i++) {
+				checkOmissible(i);
+			}
+			delegate.writeEndArray();
+		} else {
+			delegate.writeEndObject();
+		}
+	}
+
+	@Override
+	public void writeStartArray() throws IOException {
+		depth++;
+		delegate.writeStartArray();
+	}
+
+	@Override
+	public void writeStartArray(int size) throws IOException {
+		depth++;
+		delegate.writeStartArray(size);
+	}
+
+	@Override
+	public void writeEndArray() throws IOException {
+		depth--;
+		delegate.writeEndArray();
+	}
+
+	@Override
+	public void writeFieldName(String name) throws IOException {
+		if (depth == 1) {
+			moveTo(name);
+		} else {
+			delegate.writeFieldName(name);
+		}
+	}
+
+	@Override
+	public void writeFieldName(SerializableString name) throws IOException {
+		if (depth == 1) {
+			moveTo(name.getValue());
+		} else {
+			delegate.writeFieldName(name);
+		}
+	}
+
+	@Override
+	public void writeFieldId(long id) throws IOException {
+		if (depth == 1) {
+			moveTo(Long.toString(id));
+		} else {
+			delegate.writeFieldId(id);
+		}
+	}
+
+	@Override
+	public void writeOmittedField(String name) throws IOException {
+		if (depth != 1) {
+			delegate.writeOmittedField(name);
+		}
+	}
+
+	private void checkOmissible(int column) {
+		if (explicitNulls[column]) {
+			throw new JacksonSerializationException("Property '" + columns[column]
+					+ "' was omitted from a row of the columnar collection, but its nulls are values.");
+		}
+	}
+
+	/**
+	 * Avança até a coluna da propriedade, preenchendo as colunas puladas com
+	 * null.
+	 */
+	private void moveTo(String name) throws IOException {
+		for (int i = column; i < columns.length; i++) {
+			if (columns[i].equals(name)) {
+				for (; column < i; column++) {
+					checkOmissible(column);
+					delegate.writeNull();
+				}
+				column = i + 1;
+				return;
+			}
+		}
+		throw new JacksonSerializationException("Property '" + name + "' is not a column of the columnar collection.");
+	}
+}
@@ -0,0 +1,235 @@
+/*******************************************************************************
+ * Copyright 2012 Anteros Tecnologia
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package br.com.anteros.nosql.persistence.serialization.jackson;
+
+import java.io.IOException;
+
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.util.JsonParserDelegate;
+
+/**
+ * Parser que apresenta uma linha do formato de
+ * {@link AnterosPersistenceJacksonModule.Feature#COLUMNAR_COLLECTIONS} como
+ * um objeto, gerando o nome da coluna antes de cada valor, para que o
+ * deserializador do bean (com object ids, creators e entidades gerenciadas) a
+ * leia sem cópia. Um null é entregue como o valor da coluna quando ela tem
+ * nulos explícitos (veja {@link AnterosPersistenceJacksonModule#COLUMNAR_NULLS_FIELD});
+ * nas demais colunas ele marca a propriedade omitida na escrita e é pulado.
+ * Deve ser criado com o parser no início da linha e, ao final, deixa-o no fim
+ * do array da linha.
+ */
+final class AnterosColumnarRowParser extends JsonParserDelegate {
+
+	private final String[] columns;
+	/**
+	 * Colunas em que o null é um valor; null se nenhuma.
+	 */
+	private final boolean[] explicitNulls;
+	/*
+	 * Token gerado (início e fim do objeto, nome da coluna); null quando o
+	 * token corrente é o do parser.
+	 */
+	private JsonToken token;
+	private String name;
+	private char[] nameChars;
+	private int column;
+	private int nested;
+	private boolean atColumnValue;
+
+	AnterosColumnarRowParser(JsonParser delegate, String[] columns, boolean[] explicitNulls) {
+		super(delegate);
+		this.columns = columns;
+		this.explicitNulls = explicitNulls;
+	}
+
+	/**
+	 * Prepara o parser para a linha que começa no token corrente.
+	 */
+	AnterosColumnarRowParser reset() {
+		token = JsonToken.START_OBJECT;
+		name = null;
+		nameChars = null;
+		column = 0;
+		nested = 0;
+		atColumnValue = false;
+		return this;
+	}
+
+	@Override
+	public JsonToken nextToken() throws IOException {
+		atColumnValue = false;
+		if (token == JsonToken.FIELD_NAME) {
+			token = null;
+			atColumnValue = true;
+			JsonToken t = delegate.currentToken();
+			if (t.isStructStart()) {
+				nested++;
+			}
+			return t;
+		}
+		if (token == JsonToken.END_OBJECT) {
+			return null;
+		}
+		if (nested > 0) {
+			JsonToken t = delegate.nextToken();
+			if (t.isStructStart()) {
+				nested++;
+			} else if (t.isStructEnd()) {
+				nested--;
+			}
+			return t;
+		}
+		while (true) {
+			JsonToken t = delegate.nextToken();
+			if (t == JsonToken.END_ARRAY) {
+				name = null;
+				nameChars = null;
+				token = JsonToken.END_OBJECT;
+				return token;
+			}
+			if (column == columns.length) {
+				throw new JsonParseException(this, "Columnar row has more values than the " + columns.length
+						+ " columns of the collection.");
+			}
+			int next = column++;
+			if (t != JsonToken.VALUE_NULL || (explicitNulls != null && explicitNulls[next])) {
+				name = columns[next];
+				nameChars = null;
+				token = JsonToken.FIELD_NAME;
+				return token;
+			}
+		}
+	}
+
+	@Override
+	public JsonParser skipChildren() throws IOException {
+		if (token == JsonToken.START_OBJECT) {
+			delegate.skipChildren();
+			name = null;
+			nameChars = null;
+			token = JsonToken.END_OBJECT;
+		} else if (token == null && delegate.currentToken().isStructStart()) {
+			delegate.skipChildren();
+			nested--;
+		}
+		return this;
+	}
+
+	@Override
+	public JsonToken currentToken() {
+		return token == null ? delegate.currentToken() : token;
+	}
+
+	@Override
+	public JsonToken getCurrentToken() {
+		return currentToken();
+	}
+
+	@Override
+	public int currentTokenId() {
+		return token == null ? delegate.currentTokenId() : token.id();
+	}
+
+	@Override
+	public int getCurrentTokenId() {
+		return currentTokenId();
+	}
+
+	@Override
+	public boolean hasCurrentToken() {
+		return token != null || delegate.hasCurrentToken();
+	}
+
+	@Override
+	public boolean hasTokenId(int id) {
+		return token == null ? delegate.hasTokenId(id) : token.id() == id;
+	}
+
+	@Override
+	public boolean hasToken(JsonToken t) {
+		return token == null ? delegate.hasToken(t) : token == t;
+	}
+
+	@Override
+	public boolean isExpectedStartArrayToken() {
+		return token == null && delegate.isExpectedStartArrayToken();
+	}
+
+	@Override
+	public boolean isExpectedStartObjectToken() {
+		return token == null ? delegate.isExpectedStartObjectToken() : token == JsonToken.START_OBJECT;
+	}
+
+	@Override
+	public String getCurrentName() throws IOException {
+		if (token == JsonToken.FIELD_NAME || atColumnValue) {
+			return name;
+		}
+		return token == null ? delegate.getCurrentName() : null;
+	}
+
+	@Override
+	public String getText() throws IOException {
+		if (token == null) {
+			return delegate.getText();
+		}
+		return token == JsonToken.FIELD_NAME ? name : token.asString();
+	}
+
+	@Override
+	public boolean hasTextCharacters() {
+		return token == null ? delegate.hasTextCharacters() : false;
+	}
+
+	@Override
+	public char[] getTextCharacters() throws IOException {
+		if (token == null) {
+			return delegate.getTextCharacters();
+		}
+		if (token != JsonToken.FIELD_NAME) {
+			return token.asCharArray();
+		}
+		if (nameChars == null) {
+			nameChars = name.toCharArray();
+		}
+		return nameChars;
+	}
+
+	@Override
+	public int getTextLength() throws IOException {
+		return token == null ? delegate.getTextLength() : getText().length();
+	}
+
+	@Override
+	public int getTextOffset() throws IOException {
+		return token == null ? delegate.getTextOffset() : 0;
+	}
+
+	@Override
+	public String getValueAsString() throws IOException {
+		return getValueAsString(null);
+	}
+
+	@Override
+	public String getValueAsString(String defaultValue) throws IOException {
+		if (token == null) {
+			return delegate.getValueAsString(defaultValue);
+		}
+		return token == JsonToken.FIELD_NAME ? name : defaultValue;
+	}
+}
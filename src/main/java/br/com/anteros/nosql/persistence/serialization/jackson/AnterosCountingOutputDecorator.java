@@ -0,0 +1,134 @@
+/*******************************************************************************
+ * Copyright 2012 Anteros Tecnologia
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package br.com.anteros.nosql.persistence.serialization.jackson;
+
+import java.io.FilterOutputStream;
+import java.io.FilterWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.io.IOContext;
+import com.fasterxml.jackson.core.io.OutputDecorator;
+
+/**
+ * Decora a saída dos geradores para contar os bytes (ou caracteres) escritos,
+ * usado pelas métricas de serialização. Mantém o decorador já configurado na
+ * fábrica, se houver.
+ */
+public class AnterosCountingOutputDecorator extends OutputDecorator {
+
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Saída que conta o que foi escrito nela.
+	 */
+	public interface Counter {
+		long getCount();
+	}
+
+	protected final OutputDecorator _delegate;
+
+	public AnterosCountingOutputDecorator(OutputDecorator delegate) {
+		_delegate = delegate;
+	}
+
+	public OutputDecorator getDelegate() {
+		return _delegate;
+	}
+
+	@Override
+	public OutputStream decorate(IOContext ctxt, OutputStream out) throws IOException {
+		return new CountingOutputStream(_delegate == null ? out : _delegate.decorate(ctxt, out));
+	}
+
+	@Override
+	public Writer decorate(IOContext ctxt, Writer w) throws IOException {
+		return new CountingWriter(_delegate == null ? w : _delegate.decorate(ctxt, w));
+	}
+
+	/**
+	 * Retorna quanto o gerador já produziu: o contado na saída mais o que ainda
+	 * está no buffer do gerador; -1 se a saída não é contada ou se o gerador
+	 * não informa o tamanho do seu buffer (como o BSON, que só escreve o
+	 * documento ao final).
+	 */
+	public static long countOf(JsonGenerator gen) {
+		Object target = gen.getOutputTarget();
+		int buffered = gen.getOutputBuffered();
+		if (!(target instanceof Counter) || buffered < 0) {
+			return -1;
+		}
+		return ((Counter) target).getCount() + buffered;
+	}
+
+	static class CountingOutputStream extends FilterOutputStream implements Counter {
+		private long count;
+
+		CountingOutputStream(OutputStream out) {
+			super(out);
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			out.write(b);
+			count++;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			out.write(b, off, len);
+			count += len;
+		}
+
+		@Override
+		public long getCount() {
+			return count;
+		}
+	}
+
+	static class CountingWriter extends FilterWriter implements Counter {
+		private long count;
+
+		CountingWriter(Writer out) {
+			super(out);
+		}
+
+		@Override
+		public void write(int c) throws IOException {
+			out.write(c);
+			count++;
+		}
+
+		@Override
+		public void write(char[] cbuf, int off, int len) throws IOException {
+			out.write(cbuf, off, len);
+			count += len;
+		}
+
+		@Override
+		public void write(String str, int off, int len) throws IOException {
+			out.write(str, off, len);
+			count += len;
+		}
+
+		@Override
+		public long getCount() {
+			return count;
+		}
+	}
+}
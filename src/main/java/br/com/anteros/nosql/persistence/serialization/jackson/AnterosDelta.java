@@ -0,0 +1,186 @@
+/*******************************************************************************
+ * Copyright 2012 Anteros Tecnologia
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package br.com.anteros.nosql.persistence.serialization.jackson;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * Alterações de uma entidade em relação a um {@link AnterosSnapshot}, no
+ * formato de um documento de atualização:
+ * <code>{"$set": {"caminho.da.propriedade": valor}, "$unset": {"caminho": ""}}</code>.
+ * <p>
+ * Objetos embutidos são comparados propriedade a propriedade; arrays e
+ * demais valores são substituídos inteiros. Propriedades com proxies ou
+ * coleções persistentes não carregados não entram no documento e mantêm o
+ * estado do snapshot anterior; os que não estavam carregados no snapshot e
+ * agora estão são escritos inteiros.
+ * <p>
+ * Num array com elementos não carregados, cada um deles é considerado igual
+ * ao da mesma posição no snapshot; se alguma outra posição mudou (ou o
+ * tamanho), o array é escrito inteiro com os proxies não carregados como
+ * referências ao seu id. Só quando há uma coleção persistente não carregada
+ * dentro do array, que não tem referência, ele mantém o estado anterior.
+ */
+public final class AnterosDelta {
+
+	public static final String SET = "$set";
+
+	public static final String UNSET = "$unset";
+
+	private final Map<String, JsonNode> sets = new LinkedHashMap<String, JsonNode>();
+
+	private final List<String> unsets = new ArrayList<String>();
+
+	private AnterosSnapshot snapshot;
+
+	private AnterosDelta() {
+	}
+
+	private ObjectMapper mapper;
+
+	static AnterosDelta between(ObjectNode current, AnterosSnapshot previous, ObjectMapper mapper) {
+		AnterosDelta delta = new AnterosDelta();
+		delta.mapper = mapper;
+		delta.snapshot = delta.compare(current, previous == null ? AnterosSnapshot.EMPTY : previous, null);
+		delta.mapper = null;
+		return delta;
+	}
+
+	private AnterosSnapshot compare(ObjectNode current, AnterosSnapshot previous, String prefix) {
+		Map<String, Object> fields = new HashMap<String, Object>(AnterosSnapshot.capacityFor(current.size()));
+		Iterator<Map.Entry<String, JsonNode>> it = current.fields();
+		while (it.hasNext()) {
+			Map.Entry<String, JsonNode> field = it.next();
+			String name = field.getKey();
+			String path = prefix == null ? name : prefix + '.' + name;
+			JsonNode value = field.getValue();
+			Object old = previous.get(name);
+			if (value.isObject()) {
+				if (old instanceof AnterosSnapshot) {
+					fields.put(name, compare((ObjectNode) value, (AnterosSnapshot) old, path));
+				} else if (AnterosSnapshot.containsNotLoaded(value)) {
+					fields.put(name, compare((ObjectNode) value, AnterosSnapshot.EMPTY, path));
+				} else {
+					sets.put(path, value);
+					fields.put(name, AnterosSnapshot.of((ObjectNode) value, mapper));
+				}
+			} else if (AnterosSnapshot.isNotLoaded(value)) {
+				fields.put(name, old == null ? AnterosSnapshot.NOT_LOADED : old);
+			} else if (value.isArray() && AnterosSnapshot.containsNotLoaded(value)) {
+				fields.put(name, compareArray((ArrayNode) value, old, path));
+			} else {
+				Long hash = AnterosSnapshot.hash(value, mapper);
+				if (!hash.equals(old)) {
+					sets.put(path, value);
+				}
+				fields.put(name, hash);
+			}
+		}
+		for (String name : previous.names()) {
+			if (!fields.containsKey(name)) {
+				unsets.add(prefix == null ? name : prefix + '.' + name);
+			}
+		}
+		return new AnterosSnapshot(fields);
+	}
+
+	private Object compareArray(ArrayNode value, Object old, String path) {
+		Object current = AnterosSnapshot.valueOf(value, mapper);
+		if (AnterosSnapshot.matches(current, old)) {
+			return AnterosSnapshot.merge(current, old);
+		}
+		JsonNode written = AnterosSnapshot.withReferences(value);
+		if (written == null) {
+			return old == null ? current : old;
+		}
+		sets.put(path, written);
+		return current;
+	}
+
+	public boolean isEmpty() {
+		return sets.isEmpty() && unsets.isEmpty();
+	}
+
+	/**
+	 * Caminhos alterados ou incluídos, na ordem em que foram escritos.
+	 */
+	public Set<String> getSetPaths() {
+		return Collections.unmodifiableSet(sets.keySet());
+	}
+
+	/**
+	 * Caminhos que deixaram de existir (ou passaram a nulo, com a inclusão
+	 * NON_NULL do mapper).
+	 */
+	public List<String> getUnsetPaths() {
+		return Collections.unmodifiableList(unsets);
+	}
+
+	/**
+	 * Novo valor de um caminho de {@link #getSetPaths()}.
+	 */
+	public JsonNode getValue(String path) {
+		return sets.get(path);
+	}
+
+	/**
+	 * Snapshot do estado atual, a ser usado na próxima comparação depois que a
+	 * atualização for gravada.
+	 */
+	public AnterosSnapshot getSnapshot() {
+		return snapshot;
+	}
+
+	/**
+	 * Monta o documento de atualização; {@code $set} e {@code $unset} só
+	 * aparecem quando têm caminhos. Pode ser escrito por qualquer mapper,
+	 * inclusive o {@link AnterosBsonObjectMapper}.
+	 */
+	public ObjectNode toUpdateDocument() {
+		ObjectNode document = JsonNodeFactory.instance.objectNode();
+		if (!sets.isEmpty()) {
+			ObjectNode set = document.putObject(SET);
+			for (Map.Entry<String, JsonNode> entry : sets.entrySet()) {
+				set.set(entry.getKey(), entry.getValue());
+			}
+		}
+		if (!unsets.isEmpty()) {
+			ObjectNode unset = document.putObject(UNSET);
+			for (String path : unsets) {
+				unset.put(path, "");
+			}
+		}
+		return document;
+	}
+
+	@Override
+	public String toString() {
+		return toUpdateDocument().toString();
+	}
+}
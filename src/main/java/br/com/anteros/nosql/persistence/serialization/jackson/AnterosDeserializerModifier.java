@@ -0,0 +1,132 @@
+/*******************************************************************************
+ * Copyright 2012 Anteros Tecnologia
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package br.com.anteros.nosql.persistence.serialization.jackson;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+
+import com.fasterxml.jackson.databind.BeanDescription;
+import com.fasterxml.jackson.databind.DeserializationConfig;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.JsonDeserializer;
+import com.fasterxml.jackson.databind.PropertyName;
+import com.fasterxml.jackson.databind.deser.BeanDeserializerBase;
+import com.fasterxml.jackson.databind.deser.BeanDeserializerBuilder;
+import com.fasterxml.jackson.databind.deser.BeanDeserializerModifier;
+import com.fasterxml.jackson.databind.deser.SettableBeanProperty;
+import com.fasterxml.jackson.databind.deser.std.CollectionDeserializer;
+import com.fasterxml.jackson.databind.introspect.AnnotatedField;
+import com.fasterxml.jackson.databind.introspect.AnnotatedMember;
+import com.fasterxml.jackson.databind.introspect.BeanPropertyDefinition;
+import com.fasterxml.jackson.databind.type.CollectionType;
+
+import br.com.anteros.nosql.persistence.metadata.annotations.Entity;
+import br.com.anteros.nosql.persistence.metadata.annotations.Id;
+
+/**
+ * Prepara os deserializadores das entidades com {@link Id} para as leituras
+ * com {@link AnterosManagedEntityResolver}: envolve o deserializador com o
+ * {@link AnterosManagedEntityDeserializer} e as propriedades de coleção com a
+ * {@link AnterosManagedCollectionProperty}. Isso só é feito quando a
+ * configuração tem {@link AnterosPersistenceJacksonModule#MANAGED_READS_ATTRIBUTE}
+ * e o deserializador da entidade tem a propriedade do id. Os
+ * deserializadores das coleções de beans são envolvidos com o
+ * {@link AnterosColumnarCollectionDeserializer}.
+ */
+public class AnterosDeserializerModifier extends BeanDeserializerModifier {
+
+	@Override
+	public BeanDeserializerBuilder updateBuilder(DeserializationConfig config, BeanDescription beanDesc,
+			BeanDeserializerBuilder builder) {
+		String idName = managedReads(config) ? idNameOf(beanDesc) : null;
+		if (idName == null || builder.findProperty(PropertyName.construct(idName)) == null) {
+			return builder;
+		}
+		List<SettableBeanProperty> replacements = new ArrayList<SettableBeanProperty>();
+		for (Iterator<SettableBeanProperty> it = builder.getProperties(); it.hasNext();) {
+			SettableBeanProperty property = it.next();
+			if (Collection.class.isAssignableFrom(property.getType().getRawClass())) {
+				AnnotatedMember accessor = accessorOf(beanDesc, property.getName());
+				if (accessor != null) {
+					replacements.add(new AnterosManagedCollectionProperty(property, accessor));
+				}
+			}
+		}
+		for (SettableBeanProperty property : replacements) {
+			builder.addOrReplaceProperty(property, true);
+		}
+		return builder;
+	}
+
+	@Override
+	public JsonDeserializer<?> modifyDeserializer(DeserializationConfig config, BeanDescription beanDesc,
+			JsonDeserializer<?> deserializer) {
+		String idName = managedReads(config) ? idNameOf(beanDesc) : null;
+		if (idName == null || !(deserializer instanceof BeanDeserializerBase)
+				|| ((BeanDeserializerBase) deserializer).findProperty(idName) == null) {
+			return deserializer;
+		}
+		return new AnterosManagedEntityDeserializer(deserializer, idName);
+	}
+
+	@Override
+	public JsonDeserializer<?> modifyCollectionDeserializer(DeserializationConfig config, CollectionType type,
+			BeanDescription beanDesc, JsonDeserializer<?> deserializer) {
+		if (!(deserializer instanceof CollectionDeserializer) || !isBeanType(type.getContentType())) {
+			return deserializer;
+		}
+		return new AnterosColumnarCollectionDeserializer(deserializer);
+	}
+
+	protected boolean managedReads(DeserializationConfig config) {
+		return Boolean.TRUE
+				.equals(config.getAttributes().getAttribute(AnterosPersistenceJacksonModule.MANAGED_READS_ATTRIBUTE));
+	}
+
+	protected boolean isBeanType(JavaType type) {
+		Class<?> raw = type.getRawClass();
+		return !raw.isPrimitive() && !raw.isEnum() && !raw.isArray() && !type.isContainerType()
+				&& !raw.getName().startsWith("java.");
+	}
+
+	/**
+	 * Nome da propriedade JSON do campo {@link Id} de uma {@link Entity}, ou
+	 * null.
+	 */
+	protected String idNameOf(BeanDescription beanDesc) {
+		if (beanDesc.getClassAnnotations().get(Entity.class) == null) {
+			return null;
+		}
+		for (BeanPropertyDefinition property : beanDesc.findProperties()) {
+			AnnotatedField field = property.getField();
+			if (field != null && field.hasAnnotation(Id.class)) {
+				return property.getName();
+			}
+		}
+		return null;
+	}
+
+	protected AnnotatedMember accessorOf(BeanDescription beanDesc, String name) {
+		for (BeanPropertyDefinition property : beanDesc.findProperties()) {
+			if (property.getName().equals(name)) {
+				return property.getAccessor();
+			}
+		}
+		return null;
+	}
+}
@@ -0,0 +1,191 @@
+/*******************************************************************************
+ * Copyright 2012 Anteros Tecnologia
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package br.com.anteros.nosql.persistence.serialization.jackson;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Tabela imutável, com hash perfeito, dos valores discriminadores de uma
+ * hierarquia para suas classes.
+ * <p>
+ * Na construção procura-se um multiplicador com o qual nenhum discriminador
+ * colide numa tabela de tamanho potência de dois; a busca é então um cálculo
+ * de hash, um acesso ao array e uma comparação. A busca pode ser feita
+ * diretamente sobre o buffer de caracteres do parser, sem criar a String do
+ * valor lido.
+ * <p>
+ * Discriminadores com o mesmo {@link String#hashCode()} (por exemplo "Aa" e
+ * "BB") não podem ser separados por nenhum multiplicador; nesse caso, ou se a
+ * tabela ficaria grande demais, a busca passa a usar um {@link HashMap}.
+ */
+public class AnterosDiscriminatorTable {
+
+	private static final int MAX_SEED_ATTEMPTS = 256;
+
+	/**
+	 * Quantas posições por discriminador a tabela pode ter antes de se
+	 * desistir do hash perfeito.
+	 */
+	private static final int MAX_SLOTS_PER_KEY = 64;
+
+	private final char[][] keys;
+	private final Class<?>[] types;
+	private final int seed;
+	private final int mask;
+	/**
+	 * Posições por discriminador, quando não há hash perfeito; null caso
+	 * contrário.
+	 */
+	private final Map<String, Integer> slots;
+
+	protected AnterosDiscriminatorTable(char[][] keys, Class<?>[] types, int seed, int mask) {
+		this.keys = keys;
+		this.types = types;
+		this.seed = seed;
+		this.mask = mask;
+		this.slots = null;
+	}
+
+	protected AnterosDiscriminatorTable(Map<String, Class<?>> discriminators) {
+		this.keys = new char[discriminators.size()][];
+		this.types = new Class<?>[discriminators.size()];
+		this.seed = 0;
+		this.mask = 0;
+		this.slots = new HashMap<String, Integer>();
+		int slot = 0;
+		for (Map.Entry<String, Class<?>> entry : discriminators.entrySet()) {
+			keys[slot] = entry.getKey().toCharArray();
+			types[slot] = entry.getValue();
+			slots.put(entry.getKey(), slot++);
+		}
+	}
+
+	public static AnterosDiscriminatorTable build(Map<String, Class<?>> discriminators) {
+		if (!hasDistinctHashes(discriminators)) {
+			return new AnterosDiscriminatorTable(discriminators);
+		}
+		int size = Integer.highestOneBit(Math.max(2, discriminators.size() * 2) - 1) << 1;
+		int maxSize = Math.max(size, Integer.highestOneBit(discriminators.size() * MAX_SLOTS_PER_KEY));
+		for (; size <= maxSize; size <<= 1) {
+			for (int attempt = 0, seed = 1; attempt < MAX_SEED_ATTEMPTS; attempt++, seed += 0x9E3779B8) {
+				AnterosDiscriminatorTable table = tryBuild(discriminators, size, seed | 1);
+				if (table != null) {
+					return table;
+				}
+			}
+		}
+		return new AnterosDiscriminatorTable(discriminators);
+	}
+
+	private static boolean hasDistinctHashes(Map<String, Class<?>> discriminators) {
+		Set<Integer> hashes = new HashSet<Integer>();
+		for (String key : discriminators.keySet()) {
+			if (!hashes.add(key.hashCode())) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static AnterosDiscriminatorTable tryBuild(Map<String, Class<?>> discriminators, int size, int seed) {
+		char[][] keys = new char[size][];
+		Class<?>[] types = new Class<?>[size];
+		int mask = size - 1;
+		for (Map.Entry<String, Class<?>> entry : discriminators.entrySet()) {
+			int slot = slot(entry.getKey().hashCode(), seed, mask);
+			if (keys[slot] != null) {
+				return null;
+			}
+			keys[slot] = entry.getKey().toCharArray();
+			types[slot] = entry.getValue();
+		}
+		return new AnterosDiscriminatorTable(keys, types, seed, mask);
+	}
+
+	private static int slot(int hash, int seed, int mask) {
+		int h = hash * seed;
+		return (h ^ (h >>> 16)) & mask;
+	}
+
+	/**
+	 * Retorna a posição do discriminador na tabela ou -1 se ele não existe. O
+	 * hash é o mesmo de {@link String#hashCode()}.
+	 */
+	public int find(char[] buffer, int offset, int length) {
+		if (slots != null) {
+			return slotOf(slots.get(new String(buffer, offset, length)));
+		}
+		int hash = 0;
+		for (int i = 0; i < length; i++) {
+			hash = 31 * hash + buffer[offset + i];
+		}
+		int slot = slot(hash, seed, mask);
+		char[] key = keys[slot];
+		if (key == null || key.length != length) {
+			return -1;
+		}
+		for (int i = 0; i < length; i++) {
+			if (key[i] != buffer[offset + i]) {
+				return -1;
+			}
+		}
+		return slot;
+	}
+
+	public int find(String discriminator) {
+		if (slots != null) {
+			return slotOf(slots.get(discriminator));
+		}
+		int slot = slot(discriminator.hashCode(), seed, mask);
+		char[] key = keys[slot];
+		int length = discriminator.length();
+		if (key == null || key.length != length) {
+			return -1;
+		}
+		for (int i = 0; i < length; i++) {
+			if (key[i] != discriminator.charAt(i)) {
+				return -1;
+			}
+		}
+		return slot;
+	}
+
+	private static int slotOf(Integer slot) {
+		return slot == null ? -1 : slot;
+	}
+
+	/**
+	 * Indica se a busca usa o hash perfeito, sem alocar.
+	 */
+	public boolean isPerfect() {
+		return slots == null;
+	}
+
+	public Class<?> getType(int slot) {
+		return types[slot];
+	}
+
+	/**
+	 * Número de posições da tabela, para quem quiser guardar informações
+	 * adicionais por posição.
+	 */
+	public int capacity() {
+		return types.length;
+	}
+}
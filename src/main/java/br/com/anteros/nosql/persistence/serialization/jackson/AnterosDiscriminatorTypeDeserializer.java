@@ -0,0 +1,103 @@
+/*******************************************************************************
+ * Copyright 2012 Anteros Tecnologia
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package br.com.anteros.nosql.persistence.serialization.jackson;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.BeanProperty;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.JsonDeserializer;
+import com.fasterxml.jackson.databind.jsontype.TypeDeserializer;
+import com.fasterxml.jackson.databind.jsontype.impl.AsPropertyTypeDeserializer;
+
+/**
+ * Deserializador de tipo das hierarquias com
+ * {@link br.com.anteros.nosql.persistence.metadata.annotations.DiscriminatorValue}.
+ * <p>
+ * Quando o discriminador é o primeiro campo do objeto (como o módulo o
+ * escreve), ele é procurado direto no buffer do parser através da
+ * {@link AnterosDiscriminatorTable} e o objeto é lido em seguida, sem criar a
+ * String do discriminador nem guardar tokens. Caso contrário vale o caminho
+ * do {@link AsPropertyTypeDeserializer}, que guarda apenas os campos
+ * anteriores ao discriminador.
+ */
+public class AnterosDiscriminatorTypeDeserializer extends AsPropertyTypeDeserializer {
+
+	private static final long serialVersionUID = 1L;
+
+	protected final transient AnterosDiscriminatorTable _table;
+
+	protected final transient AtomicReferenceArray<JsonDeserializer<Object>> _slotDeserializers;
+
+	public AnterosDiscriminatorTypeDeserializer(AsPropertyTypeDeserializer src, AnterosDiscriminatorTable table) {
+		super(src, null);
+		_table = table;
+		_slotDeserializers = new AtomicReferenceArray<JsonDeserializer<Object>>(table.capacity());
+	}
+
+	protected AnterosDiscriminatorTypeDeserializer(AnterosDiscriminatorTypeDeserializer src, BeanProperty property) {
+		super(src, property);
+		_table = src._table;
+		_slotDeserializers = (property == src._property) ? src._slotDeserializers
+				: new AtomicReferenceArray<JsonDeserializer<Object>>(_table.capacity());
+	}
+
+	@Override
+	public TypeDeserializer forProperty(BeanProperty prop) {
+		return (prop == _property) ? this : new AnterosDiscriminatorTypeDeserializer(this, prop);
+	}
+
+	@Override
+	public Object deserializeTypedFromObject(JsonParser p, DeserializationContext ctxt) throws IOException {
+		if (_typeIdVisible || p.canReadTypeId()) {
+			return super.deserializeTypedFromObject(p, ctxt);
+		}
+		JsonToken t = p.getCurrentToken();
+		if (t == JsonToken.START_OBJECT) {
+			t = p.nextToken();
+		} else if (t != JsonToken.FIELD_NAME) {
+			return super.deserializeTypedFromObject(p, ctxt);
+		}
+		if (t != JsonToken.FIELD_NAME || !_typePropertyName.equals(p.getCurrentName())) {
+			return super.deserializeTypedFromObject(p, ctxt);
+		}
+		if (p.nextToken() != JsonToken.VALUE_STRING) {
+			return _deserializeTypedForId(p, ctxt, null);
+		}
+		int slot = _table.find(p.getTextCharacters(), p.getTextOffset(), p.getTextLength());
+		if (slot < 0) {
+			return _deserializeTypedForId(p, ctxt, null);
+		}
+		JsonDeserializer<Object> deser = findSlotDeserializer(ctxt, slot);
+		p.nextToken();
+		return deser.deserialize(p, ctxt);
+	}
+
+	protected JsonDeserializer<Object> findSlotDeserializer(DeserializationContext ctxt, int slot)
+			throws IOException {
+		JsonDeserializer<Object> deser = _slotDeserializers.get(slot);
+		if (deser == null) {
+			JavaType type = ctxt.getTypeFactory().constructSpecializedType(_baseType, _table.getType(slot));
+			deser = ctxt.findContextualValueDeserializer(type, _property);
+			_slotDeserializers.compareAndSet(slot, null, deser);
+		}
+		return deser;
+	}
+}
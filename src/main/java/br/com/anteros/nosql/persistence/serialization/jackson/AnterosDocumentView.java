@@ -0,0 +1,448 @@
+/*******************************************************************************
+ * Copyright 2012 Anteros Tecnologia
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package br.com.anteros.nosql.persistence.serialization.jackson;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.json.JsonGeneratorImpl;
+import com.fasterxml.jackson.databind.BeanDescription;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.JsonDeserializer;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.deser.BeanDeserializerBase;
+import com.fasterxml.jackson.databind.deser.DefaultDeserializationContext;
+import com.fasterxml.jackson.databind.deser.SettableBeanProperty;
+import com.fasterxml.jackson.databind.deser.UnresolvedForwardReference;
+import com.fasterxml.jackson.databind.deser.impl.ManagedReferenceProperty;
+import com.fasterxml.jackson.databind.introspect.AnnotatedMember;
+import com.fasterxml.jackson.databind.introspect.BeanPropertyDefinition;
+import com.fasterxml.jackson.databind.util.ClassUtil;
+
+/**
+ * Visão preguiçosa de uma entidade sobre os bytes do documento JSON, criada
+ * por {@link AnterosNoSQLObjectMapper#readView(byte[], Class)}.
+ * <p>
+ * A criação faz uma única varredura do documento, guardando apenas o nome e
+ * a posição de cada campo do primeiro nível; cada propriedade é lida só no
+ * primeiro acesso, pela propriedade do deserializador da entidade (e portanto
+ * com as anotações dela, como {@code @JsonFormat} ou {@code @JsonDeserialize}).
+ * Como num proxy
+ * ({@link br.com.anteros.nosql.persistence.proxy.AnterosProxyObject}),
+ * {@link #initializeAndReturnObject()} lê a entidade inteira, que passa a ser
+ * a fonte dos valores. Com {@link #as(Class)} a visão é exposta por uma
+ * interface de getters; getters de tipo primitivo retornam o valor padrão do
+ * tipo quando o documento não tem o campo.
+ * <p>
+ * A visão não é uma subclasse da entidade: o afterburner, dependência
+ * opcional do projeto (veja {@link AnterosGeneratedAccessorsModule}), só gera
+ * acessores para as classes existentes, e os proxies do JDK implementam
+ * apenas interfaces.
+ * <p>
+ * Gravada por um mapper com o {@link AnterosPersistenceJacksonModule}, a
+ * visão escreve o trecho do documento original sem lê-lo ou, se já foi
+ * inicializada, a entidade (veja {@link AnterosDocumentViewSerializer}).
+ * <p>
+ * Propriedades que só fazem referência (object id) a objetos escritos em
+ * outro ponto do documento e referências gerenciadas
+ * ({@code @JsonManagedReference}), cujos filhos apontam para a entidade, não
+ * podem ser lidas isoladamente e provocam a leitura da entidade inteira. Uma
+ * visão não é thread-safe.
+ */
+public class AnterosDocumentView<T> {
+
+	private static final Object UNPARSED = new Object();
+
+	private final Descriptor descriptor;
+	private final byte[] document;
+	private final int start;
+	private final String[] names;
+	private final int[] positions;
+	private final int[] ends;
+	/**
+	 * Trecho do objeto no documento, sem os espaços em volta.
+	 */
+	private final int end;
+	private final Object[] values;
+	private int parsedCount;
+	private T entity;
+
+	AnterosDocumentView(Descriptor descriptor, byte[] document, int offset, int length) throws IOException {
+		this.descriptor = descriptor;
+		this.document = document;
+		String[] names = new String[16];
+		int[] positions = new int[16];
+		int[] ends = new int[16];
+		int count = 0;
+		JsonParser p = descriptor.mapper.getFactory().createParser(document, offset, length);
+		try {
+			if (p.nextToken() != JsonToken.START_OBJECT) {
+				throw new JacksonSerializationException("Document views require a JSON object.");
+			}
+			this.start = offset + (int) p.getTokenLocation().getByteOffset();
+			while (p.nextToken() == JsonToken.FIELD_NAME) {
+				if (count == names.length) {
+					names = Arrays.copyOf(names, count << 1);
+					positions = Arrays.copyOf(positions, count << 1);
+					ends = Arrays.copyOf(ends, count << 1);
+				}
+				names[count] = p.getCurrentName();
+				p.nextToken();
+				positions[count] = offset + (int) p.getTokenLocation().getByteOffset();
+				p.skipChildren();
+				p.finishToken();
+				ends[count++] = offset + (int) p.getCurrentLocation().getByteOffset();
+			}
+			if (!p.hasToken(JsonToken.END_OBJECT)) {
+				throw new JacksonSerializationException("Document views require a JSON object.");
+			}
+			this.end = offset + (int) p.getCurrentLocation().getByteOffset();
+		} finally {
+			p.close();
+		}
+		this.names = Arrays.copyOf(names, count);
+		this.positions = Arrays.copyOf(positions, count);
+		this.ends = Arrays.copyOf(ends, count);
+		this.values = new Object[count];
+		Arrays.fill(this.values, UNPARSED);
+	}
+
+	@SuppressWarnings("unchecked")
+	public Class<T> getType() {
+		return (Class<T>) descriptor.type;
+	}
+
+	/**
+	 * Nomes dos campos do primeiro nível, na ordem do documento.
+	 */
+	public List<String> getPropertyNames() {
+		return Collections.unmodifiableList(Arrays.asList(names));
+	}
+
+	public boolean has(String property) {
+		return indexOf(property) >= 0;
+	}
+
+	public boolean isParsed(String property) {
+		int index = indexOf(property);
+		return index >= 0 && values[index] != UNPARSED;
+	}
+
+	/**
+	 * Quantidade de propriedades já lidas do documento.
+	 */
+	public int getParsedCount() {
+		return parsedCount;
+	}
+
+	/**
+	 * Retorna o valor da propriedade, lendo-o do documento no primeiro
+	 * acesso, ou null se o documento não tem o campo.
+	 */
+	public Object get(String property) {
+		int index = indexOf(property);
+		if (index < 0) {
+			return null;
+		}
+		if (entity != null) {
+			return valueFromEntity(property);
+		}
+		if (values[index] == UNPARSED) {
+			values[index] = parse(index, property);
+			parsedCount++;
+		}
+		return values[index] == UNPARSED ? valueFromEntity(property) : values[index];
+	}
+
+	/**
+	 * Lê a propriedade com o tipo informado; o valor só é guardado se o tipo
+	 * for o declarado na entidade.
+	 */
+	public <V> V get(String property, Class<V> type) {
+		return type.cast(get(property, descriptor.mapper.getTypeFactory().constructType(type)));
+	}
+
+	protected Object get(String property, JavaType type) {
+		if (type.equals(descriptor.typeOf(property))) {
+			return get(property);
+		}
+		int index = indexOf(property);
+		if (index < 0) {
+			return null;
+		}
+		if (entity != null) {
+			return descriptor.mapper.convertValue(valueFromEntity(property), type);
+		}
+		Object value = parse(index, descriptor.readerFor(type));
+		return value == UNPARSED ? descriptor.mapper.convertValue(valueFromEntity(property), type) : value;
+	}
+
+	/**
+	 * Indica se a entidade inteira já foi lida.
+	 */
+	public boolean isInitialized() {
+		return entity != null;
+	}
+
+	/**
+	 * Lê (uma única vez) e retorna a entidade completa.
+	 */
+	public T initializeAndReturnObject() {
+		if (entity == null) {
+			try {
+				entity = descriptor.entityReader.readValue(document, start, end - start);
+			} catch (IOException e) {
+				throw new JacksonSerializationException(e);
+			}
+		}
+		return entity;
+	}
+
+	/**
+	 * Expõe a visão por uma interface: cada getter sem parâmetros
+	 * ({@code getNome()} ou {@code isNome()}) lê a propriedade
+	 * correspondente com o tipo de retorno do método.
+	 */
+	public <I> I as(Class<I> projection) {
+		return projection.cast(Proxy.newProxyInstance(projection.getClassLoader(), new Class<?>[] { projection },
+				new ViewInvocationHandler(this)));
+	}
+
+	private int indexOf(String property) {
+		for (int i = 0; i < names.length; i++) {
+			if (names[i].equals(property)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Lê o valor do trecho do campo com a {@link SettableBeanProperty} da
+	 * entidade ou, se o deserializador da entidade não é um bean
+	 * deserializer, com o tipo declarado; retorna {@link #UNPARSED} se o
+	 * valor não pode ser lido isoladamente.
+	 */
+	private Object parse(int index, String property) {
+		SettableBeanProperty settable = descriptor.settableProperty(property);
+		if (settable == null) {
+			return parse(index, descriptor.propertyReader(property));
+		}
+		if (settable instanceof ManagedReferenceProperty) {
+			return UNPARSED;
+		}
+		try {
+			JsonParser p = descriptor.mapper.getFactory().createParser(document, positions[index],
+					ends[index] - positions[index]);
+			try {
+				DefaultDeserializationContext ctxt = descriptor.mapper.createViewContext(p);
+				p.nextToken();
+				Object value = settable.deserialize(p, ctxt);
+				ctxt.checkUnresolvedObjectId();
+				return value;
+			} finally {
+				p.close();
+			}
+		} catch (UnresolvedForwardReference e) {
+			return UNPARSED;
+		} catch (IOException e) {
+			throw new JacksonSerializationException(e);
+		}
+	}
+
+	/**
+	 * Lê o valor do trecho do campo; retorna {@link #UNPARSED} se ele depende
+	 * de object ids de outras partes do documento.
+	 */
+	private Object parse(int index, ObjectReader reader) {
+		try {
+			return reader.readValue(document, positions[index], ends[index] - positions[index]);
+		} catch (UnresolvedForwardReference e) {
+			return UNPARSED;
+		} catch (IOException e) {
+			throw new JacksonSerializationException(e);
+		}
+	}
+
+	private Object valueFromEntity(String property) {
+		AnnotatedMember accessor = descriptor.accessorOf(property);
+		return accessor == null ? null : accessor.getValue(initializeAndReturnObject());
+	}
+
+	/**
+	 * Escreve o objeto do documento sem lê-lo: como JSON bruto num gerador de
+	 * JSON textual ou, nos demais formatos, copiando os tokens.
+	 */
+	protected void writeDocument(JsonGenerator gen) throws IOException {
+		if (gen instanceof JsonGeneratorImpl) {
+			gen.writeRawValue(new String(document, start, end - start, StandardCharsets.UTF_8));
+			return;
+		}
+		JsonParser p = descriptor.mapper.getFactory().createParser(document, start, end - start);
+		try {
+			p.nextToken();
+			gen.copyCurrentStructure(p);
+		} finally {
+			p.close();
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "AnterosDocumentView [type=" + descriptor.type.getName() + ", properties=" + names.length
+				+ ", parsed=" + parsedCount + ", initialized=" + isInitialized() + "]";
+	}
+
+	/**
+	 * Tipos, propriedades do deserializador, readers e acessores das
+	 * propriedades de uma entidade, compartilhados pelas visões do mesmo
+	 * mapper.
+	 */
+	static final class Descriptor {
+
+		final AnterosNoSQLObjectMapper mapper;
+		final Class<?> type;
+		final ObjectReader entityReader;
+		/**
+		 * Deserializador da entidade, ou null se ele não é um bean deserializer
+		 * (por exemplo, um deserializador próprio ou de um tipo abstrato).
+		 */
+		private final BeanDeserializerBase entityDeserializer;
+		private final Map<String, BeanPropertyDefinition> definitions = new HashMap<String, BeanPropertyDefinition>();
+		private final ConcurrentMap<String, ObjectReader> propertyReaders = new ConcurrentHashMap<String, ObjectReader>();
+		private final ConcurrentMap<JavaType, ObjectReader> typeReaders = new ConcurrentHashMap<JavaType, ObjectReader>();
+		private final ConcurrentMap<Method, String> getters = new ConcurrentHashMap<Method, String>();
+
+		Descriptor(AnterosNoSQLObjectMapper mapper, Class<?> type) {
+			this.mapper = mapper;
+			this.type = type;
+			this.entityReader = mapper.readerFor(type);
+			JavaType javaType = mapper.constructType(type);
+			try {
+				JsonDeserializer<Object> deserializer = mapper.createViewContext(null)
+						.findRootValueDeserializer(javaType);
+				this.entityDeserializer = deserializer instanceof BeanDeserializerBase
+						? (BeanDeserializerBase) deserializer
+						: null;
+			} catch (JsonMappingException e) {
+				throw new JacksonSerializationException(e);
+			}
+			BeanDescription description = mapper.getDeserializationConfig().introspect(javaType);
+			for (BeanPropertyDefinition definition : description.findProperties()) {
+				definitions.put(definition.getName(), definition);
+			}
+			for (BeanPropertyDefinition definition : mapper.getSerializationConfig().introspect(javaType)
+					.findProperties()) {
+				if (!definitions.containsKey(definition.getName())) {
+					definitions.put(definition.getName(), definition);
+				}
+			}
+		}
+
+		JavaType typeOf(String property) {
+			BeanPropertyDefinition definition = definitions.get(property);
+			return definition == null ? null : definition.getPrimaryType();
+		}
+
+		SettableBeanProperty settableProperty(String property) {
+			return entityDeserializer == null ? null : entityDeserializer.findProperty(property);
+		}
+
+		ObjectReader propertyReader(String property) {
+			ObjectReader reader = propertyReaders.get(property);
+			if (reader == null) {
+				JavaType type = typeOf(property);
+				reader = readerFor(type == null ? mapper.constructType(Object.class) : type);
+				propertyReaders.putIfAbsent(property, reader);
+			}
+			return reader;
+		}
+
+		ObjectReader readerFor(JavaType type) {
+			ObjectReader reader = typeReaders.get(type);
+			if (reader == null) {
+				reader = mapper.readerFor(type);
+				typeReaders.putIfAbsent(type, reader);
+			}
+			return reader;
+		}
+
+		AnnotatedMember accessorOf(String property) {
+			BeanPropertyDefinition definition = definitions.get(property);
+			if (definition == null) {
+				return null;
+			}
+			AnnotatedMember accessor = definition.getAccessor();
+			if (accessor != null) {
+				accessor.fixAccess(true);
+			}
+			return accessor;
+		}
+
+		String propertyOf(Method getter) {
+			String property = getters.get(getter);
+			if (property == null) {
+				String name = getter.getName();
+				int prefix = name.startsWith("get") ? 3 : name.startsWith("is") ? 2 : -1;
+				if (prefix < 0 || name.length() == prefix || getter.getParameterTypes().length > 0) {
+					throw new JacksonSerializationException("Method " + name + " is not a getter.");
+				}
+				property = Character.toLowerCase(name.charAt(prefix)) + name.substring(prefix + 1);
+				getters.putIfAbsent(getter, property);
+			}
+			return property;
+		}
+	}
+
+	private static final class ViewInvocationHandler implements InvocationHandler {
+
+		private final AnterosDocumentView<?> view;
+
+		ViewInvocationHandler(AnterosDocumentView<?> view) {
+			this.view = view;
+		}
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			if (method.getDeclaringClass() == Object.class) {
+				if ("equals".equals(method.getName())) {
+					return proxy == args[0];
+				}
+				if ("hashCode".equals(method.getName())) {
+					return System.identityHashCode(proxy);
+				}
+				return view.toString();
+			}
+			Object value = view.get(view.descriptor.propertyOf(method),
+					view.descriptor.mapper.getTypeFactory().constructType(method.getGenericReturnType()));
+			return value == null ? ClassUtil.defaultValue(method.getReturnType()) : value;
+		}
+	}
+}
@@ -0,0 +1,56 @@
+/*******************************************************************************
+ * Copyright 2012 Anteros Tecnologia
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package br.com.anteros.nosql.persistence.serialization.jackson;
+
+import java.io.IOException;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.jsontype.TypeSerializer;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+
+/**
+ * Escreve uma {@link AnterosDocumentView}: a entidade, se a visão já foi
+ * inicializada, ou o trecho do documento original, sem lê-lo. O trecho já
+ * traz as informações de tipo com que o documento foi gravado.
+ */
+@SuppressWarnings("rawtypes")
+public class AnterosDocumentViewSerializer extends StdSerializer<AnterosDocumentView> {
+
+	private static final long serialVersionUID = 1L;
+
+	public static final AnterosDocumentViewSerializer INSTANCE = new AnterosDocumentViewSerializer();
+
+	public AnterosDocumentViewSerializer() {
+		super(AnterosDocumentView.class);
+	}
+
+	@Override
+	public void serialize(AnterosDocumentView value, JsonGenerator gen, SerializerProvider provider)
+			throws IOException {
+		if (value.isInitialized()) {
+			provider.defaultSerializeValue(value.initializeAndReturnObject(), gen);
+		} else {
+			value.writeDocument(gen);
+		}
+	}
+
+	@Override
+	public void serializeWithType(AnterosDocumentView value, JsonGenerator gen, SerializerProvider provider,
+			TypeSerializer typeSer) throws IOException {
+		serialize(value, gen, provider);
+	}
+}
@@ -0,0 +1,278 @@
+/*******************************************************************************
+ * Copyright 2012 Anteros Tecnologia
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package br.com.anteros.nosql.persistence.serialization.jackson;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Field;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.WeakHashMap;
+
+import br.com.anteros.nosql.persistence.metadata.annotations.DiscriminatorValue;
+import br.com.anteros.nosql.persistence.metadata.annotations.Entity;
+import br.com.anteros.nosql.persistence.metadata.annotations.Id;
+import br.com.anteros.nosql.persistence.metadata.annotations.Reference;
+import br.com.anteros.nosql.persistence.metadata.annotations.Transient;
+
+/**
+ * Índice dos metadados das entidades gerado em tempo de compilação pelo
+ * {@link AnterosEntityIndexProcessor}, no recurso {@value #RESOURCE} de cada
+ * jar: hierarquia das classes {@link Entity}, valores de
+ * {@link DiscriminatorValue}, campo {@link Id} e membros {@link Transient} e
+ * {@link Reference}.
+ * <p>
+ * O módulo consulta o índice antes de recorrer à reflexão ou ao gerenciador
+ * de descrição de entidades; classes que o índice não cobre continuam sendo
+ * tratadas por reflexão. O índice de cada {@link ClassLoader} é lido uma
+ * única vez e reúne os recursos de todos os jars visíveis a ele.
+ */
+public final class AnterosEntityIndex {
+
+	public static final String RESOURCE = "META-INF/anteros/entity-index.properties";
+
+	static final char SEPARATOR = '#';
+	static final String DISCRIMINATOR = "discriminator";
+	static final String ID = "id";
+	static final String TRANSIENT = "transient";
+	static final String LAZY = "lazy";
+	static final String EAGER = "eager";
+
+	public static final AnterosEntityIndex EMPTY = new AnterosEntityIndex(new Properties());
+
+	private static final Map<ClassLoader, AnterosEntityIndex> INDEXES = Collections
+			.synchronizedMap(new WeakHashMap<ClassLoader, AnterosEntityIndex>());
+
+	private final Map<String, Entry> entries = new HashMap<String, Entry>();
+
+	private final Map<String, List<String>> hierarchies = new HashMap<String, List<String>>();
+
+	AnterosEntityIndex(Properties properties) {
+		for (String name : properties.stringPropertyNames()) {
+			if (name.indexOf(SEPARATOR) < 0) {
+				entries.put(name, new Entry(name, properties));
+			}
+		}
+		for (String name : new TreeSet<String>(entries.keySet())) {
+			String root = rootOf(name);
+			List<String> hierarchy = hierarchies.get(root);
+			if (hierarchy == null) {
+				hierarchy = new ArrayList<String>();
+				hierarchy.add(root);
+				hierarchies.put(root, hierarchy);
+			}
+			if (!name.equals(root)) {
+				hierarchy.add(name);
+			}
+		}
+	}
+
+	/**
+	 * Retorna o índice do class loader da classe (para classes do sistema,
+	 * {@link #EMPTY}).
+	 */
+	public static AnterosEntityIndex forClass(Class<?> type) {
+		ClassLoader loader = type.getClassLoader();
+		return loader == null ? EMPTY : forClassLoader(loader);
+	}
+
+	public static AnterosEntityIndex forClassLoader(ClassLoader loader) {
+		synchronized (INDEXES) {
+			AnterosEntityIndex index = INDEXES.get(loader);
+			if (index == null) {
+				index = load(loader);
+				INDEXES.put(loader, index);
+			}
+			return index;
+		}
+	}
+
+	/**
+	 * Lê e reúne todos os recursos {@value #RESOURCE} visíveis ao class
+	 * loader.
+	 */
+	public static AnterosEntityIndex load(ClassLoader loader) {
+		Properties properties = new Properties();
+		try {
+			Enumeration<URL> resources = loader.getResources(RESOURCE);
+			while (resources.hasMoreElements()) {
+				InputStream in = resources.nextElement().openStream();
+				try {
+					properties.load(in);
+				} finally {
+					in.close();
+				}
+			}
+		} catch (IOException e) {
+			throw new JacksonSerializationException(e);
+		}
+		return properties.isEmpty() ? EMPTY : new AnterosEntityIndex(properties);
+	}
+
+	/**
+	 * Retorna os metadados da classe, ou null se ela não está no índice.
+	 */
+	public Entry get(Class<?> type) {
+		return entries.get(type.getName());
+	}
+
+	public boolean isEmpty() {
+		return entries.isEmpty();
+	}
+
+	public int size() {
+		return entries.size();
+	}
+
+	/**
+	 * Retorna a entidade raiz da hierarquia da classe, procurada entre as
+	 * superclasses dela, ou null se a classe não está no índice.
+	 */
+	public Class<?> getRootEntity(Class<?> type) {
+		if (!entries.containsKey(type.getName())) {
+			return null;
+		}
+		String root = rootOf(type.getName());
+		for (Class<?> current = type; current != null; current = current.getSuperclass()) {
+			if (current.getName().equals(root)) {
+				return current;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Nomes das classes da hierarquia cuja raiz é a entidade informada, a raiz
+	 * primeiro, ou null se ela não é raiz de uma hierarquia do índice.
+	 */
+	public List<String> getHierarchy(Class<?> rootEntity) {
+		return hierarchies.get(rootEntity.getName());
+	}
+
+	private String rootOf(String name) {
+		String root = name;
+		Entry entry = entries.get(name);
+		while (entry != null && entry.superEntity != null && entries.containsKey(entry.superEntity)) {
+			root = entry.superEntity;
+			entry = entries.get(root);
+		}
+		return root;
+	}
+
+	/**
+	 * Metadados de uma classe {@link Entity}. Os nomes dos membros são os das
+	 * declarações na própria classe, não nas superclasses.
+	 */
+	public static final class Entry {
+
+		private final String name;
+		private final String superEntity;
+		private final String discriminator;
+		private final String idOwner;
+		private final String idField;
+		private final Set<String> transientMembers;
+		private final Set<String> lazyReferences;
+		private final Set<String> eagerReferences;
+
+		Entry(String name, Properties properties) {
+			this.name = name;
+			String superEntity = properties.getProperty(name);
+			this.superEntity = superEntity == null || superEntity.isEmpty() ? null : superEntity;
+			this.discriminator = properties.getProperty(name + SEPARATOR + DISCRIMINATOR);
+			String id = properties.getProperty(name + SEPARATOR + ID);
+			int separator = id == null ? -1 : id.lastIndexOf(SEPARATOR);
+			this.idOwner = separator < 0 ? null : id.substring(0, separator);
+			this.idField = separator < 0 ? null : id.substring(separator + 1);
+			this.transientMembers = namesOf(properties.getProperty(name + SEPARATOR + TRANSIENT));
+			this.lazyReferences = namesOf(properties.getProperty(name + SEPARATOR + LAZY));
+			this.eagerReferences = namesOf(properties.getProperty(name + SEPARATOR + EAGER));
+		}
+
+		private static Set<String> namesOf(String value) {
+			if (value == null || value.isEmpty()) {
+				return Collections.emptySet();
+			}
+			Set<String> names = new HashSet<String>();
+			for (String name : value.split(",")) {
+				names.add(name);
+			}
+			return names;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		/**
+		 * Superclasse {@link Entity} mais próxima, ou null.
+		 */
+		public String getSuperEntity() {
+			return superEntity;
+		}
+
+		public String getDiscriminator() {
+			return discriminator;
+		}
+
+		public boolean isTransient(String member) {
+			return transientMembers.contains(member);
+		}
+
+		public boolean isLazyReference(String member) {
+			return lazyReferences.contains(member);
+		}
+
+		public boolean isEagerReference(String member) {
+			return eagerReferences.contains(member);
+		}
+
+		/**
+		 * Retorna o campo {@link Id} da classe ou de uma superclasse, já
+		 * acessível, ou null se a classe não tem id.
+		 * 
+		 * @throws NoSuchFieldException
+		 *             se o índice não corresponde mais à classe
+		 */
+		public Field findIdField(Class<?> type) throws NoSuchFieldException {
+			if (idOwner == null) {
+				return null;
+			}
+			for (Class<?> current = type; current != null; current = current.getSuperclass()) {
+				if (current.getName().equals(idOwner)) {
+					Field field = current.getDeclaredField(idField);
+					field.setAccessible(true);
+					return field;
+				}
+			}
+			throw new NoSuchFieldException(idOwner + SEPARATOR + idField);
+		}
+
+		@Override
+		public String toString() {
+			return "Entry [name=" + name + ", superEntity=" + superEntity + ", discriminator=" + discriminator
+					+ ", id=" + idField + ", transient=" + transientMembers + ", lazy=" + lazyReferences + "]";
+		}
+	}
+}
@@ -0,0 +1,301 @@
+/*******************************************************************************
+ * Copyright 2012 Anteros Tecnologia
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package br.com.anteros.nosql.persistence.serialization.jackson;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.Elements;
+import javax.tools.Diagnostic;
+import javax.tools.FileObject;
+import javax.tools.StandardLocation;
+
+/**
+ * Processador de anotações que gera o {@link AnterosEntityIndex} das classes
+ * {@link br.com.anteros.nosql.persistence.metadata.annotations.Entity}
+ * compiladas, evitando a varredura por reflexão na inicialização do módulo.
+ * <p>
+ * É registrado em {@code META-INF/services}, portanto roda automaticamente
+ * na compilação dos projetos que têm este jar no classpath. Em compilações
+ * incrementais as entradas do índice anterior são mantidas para as classes
+ * que ainda existem.
+ */
+public class AnterosEntityIndexProcessor extends AbstractProcessor {
+
+	static final String ENTITY = "br.com.anteros.nosql.persistence.metadata.annotations.Entity";
+	static final String DISCRIMINATOR_VALUE = "br.com.anteros.nosql.persistence.metadata.annotations.DiscriminatorValue";
+	static final String ID = "br.com.anteros.nosql.persistence.metadata.annotations.Id";
+	static final String TRANSIENT = "br.com.anteros.nosql.persistence.metadata.annotations.Transient";
+	static final String REFERENCE = "br.com.anteros.nosql.persistence.metadata.annotations.Reference";
+
+	private final TreeMap<String, String> index = new TreeMap<String, String>();
+
+	private final Set<String> indexed = new TreeSet<String>();
+
+	private boolean previousLoaded;
+
+	@Override
+	public Set<String> getSupportedAnnotationTypes() {
+		return Collections.singleton(ENTITY);
+	}
+
+	@Override
+	public SourceVersion getSupportedSourceVersion() {
+		return SourceVersion.latestSupported();
+	}
+
+	@Override
+	public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+		TypeElement entity = processingEnv.getElementUtils().getTypeElement(ENTITY);
+		if (entity == null) {
+			return false;
+		}
+		if (!previousLoaded) {
+			previousLoaded = true;
+			loadPrevious();
+		}
+		for (Element element : roundEnv.getElementsAnnotatedWith(entity)) {
+			if (element.getKind() == ElementKind.CLASS) {
+				indexEntity((TypeElement) element);
+			}
+		}
+		if (roundEnv.processingOver()) {
+			write();
+		}
+		return false;
+	}
+
+	protected void indexEntity(TypeElement type) {
+		Elements elements = processingEnv.getElementUtils();
+		String name = elements.getBinaryName(type).toString();
+		removeEntries(name);
+		indexed.add(name);
+
+		TypeElement superEntity = superclassOf(type);
+		while (superEntity != null && findAnnotation(superEntity, ENTITY) == null) {
+			superEntity = superclassOf(superEntity);
+		}
+		index.put(name, superEntity == null ? "" : elements.getBinaryName(superEntity).toString());
+
+		AnnotationMirror discriminator = findAnnotation(type, DISCRIMINATOR_VALUE);
+		if (discriminator != null) {
+			Object value = valueOf(discriminator, "value");
+			if (value != null && !value.toString().isEmpty()) {
+				put(name, AnterosEntityIndex.DISCRIMINATOR, value.toString());
+			}
+		}
+
+		for (TypeElement current = type; current != null; current = superclassOf(current)) {
+			Element id = findMember(current, ID);
+			if (id != null) {
+				put(name, AnterosEntityIndex.ID,
+						elements.getBinaryName(current) + String.valueOf(AnterosEntityIndex.SEPARATOR) + id.getSimpleName());
+				break;
+			}
+		}
+
+		Set<String> transientMembers = new TreeSet<String>();
+		Set<String> lazy = new TreeSet<String>();
+		Set<String> eager = new TreeSet<String>();
+		for (Element member : type.getEnclosedElements()) {
+			if (member.getKind() != ElementKind.FIELD && member.getKind() != ElementKind.METHOD) {
+				continue;
+			}
+			if (findAnnotation(member, TRANSIENT) != null) {
+				transientMembers.add(member.getSimpleName().toString());
+			}
+			AnnotationMirror reference = findAnnotation(member, REFERENCE);
+			if (reference != null) {
+				(Boolean.TRUE.equals(valueOf(reference, "lazy")) ? lazy : eager).add(member.getSimpleName().toString());
+			}
+		}
+		put(name, AnterosEntityIndex.TRANSIENT, join(transientMembers));
+		put(name, AnterosEntityIndex.LAZY, join(lazy));
+		put(name, AnterosEntityIndex.EAGER, join(eager));
+	}
+
+	private void put(String name, String key, String value) {
+		if (!value.isEmpty()) {
+			index.put(name + AnterosEntityIndex.SEPARATOR + key, value);
+		}
+	}
+
+	private void removeEntries(String name) {
+		String prefix = name + AnterosEntityIndex.SEPARATOR;
+		index.remove(name);
+		index.subMap(prefix, prefix + Character.MAX_VALUE).clear();
+	}
+
+	private static String join(Set<String> names) {
+		StringBuilder result = new StringBuilder();
+		for (String name : names) {
+			if (result.length() > 0) {
+				result.append(',');
+			}
+			result.append(name);
+		}
+		return result.toString();
+	}
+
+	private TypeElement superclassOf(TypeElement type) {
+		TypeMirror superclass = type.getSuperclass();
+		if (superclass.getKind() != TypeKind.DECLARED) {
+			return null;
+		}
+		return (TypeElement) ((DeclaredType) superclass).asElement();
+	}
+
+	private Element findMember(TypeElement type, String annotation) {
+		for (Element member : type.getEnclosedElements()) {
+			if (member.getKind() == ElementKind.FIELD && findAnnotation(member, annotation) != null) {
+				return member;
+			}
+		}
+		return null;
+	}
+
+	private static AnnotationMirror findAnnotation(Element element, String annotation) {
+		for (AnnotationMirror mirror : element.getAnnotationMirrors()) {
+			if (((TypeElement) mirror.getAnnotationType().asElement()).getQualifiedName().contentEquals(annotation)) {
+				return mirror;
+			}
+		}
+		return null;
+	}
+
+	private Object valueOf(AnnotationMirror mirror, String attribute) {
+		for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> entry : processingEnv
+				.getElementUtils().getElementValuesWithDefaults(mirror).entrySet()) {
+			if (entry.getKey().getSimpleName().contentEquals(attribute)) {
+				return entry.getValue().getValue();
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Carrega o índice da compilação anterior, mantendo as entidades que ainda
+	 * existem e não serão processadas novamente.
+	 */
+	private void loadPrevious() {
+		Properties previous = new Properties();
+		try {
+			FileObject resource = processingEnv.getFiler().getResource(StandardLocation.CLASS_OUTPUT, "",
+					AnterosEntityIndex.RESOURCE);
+			InputStream in = resource.openInputStream();
+			try {
+				previous.load(in);
+			} finally {
+				in.close();
+			}
+		} catch (IOException e) {
+			return;
+		} catch (IllegalArgumentException e) {
+			return;
+		}
+		Elements elements = processingEnv.getElementUtils();
+		for (String key : previous.stringPropertyNames()) {
+			int separator = key.indexOf(AnterosEntityIndex.SEPARATOR);
+			String name = separator < 0 ? key : key.substring(0, separator);
+			TypeElement type = elements.getTypeElement(name.replace('$', '.'));
+			if (type != null && findAnnotation(type, ENTITY) != null) {
+				index.put(key, previous.getProperty(key));
+			}
+		}
+	}
+
+	private void write() {
+		try {
+			FileObject resource = processingEnv.getFiler().createResource(StandardLocation.CLASS_OUTPUT, "",
+					AnterosEntityIndex.RESOURCE);
+			Writer writer = new OutputStreamWriter(resource.openOutputStream(), "ISO-8859-1");
+			try {
+				writer.write("# Gerado por " + getClass().getName() + "\n");
+				for (Map.Entry<String, String> entry : index.entrySet()) {
+					writer.write(escape(entry.getKey()));
+					writer.write('=');
+					writer.write(escape(entry.getValue()));
+					writer.write('\n');
+				}
+			} finally {
+				writer.close();
+			}
+		} catch (IOException e) {
+			processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+					"Não foi possível gravar " + AnterosEntityIndex.RESOURCE + ": " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Escapa no formato de {@link Properties#load(java.io.Reader)}; o arquivo
+	 * é gravado ordenado e sem data para que a compilação seja reproduzível.
+	 */
+	private static String escape(String value) {
+		StringBuilder result = new StringBuilder(value.length());
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			switch (c) {
+			case '\\':
+			case '=':
+			case ':':
+			case '#':
+			case '!':
+			case ' ':
+				result.append('\\').append(c);
+				break;
+			case '\t':
+				result.append("\\t");
+				break;
+			case '\n':
+				result.append("\\n");
+				break;
+			case '\r':
+				result.append("\\r");
+				break;
+			case '\f':
+				result.append("\\f");
+				break;
+			default:
+				if (c < 0x20 || c > 0x7e) {
+					result.append(String.format("\\u%04x", (int) c));
+				} else {
+					result.append(c);
+				}
+			}
+		}
+		return result.toString();
+	}
+}
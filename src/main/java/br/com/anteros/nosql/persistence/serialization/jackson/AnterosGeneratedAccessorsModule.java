@@ -0,0 +1,385 @@
+/*******************************************************************************
+ * Copyright 2012 Anteros Tecnologia
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package br.com.anteros.nosql.persistence.serialization.jackson;
+
+import java.util.List;
+
+import com.fasterxml.jackson.core.Version;
+import com.fasterxml.jackson.databind.BeanDescription;
+import com.fasterxml.jackson.databind.DeserializationConfig;
+import com.fasterxml.jackson.databind.JsonDeserializer;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.Module;
+import com.fasterxml.jackson.databind.SerializationConfig;
+import com.fasterxml.jackson.databind.deser.BeanDeserializerBuilder;
+import com.fasterxml.jackson.databind.deser.BeanDeserializerModifier;
+import com.fasterxml.jackson.databind.introspect.BeanPropertyDefinition;
+import com.fasterxml.jackson.databind.ser.BeanPropertyWriter;
+import com.fasterxml.jackson.databind.ser.BeanSerializerBuilder;
+import com.fasterxml.jackson.databind.ser.BeanSerializerModifier;
+import com.fasterxml.jackson.databind.type.ArrayType;
+import com.fasterxml.jackson.databind.type.CollectionLikeType;
+import com.fasterxml.jackson.databind.type.CollectionType;
+import com.fasterxml.jackson.databind.type.MapLikeType;
+import com.fasterxml.jackson.databind.type.MapType;
+import com.fasterxml.jackson.module.afterburner.deser.DeserializerModifier;
+import com.fasterxml.jackson.module.afterburner.ser.SerializerModifier;
+
+import br.com.anteros.nosql.persistence.session.NoSQLSessionFactory;
+
+/**
+ * Gera, com o jackson-module-afterburner, classes de acesso às propriedades e
+ * de instanciação das entidades registradas no {@link NoSQLSessionFactory},
+ * trocando os {@link BeanPropertyWriter}s e
+ * {@link com.fasterxml.jackson.databind.deser.SettableBeanProperty}s
+ * reflexivos por chamadas diretas. Demais classes continuam usando reflexão.
+ * <p>
+ * Membros privados ou não suportados continuam com o acesso reflexivo, e se a
+ * geração falhar para uma entidade (por exemplo, pacote selado ou class loader
+ * sem permissão), a entidade inteira mantém as propriedades originais.
+ * <p>
+ * A dependência do afterburner é opcional; veja
+ * {@link AnterosNoSQLObjectMapper#enableGeneratedAccessors()}.
+ */
+public class AnterosGeneratedAccessorsModule extends Module {
+
+	private static final String AFTERBURNER_CLASS = "com.fasterxml.jackson.module.afterburner.AfterburnerModule";
+
+	protected final NoSQLSessionFactory _sessionFactory;
+
+	public AnterosGeneratedAccessorsModule(NoSQLSessionFactory sessionFactory) {
+		_sessionFactory = sessionFactory;
+	}
+
+	/**
+	 * Indica se o jackson-module-afterburner está disponível no classpath.
+	 */
+	public static boolean isAvailable() {
+		try {
+			Class.forName(AFTERBURNER_CLASS, false, AnterosGeneratedAccessorsModule.class.getClassLoader());
+			return true;
+		} catch (ClassNotFoundException e) {
+			return false;
+		} catch (LinkageError e) {
+			return false;
+		}
+	}
+
+	@Override
+	public String getModuleName() {
+		return "jackson-datatype-anteros-accessors";
+	}
+
+	@Override
+	public Version version() {
+		return ModuleVersion.instance.version();
+	}
+
+	@Override
+	public void setupModule(SetupContext context) {
+		/*
+		 * Class loader nulo: as classes geradas são definidas no class loader da
+		 * própria entidade, para alcançar também membros de visibilidade de
+		 * pacote.
+		 */
+		context.addBeanSerializerModifier(new EntitySerializerModifier(new SerializerModifier(null)));
+		context.addBeanDeserializerModifier(new EntityDeserializerModifier(new DeserializerModifier(null, true)));
+	}
+
+	protected boolean isEntity(Class<?> beanClass) {
+		return _sessionFactory != null
+				&& _sessionFactory.getDescriptionEntityManager().getDescriptionEntity(beanClass) != null;
+	}
+
+	/**
+	 * Repassa ao afterburner todos os callbacks de beans cuja classe (ou, em
+	 * arrays, coleções e mapas, a classe do conteúdo) é uma entidade. Se o
+	 * afterburner falhar, fica o valor original.
+	 */
+	protected class EntitySerializerModifier extends BeanSerializerModifier {
+		private final BeanSerializerModifier _delegate;
+
+		EntitySerializerModifier(BeanSerializerModifier delegate) {
+			_delegate = delegate;
+		}
+
+		@Override
+		public List<BeanPropertyWriter> changeProperties(SerializationConfig config, BeanDescription beanDesc,
+				List<BeanPropertyWriter> beanProperties) {
+			if (!isEntity(beanDesc.getBeanClass())) {
+				return beanProperties;
+			}
+			try {
+				return _delegate.changeProperties(config, beanDesc, beanProperties);
+			} catch (RuntimeException e) {
+				return beanProperties;
+			} catch (LinkageError e) {
+				return beanProperties;
+			}
+		}
+
+		@Override
+		public List<BeanPropertyWriter> orderProperties(SerializationConfig config, BeanDescription beanDesc,
+				List<BeanPropertyWriter> beanProperties) {
+			if (!isEntity(beanDesc.getBeanClass())) {
+				return beanProperties;
+			}
+			try {
+				return _delegate.orderProperties(config, beanDesc, beanProperties);
+			} catch (RuntimeException e) {
+				return beanProperties;
+			} catch (LinkageError e) {
+				return beanProperties;
+			}
+		}
+
+		@Override
+		public BeanSerializerBuilder updateBuilder(SerializationConfig config, BeanDescription beanDesc,
+				BeanSerializerBuilder builder) {
+			if (!isEntity(beanDesc.getBeanClass())) {
+				return builder;
+			}
+			try {
+				return _delegate.updateBuilder(config, beanDesc, builder);
+			} catch (RuntimeException e) {
+				return builder;
+			} catch (LinkageError e) {
+				return builder;
+			}
+		}
+
+		@Override
+		public JsonSerializer<?> modifySerializer(SerializationConfig config, BeanDescription beanDesc,
+				JsonSerializer<?> serializer) {
+			if (!isEntity(beanDesc.getBeanClass())) {
+				return serializer;
+			}
+			try {
+				return _delegate.modifySerializer(config, beanDesc, serializer);
+			} catch (RuntimeException e) {
+				return serializer;
+			} catch (LinkageError e) {
+				return serializer;
+			}
+		}
+
+		@Override
+		public JsonSerializer<?> modifyArraySerializer(SerializationConfig config, ArrayType valueType,
+				BeanDescription beanDesc, JsonSerializer<?> serializer) {
+			if (!isEntity(valueType.getContentType().getRawClass())) {
+				return serializer;
+			}
+			try {
+				return _delegate.modifyArraySerializer(config, valueType, beanDesc, serializer);
+			} catch (RuntimeException e) {
+				return serializer;
+			} catch (LinkageError e) {
+				return serializer;
+			}
+		}
+
+		@Override
+		public JsonSerializer<?> modifyCollectionSerializer(SerializationConfig config, CollectionType valueType,
+				BeanDescription beanDesc, JsonSerializer<?> serializer) {
+			if (!isEntity(valueType.getContentType().getRawClass())) {
+				return serializer;
+			}
+			try {
+				return _delegate.modifyCollectionSerializer(config, valueType, beanDesc, serializer);
+			} catch (RuntimeException e) {
+				return serializer;
+			} catch (LinkageError e) {
+				return serializer;
+			}
+		}
+
+		@Override
+		public JsonSerializer<?> modifyCollectionLikeSerializer(SerializationConfig config,
+				CollectionLikeType valueType, BeanDescription beanDesc, JsonSerializer<?> serializer) {
+			if (!isEntity(valueType.getContentType().getRawClass())) {
+				return serializer;
+			}
+			try {
+				return _delegate.modifyCollectionLikeSerializer(config, valueType, beanDesc, serializer);
+			} catch (RuntimeException e) {
+				return serializer;
+			} catch (LinkageError e) {
+				return serializer;
+			}
+		}
+
+		@Override
+		public JsonSerializer<?> modifyMapSerializer(SerializationConfig config, MapType valueType,
+				BeanDescription beanDesc, JsonSerializer<?> serializer) {
+			if (!isEntity(valueType.getContentType().getRawClass())) {
+				return serializer;
+			}
+			try {
+				return _delegate.modifyMapSerializer(config, valueType, beanDesc, serializer);
+			} catch (RuntimeException e) {
+				return serializer;
+			} catch (LinkageError e) {
+				return serializer;
+			}
+		}
+
+		@Override
+		public JsonSerializer<?> modifyMapLikeSerializer(SerializationConfig config, MapLikeType valueType,
+				BeanDescription beanDesc, JsonSerializer<?> serializer) {
+			if (!isEntity(valueType.getContentType().getRawClass())) {
+				return serializer;
+			}
+			try {
+				return _delegate.modifyMapLikeSerializer(config, valueType, beanDesc, serializer);
+			} catch (RuntimeException e) {
+				return serializer;
+			} catch (LinkageError e) {
+				return serializer;
+			}
+		}
+	}
+
+	/**
+	 * Como o {@link EntitySerializerModifier}, para a leitura.
+	 */
+	protected class EntityDeserializerModifier extends BeanDeserializerModifier {
+		private final BeanDeserializerModifier _delegate;
+
+		EntityDeserializerModifier(BeanDeserializerModifier delegate) {
+			_delegate = delegate;
+		}
+
+		@Override
+		public List<BeanPropertyDefinition> updateProperties(DeserializationConfig config, BeanDescription beanDesc,
+				List<BeanPropertyDefinition> propDefs) {
+			if (!isEntity(beanDesc.getBeanClass())) {
+				return propDefs;
+			}
+			try {
+				return _delegate.updateProperties(config, beanDesc, propDefs);
+			} catch (RuntimeException e) {
+				return propDefs;
+			} catch (LinkageError e) {
+				return propDefs;
+			}
+		}
+
+		@Override
+		public BeanDeserializerBuilder updateBuilder(DeserializationConfig config, BeanDescription beanDesc,
+				BeanDeserializerBuilder builder) {
+			if (!isEntity(beanDesc.getBeanClass())) {
+				return builder;
+			}
+			try {
+				return _delegate.updateBuilder(config, beanDesc, builder);
+			} catch (RuntimeException e) {
+				return builder;
+			} catch (LinkageError e) {
+				return builder;
+			}
+		}
+
+		@Override
+		public JsonDeserializer<?> modifyDeserializer(DeserializationConfig config, BeanDescription beanDesc,
+				JsonDeserializer<?> deserializer) {
+			if (!isEntity(beanDesc.getBeanClass())) {
+				return deserializer;
+			}
+			try {
+				return _delegate.modifyDeserializer(config, beanDesc, deserializer);
+			} catch (RuntimeException e) {
+				return deserializer;
+			} catch (LinkageError e) {
+				return deserializer;
+			}
+		}
+
+		@Override
+		public JsonDeserializer<?> modifyArrayDeserializer(DeserializationConfig config, ArrayType valueType,
+				BeanDescription beanDesc, JsonDeserializer<?> deserializer) {
+			if (!isEntity(valueType.getContentType().getRawClass())) {
+				return deserializer;
+			}
+			try {
+				return _delegate.modifyArrayDeserializer(config, valueType, beanDesc, deserializer);
+			} catch (RuntimeException e) {
+				return deserializer;
+			} catch (LinkageError e) {
+				return deserializer;
+			}
+		}
+
+		@Override
+		public JsonDeserializer<?> modifyCollectionDeserializer(DeserializationConfig config,
+				CollectionType valueType, BeanDescription beanDesc, JsonDeserializer<?> deserializer) {
+			if (!isEntity(valueType.getContentType().getRawClass())) {
+				return deserializer;
+			}
+			try {
+				return _delegate.modifyCollectionDeserializer(config, valueType, beanDesc, deserializer);
+			} catch (RuntimeException e) {
+				return deserializer;
+			} catch (LinkageError e) {
+				return deserializer;
+			}
+		}
+
+		@Override
+		public JsonDeserializer<?> modifyCollectionLikeDeserializer(DeserializationConfig config,
+				CollectionLikeType valueType, BeanDescription beanDesc, JsonDeserializer<?> deserializer) {
+			if (!isEntity(valueType.getContentType().getRawClass())) {
+				return deserializer;
+			}
+			try {
+				return _delegate.modifyCollectionLikeDeserializer(config, valueType, beanDesc, deserializer);
+			} catch (RuntimeException e) {
+				return deserializer;
+			} catch (LinkageError e) {
+				return deserializer;
+			}
+		}
+
+		@Override
+		public JsonDeserializer<?> modifyMapDeserializer(DeserializationConfig config, MapType valueType,
+				BeanDescription beanDesc, JsonDeserializer<?> deserializer) {
+			if (!isEntity(valueType.getContentType().getRawClass())) {
+				return deserializer;
+			}
+			try {
+				return _delegate.modifyMapDeserializer(config, valueType, beanDesc, deserializer);
+			} catch (RuntimeException e) {
+				return deserializer;
+			} catch (LinkageError e) {
+				return deserializer;
+			}
+		}
+
+		@Override
+		public JsonDeserializer<?> modifyMapLikeDeserializer(DeserializationConfig config, MapLikeType valueType,
+				BeanDescription beanDesc, JsonDeserializer<?> deserializer) {
+			if (!isEntity(valueType.getContentType().getRawClass())) {
+				return deserializer;
+			}
+			try {
+				return _delegate.modifyMapLikeDeserializer(config, valueType, beanDesc, deserializer);
+			} catch (RuntimeException e) {
+				return deserializer;
+			} catch (LinkageError e) {
+				return deserializer;
+			}
+		}
+	}
+}
@@ -0,0 +1,431 @@
+/*******************************************************************************
+ * Copyright 2012 Anteros Tecnologia
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package br.com.anteros.nosql.persistence.serialization.jackson;
+
+import java.io.IOException;
+import java.text.ParsePosition;
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.TemporalAccessor;
+import java.util.Date;
+import java.util.Locale;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.BeanProperty;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JsonDeserializer;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.deser.ContextualDeserializer;
+import com.fasterxml.jackson.databind.deser.std.DateDeserializers;
+import com.fasterxml.jackson.databind.deser.std.StdScalarDeserializer;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import com.fasterxml.jackson.databind.ser.ContextualSerializer;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+
+/**
+ * Serializadores e deserializadores de data/hora no mesmo formato que o
+ * {@link AnterosNoSQLObjectMapper} grava com {@link java.text.SimpleDateFormat}
+ * ({@value AnterosNoSQLObjectMapper#DATE_TIME_PATTERN}, no fuso horário da
+ * JVM), mas usando {@link DateTimeFormatter}s imutáveis e pré-compilados: não
+ * há clonagem nem sincronização de formatador a cada valor.
+ * <p>
+ * {@link LocalDate} é gravado no formato {@value #DATE_PATTERN},
+ * {@link LocalDateTime} no de {@link java.util.Date}, {@link Instant} em
+ * ISO-8601 UTC, {@link OffsetDateTime} com o deslocamento e
+ * {@link ZonedDateTime} com o deslocamento e o fuso. Um {@link JsonFormat} na
+ * propriedade tem prioridade, como nos serializadores padrão do Jackson.
+ * <p>
+ * Textos que o formatador estrito não reconhece são repassados ao
+ * {@link java.text.DateFormat} configurado no mapper, de modo que dados
+ * gravados anteriormente continuam sendo lidos. O perfil padrão do mapper
+ * registra {@link #readers(ZoneId)} para ler o que este módulo grava.
+ */
+public class AnterosISODateTimeModule extends SimpleModule {
+
+	private static final long serialVersionUID = 1L;
+
+	public static final String DATE_PATTERN = "yyyy-MM-dd";
+
+	public AnterosISODateTimeModule() {
+		this(ZoneId.systemDefault());
+	}
+
+	public AnterosISODateTimeModule(ZoneId zone) {
+		super("jackson-datatype-anteros-iso-date", ModuleVersion.instance.version());
+		DateTimeFormatter dateTimeFormatter = dateTimeFormatter(zone);
+		addSerializer(Date.class, new DateSerializer(dateTimeFormatter));
+		addSerializer(LocalDateTime.class, new LocalDateTimeSerializer(dateTimeFormatter));
+		addSerializer(LocalDate.class, new LocalDateSerializer(dateFormatter(zone)));
+		addSerializer(Instant.class, new TemporalSerializer<Instant>(Instant.class, instantFormatter(zone)));
+		addSerializer(OffsetDateTime.class,
+				new TemporalSerializer<OffsetDateTime>(OffsetDateTime.class, offsetDateTimeFormatter()));
+		addSerializer(ZonedDateTime.class,
+				new TemporalSerializer<ZonedDateTime>(ZonedDateTime.class, zonedDateTimeFormatter()));
+		addDeserializer(Date.class, new DateDeserializer(dateTimeFormatter));
+		addJavaTimeDeserializers(this, zone);
+	}
+
+	/**
+	 * Módulo só com os deserializadores dos tipos de {@code java.time} deste
+	 * módulo, para mappers que gravam datas com o {@link java.text.DateFormat}
+	 * do Jackson mas precisam ler o que o perfil de produção grava.
+	 */
+	public static SimpleModule readers(ZoneId zone) {
+		return addJavaTimeDeserializers(
+				new SimpleModule("jackson-datatype-anteros-iso-date-readers", ModuleVersion.instance.version()), zone);
+	}
+
+	private static SimpleModule addJavaTimeDeserializers(SimpleModule module, ZoneId zone) {
+		module.addDeserializer(LocalDateTime.class, new LocalDateTimeDeserializer(dateTimeFormatter(zone)));
+		module.addDeserializer(LocalDate.class, new LocalDateDeserializer(dateFormatter(zone)));
+		module.addDeserializer(Instant.class, new InstantDeserializer(instantFormatter(zone)));
+		module.addDeserializer(OffsetDateTime.class, new OffsetDateTimeDeserializer(offsetDateTimeFormatter()));
+		module.addDeserializer(ZonedDateTime.class, new ZonedDateTimeDeserializer(zonedDateTimeFormatter()));
+		return module;
+	}
+
+	static DateTimeFormatter dateTimeFormatter(ZoneId zone) {
+		return DateTimeFormatter.ofPattern(AnterosNoSQLObjectMapper.DATE_TIME_PATTERN).withZone(zone);
+	}
+
+	static DateTimeFormatter dateFormatter(ZoneId zone) {
+		return DateTimeFormatter.ofPattern(DATE_PATTERN).withZone(zone);
+	}
+
+	static DateTimeFormatter instantFormatter(ZoneId zone) {
+		return DateTimeFormatter.ISO_INSTANT.withZone(zone);
+	}
+
+	/*
+	 * OffsetDateTime e ZonedDateTime carregam o próprio deslocamento: um fuso
+	 * no formatador os converteria para ele.
+	 */
+	static DateTimeFormatter offsetDateTimeFormatter() {
+		return DateTimeFormatter.ISO_OFFSET_DATE_TIME;
+	}
+
+	static DateTimeFormatter zonedDateTimeFormatter() {
+		return DateTimeFormatter.ISO_ZONED_DATE_TIME;
+	}
+
+	static TemporalAccessor parse(DateTimeFormatter formatter, String text) {
+		ParsePosition position = new ParsePosition(0);
+		try {
+			TemporalAccessor result = formatter.parse(text, position);
+			return position.getErrorIndex() < 0 ? result : null;
+		} catch (DateTimeException e) {
+			return null;
+		}
+	}
+
+	static boolean hasOverrides(JsonFormat.Value format) {
+		return format != null && (format.hasPattern() || format.hasTimeZone() || format.hasLocale()
+				|| format.getShape() != JsonFormat.Shape.ANY);
+	}
+
+	/**
+	 * Aplica o padrão, o fuso e a localidade de um {@link JsonFormat} ao
+	 * formatador; sem nenhum deles devolve o próprio formatador.
+	 */
+	static DateTimeFormatter withOverrides(DateTimeFormatter formatter, JsonFormat.Value format) {
+		if (format == null) {
+			return formatter;
+		}
+		DateTimeFormatter result = formatter;
+		if (format.hasPattern()) {
+			Locale locale = format.hasLocale() ? format.getLocale() : Locale.getDefault();
+			result = DateTimeFormatter.ofPattern(format.getPattern(), locale).withZone(formatter.getZone());
+		} else if (format.hasLocale()) {
+			result = result.withLocale(format.getLocale());
+		}
+		if (format.hasTimeZone()) {
+			result = result.withZone(format.getTimeZone().toZoneId());
+		}
+		return result;
+	}
+
+	/**
+	 * Grava {@link Date}; com um {@link JsonFormat} na propriedade passa a
+	 * valer o serializador padrão do Jackson, que o interpreta.
+	 */
+	public static class DateSerializer extends StdSerializer<Date> implements ContextualSerializer {
+
+		private static final long serialVersionUID = 1L;
+
+		private final DateTimeFormatter formatter;
+
+		public DateSerializer(DateTimeFormatter formatter) {
+			super(Date.class);
+			this.formatter = formatter;
+		}
+
+		@Override
+		public JsonSerializer<?> createContextual(SerializerProvider prov, BeanProperty property)
+				throws JsonMappingException {
+			if (hasOverrides(findFormatOverrides(prov, property, handledType()))) {
+				return com.fasterxml.jackson.databind.ser.std.DateSerializer.instance.createContextual(prov, property);
+			}
+			return this;
+		}
+
+		@Override
+		public void serialize(Date value, JsonGenerator gen, SerializerProvider provider) throws IOException {
+			gen.writeString(formatter.format(value.toInstant()));
+		}
+	}
+
+	/**
+	 * Lê {@link Date}; com um {@link JsonFormat} na propriedade passa a valer o
+	 * deserializador padrão do Jackson, que o interpreta.
+	 */
+	public static class DateDeserializer extends StdScalarDeserializer<Date> implements ContextualDeserializer {
+
+		private static final long serialVersionUID = 1L;
+
+		private final DateTimeFormatter formatter;
+
+		public DateDeserializer(DateTimeFormatter formatter) {
+			super(Date.class);
+			this.formatter = formatter;
+		}
+
+		@Override
+		public JsonDeserializer<?> createContextual(DeserializationContext ctxt, BeanProperty property)
+				throws JsonMappingException {
+			if (hasOverrides(findFormatOverrides(ctxt, property, handledType()))) {
+				return DateDeserializers.DateDeserializer.instance.createContextual(ctxt, property);
+			}
+			return this;
+		}
+
+		@Override
+		public Date deserialize(JsonParser p, DeserializationContext ctxt) throws IOException {
+			if (p.hasToken(JsonToken.VALUE_STRING)) {
+				String text = p.getText().trim();
+				if (text.isEmpty()) {
+					return null;
+				}
+				TemporalAccessor parsed = parse(formatter, text);
+				if (parsed != null) {
+					return Date.from(LocalDateTime.from(parsed).atZone(formatter.getZone()).toInstant());
+				}
+			}
+			return _parseDate(p, ctxt);
+		}
+	}
+
+	/**
+	 * Grava um tipo de {@code java.time} com o formatador informado ou com o
+	 * padrão, o fuso e a localidade do {@link JsonFormat} da propriedade.
+	 */
+	public static class TemporalSerializer<T extends TemporalAccessor> extends StdSerializer<T>
+			implements ContextualSerializer {
+
+		private static final long serialVersionUID = 1L;
+
+		protected final DateTimeFormatter formatter;
+
+		public TemporalSerializer(Class<T> type, DateTimeFormatter formatter) {
+			super(type);
+			this.formatter = formatter;
+		}
+
+		@Override
+		public JsonSerializer<?> createContextual(SerializerProvider prov, BeanProperty property)
+				throws JsonMappingException {
+			DateTimeFormatter contextual = withOverrides(formatter, findFormatOverrides(prov, property, handledType()));
+			return contextual == formatter ? this : new TemporalSerializer<T>(handledType(), contextual);
+		}
+
+		@Override
+		public void serialize(T value, JsonGenerator gen, SerializerProvider provider) throws IOException {
+			gen.writeString(formatter.format(value));
+		}
+	}
+
+	/**
+	 * Lê um tipo de {@code java.time} com o formatador informado ou com o
+	 * padrão, o fuso e a localidade do {@link JsonFormat} da propriedade.
+	 */
+	public static abstract class TemporalDeserializer<T> extends StdScalarDeserializer<T>
+			implements ContextualDeserializer {
+
+		private static final long serialVersionUID = 1L;
+
+		protected final DateTimeFormatter formatter;
+
+		protected TemporalDeserializer(Class<T> type, DateTimeFormatter formatter) {
+			super(type);
+			this.formatter = formatter;
+		}
+
+		protected abstract TemporalDeserializer<T> withFormatter(DateTimeFormatter formatter);
+
+		protected abstract T convert(TemporalAccessor parsed);
+
+		@Override
+		public JsonDeserializer<?> createContextual(DeserializationContext ctxt, BeanProperty property)
+				throws JsonMappingException {
+			DateTimeFormatter contextual = withOverrides(formatter, findFormatOverrides(ctxt, property, handledType()));
+			return contextual == formatter ? this : withFormatter(contextual);
+		}
+
+		@SuppressWarnings("unchecked")
+		@Override
+		public T deserialize(JsonParser p, DeserializationContext ctxt) throws IOException {
+			if (!p.hasToken(JsonToken.VALUE_STRING)) {
+				return (T) ctxt.handleUnexpectedToken(handledType(), p);
+			}
+			String text = p.getText().trim();
+			if (text.isEmpty()) {
+				return null;
+			}
+			TemporalAccessor parsed = parse(formatter, text);
+			if (parsed == null) {
+				return (T) ctxt.handleWeirdStringValue(handledType(), text, "expected format \"%s\"", formatter);
+			}
+			try {
+				return convert(parsed);
+			} catch (DateTimeException e) {
+				return (T) ctxt.handleWeirdStringValue(handledType(), text, e.getMessage());
+			}
+		}
+	}
+
+	public static class LocalDateTimeSerializer extends TemporalSerializer<LocalDateTime> {
+
+		private static final long serialVersionUID = 1L;
+
+		public LocalDateTimeSerializer(DateTimeFormatter formatter) {
+			super(LocalDateTime.class, formatter);
+		}
+	}
+
+	public static class LocalDateTimeDeserializer extends TemporalDeserializer<LocalDateTime> {
+
+		private static final long serialVersionUID = 1L;
+
+		public LocalDateTimeDeserializer(DateTimeFormatter formatter) {
+			super(LocalDateTime.class, formatter);
+		}
+
+		@Override
+		protected TemporalDeserializer<LocalDateTime> withFormatter(DateTimeFormatter formatter) {
+			return new LocalDateTimeDeserializer(formatter);
+		}
+
+		@Override
+		protected LocalDateTime convert(TemporalAccessor parsed) {
+			return LocalDateTime.from(parsed);
+		}
+	}
+
+	public static class LocalDateSerializer extends TemporalSerializer<LocalDate> {
+
+		private static final long serialVersionUID = 1L;
+
+		public LocalDateSerializer(DateTimeFormatter formatter) {
+			super(LocalDate.class, formatter);
+		}
+	}
+
+	public static class LocalDateDeserializer extends TemporalDeserializer<LocalDate> {
+
+		private static final long serialVersionUID = 1L;
+
+		public LocalDateDeserializer(DateTimeFormatter formatter) {
+			super(LocalDate.class, formatter);
+		}
+
+		@Override
+		protected TemporalDeserializer<LocalDate> withFormatter(DateTimeFormatter formatter) {
+			return new LocalDateDeserializer(formatter);
+		}
+
+		@Override
+		protected LocalDate convert(TemporalAccessor parsed) {
+			return LocalDate.from(parsed);
+		}
+	}
+
+	public static class InstantDeserializer extends TemporalDeserializer<Instant> {
+
+		private static final long serialVersionUID = 1L;
+
+		public InstantDeserializer(DateTimeFormatter formatter) {
+			super(Instant.class, formatter);
+		}
+
+		@Override
+		protected TemporalDeserializer<Instant> withFormatter(DateTimeFormatter formatter) {
+			return new InstantDeserializer(formatter);
+		}
+
+		@Override
+		protected Instant convert(TemporalAccessor parsed) {
+			return Instant.from(parsed);
+		}
+	}
+
+	public static class OffsetDateTimeDeserializer extends TemporalDeserializer<OffsetDateTime> {
+
+		private static final long serialVersionUID = 1L;
+
+		public OffsetDateTimeDeserializer(DateTimeFormatter formatter) {
+			super(OffsetDateTime.class, formatter);
+		}
+
+		@Override
+		protected TemporalDeserializer<OffsetDateTime> withFormatter(DateTimeFormatter formatter) {
+			return new OffsetDateTimeDeserializer(formatter);
+		}
+
+		@Override
+		protected OffsetDateTime convert(TemporalAccessor parsed) {
+			return OffsetDateTime.from(parsed);
+		}
+	}
+
+	public static class ZonedDateTimeDeserializer extends TemporalDeserializer<ZonedDateTime> {
+
+		private static final long serialVersionUID = 1L;
+
+		public ZonedDateTimeDeserializer(DateTimeFormatter formatter) {
+			super(ZonedDateTime.class, formatter);
+		}
+
+		@Override
+		protected TemporalDeserializer<ZonedDateTime> withFormatter(DateTimeFormatter formatter) {
+			return new ZonedDateTimeDeserializer(formatter);
+		}
+
+		@Override
+		protected ZonedDateTime convert(TemporalAccessor parsed) {
+			return ZonedDateTime.from(parsed);
+		}
+	}
+}
@@ -0,0 +1,55 @@
+/*******************************************************************************
+ * Copyright 2012 Anteros Tecnologia
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package br.com.anteros.nosql.persistence.serialization.jackson;
+
+import br.com.anteros.nosql.persistence.metadata.annotations.Entity;
+import br.com.anteros.nosql.persistence.metadata.annotations.Id;
+
+/**
+ * Como as entidades ({@link Entity}) são identificadas no JSON para que
+ * referências repetidas ou circulares no mesmo documento sejam escritas uma
+ * única vez (veja {@link com.fasterxml.jackson.annotation.JsonIdentityInfo}).
+ */
+public enum AnterosIdentityStrategy {
+
+	/**
+	 * Um UUID aleatório por entidade escrita, na propriedade {@code "@id"}. É o
+	 * comportamento original e o padrão.
+	 */
+	UUID,
+
+	/**
+	 * O próprio identificador da entidade (o campo anotado com {@link Id}): a
+	 * primeira ocorrência é escrita inteira e as demais apenas com o valor do
+	 * id, sem propriedade extra. O escopo é a classe que declara o id, logo
+	 * entidades diferentes podem repetir valores. Entidades sem {@link Id}
+	 * usam {@link #SEQUENCE}; entidades ainda sem id são escritas inteiras em
+	 * cada ocorrência, como em {@link #NONE}.
+	 */
+	ENTITY_ID,
+
+	/**
+	 * Um inteiro sequencial por documento escrito, na propriedade
+	 * {@code "@id"}.
+	 */
+	SEQUENCE,
+
+	/**
+	 * Sem identidade: cada referência é escrita inteira. Só serve para grafos
+	 * acíclicos; um ciclo falha na escrita.
+	 */
+	NONE
+}
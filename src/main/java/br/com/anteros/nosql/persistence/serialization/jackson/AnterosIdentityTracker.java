@@ -0,0 +1,156 @@
+/*******************************************************************************
+ * Copyright 2012 Anteros Tecnologia
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package br.com.anteros.nosql.persistence.serialization.jackson;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.fasterxml.jackson.annotation.ObjectIdGenerator;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.ser.impl.WritableObjectId;
+
+/**
+ * Mapa de identidade dos object ids de uma escrita, usado pelo
+ * {@link AnterosSerializerProvider} no lugar do mapa e da lista de geradores
+ * que o Jackson aloca a cada chamada.
+ * <p>
+ * As chaves ficam num array com endereçamento aberto (sondagem linear sobre
+ * {@link System#identityHashCode(Object)}) e os ids num array paralelo, sem
+ * entradas nem chaves encapsuladas. Cada thread reaproveita o seu rastreador
+ * entre as escritas; ele é limpo ao final de cada valor raiz e, se cresceu
+ * além de {@link #MAX_RETAINED_CAPACITY}, volta ao tamanho inicial para não
+ * reter memória.
+ */
+final class AnterosIdentityTracker {
+
+	static final int INITIAL_CAPACITY = 64;
+
+	static final int MAX_RETAINED_CAPACITY = 1 << 16;
+
+	private static final ThreadLocal<AnterosIdentityTracker> TRACKERS = new ThreadLocal<AnterosIdentityTracker>();
+
+	private Object[] keys = new Object[INITIAL_CAPACITY];
+
+	private WritableObjectId[] values = new WritableObjectId[INITIAL_CAPACITY];
+
+	private int size;
+
+	private final List<ObjectIdGenerator<?>> generators = new ArrayList<ObjectIdGenerator<?>>(4);
+
+	private boolean inUse;
+
+	/**
+	 * Retorna o rastreador da thread ou, se ele já está em uso por outra
+	 * escrita em andamento na mesma thread, um novo.
+	 */
+	static AnterosIdentityTracker acquire() {
+		AnterosIdentityTracker tracker = TRACKERS.get();
+		if (tracker == null) {
+			tracker = new AnterosIdentityTracker();
+			TRACKERS.set(tracker);
+		} else if (tracker.inUse) {
+			tracker = new AnterosIdentityTracker();
+		}
+		tracker.inUse = true;
+		return tracker;
+	}
+
+	/**
+	 * Limpa o rastreador e o devolve para a thread.
+	 */
+	void release() {
+		if (size > 0) {
+			if (keys.length > MAX_RETAINED_CAPACITY) {
+				keys = new Object[INITIAL_CAPACITY];
+				values = new WritableObjectId[INITIAL_CAPACITY];
+			} else {
+				Arrays.fill(keys, null);
+				Arrays.fill(values, null);
+			}
+			size = 0;
+		}
+		generators.clear();
+		inUse = false;
+	}
+
+	/**
+	 * Mesmo contrato de
+	 * {@link com.fasterxml.jackson.databind.ser.DefaultSerializerProvider#findObjectId(Object, ObjectIdGenerator)}:
+	 * retorna o id já atribuído ao objeto ou registra um novo.
+	 */
+	WritableObjectId find(Object pojo, ObjectIdGenerator<?> generatorType, SerializerProvider provider) {
+		int mask = keys.length - 1;
+		int index = indexOf(pojo, mask);
+		Object key;
+		while ((key = keys[index]) != null) {
+			if (key == pojo) {
+				return values[index];
+			}
+			index = (index + 1) & mask;
+		}
+		WritableObjectId objectId = new WritableObjectId(generatorFor(generatorType, provider));
+		keys[index] = pojo;
+		values[index] = objectId;
+		if (++size << 1 > keys.length) {
+			resize();
+		}
+		return objectId;
+	}
+
+	int size() {
+		return size;
+	}
+
+	int capacity() {
+		return keys.length;
+	}
+
+	private ObjectIdGenerator<?> generatorFor(ObjectIdGenerator<?> generatorType, SerializerProvider provider) {
+		for (int i = 0; i < generators.size(); i++) {
+			ObjectIdGenerator<?> generator = generators.get(i);
+			if (generator.canUseFor(generatorType)) {
+				return generator;
+			}
+		}
+		ObjectIdGenerator<?> generator = generatorType.newForSerialization(provider);
+		generators.add(generator);
+		return generator;
+	}
+
+	private void resize() {
+		Object[] oldKeys = keys;
+		WritableObjectId[] oldValues = values;
+		keys = new Object[oldKeys.length << 1];
+		values = new WritableObjectId[oldKeys.length << 1];
+		int mask = keys.length - 1;
+		for (int i = 0; i < oldKeys.length; i++) {
+			if (oldKeys[i] != null) {
+				int index = indexOf(oldKeys[i], mask);
+				while (keys[index] != null) {
+					index = (index + 1) & mask;
+				}
+				keys[index] = oldKeys[i];
+				values[index] = oldValues[i];
+			}
+		}
+	}
+
+	private static int indexOf(Object pojo, int mask) {
+		int hash = System.identityHashCode(pojo);
+		return (hash ^ (hash >>> 16)) & mask;
+	}
+}
@@ -0,0 +1,340 @@
+/*******************************************************************************
+ * Copyright 2012 Anteros Tecnologia
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package br.com.anteros.nosql.persistence.serialization.jackson;
+
+import java.lang.reflect.Field;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.fasterxml.jackson.databind.BeanDescription;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.MapperFeature;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.introspect.AnnotatedField;
+import com.fasterxml.jackson.databind.introspect.BeanPropertyDefinition;
+import com.fasterxml.jackson.databind.ser.BeanPropertyWriter;
+import com.fasterxml.jackson.databind.ser.PropertyWriter;
+import com.fasterxml.jackson.databind.ser.std.BeanSerializerBase;
+
+import br.com.anteros.nosql.persistence.metadata.annotations.Entity;
+import br.com.anteros.nosql.persistence.proxy.AnterosPersistentCollection;
+import br.com.anteros.nosql.persistence.proxy.AnterosProxyObject;
+
+/**
+ * Percorre o grafo de objetos que será serializado e reúne os
+ * {@link AnterosProxyObject}s e {@link AnterosPersistentCollection}s ainda não
+ * inicializados, agrupados por entidade (proxies) e por campo (coleções).
+ * <p>
+ * Objetos já inicializados são percorridos; os não inicializados não, pois
+ * percorrê-los dispararia justamente o carregamento que se quer agrupar. Cada
+ * objeto é visitado uma única vez, portanto ciclos não são problema.
+ * <p>
+ * Os beans são percorridos pelas propriedades do seu serializador, as mesmas
+ * que serão escritas: propriedades ignoradas, transientes ou fora da view
+ * ativa não são coletadas. Beans com serializador próprio não são
+ * percorridos.
+ * <p>
+ * Com uma {@link AnterosProjection}, apenas as propriedades selecionadas são
+ * percorridas (pelo nome JSON, nas mesmas propriedades que o
+ * {@link AnterosProjectedPropertyWriter} filtra), e cada referência encontrada guarda o nó
+ * da projeção em que foi achada, para que o percurso continue a partir dele
+ * depois de carregada (veja {@link #collectInitialized(Object)}).
+ */
+public class AnterosLazyGraphCollector {
+
+	private final Map<Object, AnterosProjection> visited = new IdentityHashMap<Object, AnterosProjection>();
+
+	private final Map<Object, AnterosProjection> lazyProjections = new IdentityHashMap<Object, AnterosProjection>();
+
+	private final Deque<Object> pending = new ArrayDeque<Object>();
+
+	private final Deque<AnterosProjection> pendingProjections = new ArrayDeque<AnterosProjection>();
+
+	private final Map<Class<?>, List<AnterosProxyObject>> proxies = new LinkedHashMap<Class<?>, List<AnterosProxyObject>>();
+
+	private final Map<Field, List<AnterosPersistentCollection>> collections = new LinkedHashMap<Field, List<AnterosPersistentCollection>>();
+
+	private final boolean collectProxies;
+
+	private final boolean collectCollections;
+
+	private final AnterosProjection projection;
+
+	private final SerializerProvider provider;
+
+	private final Map<PropertyWriter, Field> collectionFields = new IdentityHashMap<PropertyWriter, Field>();
+
+	public AnterosLazyGraphCollector(SerializerProvider provider) {
+		this(provider, true, true);
+	}
+
+	public AnterosLazyGraphCollector(SerializerProvider provider, boolean collectProxies,
+			boolean collectCollections) {
+		this(provider, collectProxies, collectCollections, null);
+	}
+
+	/**
+	 * @param provider
+	 *            provider da escrita, de onde vêm os serializadores dos beans
+	 * @param collectProxies
+	 *            se falso, proxies não inicializados são ignorados, como
+	 *            quando serão escritos como referência
+	 * @param collectCollections
+	 *            se falso, coleções persistentes não inicializadas são
+	 *            ignoradas, como quando serão escritas em páginas
+	 * @param projection
+	 *            projeção da escrita, ou null para percorrer tudo
+	 */
+	public AnterosLazyGraphCollector(SerializerProvider provider, boolean collectProxies,
+			boolean collectCollections, AnterosProjection projection) {
+		this.provider = provider;
+		this.collectProxies = collectProxies;
+		this.collectCollections = collectCollections;
+		this.projection = projection == null ? AnterosProjection.ALL : projection;
+	}
+
+	public AnterosLazyGraphCollector collect(Object root) throws Exception {
+		enqueue(root, projection);
+		return drain();
+	}
+
+	/**
+	 * Percorre o conteúdo de um proxy ou coleção persistente encontrado por
+	 * este coletor e já carregado, a partir do nó da projeção em que foi
+	 * encontrado.
+	 */
+	public AnterosLazyGraphCollector collectInitialized(Object lazy) throws Exception {
+		return collectInitialized(lazy, projectionOf(lazy));
+	}
+
+	public AnterosLazyGraphCollector collectInitialized(Object lazy, AnterosProjection projection)
+			throws Exception {
+		if (lazy instanceof AnterosProxyObject) {
+			enqueue(((AnterosProxyObject) lazy).initializeAndReturnObject(), projection);
+		} else if (lazy instanceof Collection) {
+			for (Object element : (Collection<?>) lazy) {
+				enqueue(element, projection);
+			}
+		} else if (lazy instanceof Map) {
+			for (Object element : ((Map<?, ?>) lazy).values()) {
+				enqueue(element, projection);
+			}
+		}
+		return drain();
+	}
+
+	/**
+	 * Retorna o nó da projeção em que o proxy ou coleção foi encontrado.
+	 */
+	public AnterosProjection projectionOf(Object lazy) {
+		AnterosProjection result = lazyProjections.get(lazy);
+		return result == null ? AnterosProjection.ALL : result;
+	}
+
+	protected AnterosLazyGraphCollector drain() throws Exception {
+		while (!pending.isEmpty()) {
+			visit(pending.poll(), null, pendingProjections.poll());
+		}
+		return this;
+	}
+
+	protected void enqueue(Object value, AnterosProjection projection) {
+		if (value != null) {
+			pending.add(value);
+			pendingProjections.add(projection);
+		}
+	}
+
+	public Map<Class<?>, List<AnterosProxyObject>> getProxies() {
+		return proxies;
+	}
+
+	public Map<Field, List<AnterosPersistentCollection>> getCollections() {
+		return collections;
+	}
+
+	public boolean isEmpty() {
+		return proxies.isEmpty() && collections.isEmpty();
+	}
+
+	/**
+	 * Limpa os grupos encontrados, mantendo o registro de objetos já visitados,
+	 * para que uma nova coleta a partir dos objetos recém-carregados não
+	 * percorra de novo o que já foi visto.
+	 */
+	public void clearGroups() {
+		proxies.clear();
+		collections.clear();
+	}
+
+	protected void visit(Object value, Field field, AnterosProjection projection) throws Exception {
+		if (value == null) {
+			return;
+		}
+		AnterosProjection previous = visited.get(value);
+		if (previous == projection || previous == AnterosProjection.ALL) {
+			return;
+		}
+		visited.put(value, projection);
+		if (value instanceof AnterosProxyObject) {
+			AnterosProxyObject proxy = (AnterosProxyObject) value;
+			if (!proxy.isInitialized()) {
+				if (collectProxies) {
+					group(proxies, entityClassOf(value.getClass())).add(proxy);
+					rememberProjection(proxy, projection);
+				}
+				return;
+			}
+			enqueue(proxy.initializeAndReturnObject(), projection);
+			return;
+		}
+		if (value instanceof AnterosPersistentCollection && !((AnterosPersistentCollection) value).isInitialized()) {
+			if (field != null && collectCollections) {
+				group(collections, field).add((AnterosPersistentCollection) value);
+				rememberProjection(value, projection);
+			}
+			return;
+		}
+		if (value instanceof Collection) {
+			for (Object element : (Collection<?>) value) {
+				enqueue(element, projection);
+			}
+			return;
+		}
+		if (value instanceof Map) {
+			for (Object element : ((Map<?, ?>) value).values()) {
+				enqueue(element, projection);
+			}
+			return;
+		}
+		if (value instanceof Object[]) {
+			for (Object element : (Object[]) value) {
+				enqueue(element, projection);
+			}
+			return;
+		}
+		if (isLeaf(value.getClass())) {
+			return;
+		}
+		JsonSerializer<Object> serializer = provider.findValueSerializer(value.getClass());
+		if (!(serializer instanceof BeanSerializerBase)) {
+			return;
+		}
+		Class<?> activeView = provider.getActiveView();
+		for (Iterator<PropertyWriter> it = ((BeanSerializerBase) serializer).properties(); it.hasNext();) {
+			PropertyWriter property = it.next();
+			if (!(property instanceof BeanPropertyWriter)) {
+				continue;
+			}
+			BeanPropertyWriter child = (BeanPropertyWriter) property;
+			if (activeView != null && !isInView(child, activeView)) {
+				continue;
+			}
+			AnterosProjection childProjection = child instanceof AnterosProjectedPropertyWriter
+					? projection.child(child.getName()) : projection;
+			if (childProjection == null) {
+				continue;
+			}
+			Object childValue = child.get(value);
+			if (childValue instanceof AnterosPersistentCollection) {
+				visit(childValue, fieldOf(value.getClass(), child), childProjection);
+			} else if (childValue != null) {
+				enqueue(childValue, childProjection);
+			}
+		}
+	}
+
+	/**
+	 * Mesma regra do {@link BeanSerializerBase} para escolher as propriedades
+	 * escritas numa view.
+	 */
+	protected boolean isInView(BeanPropertyWriter property, Class<?> activeView) {
+		Class<?>[] views = property.getViews();
+		if (views == null) {
+			return provider.isEnabled(MapperFeature.DEFAULT_VIEW_INCLUSION);
+		}
+		for (Class<?> view : views) {
+			if (view.isAssignableFrom(activeView)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Retorna o campo que guarda a coleção da propriedade, chave dos grupos de
+	 * {@link #getCollections()}, ou null se a propriedade não tem campo.
+	 */
+	protected Field fieldOf(Class<?> beanClass, BeanPropertyWriter property) {
+		if (collectionFields.containsKey(property)) {
+			return collectionFields.get(property);
+		}
+		Field result = null;
+		if (property.getMember() instanceof AnnotatedField) {
+			result = ((AnnotatedField) property.getMember()).getAnnotated();
+		} else {
+			BeanDescription description = provider.getConfig().introspect(provider.constructType(beanClass));
+			for (BeanPropertyDefinition definition : description.findProperties()) {
+				if (definition.getName().equals(property.getName()) && definition.getField() != null) {
+					result = definition.getField().getAnnotated();
+					break;
+				}
+			}
+		}
+		collectionFields.put(property, result);
+		return result;
+	}
+
+	protected void rememberProjection(Object lazy, AnterosProjection projection) {
+		if (projection != AnterosProjection.ALL) {
+			lazyProjections.put(lazy, projection);
+		}
+	}
+
+	protected boolean isLeaf(Class<?> type) {
+		String name = type.getName();
+		return type.isPrimitive() || type.isEnum() || type.isArray() || name.startsWith("java.")
+				|| name.startsWith("javax.");
+	}
+
+	protected static <K, V> List<V> group(Map<K, List<V>> groups, K key) {
+		List<V> group = groups.get(key);
+		if (group == null) {
+			group = new ArrayList<V>();
+			groups.put(key, group);
+		}
+		return group;
+	}
+
+	/**
+	 * Retorna a classe anotada com {@link Entity} da qual o proxy é subclasse.
+	 */
+	public static Class<?> entityClassOf(Class<?> proxyClass) {
+		for (Class<?> type = proxyClass; type != null && type != Object.class; type = type.getSuperclass()) {
+			if (type.getDeclaredAnnotation(Entity.class) != null) {
+				return type;
+			}
+		}
+		return proxyClass;
+	}
+}
@@ -0,0 +1,327 @@
+/*******************************************************************************
+ * Copyright 2012 Anteros Tecnologia
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package br.com.anteros.nosql.persistence.serialization.jackson;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.fasterxml.jackson.databind.SerializerProvider;
+
+import br.com.anteros.nosql.persistence.proxy.AnterosPersistentCollection;
+import br.com.anteros.nosql.persistence.proxy.AnterosProxyObject;
+
+/**
+ * Inicializa em paralelo, num {@link Executor}, as referências lazy do objeto
+ * que está sendo serializado, enquanto a thread de serialização escreve os
+ * campos anteriores.
+ * <p>
+ * A saída continua na ordem do documento: ao chegar numa referência, o
+ * serializador chama {@link #await(Object)}, que espera o carregamento já
+ * iniciado ou, se ele ainda não foi agendado, reserva a referência para que a
+ * própria thread de serialização a carregue. No máximo
+ * {@code maxConcurrentLoads} carregamentos rodam ao mesmo tempo; os demais
+ * ficam numa fila. Uma falha de carregamento é relançada pelo {@link #await}
+ * correspondente, interrompendo a escrita.
+ */
+public class AnterosLazyPrefetcher {
+
+	private static final CompletableFuture<Void> CLAIMED_BY_WRITER = CompletableFuture.completedFuture(null);
+
+	private final Executor executor;
+	private final int maxConcurrentLoads;
+	private final AnterosBatchLoader batchLoader;
+	private final int batchSize;
+	private final AnterosBatchLoadingStatistics statistics;
+	private final boolean collectProxies;
+	private final boolean collectCollections;
+
+	private final AnterosProjection projection;
+
+	private final ConcurrentMap<IdentityKey, CompletableFuture<Void>> loads = new ConcurrentHashMap<IdentityKey, CompletableFuture<Void>>();
+	private final Deque<Runnable> queued = new ArrayDeque<Runnable>();
+	private int running;
+	private volatile boolean closed;
+	private volatile SerializerProvider provider;
+
+	public AnterosLazyPrefetcher(Executor executor, int maxConcurrentLoads, AnterosBatchLoader batchLoader,
+			int batchSize, AnterosBatchLoadingStatistics statistics) {
+		this(executor, maxConcurrentLoads, batchLoader, batchSize, statistics, true, true);
+	}
+
+	public AnterosLazyPrefetcher(Executor executor, int maxConcurrentLoads, AnterosBatchLoader batchLoader,
+			int batchSize, AnterosBatchLoadingStatistics statistics, boolean collectProxies,
+			boolean collectCollections) {
+		this(executor, maxConcurrentLoads, batchLoader, batchSize, statistics, collectProxies, collectCollections,
+				null);
+	}
+
+	/**
+	 * @param projection
+	 *            projeção da escrita; referências fora dela não são carregadas
+	 */
+	public AnterosLazyPrefetcher(Executor executor, int maxConcurrentLoads, AnterosBatchLoader batchLoader,
+			int batchSize, AnterosBatchLoadingStatistics statistics, boolean collectProxies,
+			boolean collectCollections, AnterosProjection projection) {
+		this.projection = projection;
+		this.collectProxies = collectProxies;
+		this.collectCollections = collectCollections;
+		this.executor = executor;
+		this.maxConcurrentLoads = maxConcurrentLoads;
+		this.batchLoader = batchLoader;
+		this.batchSize = (batchLoader == null ? 1 : batchSize);
+		this.statistics = statistics;
+	}
+
+	/**
+	 * Cria o executor padrão para carregamentos: uma thread virtual por tarefa
+	 * quando a JVM oferece, senão um pool fixo de threads daemon.
+	 */
+	public static ExecutorService newDefaultExecutor(int threads) {
+		try {
+			return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		} catch (Exception e) {
+			final AtomicInteger counter = new AtomicInteger();
+			return Executors.newFixedThreadPool(threads, new ThreadFactory() {
+				public Thread newThread(Runnable r) {
+					Thread thread = new Thread(r, "anteros-lazy-loader-" + counter.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
+	}
+
+	/**
+	 * @param provider
+	 *            provider da escrita; só as propriedades que ele escreverá
+	 *            são percorridas
+	 */
+	public void start(Object root, SerializerProvider provider) throws Exception {
+		this.provider = provider;
+		schedule(new AnterosLazyGraphCollector(provider, collectProxies, collectCollections, projection)
+				.collect(root));
+	}
+
+	/**
+	 * Espera o carregamento agendado para o proxy ou coleção. Se nenhum foi
+	 * agendado, reserva-o para a thread de serialização, que deve carregá-lo
+	 * ela mesma ao retornar deste método.
+	 */
+	public void await(Object lazy) {
+		CompletableFuture<Void> load = loads.putIfAbsent(new IdentityKey(lazy), CLAIMED_BY_WRITER);
+		if (load == null || load == CLAIMED_BY_WRITER) {
+			return;
+		}
+		try {
+			load.join();
+		} catch (CompletionException e) {
+			throw new JacksonSerializationException(e.getCause());
+		}
+	}
+
+	/**
+	 * Descarta os carregamentos ainda na fila e espera os que já estão em
+	 * execução terminarem, para que nenhum deles continue usando a sessão
+	 * depois que a escrita acabou.
+	 */
+	public void close() {
+		boolean interrupted = false;
+		synchronized (queued) {
+			closed = true;
+			queued.clear();
+			while (running > 0) {
+				try {
+					queued.wait();
+				} catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	protected void schedule(final AnterosLazyGraphCollector collector) {
+		for (Map.Entry<Class<?>, List<AnterosProxyObject>> group : collector.getProxies().entrySet()) {
+			final Class<?> entityClass = group.getKey();
+			for (final List<AnterosProxyObject> unit : claim(group.getValue())) {
+				submit(unit, collector, new Load() {
+					public void run() throws Exception {
+						if (batchLoader != null) {
+							batchLoader.loadProxies(entityClass, unit);
+							statistics.proxyBatch(unit.size());
+						}
+						for (AnterosProxyObject proxy : unit) {
+							proxy.initializeAndReturnObject();
+						}
+					}
+				});
+			}
+		}
+		for (final Map.Entry<java.lang.reflect.Field, List<AnterosPersistentCollection>> group : collector
+				.getCollections().entrySet()) {
+			for (final List<AnterosPersistentCollection> unit : claim(group.getValue())) {
+				submit(unit, collector, new Load() {
+					public void run() throws Exception {
+						if (batchLoader != null) {
+							batchLoader.loadCollections(group.getKey(), unit);
+							statistics.collectionBatch(unit.size());
+						}
+						for (AnterosPersistentCollection collection : unit) {
+							collection.initialize();
+						}
+					}
+				});
+			}
+		}
+	}
+
+	/**
+	 * Reserva os objetos ainda não reservados e os divide em unidades de
+	 * carregamento de até {@code batchSize} elementos.
+	 */
+	protected <T> List<List<T>> claim(List<T> values) {
+		List<List<T>> result = new ArrayList<List<T>>();
+		List<T> unit = new ArrayList<T>(Math.min(batchSize, values.size()));
+		for (T value : values) {
+			if (loads.putIfAbsent(new IdentityKey(value), new CompletableFuture<Void>()) != null) {
+				continue;
+			}
+			unit.add(value);
+			if (unit.size() == batchSize) {
+				result.add(unit);
+				unit = new ArrayList<T>(batchSize);
+			}
+		}
+		if (!unit.isEmpty()) {
+			result.add(unit);
+		}
+		return result;
+	}
+
+	/**
+	 * Agenda o carregamento da unidade; em seguida, o conteúdo carregado é
+	 * percorrido a partir do nó da projeção em que o coletor de origem achou
+	 * cada referência.
+	 */
+	protected void submit(final List<?> unit, final AnterosLazyGraphCollector source, final Load load) {
+		Runnable task = new Runnable() {
+			public void run() {
+				Throwable failure = null;
+				try {
+					if (!closed) {
+						load.run();
+						AnterosLazyGraphCollector next = new AnterosLazyGraphCollector(provider, collectProxies,
+								collectCollections, projection);
+						for (Object lazy : unit) {
+							next.collectInitialized(lazy, source.projectionOf(lazy));
+						}
+						if (!closed) {
+							schedule(next);
+						}
+					}
+				} catch (Throwable t) {
+					failure = t;
+				} finally {
+					for (Object value : unit) {
+						CompletableFuture<Void> future = loads.get(new IdentityKey(value));
+						if (failure == null) {
+							future.complete(null);
+						} else {
+							future.completeExceptionally(failure);
+						}
+					}
+					release();
+				}
+			}
+		};
+		synchronized (queued) {
+			if (closed) {
+				return;
+			}
+			if (running < maxConcurrentLoads) {
+				running++;
+			} else {
+				queued.add(task);
+				return;
+			}
+		}
+		execute(task);
+	}
+
+	protected void release() {
+		Runnable next;
+		synchronized (queued) {
+			next = queued.poll();
+			if (next == null) {
+				if (--running == 0) {
+					queued.notifyAll();
+				}
+				return;
+			}
+		}
+		execute(next);
+	}
+
+	protected void execute(Runnable task) {
+		try {
+			executor.execute(task);
+		} catch (RuntimeException e) {
+			synchronized (queued) {
+				if (--running == 0) {
+					queued.notifyAll();
+				}
+			}
+			throw e;
+		}
+	}
+
+	interface Load {
+		void run() throws Exception;
+	}
+
+	static final class IdentityKey {
+
+		private final Object value;
+
+		IdentityKey(Object value) {
+			this.value = value;
+		}
+
+		@Override
+		public int hashCode() {
+			return System.identityHashCode(value);
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			return obj instanceof IdentityKey && ((IdentityKey) obj).value == value;
+		}
+	}
+}
@@ -0,0 +1,92 @@
+/*******************************************************************************
+ * Copyright 2012 Anteros Tecnologia
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package br.com.anteros.nosql.persistence.serialization.jackson;
+
+import java.io.IOException;
+import java.util.Collection;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationConfig;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.MapperFeature;
+import com.fasterxml.jackson.databind.deser.SettableBeanProperty;
+import com.fasterxml.jackson.databind.introspect.AnnotatedMember;
+
+import br.com.anteros.nosql.persistence.proxy.AnterosPersistentCollection;
+
+/**
+ * Propriedade de coleção de uma entidade que, numa leitura com
+ * {@link AnterosManagedEntityResolver}, preenche no lugar a
+ * {@link AnterosPersistentCollection} já presente na entidade gerenciada em
+ * vez de substituí-la, preservando o controle de alterações da sessão.
+ * Coleções ainda não inicializadas são substituídas, para não carregá-las.
+ */
+public class AnterosManagedCollectionProperty extends SettableBeanProperty.Delegating {
+	private static final long serialVersionUID = 1L;
+
+	protected final AnnotatedMember _accessor;
+
+	public AnterosManagedCollectionProperty(SettableBeanProperty delegate, AnnotatedMember accessor) {
+		super(delegate);
+		_accessor = accessor;
+	}
+
+	@Override
+	protected SettableBeanProperty withDelegate(SettableBeanProperty d) {
+		return new AnterosManagedCollectionProperty(d, _accessor);
+	}
+
+	@Override
+	public void fixAccess(DeserializationConfig config) {
+		super.fixAccess(config);
+		_accessor.fixAccess(config.isEnabled(MapperFeature.OVERRIDE_PUBLIC_ACCESS_MODIFIERS));
+	}
+
+	@Override
+	public void deserializeAndSet(JsonParser p, DeserializationContext ctxt, Object instance) throws IOException {
+		if (!deserializeInPlace(p, ctxt, instance)) {
+			delegate.deserializeAndSet(p, ctxt, instance);
+		}
+	}
+
+	@Override
+	public Object deserializeSetAndReturn(JsonParser p, DeserializationContext ctxt, Object instance)
+			throws IOException {
+		if (deserializeInPlace(p, ctxt, instance)) {
+			return instance;
+		}
+		return delegate.deserializeSetAndReturn(p, ctxt, instance);
+	}
+
+	protected boolean deserializeInPlace(JsonParser p, DeserializationContext ctxt, Object instance)
+			throws IOException {
+		// objetos só no formato colunar (Feature.COLUMNAR_COLLECTIONS)
+		if (!(p.hasToken(JsonToken.START_ARRAY) || p.hasToken(JsonToken.START_OBJECT))
+				|| delegate.hasValueTypeDeserializer()
+				|| AnterosManagedEntityDeserializer.resolverOf(ctxt) == null) {
+			return false;
+		}
+		Object current = _accessor.getValue(instance);
+		if (!(current instanceof AnterosPersistentCollection) || !(current instanceof Collection)
+				|| !((AnterosPersistentCollection) current).isInitialized()) {
+			return false;
+		}
+		((Collection<?>) current).clear();
+		delegate.getValueDeserializer().deserialize(p, ctxt, current);
+		return true;
+	}
+}
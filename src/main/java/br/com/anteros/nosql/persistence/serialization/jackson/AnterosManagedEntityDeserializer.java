@@ -0,0 +1,184 @@
+/*******************************************************************************
+ * Copyright 2012 Anteros Tecnologia
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package br.com.anteros.nosql.persistence.serialization.jackson;
+
+import java.io.IOException;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.util.JsonParserSequence;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JsonDeserializer;
+import com.fasterxml.jackson.databind.deser.BeanDeserializerBase;
+import com.fasterxml.jackson.databind.deser.SettableBeanProperty;
+import com.fasterxml.jackson.databind.deser.impl.ObjectIdReader;
+import com.fasterxml.jackson.databind.deser.std.DelegatingDeserializer;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+
+import br.com.anteros.nosql.persistence.proxy.AnterosProxyObject;
+
+/**
+ * Deserializador das entidades que, numa leitura com
+ * {@link AnterosManagedEntityResolver}, atualiza a instância já gerenciada
+ * pela sessão em vez de criar uma nova.
+ * <p>
+ * Quando o id é o primeiro campo, a entidade gerenciada é atualizada
+ * diretamente do parser; os campos anteriores ao id, se houver, são guardados
+ * num {@link TokenBuffer} e reproduzidos antes do restante do documento. Proxies ainda não inicializados não são
+ * atualizados, para não carregá-los: a entidade é lida numa nova instância.
+ * Sem o resolvedor na leitura, ou sem a propriedade do id no deserializador
+ * da entidade, apenas delega.
+ */
+public class AnterosManagedEntityDeserializer extends DelegatingDeserializer {
+	private static final long serialVersionUID = 1L;
+
+	protected final String _idName;
+
+	private transient SettableBeanProperty _idProperty;
+
+	public AnterosManagedEntityDeserializer(JsonDeserializer<?> delegatee, String idName) {
+		super(delegatee);
+		_idName = idName;
+	}
+
+	@Override
+	protected JsonDeserializer<?> newDelegatingInstance(JsonDeserializer<?> newDelegatee) {
+		return new AnterosManagedEntityDeserializer(newDelegatee, _idName);
+	}
+
+	public static AnterosManagedEntityResolver resolverOf(DeserializationContext ctxt) {
+		Object resolver = ctxt.getAttribute(AnterosPersistenceJacksonModule.MANAGED_ENTITY_RESOLVER_ATTRIBUTE);
+		return resolver instanceof AnterosManagedEntityResolver ? (AnterosManagedEntityResolver) resolver : null;
+	}
+
+	@Override
+	public Object deserialize(JsonParser p, DeserializationContext ctxt) throws IOException {
+		AnterosManagedEntityResolver resolver = resolverOf(ctxt);
+		JsonToken t = p.getCurrentToken();
+		if (resolver == null || (t != JsonToken.START_OBJECT && t != JsonToken.FIELD_NAME) || idProperty() == null) {
+			return _delegatee.deserialize(p, ctxt);
+		}
+		if (t == JsonToken.START_OBJECT) {
+			t = p.nextToken();
+		}
+		TokenBuffer buffer = null;
+		for (; t == JsonToken.FIELD_NAME; t = p.nextToken()) {
+			String name = p.getCurrentName();
+			t = p.nextToken();
+			if (buffer == null) {
+				buffer = _idName.equals(name) && t.isScalarValue() ? null : startBuffer(p, ctxt);
+			}
+			if (!_idName.equals(name) || !t.isScalarValue()) {
+				buffer.writeFieldName(name);
+				buffer.copyCurrentStructure(p);
+				continue;
+			}
+			Object id = readId(p, ctxt);
+			Object managed = findManaged(resolver, id);
+			if (managed != null) {
+				bindObjectId(ctxt, id, managed);
+				@SuppressWarnings("unchecked")
+				JsonDeserializer<Object> delegatee = (JsonDeserializer<Object>) _delegatee;
+				if (buffer == null) {
+					p.nextToken();
+					return delegatee.deserialize(p, ctxt, managed);
+				}
+				return delegatee.deserialize(continueWith(buffer, p), ctxt, managed);
+			}
+			if (buffer == null) {
+				buffer = startBuffer(p, ctxt);
+			}
+			buffer.writeFieldName(name);
+			buffer.copyCurrentEvent(p);
+			return _delegatee.deserialize(continueWith(buffer, p), ctxt);
+		}
+		if (buffer == null) {
+			buffer = startBuffer(p, ctxt);
+		}
+		buffer.writeEndObject();
+		JsonParser buffered = buffer.asParser(p);
+		buffered.nextToken();
+		return _delegatee.deserialize(buffered, ctxt);
+	}
+
+	private static TokenBuffer startBuffer(JsonParser p, DeserializationContext ctxt) throws IOException {
+		TokenBuffer buffer = new TokenBuffer(p, ctxt);
+		buffer.writeStartObject();
+		return buffer;
+	}
+
+	/**
+	 * Parser que lê os campos guardados e depois o restante do objeto.
+	 */
+	private static JsonParser continueWith(TokenBuffer buffer, JsonParser p) throws IOException {
+		p.clearCurrentToken();
+		JsonParser merged = JsonParserSequence.createFlattened(false, buffer.asParser(p), p);
+		merged.nextToken();
+		return merged;
+	}
+
+	/**
+	 * Propriedade do id no deserializador da entidade, ou null se ele não a
+	 * tem (por exemplo, id só de leitura); nesse caso a entidade é lida sem
+	 * procurar a instância gerenciada.
+	 */
+	protected SettableBeanProperty idProperty() {
+		if (_idProperty == null && _delegatee instanceof BeanDeserializerBase) {
+			_idProperty = ((BeanDeserializerBase) _delegatee).findProperty(_idName);
+		}
+		return _idProperty;
+	}
+
+	/**
+	 * Lê o id do token escalar corrente, sem avançar o parser.
+	 */
+	protected Object readId(JsonParser p, DeserializationContext ctxt) throws IOException {
+		return idProperty().deserialize(p, ctxt);
+	}
+
+	/**
+	 * O campo id não é repassado ao deserializador ao atualizar a entidade
+	 * gerenciada (o valor é o mesmo); quando ele também é o object id
+	 * ({@link AnterosIdentityStrategy#ENTITY_ID}), a associação usada pelas
+	 * referências seguintes é feita aqui.
+	 */
+	protected void bindObjectId(DeserializationContext ctxt, Object id, Object managed) throws IOException {
+		ObjectIdReader objectIdReader = _delegatee.getObjectIdReader();
+		if (objectIdReader != null && objectIdReader.idProperty != null
+				&& _idName.equals(objectIdReader.propertyName.getSimpleName())) {
+			ctxt.findObjectId(id, objectIdReader.generator, objectIdReader.resolver).bindItem(managed);
+		}
+	}
+
+	protected Object findManaged(AnterosManagedEntityResolver resolver, Object id) throws IOException {
+		if (id == null) {
+			return null;
+		}
+		Object managed = resolver.findManagedEntity(handledType(), id);
+		if (managed instanceof AnterosProxyObject) {
+			AnterosProxyObject proxy = (AnterosProxyObject) managed;
+			if (!proxy.isInitialized()) {
+				return null;
+			}
+			try {
+				managed = proxy.initializeAndReturnObject();
+			} catch (Exception e) {
+				throw new JacksonSerializationException(e);
+			}
+		}
+		return handledType().isInstance(managed) ? managed : null;
+	}
+}
@@ -0,0 +1,44 @@
+/*******************************************************************************
+ * Copyright 2012 Anteros Tecnologia
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package br.com.anteros.nosql.persistence.serialization.jackson;
+
+/**
+ * Procura uma entidade já gerenciada pela sessão (o cache de primeiro nível,
+ * ou mapa de identidade) a partir do seu identificador.
+ * <p>
+ * Informado por leitura com
+ * {@link AnterosNoSQLObjectMapper#readerForManaged(Class, AnterosManagedEntityResolver)}
+ * ou pelo atributo
+ * {@link AnterosPersistenceJacksonModule#MANAGED_ENTITY_RESOLVER_ATTRIBUTE}.
+ * Cada entidade lida cujo id é encontrado tem seu estado atualizado na
+ * instância gerenciada, inclusive referências e coleções persistentes, em vez
+ * de gerar uma nova instância.
+ */
+public interface AnterosManagedEntityResolver {
+
+	/**
+	 * Retorna a instância gerenciada da entidade, ou null se ela não está na
+	 * sessão. Não deve acessar o banco de dados.
+	 * 
+	 * @param entityClass
+	 *            classe concreta da entidade lida (após a resolução do
+	 *            discriminador)
+	 * @param id
+	 *            valor do campo anotado com
+	 *            {@link br.com.anteros.nosql.persistence.metadata.annotations.Id}
+	 */
+	Object findManagedEntity(Class<?> entityClass, Object id);
+}
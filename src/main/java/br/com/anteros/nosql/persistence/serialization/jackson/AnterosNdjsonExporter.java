@@ -0,0 +1,295 @@
+/*******************************************************************************
+ * Copyright 2012 Anteros Tecnologia
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package br.com.anteros.nosql.persistence.serialization.jackson;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+import java.util.zip.GZIPOutputStream;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+import br.com.anteros.nosql.persistence.serialization.jackson.AnterosPersistenceJacksonModule.Feature;
+
+/**
+ * Exporta entidades em NDJSON (um documento JSON por linha), serializando
+ * blocos de {@link #getChunkSize()} entidades em paralelo num
+ * {@link ForkJoinPool}, cada um no seu buffer, e gravando os blocos na ordem
+ * original.
+ * <p>
+ * O cursor é lido apenas pela thread que chama {@link #export(Iterator, OutputStream)},
+ * que também grava a saída; no máximo {@link #getMaxChunksInFlight()} blocos
+ * ficam em memória, e a leitura do cursor espera a gravação do bloco mais
+ * antigo quando o limite é atingido.
+ * <p>
+ * Cada entidade é uma escrita independente do writer (por padrão o do mapper,
+ * sem indentação) no gerador do bloco, de modo que as
+ * {@link AnterosPersistenceJacksonModule.Feature}s do mapper ou do writer
+ * informado valem para o carregamento lazy. Com
+ * {@link AnterosPersistenceJacksonModule.Feature#FORCE_LAZY_LOADING} os blocos
+ * são serializados na thread que chama o export, a mesma que usa a sessão,
+ * pois os carregamentos não podem ser feitos em paralelo; para exportar em
+ * paralelo, inicialize as entidades antes e use um writer sem essa feature.
+ * <p>
+ * Com gzip, cada bloco é comprimido em paralelo como um membro gzip
+ * independente; a concatenação dos membros é um arquivo gzip válido
+ * (RFC 1952), lido normalmente por {@link java.util.zip.GZIPInputStream} e
+ * pelo {@code gzip}.
+ */
+public class AnterosNdjsonExporter {
+
+	public static final int DEFAULT_CHUNK_SIZE = 1000;
+
+	private static final char LINE_SEPARATOR = '\n';
+
+	private static final int GZIP_BUFFER_SIZE = 64 * 1024;
+
+	private final AnterosByteBufferPool bufferPool = new AnterosByteBufferPool(false);
+
+	private ObjectWriter writer;
+
+	private ForkJoinPool pool = ForkJoinPool.commonPool();
+
+	private int chunkSize = DEFAULT_CHUNK_SIZE;
+
+	private int maxChunksInFlight;
+
+	private boolean gzip;
+
+	public AnterosNdjsonExporter(AnterosNoSQLObjectMapper mapper) {
+		this(mapper.writer());
+	}
+
+	public AnterosNdjsonExporter(ObjectWriter writer) {
+		setWriter(writer);
+	}
+
+	public ObjectWriter getWriter() {
+		return writer;
+	}
+
+	/**
+	 * Writer usado em cada entidade, por exemplo um
+	 * {@link AnterosNoSQLObjectMapper#writerWithFeatures(int)} ou
+	 * {@link AnterosNoSQLObjectMapper#writerWithProjection(String...)}. A
+	 * indentação é sempre desligada.
+	 */
+	public AnterosNdjsonExporter setWriter(ObjectWriter writer) {
+		this.writer = writer.without(SerializationFeature.INDENT_OUTPUT)
+				.without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE).withRootValueSeparator("");
+		return this;
+	}
+
+	public ForkJoinPool getPool() {
+		return pool;
+	}
+
+	public AnterosNdjsonExporter setPool(ForkJoinPool pool) {
+		this.pool = pool;
+		return this;
+	}
+
+	public int getChunkSize() {
+		return chunkSize;
+	}
+
+	public AnterosNdjsonExporter setChunkSize(int chunkSize) {
+		if (chunkSize < 1) {
+			throw new JacksonSerializationException("Chunk size must be positive.");
+		}
+		this.chunkSize = chunkSize;
+		return this;
+	}
+
+	/**
+	 * Limite de blocos em serialização ou aguardando gravação; por padrão o
+	 * dobro do paralelismo do pool.
+	 */
+	public int getMaxChunksInFlight() {
+		return maxChunksInFlight > 0 ? maxChunksInFlight : 2 * pool.getParallelism();
+	}
+
+	public AnterosNdjsonExporter setMaxChunksInFlight(int maxChunksInFlight) {
+		if (maxChunksInFlight < 1) {
+			throw new JacksonSerializationException("Max chunks in flight must be positive.");
+		}
+		this.maxChunksInFlight = maxChunksInFlight;
+		return this;
+	}
+
+	public boolean isGzip() {
+		return gzip;
+	}
+
+	public AnterosNdjsonExporter setGzip(boolean gzip) {
+		this.gzip = gzip;
+		return this;
+	}
+
+	/**
+	 * Exporta todas as entidades do cursor para a saída, que não é fechada.
+	 * Se a serialização de um bloco falhar, os blocos pendentes são
+	 * cancelados e a saída fica incompleta.
+	 * 
+	 * @return quantidade de entidades exportadas
+	 */
+	public long export(Iterator<?> entities, OutputStream out) throws IOException {
+		ArrayDeque<CompletableFuture<ByteBuffer>> inFlight = new ArrayDeque<CompletableFuture<ByteBuffer>>();
+		AtomicBoolean cancelled = new AtomicBoolean();
+		boolean loadsLazily = Feature.FORCE_LAZY_LOADING
+				.enabledIn(AnterosPersistenceJacksonModule.featuresOf(writer.getConfig(), 0));
+		int maxInFlight = getMaxChunksInFlight();
+		long count = 0;
+		try {
+			while (entities.hasNext()) {
+				List<Object> chunk = new ArrayList<Object>(chunkSize);
+				while (chunk.size() < chunkSize && entities.hasNext()) {
+					chunk.add(entities.next());
+				}
+				count += chunk.size();
+				inFlight.addLast(loadsLazily ? CompletableFuture.completedFuture(writeChunk(chunk, cancelled))
+						: CompletableFuture.supplyAsync(new ChunkWriter(chunk, cancelled), pool));
+				while (inFlight.size() >= maxInFlight) {
+					writeChunk(inFlight.pollFirst(), out);
+				}
+			}
+			while (!inFlight.isEmpty()) {
+				writeChunk(inFlight.pollFirst(), out);
+			}
+		} finally {
+			discard(inFlight, cancelled);
+		}
+		out.flush();
+		return count;
+	}
+
+	public long export(Iterable<?> entities, OutputStream out) throws IOException {
+		return export(entities.iterator(), out);
+	}
+
+	protected void writeChunk(CompletableFuture<ByteBuffer> future, OutputStream out) throws IOException {
+		ByteBuffer buffer;
+		try {
+			buffer = future.join();
+		} catch (CompletionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof IOException) {
+				throw (IOException) cause;
+			}
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			throw new JacksonSerializationException(cause);
+		}
+		try {
+			out.write(buffer.array(), buffer.arrayOffset(), buffer.position());
+		} finally {
+			bufferPool.release(buffer);
+		}
+	}
+
+	/**
+	 * Interrompe os blocos pendentes depois de uma falha: os que não
+	 * começaram não escrevem nada e os em andamento param na próxima entidade.
+	 * Espera todos terminarem, para que nenhuma serialização continue depois
+	 * do retorno do export, e devolve os buffers ao pool.
+	 */
+	protected void discard(ArrayDeque<CompletableFuture<ByteBuffer>> inFlight, AtomicBoolean cancelled) {
+		if (inFlight.isEmpty()) {
+			return;
+		}
+		cancelled.set(true);
+		for (CompletableFuture<ByteBuffer> future : inFlight) {
+			try {
+				bufferPool.release(future.join());
+			} catch (CompletionException e) {
+			} catch (CancellationException e) {
+			}
+		}
+		inFlight.clear();
+	}
+
+	/**
+	 * Serializa um bloco, uma linha por entidade, num buffer do pool do
+	 * exportador, com um único gerador para o bloco todo.
+	 */
+	protected ByteBuffer writeChunk(List<Object> chunk, AtomicBoolean cancelled) throws IOException {
+		Class<?> type = chunk.get(0) == null ? Void.class : chunk.get(0).getClass();
+		AnterosByteBufferOutputStream buffer = new AnterosByteBufferOutputStream(bufferPool,
+				bufferPool.capacityFor(type));
+		OutputStream out = gzip ? new GZIPOutputStream(buffer, GZIP_BUFFER_SIZE) : buffer;
+		boolean written = false;
+		try {
+			JsonGenerator gen = writer.getFactory().createGenerator(out);
+			for (Object entity : chunk) {
+				if (cancelled.get()) {
+					throw new CancellationException();
+				}
+				writer.writeValue(gen, entity);
+				gen.writeRaw(LINE_SEPARATOR);
+			}
+			gen.close();
+			out.close();
+			written = true;
+		} finally {
+			if (!written) {
+				closeQuietly(out);
+				buffer.release();
+			}
+		}
+		bufferPool.recordSize(type, (int) Math.min(buffer.getCount(), Integer.MAX_VALUE));
+		return buffer.getBuffer();
+	}
+
+	private static void closeQuietly(OutputStream out) {
+		try {
+			out.close();
+		} catch (IOException e) {
+		}
+	}
+
+	protected class ChunkWriter implements Supplier<ByteBuffer> {
+
+		private final List<Object> chunk;
+
+		private final AtomicBoolean cancelled;
+
+		ChunkWriter(List<Object> chunk, AtomicBoolean cancelled) {
+			this.chunk = chunk;
+			this.cancelled = cancelled;
+		}
+
+		public ByteBuffer get() {
+			try {
+				return writeChunk(chunk, cancelled);
+			} catch (IOException e) {
+				throw new CompletionException(e);
+			}
+		}
+	}
+}
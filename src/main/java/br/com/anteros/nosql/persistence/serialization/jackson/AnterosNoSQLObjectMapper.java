@@ -15,13 +15,52 @@
  *******************************************************************************/
 package br.com.anteros.nosql.persistence.serialization.jackson;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
 import java.text.SimpleDateFormat;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Function;
 
 import com.fasterxml.jackson.annotation.JsonInclude.Include;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.io.OutputDecorator;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.AnnotationIntrospector;
+import com.fasterxml.jackson.databind.DeserializationContext;
 import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.PropertyNamingStrategy;
+import com.fasterxml.jackson.databind.SerializationConfig;
 import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.deser.DefaultDeserializationContext;
+import com.fasterxml.jackson.databind.introspect.BeanPropertyDefinition;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.databind.type.TypeFactory;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
 
+import br.com.anteros.nosql.persistence.metadata.NoSQLDescriptionEntity;
 import br.com.anteros.nosql.persistence.serialization.jackson.AnterosPersistenceJacksonModule.Feature;
 import br.com.anteros.nosql.persistence.session.NoSQLSessionFactory;
 
@@ -29,37 +68,818 @@ public class AnterosNoSQLObjectMapper extends ObjectMapper {
 
 	private static final long serialVersionUID = 1L;
 
+	public static final String DATE_TIME_PATTERN = "yyyy-MM-dd'T'HH:mm:ss.SSS";
+
+	/**
+	 * Maior bloco usado na escrita em {@link WritableByteChannel}.
+	 */
+	public static final int MAX_CHANNEL_CHUNK = 64 * 1024;
+
 	private AnterosPersistenceJacksonModule module;
 	private NoSQLSessionFactory sessionFactory;
+	private final transient ConcurrentMap<Integer, AnterosNoSQLObjectMapper> siblings = new ConcurrentHashMap<Integer, AnterosNoSQLObjectMapper>();
+	private transient volatile CompletableFuture<AnterosWarmUpReport> warmUp;
+	private transient volatile AnterosNoSQLObjectMapper deltaMapper;
+	private transient volatile AnterosNoSQLObjectMapper managedMapper;
+	private AnterosByteBufferPool byteBufferPool = new AnterosByteBufferPool();
+	private final transient ConcurrentMap<Class<?>, AnterosDocumentView.Descriptor> viewDescriptors = new ConcurrentHashMap<Class<?>, AnterosDocumentView.Descriptor>();
 
 	public AnterosNoSQLObjectMapper(NoSQLSessionFactory sessionFactory) {
-		super();
+		this(sessionFactory, null);
+	}
+
+	public AnterosNoSQLObjectMapper(NoSQLSessionFactory sessionFactory, JsonFactory jsonFactory) {
+		super(jsonFactory);
 		this.sessionFactory = sessionFactory;
 		this.createModule();
+		this.setSerializerProvider(new AnterosSerializerProvider(module));
 		this.registerModule(module);
+		this.configureFeatures(module.getFeatures());
 		this.enable(SerializationFeature.INDENT_OUTPUT);
 		this.disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
-		this.setDateFormat(new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS"));
+		this.setDateFormat(new SimpleDateFormat(DATE_TIME_PATTERN));
+		this.registerModule(AnterosISODateTimeModule.readers(ZoneId.systemDefault()));
 		this.setSerializationInclusion(Include.NON_NULL);
 		this.enable(DeserializationFeature.ACCEPT_SINGLE_VALUE_AS_ARRAY);
 	}
 
+	protected AnterosNoSQLObjectMapper(AnterosNoSQLObjectMapper src) {
+		super(src);
+		this.module = src.module;
+		this.sessionFactory = src.sessionFactory;
+		this.byteBufferPool = src.byteBufferPool;
+		// os caches dos introspectors ignoram os mix-ins, que a cópia pode alterar
+		this.setAnnotationIntrospectors(copyOf(getSerializationConfig().getAnnotationIntrospector(), null),
+				copyOf(getDeserializationConfig().getAnnotationIntrospector(), null));
+	}
+
+	@Override
+	public AnterosNoSQLObjectMapper copy() {
+		_checkInvalidCopy(AnterosNoSQLObjectMapper.class);
+		return new AnterosNoSQLObjectMapper(this);
+	}
+
+	/**
+	 * Cria um mapper com o perfil de produção: saída compacta (sem
+	 * {@link SerializationFeature#INDENT_OUTPUT}) e datas tratadas pelo
+	 * {@link AnterosISODateTimeModule}, que grava no mesmo formato
+	 * {@value #DATE_TIME_PATTERN} sem alocar ou sincronizar um formatador por
+	 * valor.
+	 */
+	public static AnterosNoSQLObjectMapper production(NoSQLSessionFactory sessionFactory) {
+		AnterosNoSQLObjectMapper mapper = new AnterosNoSQLObjectMapper(sessionFactory);
+		mapper.configureProductionProfile();
+		return mapper;
+	}
+
+	protected void configureProductionProfile() {
+		this.disable(SerializationFeature.INDENT_OUTPUT);
+		this.registerModule(new AnterosISODateTimeModule());
+	}
+
 	public AnterosPersistenceJacksonModule getModule() {
 		return module;
 	}
+
+	/**
+	 * Liga (ou, com {@code null}, desliga) a instrumentação da serialização,
+	 * passando a contar também os bytes escritos pelos geradores deste mapper.
+	 * <p>
+	 * As cópias ({@link #copy()}, os mappers internos por feature e o usado
+	 * em {@link #delta(Object, AnterosSnapshot)}) compartilham o módulo e
+	 * portanto as métricas; os mappers internos também passam a contar os
+	 * bytes. Cópias criadas pelo usuário antes desta chamada registram os
+	 * documentos, mas só contam os bytes se o método for chamado nelas.
+	 */
+	public AnterosNoSQLObjectMapper setSerializationMetrics(AnterosSerializationMetrics metrics) {
+		module.setSerializationMetrics(metrics);
+		countBytes(metrics != null);
+		for (AnterosNoSQLObjectMapper sibling : siblings.values()) {
+			sibling.countBytes(metrics != null);
+		}
+		AnterosNoSQLObjectMapper delta = deltaMapper;
+		if (delta != null && delta != this) {
+			delta.countBytes(metrics != null);
+		}
+		return this;
+	}
+
+	protected void countBytes(boolean count) {
+		OutputDecorator decorator = getFactory().getOutputDecorator();
+		if (count && !(decorator instanceof AnterosCountingOutputDecorator)) {
+			getFactory().setOutputDecorator(new AnterosCountingOutputDecorator(decorator));
+		} else if (!count && decorator instanceof AnterosCountingOutputDecorator) {
+			getFactory().setOutputDecorator(((AnterosCountingOutputDecorator) decorator).getDelegate());
+		}
+	}
+
+	public AnterosSerializationMetrics getSerializationMetrics() {
+		return module.getSerializationMetrics();
+	}
+
+	/**
+	 * Passa a usar classes geradas, em vez de reflexão, para ler, gravar e
+	 * instanciar as entidades registradas no {@link NoSQLSessionFactory}, e já
+	 * gera essas classes para todas elas. Deve ser chamado logo após a criação
+	 * do mapper, antes de qualquer serialização. Requer o
+	 * jackson-module-afterburner no classpath.
+	 */
+	public AnterosNoSQLObjectMapper enableGeneratedAccessors() {
+		if (!module.isUseGeneratedAccessors()) {
+			module.setUseGeneratedAccessors(true);
+			this.registerModule(new AnterosGeneratedAccessorsModule(sessionFactory));
+		}
+		generateAccessors();
+		return this;
+	}
+
+	protected void generateAccessors() {
+		for (Class<?> entityClass : entityClasses()) {
+			this.canSerialize(entityClass);
+			this.canDeserialize(constructType(entityClass));
+		}
+	}
+
+	/**
+	 * Aquece o mapper no {@link ForkJoinPool#commonPool()}; veja
+	 * {@link #warmUp(ForkJoinPool)}.
+	 */
+	public CompletableFuture<AnterosWarmUpReport> warmUp() {
+		return warmUp(ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Constrói e guarda em cache, em paralelo no pool informado, os
+	 * serializadores e deserializadores de todas as entidades registradas no
+	 * {@link NoSQLSessionFactory}: os da entidade, os de {@code List},
+	 * {@code Set}, {@code Map<String, ?>} e array da entidade, os dos tipos de
+	 * coleção, mapa e array declarados nas propriedades da entidade (com o
+	 * {@link AnterosProxyCollectionSerializer}) e o usado para escrever os
+	 * proxies da entidade. Assim a primeira requisição de cada tipo não paga a
+	 * introspecção.
+	 * <p>
+	 * Usa as features padrão do mapper. O futuro é completado com o relatório
+	 * quando todas as entidades terminam; uma entidade que falhar aparece em
+	 * {@link AnterosWarmUpReport#getFailures()} e não interrompe as demais. O
+	 * último aquecimento iniciado fica disponível em {@link #getWarmUp()}.
+	 */
+	public CompletableFuture<AnterosWarmUpReport> warmUp(ForkJoinPool pool) {
+		return warmUp(pool, new int[0]);
+	}
+
+	/**
+	 * Como {@link #warmUp(ForkJoinPool)}, aquecendo também os serializadores
+	 * das combinações de features informadas (máscaras de
+	 * {@link Feature#getMask()}), que têm caches próprios; use as mesmas
+	 * máscaras de {@link #writerWithFeatures(int)} ou
+	 * {@link #writerWith(Feature...)} no caminho quente. Projeções não precisam
+	 * de aquecimento próprio: usam os serializadores das suas features.
+	 */
+	public CompletableFuture<AnterosWarmUpReport> warmUp(ForkJoinPool pool, int... featureMasks) {
+		final Set<Integer> features = new LinkedHashSet<Integer>();
+		features.add(getFeatures());
+		for (int mask : featureMasks) {
+			features.add(mask);
+		}
+		final long start = System.nanoTime();
+		final ConcurrentMap<Class<?>, Long> entityNanos = new ConcurrentHashMap<Class<?>, Long>();
+		final ConcurrentMap<Class<?>, Throwable> failures = new ConcurrentHashMap<Class<?>, Throwable>();
+		List<CompletableFuture<Void>> tasks = new ArrayList<CompletableFuture<Void>>();
+		for (final Class<?> entityClass : entityClasses()) {
+			tasks.add(CompletableFuture.runAsync(new Runnable() {
+				@Override
+				public void run() {
+					long entityStart = System.nanoTime();
+					try {
+						warmUp(entityClass, features);
+						entityNanos.put(entityClass, System.nanoTime() - entityStart);
+					} catch (Exception e) {
+						failures.put(entityClass, e);
+					} catch (LinkageError e) {
+						failures.put(entityClass, e);
+					}
+				}
+			}, pool));
+		}
+		CompletableFuture<AnterosWarmUpReport> result = CompletableFuture
+				.allOf(tasks.toArray(new CompletableFuture<?>[tasks.size()]))
+				.thenApply(new Function<Void, AnterosWarmUpReport>() {
+					@Override
+					public AnterosWarmUpReport apply(Void done) {
+						return new AnterosWarmUpReport(entityNanos, failures, System.nanoTime() - start);
+					}
+				});
+		this.warmUp = result;
+		return result;
+	}
+
+	/**
+	 * Retorna o último aquecimento iniciado por {@link #warmUp(ForkJoinPool)},
+	 * ou null se nenhum foi iniciado. Útil para condicionar o readiness da
+	 * aplicação a {@link CompletableFuture#isDone()}.
+	 */
+	public CompletableFuture<AnterosWarmUpReport> getWarmUp() {
+		return warmUp;
+	}
+
+	protected void warmUp(Class<?> entityClass, Set<Integer> featureMasks) throws JsonMappingException {
+		JavaType entityType = constructType(entityClass);
+		List<JavaType> types = warmUpTypes(entityType);
+		Set<Class<?>> propertyClasses = warmUpPropertyClasses(entityType);
+		for (int features : featureMasks) {
+			AnterosNoSQLObjectMapper target = mapperFor(features);
+			SerializerProvider provider = target.serializerProviderFor(features);
+			provider.findTypedValueSerializer(entityClass, true, null);
+			for (JavaType type : types) {
+				provider.findTypedValueSerializer(type, true, null);
+			}
+			for (Class<?> propertyClass : propertyClasses) {
+				provider.findValueSerializer(propertyClass);
+			}
+			if (provider instanceof AnterosSerializerProvider) {
+				((AnterosSerializerProvider) provider).findProxyTargetSerializer(entityClass);
+			}
+			DeserializationContext context = target.createDeserializationContext(null, target
+					.getDeserializationConfig().withAttribute(AnterosPersistenceJacksonModule.FEATURES_ATTRIBUTE, features));
+			for (JavaType type : types) {
+				target._findRootDeserializer(context, type);
+			}
+		}
+	}
+
+	/**
+	 * Tipos aquecidos para a entidade: ela mesma, as coleções e o array dela
+	 * e os tipos de coleção, mapa e array das suas propriedades.
+	 */
+	protected List<JavaType> warmUpTypes(JavaType entityType) {
+		TypeFactory typeFactory = getTypeFactory();
+		Set<JavaType> types = new LinkedHashSet<JavaType>();
+		types.add(entityType);
+		types.add(typeFactory.constructCollectionType(List.class, entityType));
+		types.add(typeFactory.constructCollectionType(Set.class, entityType));
+		types.add(typeFactory.constructMapType(Map.class, typeFactory.constructType(String.class), entityType));
+		types.add(typeFactory.constructArrayType(entityType));
+		for (BeanPropertyDefinition property : getSerializationConfig().introspect(entityType).findProperties()) {
+			JavaType type = property.getPrimaryType();
+			if (type != null && type.isContainerType()) {
+				types.add(type);
+			}
+		}
+		return new ArrayList<JavaType>(types);
+	}
+
+	/**
+	 * Classes declaradas nas propriedades da entidade (e nos conteúdos das
+	 * coleções), cujos serializadores o Jackson procura pela classe do valor
+	 * durante a escrita quando o tipo não é final.
+	 */
+	protected Set<Class<?>> warmUpPropertyClasses(JavaType entityType) {
+		Set<Class<?>> classes = new LinkedHashSet<Class<?>>();
+		for (BeanPropertyDefinition property : getSerializationConfig().introspect(entityType).findProperties()) {
+			JavaType type = property.getPrimaryType();
+			while (type != null && type.isContainerType()) {
+				type = type.getContentType();
+			}
+			if (type != null && !type.isPrimitive() && !type.isFinal()) {
+				classes.add(type.getRawClass());
+			}
+		}
+		return classes;
+	}
+
+	/**
+	 * Provedor de uma escrita com as features informadas, como o que
+	 * {@link #writerWithFeatures(int)} usaria neste mapper.
+	 */
+	protected SerializerProvider serializerProviderFor(int features) {
+		SerializationConfig config = getSerializationConfig()
+				.withAttribute(AnterosPersistenceJacksonModule.FEATURES_ATTRIBUTE, features);
+		return _serializerProvider.createInstance(config, _serializerFactory);
+	}
+
+	protected Set<Class<?>> entityClasses() {
+		Map<Class<?>, NoSQLDescriptionEntity> entities = sessionFactory.getDescriptionEntityManager().getEntities();
+		if (entities == null) {
+			return Collections.emptySet();
+		}
+		return new LinkedHashSet<Class<?>>(entities.keySet());
+	}
 	
+	/**
+	 * Habilita a feature como padrão deste mapper. Writers e readers já
+	 * criados mantêm as features com que foram criados; para mudar as features
+	 * de uma única chamada, use {@link #writerWithFeatures(int)} ou
+	 * {@link #readerWithFeatures(int)}.
+	 */
 	public AnterosNoSQLObjectMapper enable(Feature feature){
-		module.enable(feature);
-		this.registerModule(module);
+		configureFeatures(getFeatures() | feature.getMask());
 		return this;
 	}
 	
 	public AnterosNoSQLObjectMapper disable(Feature feature){
-		module.disable(feature);
-		this.registerModule(module);
+		configureFeatures(getFeatures() & ~feature.getMask());
 		return this;
 	}
-	
+
+	/**
+	 * Troca a forma como as entidades são identificadas no JSON (veja
+	 * {@link AnterosIdentityStrategy}). Os serializadores e deserializadores já
+	 * criados são descartados; writers e readers já criados mantêm a estratégia
+	 * anterior. A estratégia pertence a este mapper: cópias e o módulo
+	 * compartilhado não são alterados.
+	 */
+	public AnterosNoSQLObjectMapper setIdentityStrategy(AnterosIdentityStrategy identityStrategy) {
+		if (identityStrategy == null) {
+			throw new JacksonSerializationException("Identity strategy must not be null.");
+		}
+		if (identityStrategy != getIdentityStrategy()) {
+			configureIdentityStrategy(identityStrategy);
+		}
+		return this;
+	}
+
+	protected void configureIdentityStrategy(AnterosIdentityStrategy identityStrategy) {
+		AnterosAnnotationIntrospector.Settings settings = getIntrospectorSettings();
+		if (settings != null) {
+			configureIntrospectors(settings.withIdentityStrategy(identityStrategy));
+		}
+		discardIntrospectionCaches();
+	}
+
+	/**
+	 * Descarta os serializadores, deserializadores e mappers derivados que
+	 * foram criados com os introspectors anteriores.
+	 */
+	protected void discardIntrospectionCaches() {
+		_serializerProvider.flushCachedSerializers();
+		_rootDeserializers.clear();
+		_deserializationContext = _deserializationContext.copy();
+		siblings.clear();
+		viewDescriptors.clear();
+		deltaMapper = null;
+		managedMapper = null;
+	}
+
+	/**
+	 * Estratégia dos {@link AnterosAnnotationIntrospector} deste mapper ou, se
+	 * eles foram substituídos, a do módulo.
+	 */
+	public AnterosIdentityStrategy getIdentityStrategy() {
+		AnterosAnnotationIntrospector.Settings settings = getIntrospectorSettings();
+		return settings == null ? module.getIdentityStrategy() : settings.getIdentityStrategy();
+	}
+
+	/**
+	 * Também repassa a estratégia aos {@link AnterosAnnotationIntrospector},
+	 * que a usam para o nome do object id em
+	 * {@link AnterosIdentityStrategy#ENTITY_ID}.
+	 */
+	@Override
+	public AnterosNoSQLObjectMapper setPropertyNamingStrategy(PropertyNamingStrategy s) {
+		super.setPropertyNamingStrategy(s);
+		AnterosAnnotationIntrospector.Settings settings = getIntrospectorSettings();
+		if (settings != null) {
+			configureIntrospectors(settings.withNamingStrategy(s));
+		}
+		discardIntrospectionCaches();
+		return this;
+	}
+
+	/**
+	 * Marca as entidades que nunca se repetem num grafo serializado (veja
+	 * {@link AnterosPersistenceJacksonModule#setAcyclicEntities(Class...)}).
+	 * Os serializadores e deserializadores já criados são descartados; como a
+	 * estratégia de identidade, vale apenas para este mapper.
+	 */
+	public AnterosNoSQLObjectMapper setAcyclicEntities(Class<?>... acyclicEntities) {
+		AnterosAnnotationIntrospector.Settings settings = getIntrospectorSettings();
+		if (settings != null) {
+			configureIntrospectors(settings.withAcyclicEntities(
+					Collections.unmodifiableSet(new LinkedHashSet<Class<?>>(Arrays.asList(acyclicEntities)))));
+		}
+		discardIntrospectionCaches();
+		return this;
+	}
+
+	public Set<Class<?>> getAcyclicEntities() {
+		AnterosAnnotationIntrospector.Settings settings = getIntrospectorSettings();
+		return settings == null ? module.getAcyclicEntities() : settings.getAcyclicEntities();
+	}
+
+	public int getFeatures() {
+		return module.featuresOf(getSerializationConfig());
+	}
+
+	public boolean isEnabled(Feature feature) {
+		return feature.enabledIn(getFeatures());
+	}
+
+	/**
+	 * Retorna um writer com as features informadas (máscara de
+	 * {@link Feature#getMask()}), sem alterar o mapper. Cada combinação tem seus
+	 * próprios serializadores em cache, portanto o custo é o mesmo do writer
+	 * padrão.
+	 */
+	public ObjectWriter writerWithFeatures(int features) {
+		return mapperFor(features).writer().withAttribute(AnterosPersistenceJacksonModule.FEATURES_ATTRIBUTE,
+				features);
+	}
+
+	public ObjectWriter writerWith(Feature... features) {
+		return writerWithFeatures(getFeatures() | Feature.maskOf(features));
+	}
+
+	public ObjectWriter writerWithout(Feature... features) {
+		return writerWithFeatures(getFeatures() & ~Feature.maskOf(features));
+	}
+
+	/**
+	 * Retorna um writer que escreve apenas as propriedades dos caminhos
+	 * informados (veja {@link AnterosProjection}). Propriedades fora da
+	 * projeção não são lidas, e proxies e coleções persistentes fora dela não
+	 * são carregados.
+	 */
+	public ObjectWriter writerWithProjection(String... paths) {
+		return writerWithProjection(AnterosProjection.of(paths));
+	}
+
+	public ObjectWriter writerWithProjection(AnterosProjection projection) {
+		return writer().withAttribute(AnterosPersistenceJacksonModule.PROJECTION_ATTRIBUTE, projection);
+	}
+
+	/**
+	 * Captura o estado da entidade, normalmente logo após carregá-la, para
+	 * comparação posterior com {@link #delta(Object, AnterosSnapshot)}. Proxies
+	 * e coleções persistentes não carregados não são inicializados.
+	 */
+	public AnterosSnapshot snapshot(Object entity) {
+		return AnterosSnapshot.of(deltaTree(entity), deltaMapper());
+	}
+
+	/**
+	 * Compara a entidade com o snapshot e retorna apenas o que mudou, como
+	 * documento de atualização ({@code $set}/{@code $unset}). Proxies e
+	 * coleções persistentes não carregados não são inicializados nem escritos.
+	 * O snapshot não é alterado; o estado atual fica em
+	 * {@link AnterosDelta#getSnapshot()}.
+	 */
+	public AnterosDelta delta(Object entity, AnterosSnapshot snapshot) {
+		return AnterosDelta.between(deltaTree(entity), snapshot, deltaMapper());
+	}
+
+	/**
+	 * Escreve a entidade em árvore sem carregar nada: sem
+	 * {@link Feature#FORCE_LAZY_LOADING}, com os não carregados marcados como
+	 * {@link AnterosSnapshot#NOT_LOADED} e com identidade pelo id da entidade,
+	 * para que o resultado não dependa da ordem nem de valores aleatórios.
+	 */
+	protected ObjectNode deltaTree(Object entity) {
+		int features = getFeatures() & ~Feature.maskOf(Feature.FORCE_LAZY_LOADING, Feature.STREAM_LAZY_COLLECTIONS,
+				Feature.SERIALIZE_IDENTIFIER_FOR_LAZY_NOT_LOADED_OBJECTS);
+		try {
+			TokenBuffer buffer = new TokenBuffer(this, false);
+			deltaMapper().writerWithFeatures(features)
+					.withAttribute(AnterosPersistenceJacksonModule.DELTA_ATTRIBUTE, Boolean.TRUE)
+					.writeValue(buffer, entity);
+			JsonNode tree = readTree(buffer.asParser());
+			if (!(tree instanceof ObjectNode)) {
+				throw new JacksonSerializationException(
+						"Entity " + entity.getClass().getName() + " is not written as a JSON object.");
+			}
+			return (ObjectNode) tree;
+		} catch (IOException e) {
+			throw new JacksonSerializationException(e);
+		}
+	}
+
+	protected AnterosNoSQLObjectMapper deltaMapper() {
+		AnterosIdentityStrategy identityStrategy = getIdentityStrategy();
+		if (identityStrategy == AnterosIdentityStrategy.ENTITY_ID || identityStrategy == AnterosIdentityStrategy.NONE) {
+			return this;
+		}
+		AnterosNoSQLObjectMapper result = deltaMapper;
+		if (result == null) {
+			result = copy();
+			result.configureIdentityStrategy(AnterosIdentityStrategy.ENTITY_ID);
+			deltaMapper = result;
+		}
+		return result;
+	}
+
+	public AnterosByteBufferPool getByteBufferPool() {
+		return byteBufferPool;
+	}
+
+	/**
+	 * Define o pool usado por {@link #writeValueAsByteBuffer(Object)} e
+	 * {@link #writeValue(WritableByteChannel, Object)}; para buffers fora do
+	 * heap, use um {@code new AnterosByteBufferPool(true)}.
+	 */
+	public AnterosNoSQLObjectMapper setByteBufferPool(AnterosByteBufferPool byteBufferPool) {
+		if (byteBufferPool == null) {
+			throw new JacksonSerializationException("Byte buffer pool must not be null.");
+		}
+		this.byteBufferPool = byteBufferPool;
+		return this;
+	}
+
+	/**
+	 * Escreve o valor diretamente no buffer, a partir da posição atual, que
+	 * avança até o fim do documento. Se o documento não couber, a posição é
+	 * restaurada e é lançada uma {@link IOException} causada por
+	 * {@link java.nio.BufferOverflowException}.
+	 */
+	public void writeValue(ByteBuffer target, Object value) throws IOException {
+		writeValue(writer(), target, value);
+	}
+
+	public void writeValue(ObjectWriter writer, ByteBuffer target, Object value) throws IOException {
+		int start = target.position();
+		boolean written = false;
+		try {
+			writeValue(writer, new AnterosByteBufferOutputStream(target), value);
+			written = true;
+		} finally {
+			if (!written) {
+				target.position(start);
+			}
+		}
+	}
+
+	/**
+	 * Escreve o valor em um buffer do {@link #getByteBufferPool()}, com a
+	 * capacidade estimada pelo tamanho dos documentos anteriores da mesma
+	 * classe, e o retorna pronto para leitura. Depois de usado, o buffer deve
+	 * ser devolvido com {@link #releaseByteBuffer(ByteBuffer)}.
+	 */
+	public ByteBuffer writeValueAsByteBuffer(Object value) throws JsonProcessingException {
+		return writeValueAsByteBuffer(writer(), value);
+	}
+
+	public ByteBuffer writeValueAsByteBuffer(ObjectWriter writer, Object value) throws JsonProcessingException {
+		AnterosByteBufferPool pool = byteBufferPool;
+		Class<?> type = (value == null) ? Void.class : value.getClass();
+		AnterosByteBufferOutputStream out = new AnterosByteBufferOutputStream(pool, pool.capacityFor(type));
+		boolean written = false;
+		try {
+			writeValue(writer, out, value);
+			written = true;
+		} catch (JsonProcessingException e) {
+			throw e;
+		} catch (IOException e) {
+			throw JsonMappingException.fromUnexpectedIOE(e);
+		} finally {
+			if (!written) {
+				out.release();
+			}
+		}
+		pool.recordSize(type, (int) out.getCount());
+		ByteBuffer buffer = out.getBuffer();
+		buffer.flip();
+		return buffer;
+	}
+
+	public void releaseByteBuffer(ByteBuffer buffer) {
+		byteBufferPool.release(buffer);
+	}
+
+	/**
+	 * Escreve o valor no canal em blocos de um buffer do
+	 * {@link #getByteBufferPool()}, sem montar o documento inteiro em memória.
+	 * O canal deve estar em modo bloqueante e não é fechado.
+	 */
+	public void writeValue(WritableByteChannel channel, Object value) throws IOException {
+		writeValue(writer(), channel, value);
+	}
+
+	public void writeValue(ObjectWriter writer, WritableByteChannel channel, Object value) throws IOException {
+		AnterosByteBufferPool pool = byteBufferPool;
+		Class<?> type = (value == null) ? Void.class : value.getClass();
+		ByteBuffer chunk = pool.acquire(Math.min(pool.capacityFor(type), MAX_CHANNEL_CHUNK));
+		try {
+			AnterosByteBufferOutputStream out = new AnterosByteBufferOutputStream(channel, chunk);
+			writeValue(writer, out, value);
+			pool.recordSize(type, (int) Math.min(out.getCount(), Integer.MAX_VALUE));
+		} finally {
+			pool.release(chunk);
+		}
+	}
+
+	/**
+	 * Escreve e esvazia o stream mesmo com
+	 * {@link com.fasterxml.jackson.core.JsonGenerator.Feature#AUTO_CLOSE_TARGET}
+	 * desabilitada.
+	 */
+	protected void writeValue(ObjectWriter writer, AnterosByteBufferOutputStream out, Object value)
+			throws IOException {
+		writer.writeValue(out, value);
+		out.flush();
+	}
+
+	/**
+	 * Retorna um exportador NDJSON que usa o writer deste mapper; veja
+	 * {@link AnterosNdjsonExporter} para as opções de paralelismo e gzip.
+	 */
+	public AnterosNdjsonExporter ndjsonExporter() {
+		return new AnterosNdjsonExporter(this);
+	}
+
+	/**
+	 * Exporta as entidades do cursor em NDJSON, na ordem original, com os
+	 * blocos serializados em paralelo no {@link ForkJoinPool#commonPool()}.
+	 * 
+	 * @return quantidade de entidades exportadas
+	 */
+	public long exportNdjson(Iterator<?> entities, OutputStream out) throws IOException {
+		return ndjsonExporter().export(entities, out);
+	}
+
+	public ObjectReader readerWithFeatures(int features) {
+		return mapperFor(features).reader().withAttribute(AnterosPersistenceJacksonModule.FEATURES_ATTRIBUTE,
+				features);
+	}
+
+	public ObjectReader readerWith(Feature... features) {
+		return readerWithFeatures(getFeatures() | Feature.maskOf(features));
+	}
+
+	public ObjectReader readerWithout(Feature... features) {
+		return readerWithFeatures(getFeatures() & ~Feature.maskOf(features));
+	}
+
+	/**
+	 * Retorna um reader que procura cada entidade lida, pelo id, no
+	 * resolvedor (normalmente o cache de primeiro nível da sessão) e, se ela
+	 * já é gerenciada, atualiza a instância existente, com as mesmas regras de
+	 * {@link #readerForUpdating(Object)}, em vez de criar outra. Vale também
+	 * para as entidades referenciadas e para os elementos das coleções
+	 * persistentes, que são preenchidas no lugar.
+	 * <p>
+	 * A leitura usa uma cópia deste mapper (veja {@link #managedMapper()}),
+	 * de modo que as leituras comuns não passam pelos deserializadores das
+	 * entidades gerenciadas.
+	 */
+	public ObjectReader readerForManaged(Class<?> type, AnterosManagedEntityResolver resolver) {
+		return managedMapper().readerFor(type)
+				.withAttribute(AnterosPersistenceJacksonModule.MANAGED_ENTITY_RESOLVER_ATTRIBUTE, resolver);
+	}
+
+	public ObjectReader readerForManaged(TypeReference<?> type, AnterosManagedEntityResolver resolver) {
+		return managedMapper().readerFor(type)
+				.withAttribute(AnterosPersistenceJacksonModule.MANAGED_ENTITY_RESOLVER_ATTRIBUTE, resolver);
+	}
+
+	/**
+	 * Cópia deste mapper com {@link AnterosPersistenceJacksonModule#MANAGED_READS_ATTRIBUTE}
+	 * na configuração de deserialização, criada uma vez e mantida em cache.
+	 * Os deserializadores dela ficam num cache próprio.
+	 */
+	protected AnterosNoSQLObjectMapper managedMapper() {
+		AnterosNoSQLObjectMapper result = managedMapper;
+		if (result == null) {
+			result = copy();
+			result.setConfig(result.getDeserializationConfig()
+					.withAttribute(AnterosPersistenceJacksonModule.MANAGED_READS_ATTRIBUTE, Boolean.TRUE));
+			managedMapper = result;
+		}
+		return result;
+	}
+
+	/**
+	 * Cria uma visão preguiçosa da entidade sobre o documento JSON: só os
+	 * campos do primeiro nível são indexados e cada propriedade é lida no
+	 * primeiro acesso (veja {@link AnterosDocumentView}). O array não é
+	 * copiado e não deve ser alterado enquanto a visão estiver em uso.
+	 */
+	public <T> AnterosDocumentView<T> readView(byte[] document, Class<T> type) {
+		return readView(document, 0, document.length, type);
+	}
+
+	/**
+	 * Contexto de leitura das propriedades de uma {@link AnterosDocumentView},
+	 * com a configuração de deserialização deste mapper.
+	 */
+	DefaultDeserializationContext createViewContext(JsonParser p) {
+		return createDeserializationContext(p, getDeserializationConfig());
+	}
+
+	public <T> AnterosDocumentView<T> readView(byte[] document, int offset, int length, Class<T> type) {
+		if (!JsonFactory.FORMAT_NAME_JSON.equals(getFactory().getFormatName())) {
+			throw new JacksonSerializationException(
+					"Document views require JSON documents, not " + getFactory().getFormatName() + ".");
+		}
+		AnterosDocumentView.Descriptor descriptor = viewDescriptors.get(type);
+		if (descriptor == null) {
+			descriptor = new AnterosDocumentView.Descriptor(this, type);
+			AnterosDocumentView.Descriptor previous = viewDescriptors.putIfAbsent(type, descriptor);
+			if (previous != null) {
+				descriptor = previous;
+			}
+		}
+		try {
+			return new AnterosDocumentView<T>(descriptor, document, offset, length);
+		} catch (IOException e) {
+			throw new JacksonSerializationException(e);
+		}
+	}
+
+	/**
+	 * Define as features padrão na configuração do mapper. Como
+	 * {@link Feature#USE_TRANSIENT_ANNOTATION} muda a introspecção das
+	 * classes, alterá-la troca o introspector e descarta os deserializadores já
+	 * criados; as demais features apenas selecionam outro conjunto de
+	 * serializadores.
+	 */
+	protected void configureFeatures(int features) {
+		boolean useTransient = Feature.USE_TRANSIENT_ANNOTATION.enabledIn(features);
+		if (useTransient != Feature.USE_TRANSIENT_ANNOTATION.enabledIn(getFeatures())) {
+			AnterosAnnotationIntrospector.Settings settings = getIntrospectorSettings();
+			if (settings != null) {
+				configureIntrospectors(settings.withUseTransient(useTransient));
+			}
+			_rootDeserializers.clear();
+			_deserializationContext = _deserializationContext.copy();
+		}
+		this.setConfig(getSerializationConfig().withAttribute(AnterosPersistenceJacksonModule.FEATURES_ATTRIBUTE,
+				features));
+		this.setConfig(getDeserializationConfig()
+				.withAttribute(AnterosPersistenceJacksonModule.FEATURES_ATTRIBUTE, features));
+		siblings.clear();
+		deltaMapper = null;
+		managedMapper = null;
+	}
+
+	/**
+	 * Retorna o mapper usado para as features informadas: este mesmo ou, se
+	 * {@link Feature#USE_TRANSIENT_ANNOTATION} for diferente, uma cópia com o
+	 * introspector correspondente, criada uma vez e mantida em cache.
+	 */
+	protected AnterosNoSQLObjectMapper mapperFor(int features) {
+		int introspection = features & Feature.USE_TRANSIENT_ANNOTATION.getMask();
+		if (introspection == (getFeatures() & Feature.USE_TRANSIENT_ANNOTATION.getMask())) {
+			return this;
+		}
+		AnterosNoSQLObjectMapper sibling = siblings.get(introspection);
+		if (sibling == null) {
+			sibling = copy();
+			sibling.configureFeatures(features);
+			AnterosNoSQLObjectMapper previous = siblings.putIfAbsent(introspection, sibling);
+			if (previous != null) {
+				sibling = previous;
+			}
+		}
+		return sibling;
+	}
+
+	/**
+	 * Configuração dos {@link AnterosAnnotationIntrospector} deste mapper ou
+	 * null se eles foram substituídos.
+	 */
+	protected AnterosAnnotationIntrospector.Settings getIntrospectorSettings() {
+		for (AnnotationIntrospector current : getSerializationConfig().getAnnotationIntrospector().allIntrospectors()) {
+			if (current instanceof AnterosAnnotationIntrospector) {
+				return ((AnterosAnnotationIntrospector) current).getSettings();
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Troca os {@link AnterosAnnotationIntrospector} de serialização e
+	 * deserialização por cópias com a configuração informada; os demais
+	 * introspectors são mantidos na mesma ordem. Cabe a quem chama descartar
+	 * o que foi criado com os anteriores.
+	 */
+	protected void configureIntrospectors(AnterosAnnotationIntrospector.Settings settings) {
+		this.setAnnotationIntrospectors(withSettings(getSerializationConfig().getAnnotationIntrospector(), settings),
+				withSettings(getDeserializationConfig().getAnnotationIntrospector(), settings));
+	}
+
+	protected AnnotationIntrospector withSettings(AnnotationIntrospector introspector,
+			AnterosAnnotationIntrospector.Settings settings) {
+		return copyOf(introspector, settings);
+	}
+
+	/**
+	 * Recompõe o introspector com cópias dos {@link AnterosAnnotationIntrospector}:
+	 * com a configuração informada ou, se ela for null, com a mesma
+	 * configuração e caches vazios (veja {@link AnterosAnnotationIntrospector#copy()}).
+	 */
+	private static AnnotationIntrospector copyOf(AnnotationIntrospector introspector,
+			AnterosAnnotationIntrospector.Settings settings) {
+		AnnotationIntrospector result = null;
+		List<AnnotationIntrospector> all = new ArrayList<AnnotationIntrospector>(introspector.allIntrospectors());
+		Collections.reverse(all);
+		for (AnnotationIntrospector current : all) {
+			if (current instanceof AnterosAnnotationIntrospector) {
+				current = settings == null ? ((AnterosAnnotationIntrospector) current).copy()
+						: ((AnterosAnnotationIntrospector) current).withSettings(settings);
+			}
+			result = (result == null) ? current : AnnotationIntrospector.pair(current, result);
+		}
+		return result;
+	}
+
 	protected void createModule(){
 		this.module = new AnterosPersistenceJacksonModule(sessionFactory, this.getDeserializationContext());
 	}
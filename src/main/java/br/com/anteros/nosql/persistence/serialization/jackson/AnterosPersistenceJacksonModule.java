@@ -15,10 +15,17 @@
  *******************************************************************************/
 package br.com.anteros.nosql.persistence.serialization.jackson;
 
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.Executor;
+
 import com.fasterxml.jackson.core.Version;
 import com.fasterxml.jackson.databind.AnnotationIntrospector;
 import com.fasterxml.jackson.databind.DeserializationContext;
 import com.fasterxml.jackson.databind.Module;
+import com.fasterxml.jackson.databind.cfg.MapperConfig;
 
 import br.com.anteros.nosql.persistence.session.NoSQLSessionFactory;
 
@@ -62,7 +69,57 @@ public class AnterosPersistenceJacksonModule extends Module {
 		 * 
 		 * @since 2.4
 		 */
-		REQUIRE_EXPLICIT_LAZY_LOADING_MARKER(false), ;
+		REQUIRE_EXPLICIT_LAZY_LOADING_MARKER(false),
+
+		/**
+		 * Indica se coleções persistentes não inicializadas devem ser escritas
+		 * em páginas, lidas pelo {@link AnterosCollectionPageLoader} do módulo,
+		 * em vez de carregadas por inteiro antes da escrita. Só tem efeito com
+		 * {@link #FORCE_LAZY_LOADING} habilitada e um carregador de páginas
+		 * configurado.
+		 * <p>
+		 * Valor padrão é falso.
+		 */
+		STREAM_LAZY_COLLECTIONS(false),
+
+		/**
+		 * Indica se um proxy não inicializado deve ser escrito como uma
+		 * referência compacta, com o identificador e o discriminador da
+		 * entidade, em vez de nulo ou de ser carregado. Tem prioridade sobre
+		 * {@link #FORCE_LAZY_LOADING} para proxies não inicializados; os já
+		 * inicializados continuam sendo escritos por inteiro.
+		 * <p>
+		 * Valor padrão é falso.
+		 */
+		SERIALIZE_IDENTIFIER_FOR_LAZY_NOT_LOADED_OBJECTS(false),
+
+		/**
+		 * Indica se as coleções de beans devem ser escritas no formato
+		 * colunar: um objeto com os nomes das propriedades uma única vez
+		 * ({@value AnterosPersistenceJacksonModule#COLUMNAR_COLUMNS_FIELD}) e
+		 * os valores de cada elemento num array
+		 * ({@value AnterosPersistenceJacksonModule#COLUMNAR_ROWS_FIELD}). Nas
+		 * colunas listadas em
+		 * {@value AnterosPersistenceJacksonModule#COLUMNAR_NULLS_FIELD} o null
+		 * é um valor; nas demais ele marca a propriedade omitida pelo
+		 * serializador, que não é lida. A classe das linhas é a do primeiro
+		 * elemento, identificada por
+		 * {@value AnterosPersistenceJacksonModule#COLUMNAR_TYPE_FIELD} quando o
+		 * tipo declarado dos elementos é polimórfico; elementos de outras
+		 * classes são escritos como objetos, com o discriminador. Só vale para
+		 * coleções com pelo menos
+		 * {@link AnterosPersistenceJacksonModule#getColumnarCollectionThreshold()}
+		 * elementos e não se aplica às escritas em páginas de
+		 * {@link #STREAM_LAZY_COLLECTIONS}. Continuam como array as coleções
+		 * cujas linhas podem ter campos fora das colunas ou omitir
+		 * propriedades de outra forma (any-getters, filtros, views,
+		 * projeções) e aquelas cuja classe das linhas difere do tipo declarado
+		 * sem informação de tipo. A
+		 * leitura aceita os dois formatos, com esta feature habilitada ou não.
+		 * <p>
+		 * Valor padrão é falso.
+		 */
+		COLUMNAR_COLLECTIONS(false), ;
 
 		final boolean _defaultState;
 		final int _mask;
@@ -86,6 +143,14 @@ public class AnterosPersistenceJacksonModule extends Module {
 			_mask = (1 << ordinal());
 		}
 
+		public static int maskOf(Feature... features) {
+			int flags = 0;
+			for (Feature f : features) {
+				flags |= f.getMask();
+			}
+			return flags;
+		}
+
 		public boolean enabledIn(int flags) {
 			return (flags & _mask) != 0;
 		}
@@ -101,20 +166,122 @@ public class AnterosPersistenceJacksonModule extends Module {
 
 	protected final static int DEFAULT_FEATURES = Feature.collectDefaults();
 
+	/**
+	 * Atributo de contexto (veja
+	 * {@link com.fasterxml.jackson.databind.ObjectWriter#withAttribute(Object, Object)})
+	 * com a máscara de {@link Feature}s de uma chamada. Sem ele vale a máscara
+	 * do módulo.
+	 */
+	public final static String FEATURES_ATTRIBUTE = "anteros.features";
+
+	/**
+	 * Atributo de contexto com a {@link AnterosProjection} de uma escrita. Sem
+	 * ele todas as propriedades são escritas.
+	 */
+	public final static String PROJECTION_ATTRIBUTE = "anteros.projection";
+
+	/**
+	 * Atributo de contexto que marca as escritas de
+	 * {@link AnterosNoSQLObjectMapper#snapshot(Object)} e
+	 * {@link AnterosNoSQLObjectMapper#delta(Object, AnterosSnapshot)}: proxies e
+	 * coleções persistentes não carregados são escritos como
+	 * {@link AnterosSnapshot#NOT_LOADED} em vez de nulo.
+	 */
+	public final static String DELTA_ATTRIBUTE = "anteros.delta";
+
+	/**
+	 * Atributo de contexto (veja
+	 * {@link com.fasterxml.jackson.databind.ObjectReader#withAttribute(Object, Object)})
+	 * com o {@link AnterosManagedEntityResolver} de uma leitura: entidades já
+	 * gerenciadas pela sessão são atualizadas no lugar de criar novas
+	 * instâncias.
+	 */
+	public final static String MANAGED_ENTITY_RESOLVER_ATTRIBUTE = "anteros.managedEntityResolver";
+
+	/**
+	 * Atributo da configuração de deserialização do mapper que habilita os
+	 * deserializadores das leituras com {@link AnterosManagedEntityResolver}.
+	 * Sem ele as entidades e suas coleções são lidas pelos deserializadores
+	 * padrão e {@link #MANAGED_ENTITY_RESOLVER_ATTRIBUTE} é ignorado. O
+	 * {@link AnterosNoSQLObjectMapper#readerForManaged(Class, AnterosManagedEntityResolver)}
+	 * usa uma cópia do mapper com o atributo definido.
+	 */
+	public final static String MANAGED_READS_ATTRIBUTE = "anteros.managedReads";
+
+	/**
+	 * Campos do objeto que representa uma coleção no formato de
+	 * {@link Feature#COLUMNAR_COLLECTIONS}: o discriminador da classe das
+	 * linhas, os nomes das colunas e as linhas.
+	 */
+	public final static String COLUMNAR_TYPE_FIELD = "@type";
+
+	public final static String COLUMNAR_COLUMNS_FIELD = "@columns";
+
+	/**
+	 * Colunas, no formato de {@link Feature#COLUMNAR_COLLECTIONS}, cujas
+	 * propriedades escrevem nulos (inclusão
+	 * {@link com.fasterxml.jackson.annotation.JsonInclude.Include#ALWAYS}):
+	 * nelas o null da linha é lido como valor. Nas demais o null marca a
+	 * propriedade omitida pelo serializador e não é lido, como um campo
+	 * ausente do objeto. Omitido quando nenhuma coluna escreve nulos.
+	 */
+	public final static String COLUMNAR_NULLS_FIELD = "@nulls";
+
+	public final static String COLUMNAR_ROWS_FIELD = "@rows";
+
+	public final static int DEFAULT_BATCH_SIZE = 100;
+
+	public final static int DEFAULT_MAX_CONCURRENT_LOADS = 16;
+
+	public final static int DEFAULT_COLLECTION_PAGE_SIZE = 500;
+
+	public final static int DEFAULT_COLUMNAR_COLLECTION_THRESHOLD = 2;
+
 	protected int _moduleFeatures = DEFAULT_FEATURES;
 
 	private DeserializationContext deserializationContext;
 
 	private NoSQLSessionFactory sessionFactory;
 
+	private final AnterosSubtypeRegistry subtypeRegistry;
+
 	private AnterosSerializerModifier anterosSerializerModifier;
 
 	private AnterosSerializers anterosSerializers;
 
+	private AnterosBatchLoader batchLoader;
+
+	private int batchSize = DEFAULT_BATCH_SIZE;
+
+	private final AnterosBatchLoadingStatistics batchLoadingStatistics = new AnterosBatchLoadingStatistics();
+
+	private Executor loadingExecutor;
+
+	private int maxConcurrentLoads = DEFAULT_MAX_CONCURRENT_LOADS;
+
+	private AnterosCollectionPageLoader collectionPageLoader;
+
+	private int collectionPageSize = DEFAULT_COLLECTION_PAGE_SIZE;
+
+	private int columnarCollectionThreshold = DEFAULT_COLUMNAR_COLLECTION_THRESHOLD;
+
+	private AnterosProxyIdentifierResolver proxyIdentifierResolver;
+
+	private final AnterosProxyReferenceWriter proxyReferenceWriter = new AnterosProxyReferenceWriter(this);
+
+	private boolean useGeneratedAccessors;
+
+	private volatile AnterosSerializationMetrics serializationMetrics;
+
+	private AnterosIdentityStrategy identityStrategy = AnterosIdentityStrategy.UUID;
+
+	private Set<Class<?>> acyclicEntities = Collections.emptySet();
+
 	public AnterosPersistenceJacksonModule(NoSQLSessionFactory sessionFactory,
 			DeserializationContext deserializationContext) {
 		this.deserializationContext = deserializationContext;
 		this.sessionFactory = sessionFactory;
+		this.subtypeRegistry = new AnterosSubtypeRegistry(sessionFactory);
 	}
 
 	@Override
@@ -134,38 +301,81 @@ public class AnterosPersistenceJacksonModule extends Module {
 	@Override
 	public void setupModule(SetupContext context) {
 		context.appendAnnotationIntrospector(annotationIntrospector());
-		anterosSerializerModifier = new AnterosSerializerModifier(_moduleFeatures, sessionFactory);
-		anterosSerializers = new AnterosSerializers(_moduleFeatures);
+		anterosSerializerModifier = new AnterosSerializerModifier(this, sessionFactory);
+		anterosSerializers = new AnterosSerializers(this, proxyReferenceWriter);
 		context.addBeanSerializerModifier(anterosSerializerModifier);
+		context.addBeanDeserializerModifier(new AnterosDeserializerModifier());
 		context.addSerializers(anterosSerializers);
+		if (useGeneratedAccessors) {
+			new AnterosGeneratedAccessorsModule(sessionFactory).setupModule(context);
+		}
 	}
 
 	protected AnnotationIntrospector annotationIntrospector() {
-		AnterosAnnotationIntrospector ai = new AnterosAnnotationIntrospector(sessionFactory);
-		ai.setUseTransient(isEnabled(Feature.USE_TRANSIENT_ANNOTATION));
+		AnterosAnnotationIntrospector ai = new AnterosAnnotationIntrospector(subtypeRegistry);
+		ai.setUseTransient(Feature.USE_TRANSIENT_ANNOTATION.enabledIn(_moduleFeatures));
+		ai.setIdentityStrategy(identityStrategy);
+		ai.setAcyclicEntities(acyclicEntities);
 		return ai;
 	}
 
+	/**
+	 * Altera a máscara padrão do módulo, usada pelos mappers que o registrarem
+	 * depois desta chamada. Os mappers já registrados mantêm as suas features:
+	 * com o {@link AnterosNoSQLObjectMapper} use
+	 * {@link AnterosNoSQLObjectMapper#enable(Feature)} ou, por chamada,
+	 * {@link AnterosNoSQLObjectMapper#writerWith(Feature...)}.
+	 */
 	public AnterosPersistenceJacksonModule enable(Feature f) {
 		_moduleFeatures |= f.getMask();
-		if (anterosSerializerModifier != null)
-			anterosSerializerModifier.setFeatures(_moduleFeatures);
-		if (anterosSerializers!=null)
-			anterosSerializers.setForceLoading(Feature.FORCE_LAZY_LOADING.enabledIn(_moduleFeatures));
 		return this;
 	}
 
 	public AnterosPersistenceJacksonModule disable(Feature f) {
 		_moduleFeatures &= ~f.getMask();
-		if (anterosSerializerModifier != null)
-			anterosSerializerModifier.setFeatures(_moduleFeatures);
 		return this;
 	}
 
+	/**
+	 * Indica se a feature está na máscara padrão do módulo, que não acompanha
+	 * as features do mapper nem as de cada chamada.
+	 * 
+	 * @deprecated use {@link #isEnabled(MapperConfig, Feature)}.
+	 */
+	@Deprecated
 	public final boolean isEnabled(Feature f) {
 		return (_moduleFeatures & f.getMask()) != 0;
 	}
 
+	/**
+	 * Indica se a feature está em vigor para a configuração (veja
+	 * {@link #featuresOf(MapperConfig)}).
+	 */
+	public boolean isEnabled(MapperConfig<?> config, Feature f) {
+		return f.enabledIn(featuresOf(config));
+	}
+
+	/**
+	 * Máscara padrão do módulo; a de um mapper ou de uma chamada é obtida com
+	 * {@link #featuresOf(MapperConfig)}.
+	 */
+	public int getFeatures() {
+		return _moduleFeatures;
+	}
+
+	/**
+	 * Retorna a máscara de {@link Feature}s em vigor para a configuração: a do
+	 * {@link #FEATURES_ATTRIBUTE}, se presente, senão a do módulo.
+	 */
+	public int featuresOf(MapperConfig<?> config) {
+		return featuresOf(config, _moduleFeatures);
+	}
+
+	public static int featuresOf(MapperConfig<?> config, int defaultFeatures) {
+		Object features = config.getAttributes().getAttribute(FEATURES_ATTRIBUTE);
+		return features instanceof Integer ? (Integer) features : defaultFeatures;
+	}
+
 	public AnterosPersistenceJacksonModule configure(Feature f, boolean state) {
 		if (state) {
 			enable(f);
@@ -174,4 +384,218 @@ public class AnterosPersistenceJacksonModule extends Module {
 		}
 		return this;
 	}
+
+	public AnterosBatchLoader getBatchLoader() {
+		return batchLoader;
+	}
+
+	/**
+	 * Define o carregador usado para inicializar em lote, antes da escrita, as
+	 * referências lazy do objeto serializado quando
+	 * {@link Feature#FORCE_LAZY_LOADING} está habilitada. Sem carregador (o
+	 * padrão), cada proxy é carregado individualmente ao ser serializado.
+	 */
+	public AnterosPersistenceJacksonModule setBatchLoader(AnterosBatchLoader batchLoader) {
+		this.batchLoader = batchLoader;
+		return this;
+	}
+
+	public int getBatchSize() {
+		return batchSize;
+	}
+
+	public AnterosPersistenceJacksonModule setBatchSize(int batchSize) {
+		if (batchSize < 1) {
+			throw new IllegalArgumentException("Batch size must be greater than zero: " + batchSize);
+		}
+		this.batchSize = batchSize;
+		return this;
+	}
+
+	public AnterosBatchLoadingStatistics getBatchLoadingStatistics() {
+		return batchLoadingStatistics;
+	}
+
+	public Executor getLoadingExecutor() {
+		return loadingExecutor;
+	}
+
+	/**
+	 * Habilita o carregamento assíncrono: com {@link Feature#FORCE_LAZY_LOADING}
+	 * habilitada, as referências lazy do objeto serializado são inicializadas
+	 * neste executor enquanto a escrita avança, em vez de uma a uma na thread
+	 * de serialização. Com um {@link AnterosBatchLoader} configurado, cada
+	 * tarefa carrega um lote. {@code null} (o padrão) desliga o modo
+	 * assíncrono. Veja {@link AnterosLazyPrefetcher#newDefaultExecutor(int)}.
+	 */
+	public AnterosPersistenceJacksonModule setLoadingExecutor(Executor loadingExecutor) {
+		this.loadingExecutor = loadingExecutor;
+		return this;
+	}
+
+	public int getMaxConcurrentLoads() {
+		return maxConcurrentLoads;
+	}
+
+	public AnterosPersistenceJacksonModule setMaxConcurrentLoads(int maxConcurrentLoads) {
+		if (maxConcurrentLoads < 1) {
+			throw new IllegalArgumentException(
+					"Max concurrent loads must be greater than zero: " + maxConcurrentLoads);
+		}
+		this.maxConcurrentLoads = maxConcurrentLoads;
+		return this;
+	}
+
+	public AnterosCollectionPageLoader getCollectionPageLoader() {
+		return collectionPageLoader;
+	}
+
+	public AnterosPersistenceJacksonModule setCollectionPageLoader(AnterosCollectionPageLoader collectionPageLoader) {
+		this.collectionPageLoader = collectionPageLoader;
+		return this;
+	}
+
+	public int getCollectionPageSize() {
+		return collectionPageSize;
+	}
+
+	public AnterosPersistenceJacksonModule setCollectionPageSize(int collectionPageSize) {
+		if (collectionPageSize < 1) {
+			throw new IllegalArgumentException("Page size must be greater than zero: " + collectionPageSize);
+		}
+		this.collectionPageSize = collectionPageSize;
+		return this;
+	}
+
+	public int getColumnarCollectionThreshold() {
+		return columnarCollectionThreshold;
+	}
+
+	/**
+	 * Define o tamanho mínimo das coleções escritas no formato de
+	 * {@link Feature#COLUMNAR_COLLECTIONS}; as menores continuam como arrays.
+	 */
+	public AnterosPersistenceJacksonModule setColumnarCollectionThreshold(int columnarCollectionThreshold) {
+		if (columnarCollectionThreshold < 1) {
+			throw new IllegalArgumentException(
+					"Columnar threshold must be greater than zero: " + columnarCollectionThreshold);
+		}
+		this.columnarCollectionThreshold = columnarCollectionThreshold;
+		return this;
+	}
+
+	/**
+	 * Indica se as coleções persistentes não inicializadas serão escritas em
+	 * páginas e, portanto, não devem ser carregadas antes da escrita, com as
+	 * features em vigor para a configuração (por exemplo, a de
+	 * {@link com.fasterxml.jackson.databind.SerializerProvider#getConfig()}).
+	 */
+	public boolean isStreamingLazyCollections(MapperConfig<?> config) {
+		return collectionPageLoader != null && isEnabled(config, Feature.STREAM_LAZY_COLLECTIONS);
+	}
+
+	/**
+	 * Como {@link #isStreamingLazyCollections(MapperConfig)}, mas com a máscara
+	 * padrão do módulo.
+	 * 
+	 * @deprecated use {@link #isStreamingLazyCollections(MapperConfig)}.
+	 */
+	@Deprecated
+	public boolean isStreamingLazyCollections() {
+		return collectionPageLoader != null && Feature.STREAM_LAZY_COLLECTIONS.enabledIn(_moduleFeatures);
+	}
+
+	public NoSQLSessionFactory getSessionFactory() {
+		return sessionFactory;
+	}
+
+	public AnterosSubtypeRegistry getSubtypeRegistry() {
+		return subtypeRegistry;
+	}
+
+	public boolean isUseGeneratedAccessors() {
+		return useGeneratedAccessors;
+	}
+
+	/**
+	 * Habilita a geração de classes de acesso e instanciação para as entidades
+	 * registradas (veja {@link AnterosGeneratedAccessorsModule}). Precisa ser
+	 * definido antes do registro do módulo no mapper; com o
+	 * {@link AnterosNoSQLObjectMapper} use
+	 * {@link AnterosNoSQLObjectMapper#enableGeneratedAccessors()}.
+	 */
+	public AnterosPersistenceJacksonModule setUseGeneratedAccessors(boolean useGeneratedAccessors) {
+		if (useGeneratedAccessors && !AnterosGeneratedAccessorsModule.isAvailable()) {
+			throw new JacksonSerializationException(
+					"Generated accessors require jackson-module-afterburner on the classpath.");
+		}
+		this.useGeneratedAccessors = useGeneratedAccessors;
+		return this;
+	}
+
+	public AnterosProxyReferenceWriter getProxyReferenceWriter() {
+		return proxyReferenceWriter;
+	}
+
+	public AnterosSerializationMetrics getSerializationMetrics() {
+		return serializationMetrics;
+	}
+
+	/**
+	 * Define quem recebe as métricas da serialização (veja
+	 * {@link AnterosSerializationStatistics}). {@code null}, o padrão, desliga
+	 * a instrumentação. Os bytes escritos só são contados se a fábrica do
+	 * mapper usar o {@link AnterosCountingOutputDecorator}, o que
+	 * {@link AnterosNoSQLObjectMapper#setSerializationMetrics(AnterosSerializationMetrics)}
+	 * já faz.
+	 */
+	public AnterosPersistenceJacksonModule setSerializationMetrics(AnterosSerializationMetrics serializationMetrics) {
+		this.serializationMetrics = serializationMetrics;
+		return this;
+	}
+
+	public AnterosIdentityStrategy getIdentityStrategy() {
+		return identityStrategy;
+	}
+
+	/**
+	 * Define como as entidades são identificadas no JSON (veja
+	 * {@link AnterosIdentityStrategy}). Precisa ser definido antes do registro
+	 * do módulo no mapper; com o {@link AnterosNoSQLObjectMapper} use
+	 * {@link AnterosNoSQLObjectMapper#setIdentityStrategy(AnterosIdentityStrategy)}.
+	 */
+	public AnterosPersistenceJacksonModule setIdentityStrategy(AnterosIdentityStrategy identityStrategy) {
+		if (identityStrategy == null) {
+			throw new JacksonSerializationException("Identity strategy must not be null.");
+		}
+		this.identityStrategy = identityStrategy;
+		return this;
+	}
+
+	public Set<Class<?>> getAcyclicEntities() {
+		return acyclicEntities;
+	}
+
+	/**
+	 * Marca entidades que nunca aparecem duas vezes no mesmo grafo serializado
+	 * (por exemplo, filhos que só são alcançados pelo pai). Elas e suas
+	 * subclasses são escritas sem object id e sem rastreamento de identidade:
+	 * uma repetição é escrita por inteiro novamente e um ciclo não é
+	 * detectado. Precisa ser definido antes do registro do módulo no mapper.
+	 */
+	public AnterosPersistenceJacksonModule setAcyclicEntities(Class<?>... acyclicEntities) {
+		this.acyclicEntities = Collections
+				.unmodifiableSet(new LinkedHashSet<Class<?>>(Arrays.asList(acyclicEntities)));
+		return this;
+	}
+
+	public AnterosProxyIdentifierResolver getProxyIdentifierResolver() {
+		return proxyIdentifierResolver;
+	}
+
+	public AnterosPersistenceJacksonModule setProxyIdentifierResolver(
+			AnterosProxyIdentifierResolver proxyIdentifierResolver) {
+		this.proxyIdentifierResolver = proxyIdentifierResolver;
+		return this;
+	}
 }
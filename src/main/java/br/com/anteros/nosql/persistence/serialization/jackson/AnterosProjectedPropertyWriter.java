@@ -0,0 +1,105 @@
+/*******************************************************************************
+ * Copyright 2012 Anteros Tecnologia
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package br.com.anteros.nosql.persistence.serialization.jackson;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.jsonFormatVisitors.JsonObjectFormatVisitor;
+import com.fasterxml.jackson.databind.ser.BeanPropertyWriter;
+import com.fasterxml.jackson.databind.util.NameTransformer;
+
+/**
+ * Envolve a propriedade para aplicar a {@link AnterosProjection} da escrita:
+ * fora da projeção a propriedade é ignorada antes de o getter ser chamado,
+ * portanto proxies e coleções persistentes não selecionados nunca são
+ * tocados. Dentro dela, a escrita do valor usa o nó da propriedade. Sem
+ * projeção, apenas delega.
+ */
+public class AnterosProjectedPropertyWriter extends BeanPropertyWriter {
+
+	private static final long serialVersionUID = 1L;
+
+	protected final BeanPropertyWriter _delegate;
+
+	public AnterosProjectedPropertyWriter(BeanPropertyWriter delegate) {
+		super(delegate);
+		_delegate = delegate;
+	}
+
+	@Override
+	public AnterosProjectedPropertyWriter rename(NameTransformer transformer) {
+		return new AnterosProjectedPropertyWriter(_delegate.rename(transformer));
+	}
+
+	@Override
+	public void assignSerializer(JsonSerializer<Object> ser) {
+		_delegate.assignSerializer(ser);
+	}
+
+	@Override
+	public void assignNullSerializer(JsonSerializer<Object> nullSer) {
+		_delegate.assignNullSerializer(nullSer);
+	}
+
+	@Override
+	public void serializeAsField(Object bean, JsonGenerator gen, SerializerProvider prov) throws Exception {
+		AnterosProjection projection = AnterosSerializerProvider.projectionOf(prov);
+		if (projection == null) {
+			_delegate.serializeAsField(bean, gen, prov);
+			return;
+		}
+		AnterosProjection child = projection.child(getName());
+		if (child == null) {
+			return;
+		}
+		AnterosSerializerProvider provider = (AnterosSerializerProvider) prov;
+		provider.setProjection(child.isAll() ? null : child);
+		try {
+			_delegate.serializeAsField(bean, gen, prov);
+		} finally {
+			provider.setProjection(projection);
+		}
+	}
+
+	@Override
+	public void serializeAsElement(Object bean, JsonGenerator gen, SerializerProvider prov) throws Exception {
+		AnterosProjection projection = AnterosSerializerProvider.projectionOf(prov);
+		if (projection == null) {
+			_delegate.serializeAsElement(bean, gen, prov);
+			return;
+		}
+		AnterosProjection child = projection.child(getName());
+		if (child == null) {
+			_delegate.serializeAsPlaceholder(bean, gen, prov);
+			return;
+		}
+		AnterosSerializerProvider provider = (AnterosSerializerProvider) prov;
+		provider.setProjection(child.isAll() ? null : child);
+		try {
+			_delegate.serializeAsElement(bean, gen, prov);
+		} finally {
+			provider.setProjection(projection);
+		}
+	}
+
+	@Override
+	public void depositSchemaProperty(JsonObjectFormatVisitor v, SerializerProvider provider)
+			throws JsonMappingException {
+		_delegate.depositSchemaProperty(v, provider);
+	}
+}
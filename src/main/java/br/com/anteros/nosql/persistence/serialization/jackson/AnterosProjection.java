@@ -0,0 +1,197 @@
+/*******************************************************************************
+ * Copyright 2012 Anteros Tecnologia
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package br.com.anteros.nosql.persistence.serialization.jackson;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Projeção da escrita: árvore compilada de caminhos com pontos (por exemplo
+ * {@code "id"}, {@code "customer.name"}), em que cada nó indica as
+ * propriedades selecionadas no objeto correspondente. Um caminho que termina
+ * num nó seleciona o objeto inteiro. Coleções, mapas e proxies não consomem
+ * nível: seus elementos usam o nó da propriedade que os contém. Os nomes são os
+ * nomes JSON das propriedades, e só as propriedades de entidades são
+ * filtradas: objetos embutidos são escritos inteiros, e as entidades dentro
+ * deles continuam usando o nó do objeto embutido.
+ * <p>
+ * As projeções são imutáveis e as compiladas por {@link #of(String...)} ficam
+ * em cache, portanto requisições repetidas não pagam a compilação de novo. Veja
+ * {@link AnterosNoSQLObjectMapper#writerWithProjection(String...)}.
+ */
+public final class AnterosProjection {
+
+	/**
+	 * Seleciona tudo.
+	 */
+	public static final AnterosProjection ALL = new AnterosProjection(null, "*");
+
+	static final int MAX_CACHED_PROJECTIONS = 1024;
+
+	private static final ConcurrentMap<String, AnterosProjection> CACHE = new ConcurrentHashMap<String, AnterosProjection>();
+
+	private final Map<String, AnterosProjection> children;
+
+	private final String description;
+
+	private AnterosProjection(Map<String, AnterosProjection> children, String description) {
+		this.children = children;
+		this.description = description;
+	}
+
+	/**
+	 * Compila os caminhos, ou retorna a projeção já compilada para eles.
+	 */
+	public static AnterosProjection of(String... paths) {
+		return of(Arrays.asList(paths));
+	}
+
+	public static AnterosProjection of(Collection<String> paths) {
+		TreeSet<String> normalized = new TreeSet<String>();
+		for (String path : paths) {
+			String value = normalize(path);
+			if (!value.isEmpty()) {
+				normalized.add(value);
+			}
+		}
+		removeCovered(normalized);
+		String key = String.join(",", normalized);
+		AnterosProjection result = CACHE.get(key);
+		if (result == null) {
+			result = compile(normalized, key);
+			if (CACHE.size() >= MAX_CACHED_PROJECTIONS) {
+				CACHE.clear();
+			}
+			AnterosProjection previous = CACHE.putIfAbsent(key, result);
+			if (previous != null) {
+				result = previous;
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Compila uma lista de caminhos separados por vírgula, como a recebida num
+	 * parâmetro {@code fields} de uma API.
+	 */
+	public static AnterosProjection parse(String paths) {
+		return of(paths.split(","));
+	}
+
+	/**
+	 * Retorna o nó da propriedade informada, {@link #ALL} se ela foi
+	 * selecionada inteira, ou null se ela não faz parte da projeção.
+	 */
+	public AnterosProjection child(String name) {
+		if (children == null) {
+			return this;
+		}
+		return children.get(name);
+	}
+
+	public boolean isAll() {
+		return children == null;
+	}
+
+	public Collection<String> getPropertyNames() {
+		return children == null ? Collections.<String> emptySet()
+				: Collections.unmodifiableSet(children.keySet());
+	}
+
+	protected static String normalize(String path) {
+		StringBuilder result = new StringBuilder(path.length());
+		for (String segment : path.split("\\.")) {
+			String name = segment.trim();
+			if (name.isEmpty()) {
+				continue;
+			}
+			if (result.length() > 0) {
+				result.append('.');
+			}
+			result.append(name);
+		}
+		return result.toString();
+	}
+
+	/**
+	 * Remove os caminhos já cobertos por outro ("a.b" quando "a" foi
+	 * selecionado), para que projeções equivalentes usem a mesma entrada do
+	 * cache.
+	 */
+	protected static void removeCovered(Set<String> paths) {
+		Iterator<String> it = paths.iterator();
+		while (it.hasNext()) {
+			String path = it.next();
+			for (int dot = path.indexOf('.'); dot > 0; dot = path.indexOf('.', dot + 1)) {
+				if (paths.contains(path.substring(0, dot))) {
+					it.remove();
+					break;
+				}
+			}
+		}
+	}
+
+	protected static AnterosProjection compile(Collection<String> paths, String description) {
+		Map<String, Object> tree = new LinkedHashMap<String, Object>();
+		for (String path : paths) {
+			Map<String, Object> node = tree;
+			String[] segments = path.split("\\.");
+			for (int i = 0; i < segments.length; i++) {
+				Object child = node.get(segments[i]);
+				if (child == ALL) {
+					break;
+				}
+				if (i == segments.length - 1) {
+					node.put(segments[i], ALL);
+					break;
+				}
+				if (child == null) {
+					child = new LinkedHashMap<String, Object>();
+					node.put(segments[i], child);
+				}
+				node = asNode(child);
+			}
+		}
+		return build(tree, description);
+	}
+
+	@SuppressWarnings("unchecked")
+	private static Map<String, Object> asNode(Object child) {
+		return (Map<String, Object>) child;
+	}
+
+	private static AnterosProjection build(Map<String, Object> tree, String description) {
+		Map<String, AnterosProjection> children = new LinkedHashMap<String, AnterosProjection>();
+		for (Map.Entry<String, Object> entry : tree.entrySet()) {
+			Object child = entry.getValue();
+			children.put(entry.getKey(), child == ALL ? ALL : build(asNode(child), entry.getKey()));
+		}
+		return new AnterosProjection(Collections.unmodifiableMap(children), description);
+	}
+
+	@Override
+	public String toString() {
+		return "AnterosProjection [" + description + "]";
+	}
+}
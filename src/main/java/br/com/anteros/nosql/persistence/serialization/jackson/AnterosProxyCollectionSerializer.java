@@ -16,15 +16,35 @@
 package br.com.anteros.nosql.persistence.serialization.jackson;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
 
+import com.fasterxml.jackson.annotation.ObjectIdGenerators;
 import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.core.type.WritableTypeId;
+import com.fasterxml.jackson.databind.BeanDescription;
 import com.fasterxml.jackson.databind.BeanProperty;
+import com.fasterxml.jackson.databind.JavaType;
 import com.fasterxml.jackson.databind.JsonMappingException;
 import com.fasterxml.jackson.databind.JsonSerializer;
 import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.introspect.AnnotatedField;
+import com.fasterxml.jackson.databind.introspect.AnnotatedMember;
+import com.fasterxml.jackson.databind.introspect.ObjectIdInfo;
 import com.fasterxml.jackson.databind.jsontype.TypeSerializer;
+import com.fasterxml.jackson.databind.ser.BeanPropertyWriter;
+import com.fasterxml.jackson.databind.ser.BeanSerializer;
+import com.fasterxml.jackson.databind.ser.ContainerSerializer;
 import com.fasterxml.jackson.databind.ser.ContextualSerializer;
+import com.fasterxml.jackson.databind.ser.PropertyWriter;
+import com.fasterxml.jackson.databind.ser.impl.PropertySerializerMap;
+import com.fasterxml.jackson.databind.ser.std.BeanSerializerBase;
 
 import br.com.anteros.nosql.persistence.metadata.annotations.Reference;
 import br.com.anteros.nosql.persistence.proxy.AnterosPersistentCollection;
@@ -34,16 +54,70 @@ import br.com.anteros.nosql.persistence.session.NoSQLSessionFactory;
 
 
 public class AnterosProxyCollectionSerializer extends JsonSerializer<Object> implements ContextualSerializer {
+	private static final SerializedString COLUMNAR_TYPE_FIELD = new SerializedString(
+			AnterosPersistenceJacksonModule.COLUMNAR_TYPE_FIELD);
+	private static final SerializedString COLUMNAR_COLUMNS_FIELD = new SerializedString(
+			AnterosPersistenceJacksonModule.COLUMNAR_COLUMNS_FIELD);
+	private static final SerializedString COLUMNAR_NULLS_FIELD = new SerializedString(
+			AnterosPersistenceJacksonModule.COLUMNAR_NULLS_FIELD);
+	private static final SerializedString COLUMNAR_ROWS_FIELD = new SerializedString(
+			AnterosPersistenceJacksonModule.COLUMNAR_ROWS_FIELD);
+
 	protected final int _features;
 
 	protected final JsonSerializer<Object> _serializer;
 	protected final NoSQLSessionFactory _sessionFactory;
 
-	@SuppressWarnings("unchecked")
+	protected final BeanProperty _property;
+	protected final TypeSerializer _elementTypeSerializer;
+	/**
+	 * Falso quando o serializador só foi mantido para o formato colunar: a
+	 * propriedade não usa lazy loading e a coleção é escrita como está.
+	 */
+	protected final boolean _lazyLoading;
+	/**
+	 * Serializador dos elementos resolvido pelo serializador da coleção (por
+	 * exemplo {@code @JsonSerialize(contentUsing = ...)}), usado também na
+	 * escrita em páginas; null quando depende da classe de cada elemento.
+	 */
+	protected final JsonSerializer<Object> _elementSerializer;
+	protected volatile PropertySerializerMap _dynamicSerializers;
+	protected volatile ColumnarLayout _columnarLayout;
+
 	public AnterosProxyCollectionSerializer(JsonSerializer<?> serializer, int features, NoSQLSessionFactory sessionFactory) {
+		this(serializer, features, sessionFactory, null, null);
+	}
+
+	public AnterosProxyCollectionSerializer(JsonSerializer<?> serializer, int features,
+			NoSQLSessionFactory sessionFactory, BeanProperty property, TypeSerializer elementTypeSerializer) {
+		this(serializer, features, sessionFactory, property, elementTypeSerializer, true);
+	}
+
+	@SuppressWarnings("unchecked")
+	public AnterosProxyCollectionSerializer(JsonSerializer<?> serializer, int features,
+			NoSQLSessionFactory sessionFactory, BeanProperty property, TypeSerializer elementTypeSerializer,
+			boolean lazyLoading) {
 		_serializer = (JsonSerializer<Object>) serializer;
 		_features = features;
 		_sessionFactory = sessionFactory;
+		_property = property;
+		_elementTypeSerializer = elementTypeSerializer;
+		_lazyLoading = lazyLoading;
+		_elementSerializer = _serializer instanceof ContainerSerializer
+				? (JsonSerializer<Object>) ((ContainerSerializer<?>) _serializer).getContentSerializer()
+				: null;
+		_dynamicSerializers = PropertySerializerMap.emptyForProperties();
+	}
+
+	@Override
+	public boolean isEmpty(SerializerProvider provider, Object value) {
+		if (!_lazyLoading) {
+			return _serializer.isEmpty(provider, value);
+		}
+		if (findPageLoader(provider, value) != null) {
+			return false;
+		}
+		return isEmpty(value);
 	}
 
 	@Override
@@ -62,24 +136,44 @@ public class AnterosProxyCollectionSerializer extends JsonSerializer<Object> imp
 	@Override
 	public void serialize(Object value, JsonGenerator jgen, SerializerProvider provider) throws IOException,
 			JsonProcessingException {
+		if (!_lazyLoading) {
+			if (!serializeColumnar(value, jgen, provider)) {
+				_serializer.serialize(value, jgen, provider);
+			}
+			return;
+		}
 		if (AnterosProxyObject.class.isAssignableFrom(value.getClass())) {
 			Object proxiedValue;
 			try {
+				awaitLazyLoad(provider, value);
 				proxiedValue = findProxied(value);
 			} catch (Exception e) {
 				throw new JacksonSerializationException(e);
 			}
-			value = proxiedValue;
-			if (value == null) {
-				provider.defaultSerializeNull(jgen);
+			recordProxy(provider, (AnterosProxyObject) value, proxiedValue != null);
+			if (proxiedValue == null) {
+				if (((AnterosProxyObject) value).isInitialized()) {
+					provider.defaultSerializeNull(jgen);
+				} else {
+					AnterosSerializerProvider.serializeNotLoaded(provider, jgen);
+				}
 				return;
 			}
+			value = proxiedValue;
 		} else if (value instanceof AnterosPersistentCollection) {
 			AnterosPersistentCollection coll = (AnterosPersistentCollection) value;
 			if (!Feature.FORCE_LAZY_LOADING.enabledIn(_features) && !coll.isInitialized()) {
-				provider.defaultSerializeNull(jgen);
+				recordCollection(provider, coll, false);
+				AnterosSerializerProvider.serializeNotLoaded(provider, jgen);
+				return;
+			}
+			recordCollection(provider, coll, true);
+			AnterosCollectionPageLoader pageLoader = findPageLoader(provider, coll);
+			if (pageLoader != null) {
+				serializePages(coll, pageLoader, jgen, provider, null);
 				return;
 			}
+			awaitLazyLoad(provider, coll);
 			value = coll;
 			if (value == null) {
 				provider.defaultSerializeNull(jgen);
@@ -89,30 +183,51 @@ public class AnterosProxyCollectionSerializer extends JsonSerializer<Object> imp
 		if (_serializer == null) {
 			throw new JsonMappingException("PersistentCollection does not have serializer set");
 		}
+		if (serializeColumnar(value, jgen, provider)) {
+			return;
+		}
 		_serializer.serialize(value, jgen, provider);
 	}
 
 	@Override
 	public void serializeWithType(Object value, JsonGenerator jgen, SerializerProvider provider, TypeSerializer typeSer)
 			throws IOException, JsonProcessingException {
+		if (!_lazyLoading) {
+			_serializer.serializeWithType(value, jgen, provider, typeSer);
+			return;
+		}
 		if (AnterosProxyObject.class.isAssignableFrom(value.getClass())) {
 			Object proxiedValue;
 			try {
+				awaitLazyLoad(provider, value);
 				proxiedValue = findProxied(value);
 			} catch (Exception e) {
 				throw new JacksonSerializationException(e);
 			}
-			value = proxiedValue;
-			if (value == null) {
-				provider.defaultSerializeNull(jgen);
+			recordProxy(provider, (AnterosProxyObject) value, proxiedValue != null);
+			if (proxiedValue == null) {
+				if (((AnterosProxyObject) value).isInitialized()) {
+					provider.defaultSerializeNull(jgen);
+				} else {
+					AnterosSerializerProvider.serializeNotLoaded(provider, jgen);
+				}
 				return;
 			}
+			value = proxiedValue;
 		} else if (value instanceof AnterosPersistentCollection) {
 			AnterosPersistentCollection coll = (AnterosPersistentCollection) value;
 			if (!Feature.FORCE_LAZY_LOADING.enabledIn(_features) && !coll.isInitialized()) {
-				provider.defaultSerializeNull(jgen);
+				recordCollection(provider, coll, false);
+				AnterosSerializerProvider.serializeNotLoaded(provider, jgen);
 				return;
 			}
+			recordCollection(provider, coll, true);
+			AnterosCollectionPageLoader pageLoader = findPageLoader(provider, coll);
+			if (pageLoader != null) {
+				serializePages(coll, pageLoader, jgen, provider, typeSer);
+				return;
+			}
+			awaitLazyLoad(provider, coll);
 			value = coll;
 			if (value == null) {
 				provider.defaultSerializeNull(jgen);
@@ -139,6 +254,21 @@ public class AnterosProxyCollectionSerializer extends JsonSerializer<Object> imp
 
 	protected boolean usesLazyLoading(BeanProperty property) {
 		if (property != null) {
+			// o índice registra os campos; nos getters as anotações do campo
+			// já vêm mescladas pelo Jackson. Um membro que o índice não marca
+			// ainda pode ter a anotação (índice desatualizado)
+			AnnotatedMember member = property.getMember();
+			AnterosEntityIndex.Entry entry = member instanceof AnnotatedField
+					? AnterosEntityIndex.forClass(member.getDeclaringClass()).get(member.getDeclaringClass())
+					: null;
+			if (entry != null) {
+				if (entry.isLazyReference(member.getName())) {
+					return true;
+				}
+				if (entry.isEagerReference(member.getName())) {
+					return false;
+				}
+			}
 			Reference reference = property.getAnnotation(Reference.class);
 			if (reference != null) {
 				return reference.lazy();
@@ -151,15 +281,300 @@ public class AnterosProxyCollectionSerializer extends JsonSerializer<Object> imp
 	public JsonSerializer<?> createContextual(SerializerProvider provider, BeanProperty property)
 			throws JsonMappingException {
 		JsonSerializer<?> ser = provider.handlePrimaryContextualization(_serializer, property);
-		if (!usesLazyLoading(property)) {
+		boolean lazyLoading = usesLazyLoading(property);
+		if (!lazyLoading && !Feature.COLUMNAR_COLLECTIONS.enabledIn(_features)) {
 			return ser;
 		}
-		if (ser != _serializer) {
-			return new AnterosProxyCollectionSerializer(ser, _features, _sessionFactory);
+		TypeSerializer elementTypeSerializer = lazyLoading ? findElementTypeSerializer(provider, property) : null;
+		if (ser != _serializer || property != _property || elementTypeSerializer != _elementTypeSerializer
+				|| lazyLoading != _lazyLoading) {
+			return new AnterosProxyCollectionSerializer(ser, _features, _sessionFactory, property,
+					elementTypeSerializer, lazyLoading);
 		}
 		return this;
 	}
 
+	protected TypeSerializer findElementTypeSerializer(SerializerProvider provider, BeanProperty property)
+			throws JsonMappingException {
+		if (property == null || !Feature.STREAM_LAZY_COLLECTIONS.enabledIn(_features)) {
+			return null;
+		}
+		JavaType elementType = elementTypeOf(property);
+		if (elementType == null) {
+			return null;
+		}
+		return provider.findTypeSerializer(elementType);
+	}
+
+	/**
+	 * Tipo declarado dos elementos: o da propriedade ou, na raiz, o do
+	 * serializador da coleção; null se desconhecido.
+	 */
+	protected JavaType elementTypeOf(BeanProperty property) {
+		if (property != null && property.getType().getContentType() != null) {
+			return property.getType().getContentType();
+		}
+		return _serializer instanceof ContainerSerializer ? ((ContainerSerializer<?>) _serializer).getContentType()
+				: null;
+	}
+
+	/**
+	 * Retorna o carregador de páginas quando a coleção deve ser escrita em
+	 * páginas: {@link Feature#STREAM_LAZY_COLLECTIONS} e
+	 * {@link Feature#FORCE_LAZY_LOADING} habilitadas, coleção (não mapa) ainda
+	 * não inicializada e carregador configurado no módulo.
+	 */
+	protected AnterosCollectionPageLoader findPageLoader(SerializerProvider provider, Object value) {
+		if (!Feature.STREAM_LAZY_COLLECTIONS.enabledIn(_features) || !Feature.FORCE_LAZY_LOADING.enabledIn(_features)
+				|| !(value instanceof AnterosPersistentCollection) || !(value instanceof Collection)
+				|| ((AnterosPersistentCollection) value).isInitialized()
+				|| !(provider instanceof AnterosSerializerProvider)) {
+			return null;
+		}
+		AnterosPersistenceJacksonModule module = ((AnterosSerializerProvider) provider).getModule();
+		return module == null ? null : module.getCollectionPageLoader();
+	}
+
+	/**
+	 * Escreve a coleção como array, lendo e escrevendo uma página por vez.
+	 * Nenhuma página é mantida após ser escrita.
+	 */
+	protected void serializePages(AnterosPersistentCollection coll, AnterosCollectionPageLoader pageLoader,
+			JsonGenerator jgen, SerializerProvider provider, TypeSerializer typeSer) throws IOException {
+		int pageSize = ((AnterosSerializerProvider) provider).getModule().getCollectionPageSize();
+		WritableTypeId typeId = null;
+		if (typeSer == null) {
+			jgen.writeStartArray();
+		} else {
+			typeId = typeSer.writeTypePrefix(jgen, typeSer.typeId(coll, JsonToken.START_ARRAY));
+		}
+		int firstResult = 0;
+		while (true) {
+			List<?> page;
+			try {
+				page = pageLoader.loadPage(coll, firstResult, pageSize);
+			} catch (Exception e) {
+				throw new JacksonSerializationException(e);
+			}
+			if (page == null || page.isEmpty()) {
+				break;
+			}
+			for (Object element : page) {
+				serializeElement(element, jgen, provider);
+			}
+			if (page.size() < pageSize) {
+				break;
+			}
+			firstResult += page.size();
+		}
+		if (typeSer == null) {
+			jgen.writeEndArray();
+		} else {
+			typeSer.writeTypeSuffix(jgen, typeId);
+		}
+	}
+
+	protected void serializeElement(Object element, JsonGenerator jgen, SerializerProvider provider)
+			throws IOException {
+		serializeElement(element, jgen, provider, _elementTypeSerializer);
+	}
+
+	protected void serializeElement(Object element, JsonGenerator jgen, SerializerProvider provider,
+			TypeSerializer elementTypeSerializer) throws IOException {
+		if (element == null) {
+			provider.defaultSerializeNull(jgen);
+			return;
+		}
+		JsonSerializer<Object> serializer = _elementSerializer;
+		if (serializer == null) {
+			PropertySerializerMap.SerializerAndMapResult result = _dynamicSerializers
+					.findAndAddSecondarySerializer(element.getClass(), provider, _property);
+			if (_dynamicSerializers != result.map) {
+				_dynamicSerializers = result.map;
+			}
+			serializer = result.serializer;
+		}
+		if (elementTypeSerializer == null) {
+			serializer.serialize(element, jgen, provider);
+		} else {
+			serializer.serializeWithType(element, jgen, provider, elementTypeSerializer);
+		}
+	}
+
+	/**
+	 * Escreve a coleção no formato de {@link Feature#COLUMNAR_COLLECTIONS},
+	 * se habilitado e aplicável: os elementos da classe do primeiro elemento
+	 * viram linhas e os demais são escritos como objetos, com o discriminador
+	 * do tipo declarado dos elementos. Retorna falso, sem escrever nada,
+	 * quando a coleção deve ser escrita como array, o que inclui as escritas
+	 * com view ou projeção, que omitem propriedades.
+	 */
+	protected boolean serializeColumnar(Object value, JsonGenerator jgen, SerializerProvider provider)
+			throws IOException {
+		if (!Feature.COLUMNAR_COLLECTIONS.enabledIn(_features) || !(value instanceof Collection)
+				|| provider.getActiveView() != null || AnterosSerializerProvider.projectionOf(provider) != null) {
+			return false;
+		}
+		Collection<?> coll = (Collection<?>) value;
+		if (coll.size() < columnarThresholdOf(provider)) {
+			return false;
+		}
+		Object first = null;
+		for (Object element : coll) {
+			if (element != null) {
+				first = element;
+				break;
+			}
+		}
+		if (first == null) {
+			return false;
+		}
+		ColumnarLayout layout = findColumnarLayout(first.getClass(), provider);
+		if (layout.columns == null) {
+			return false;
+		}
+		jgen.writeStartObject(coll);
+		if (layout.typeSerializer != null) {
+			jgen.writeFieldName(COLUMNAR_TYPE_FIELD);
+			jgen.writeString(layout.typeSerializer.getTypeIdResolver().idFromValue(first));
+		}
+		jgen.writeFieldName(COLUMNAR_COLUMNS_FIELD);
+		jgen.writeStartArray(layout.columns.length);
+		for (SerializedString column : layout.serializedColumns) {
+			jgen.writeString(column);
+		}
+		jgen.writeEndArray();
+		if (layout.serializedNullColumns.length > 0) {
+			jgen.writeFieldName(COLUMNAR_NULLS_FIELD);
+			jgen.writeStartArray(layout.serializedNullColumns.length);
+			for (SerializedString column : layout.serializedNullColumns) {
+				jgen.writeString(column);
+			}
+			jgen.writeEndArray();
+		}
+		jgen.writeFieldName(COLUMNAR_ROWS_FIELD);
+		jgen.writeStartArray(coll.size());
+		AnterosColumnarRowGenerator rows = new AnterosColumnarRowGenerator(jgen, layout.columns,
+				layout.explicitNulls);
+		for (Object element : coll) {
+			if (element != null && element.getClass() == layout.rowClass) {
+				layout.serializer.serialize(element, rows, provider);
+			} else {
+				serializeElement(element, jgen, provider, layout.typeSerializer);
+			}
+		}
+		jgen.writeEndArray();
+		jgen.writeEndObject();
+		return true;
+	}
+
+	protected int columnarThresholdOf(SerializerProvider provider) {
+		AnterosPersistenceJacksonModule module = provider instanceof AnterosSerializerProvider
+				? ((AnterosSerializerProvider) provider).getModule()
+				: null;
+		return module == null ? AnterosPersistenceJacksonModule.DEFAULT_COLUMNAR_COLLECTION_THRESHOLD
+				: module.getColumnarCollectionThreshold();
+	}
+
+	protected ColumnarLayout findColumnarLayout(Class<?> rowClass, SerializerProvider provider)
+			throws JsonMappingException {
+		ColumnarLayout layout = _columnarLayout;
+		if (layout == null || layout.rowClass != rowClass) {
+			JsonSerializer<Object> serializer = provider.findValueSerializer(rowClass, _property);
+			JavaType elementType = elementTypeOf(_property);
+			TypeSerializer typeSerializer = elementType == null ? null : provider.findTypeSerializer(elementType);
+			String[] columns = null;
+			if (elementType != null && (typeSerializer != null || elementType.hasRawClass(rowClass)
+					|| elementType.hasRawClass(Object.class))) {
+				columns = columnsOf(rowClass, serializer, provider);
+			}
+			layout = new ColumnarLayout(rowClass, serializer, columns,
+					columns == null ? null : explicitNullsOf((BeanSerializerBase) serializer, columns),
+					typeSerializer);
+			_columnarLayout = layout;
+		}
+		return layout;
+	}
+
+	/**
+	 * Colunas das linhas, na ordem em que o serializador do bean escreve as
+	 * propriedades (precedidas pelo object id gerado, se houver), ou null se
+	 * as linhas não podem ser escritas como arrays: serializador que não é o
+	 * {@link BeanSerializer} padrão (que poderia escrever campos que não estão
+	 * em {@link BeanSerializerBase#properties()}), propriedades desempacotadas,
+	 * filtros ou {@link com.fasterxml.jackson.annotation.JsonAnyGetter}.
+	 */
+	protected String[] columnsOf(Class<?> rowClass, JsonSerializer<Object> serializer, SerializerProvider provider) {
+		if (serializer == null || serializer.getClass() != BeanSerializer.class) {
+			return null;
+		}
+		BeanDescription description = provider.getConfig().introspect(provider.constructType(rowClass));
+		if (description.findAnyGetter() != null
+				|| provider.getAnnotationIntrospector().findFilterId(description.getClassInfo()) != null) {
+			return null;
+		}
+		BeanSerializerBase beanSerializer = (BeanSerializerBase) serializer;
+		List<String> columns = new ArrayList<String>();
+		if (beanSerializer.usesObjectId()) {
+			ObjectIdInfo objectIdInfo = description.getObjectIdInfo();
+			if (objectIdInfo != null && objectIdInfo.getGeneratorType() != ObjectIdGenerators.PropertyGenerator.class) {
+				columns.add(objectIdInfo.getPropertyName().getSimpleName());
+			}
+		}
+		for (Iterator<PropertyWriter> it = beanSerializer.properties(); it.hasNext();) {
+			PropertyWriter property = it.next();
+			if (!(property instanceof BeanPropertyWriter) || ((BeanPropertyWriter) property).isUnwrapping()) {
+				return null;
+			}
+			columns.add(property.getName());
+		}
+		return columns.toArray(new String[columns.size()]);
+	}
+
+	/**
+	 * Colunas cujas propriedades escrevem nulos, em vez de omiti-los (veja
+	 * {@link AnterosPersistenceJacksonModule#COLUMNAR_NULLS_FIELD}).
+	 */
+	protected boolean[] explicitNullsOf(BeanSerializerBase serializer, String[] columns) {
+		boolean[] explicitNulls = new boolean[columns.length];
+		for (Iterator<PropertyWriter> it = serializer.properties(); it.hasNext();) {
+			BeanPropertyWriter property = (BeanPropertyWriter) it.next();
+			if (!property.willSuppressNulls()) {
+				explicitNulls[Arrays.asList(columns).lastIndexOf(property.getName())] = true;
+			}
+		}
+		return explicitNulls;
+	}
+
+	protected void recordProxy(SerializerProvider provider, AnterosProxyObject value, boolean initialized) {
+		AnterosSerializationMetrics metrics = AnterosSerializerProvider.metricsOf(provider);
+		if (metrics != null) {
+			if (initialized) {
+				metrics.proxyInitialized(value);
+			} else {
+				metrics.proxySkipped(value);
+			}
+		}
+	}
+
+	protected void recordCollection(SerializerProvider provider, AnterosPersistentCollection coll,
+			boolean initialized) {
+		AnterosSerializationMetrics metrics = AnterosSerializerProvider.metricsOf(provider);
+		if (metrics != null) {
+			if (initialized) {
+				metrics.collectionInitialized(coll);
+			} else {
+				metrics.collectionSkipped(coll);
+			}
+		}
+	}
+
+	protected void awaitLazyLoad(SerializerProvider provider, Object value) {
+		if (Feature.FORCE_LAZY_LOADING.enabledIn(_features) && provider instanceof AnterosSerializerProvider) {
+			((AnterosSerializerProvider) provider).awaitLazyLoad(value);
+		}
+	}
+
 	protected Object findProxied(Object value) throws Exception {
 		if (value instanceof AnterosProxyObject) {
 			if (!Feature.FORCE_LAZY_LOADING.enabledIn(_features)
@@ -171,4 +586,41 @@ public class AnterosProxyCollectionSerializer extends JsonSerializer<Object> imp
 		
 		return null;
 	}
+
+	/**
+	 * Serializador, colunas e discriminador da classe das linhas de uma
+	 * coleção colunar.
+	 */
+	protected static final class ColumnarLayout {
+		final Class<?> rowClass;
+		final JsonSerializer<Object> serializer;
+		final String[] columns;
+		final SerializedString[] serializedColumns;
+		final boolean[] explicitNulls;
+		final SerializedString[] serializedNullColumns;
+		final TypeSerializer typeSerializer;
+
+		ColumnarLayout(Class<?> rowClass, JsonSerializer<Object> serializer, String[] columns,
+				boolean[] explicitNulls, TypeSerializer typeSerializer) {
+			this.rowClass = rowClass;
+			this.serializer = serializer;
+			this.columns = columns;
+			this.explicitNulls = explicitNulls;
+			this.typeSerializer = typeSerializer;
+			if (columns == null) {
+				this.serializedColumns = null;
+				this.serializedNullColumns = null;
+			} else {
+				this.serializedColumns = new SerializedString[columns.length];
+				List<SerializedString> nullColumns = new ArrayList<SerializedString>();
+				for (int i = 0; i < columns.length; i++) {
+					this.serializedColumns[i] = new SerializedString(columns[i]);
+					if (explicitNulls[i]) {
+						nullColumns.add(this.serializedColumns[i]);
+					}
+				}
+				this.serializedNullColumns = nullColumns.toArray(new SerializedString[nullColumns.size()]);
+			}
+		}
+	}
 }
\ No newline at end of file
@@ -0,0 +1,37 @@
+/*******************************************************************************
+ * Copyright 2012 Anteros Tecnologia
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package br.com.anteros.nosql.persistence.serialization.jackson;
+
+import br.com.anteros.nosql.persistence.proxy.AnterosProxyObject;
+
+/**
+ * Obtém o identificador de um proxy sem inicializá-lo.
+ * <p>
+ * Usado por
+ * {@link AnterosPersistenceJacksonModule.Feature#SERIALIZE_IDENTIFIER_FOR_LAZY_NOT_LOADED_OBJECTS}
+ * e registrado com
+ * {@link AnterosPersistenceJacksonModule#setProxyIdentifierResolver(AnterosProxyIdentifierResolver)}.
+ * Sem resolvedor, o identificador é lido do campo anotado com
+ * {@link br.com.anteros.nosql.persistence.metadata.annotations.Id} do próprio
+ * proxy.
+ */
+public interface AnterosProxyIdentifierResolver {
+
+	/**
+	 * Retorna o identificador do proxy. Não deve acessar o banco de dados.
+	 */
+	Object getIdentifier(AnterosProxyObject proxy) throws Exception;
+}
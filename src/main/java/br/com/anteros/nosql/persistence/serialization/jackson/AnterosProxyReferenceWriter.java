@@ -0,0 +1,209 @@
+/*******************************************************************************
+ * Copyright 2012 Anteros Tecnologia
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package br.com.anteros.nosql.persistence.serialization.jackson;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.type.WritableTypeId;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.introspect.AnnotatedMember;
+import com.fasterxml.jackson.databind.jsontype.TypeSerializer;
+import com.fasterxml.jackson.databind.ser.PropertyWriter;
+import com.fasterxml.jackson.databind.ser.std.BeanSerializerBase;
+
+import br.com.anteros.nosql.persistence.metadata.NoSQLDescriptionEntity;
+import br.com.anteros.nosql.persistence.metadata.annotations.Id;
+import br.com.anteros.nosql.persistence.proxy.AnterosProxyObject;
+import br.com.anteros.nosql.persistence.session.NoSQLSessionFactory;
+
+/**
+ * Escreve um proxy não inicializado como uma referência compacta, sem
+ * carregá-lo: <code>{"id": ..., "type": "..."}</code>, com o identificador
+ * (no nome JSON da propriedade anotada com {@link Id}, o mesmo que a entidade
+ * carregada usaria) e, quando a entidade tem
+ * {@code @DiscriminatorValue}, o discriminador do
+ * {@link NoSQLDescriptionEntity}.
+ */
+public class AnterosProxyReferenceWriter {
+
+	public static final String TYPE_PROPERTY = "type";
+
+	private static final String DEFAULT_ID_PROPERTY = "id";
+
+	private final AnterosPersistenceJacksonModule module;
+
+	private final ConcurrentMap<Class<?>, Reference> references = new ConcurrentHashMap<Class<?>, Reference>();
+
+	public AnterosProxyReferenceWriter(AnterosPersistenceJacksonModule module) {
+		this.module = module;
+	}
+
+	public void write(AnterosProxyObject proxy, JsonGenerator gen, SerializerProvider provider,
+			TypeSerializer typeSer) throws IOException {
+		Reference reference = referenceOf(AnterosLazyGraphCollector.entityClassOf(proxy.getClass()));
+		Object id;
+		try {
+			id = findIdentifier(proxy, reference);
+		} catch (Exception e) {
+			throw new JacksonSerializationException(e);
+		}
+		WritableTypeId typeId = null;
+		if (typeSer != null) {
+			typeId = typeSer.typeId(proxy, JsonToken.START_OBJECT);
+			typeId.id = typeSer.getTypeIdResolver().idFromValueAndType(null, reference.entityClass);
+			typeId = typeSer.writeTypePrefix(gen, typeId);
+		} else {
+			gen.writeStartObject();
+			if (reference.discriminator != null) {
+				gen.writeStringField(TYPE_PROPERTY, reference.discriminator);
+			}
+		}
+		gen.writeFieldName(idPropertyOf(reference, provider));
+		provider.defaultSerializeValue(id, gen);
+		if (typeSer != null) {
+			typeSer.writeTypeSuffix(gen, typeId);
+		} else {
+			gen.writeEndObject();
+		}
+	}
+
+	/**
+	 * Nome JSON do identificador, tirado do serializador da entidade; assim
+	 * {@code @JsonProperty} e a {@code PropertyNamingStrategy} valem também
+	 * para a referência. Resolvido de novo apenas quando o serializador muda.
+	 */
+	protected String idPropertyOf(Reference reference, SerializerProvider provider) throws IOException {
+		JsonSerializer<Object> serializer = provider.findValueSerializer(reference.entityClass);
+		IdProperty idProperty = reference.idProperty;
+		if (idProperty == null || idProperty.serializer != serializer) {
+			String name = findIdProperty(reference, serializer);
+			idProperty = new IdProperty(serializer, name == null ? reference.defaultIdProperty() : name);
+			reference.idProperty = idProperty;
+		}
+		return idProperty.name;
+	}
+
+	protected String findIdProperty(Reference reference, JsonSerializer<Object> serializer) {
+		if (!(serializer instanceof BeanSerializerBase)) {
+			return null;
+		}
+		for (Iterator<PropertyWriter> it = ((BeanSerializerBase) serializer).properties(); it.hasNext();) {
+			PropertyWriter property = it.next();
+			AnnotatedMember member = property.getMember();
+			if (property.getAnnotation(Id.class) != null
+					|| (member != null && reference.idField != null && reference.idField.equals(member.getMember()))) {
+				return property.getName();
+			}
+		}
+		return null;
+	}
+
+	protected Object findIdentifier(AnterosProxyObject proxy, Reference reference) throws Exception {
+		AnterosProxyIdentifierResolver resolver = module.getProxyIdentifierResolver();
+		if (resolver != null) {
+			return resolver.getIdentifier(proxy);
+		}
+		return reference.idField == null ? null : reference.idField.get(proxy);
+	}
+
+	protected Reference referenceOf(Class<?> entityClass) {
+		Reference reference = references.get(entityClass);
+		if (reference == null) {
+			reference = new Reference(entityClass, findIdField(entityClass), findDiscriminator(entityClass));
+			references.putIfAbsent(entityClass, reference);
+		}
+		return reference;
+	}
+
+	protected Field findIdField(Class<?> entityClass) {
+		return idFieldOf(entityClass);
+	}
+
+	/**
+	 * Retorna o campo anotado com {@link Id} da entidade ou de uma de suas
+	 * superclasses, já acessível, ou {@code null}. Usa o
+	 * {@link AnterosEntityIndex} quando a entidade está nele.
+	 */
+	static Field idFieldOf(Class<?> entityClass) {
+		AnterosEntityIndex.Entry entry = AnterosEntityIndex.forClass(entityClass).get(entityClass);
+		if (entry != null) {
+			try {
+				return entry.findIdField(entityClass);
+			} catch (NoSuchFieldException e) {
+				// índice desatualizado: procura por reflexão
+			}
+		}
+		for (Class<?> type = entityClass; type != null && type != Object.class; type = type.getSuperclass()) {
+			for (Field field : type.getDeclaredFields()) {
+				if (field.isAnnotationPresent(Id.class)) {
+					field.setAccessible(true);
+					return field;
+				}
+			}
+		}
+		return null;
+	}
+
+	protected String findDiscriminator(Class<?> entityClass) {
+		NoSQLSessionFactory sessionFactory = module.getSessionFactory();
+		if (sessionFactory == null) {
+			return null;
+		}
+		NoSQLDescriptionEntity descriptionEntity = sessionFactory.getDescriptionEntityManager()
+				.getDescriptionEntity(entityClass);
+		if (descriptionEntity == null || descriptionEntity.getDiscriminatorValue() == null
+				|| descriptionEntity.getDiscriminatorValue().isEmpty()) {
+			return null;
+		}
+		return descriptionEntity.getDiscriminatorValue();
+	}
+
+	protected static final class Reference {
+
+		final Class<?> entityClass;
+		final Field idField;
+		final String discriminator;
+		volatile IdProperty idProperty;
+
+		Reference(Class<?> entityClass, Field idField, String discriminator) {
+			this.entityClass = entityClass;
+			this.idField = idField;
+			this.discriminator = discriminator;
+		}
+
+		String defaultIdProperty() {
+			return idField == null ? DEFAULT_ID_PROPERTY : idField.getName();
+		}
+	}
+
+	protected static final class IdProperty {
+
+		final JsonSerializer<Object> serializer;
+		final String name;
+
+		IdProperty(JsonSerializer<Object> serializer, String name) {
+			this.serializer = serializer;
+			this.name = name;
+		}
+	}
+}
@@ -32,16 +32,31 @@ public class AnterosProxySerializer extends JsonSerializer<AnterosProxyObject> {
 
 	protected final boolean _forceLazyLoading;
 
-	protected PropertySerializerMap _dynamicSerializers;
+	protected final AnterosProxyReferenceWriter _referenceWriter;
+
+	protected volatile PropertySerializerMap _dynamicSerializers;
 
 	public AnterosProxySerializer(boolean forceLazyLoading) {
+		this(forceLazyLoading, null);
+	}
+
+	/**
+	 * @param referenceWriter
+	 *            se informado, proxies não inicializados são escritos como
+	 *            referência, sem carregamento
+	 */
+	public AnterosProxySerializer(boolean forceLazyLoading, AnterosProxyReferenceWriter referenceWriter) {
 		_forceLazyLoading = forceLazyLoading;
+		_referenceWriter = referenceWriter;
 		_dynamicSerializers = PropertySerializerMap.emptyMap();
 		_property = null;
 	}
 
 	@Override
 	public boolean isEmpty(AnterosProxyObject value) {
+		if (value != null && _referenceWriter != null && !value.isInitialized()) {
+			return false;
+		}
 		try {
 			return (value == null) || (findProxied(value) == null);
 		} catch (Exception e) {
@@ -52,14 +67,24 @@ public class AnterosProxySerializer extends JsonSerializer<AnterosProxyObject> {
 	@Override
 	public void serialize(AnterosProxyObject value, JsonGenerator jgen, SerializerProvider provider)
 			throws IOException, JsonProcessingException {
+		if (_referenceWriter != null && !value.isInitialized()) {
+			_referenceWriter.write(value, jgen, provider, null);
+			recordProxy(provider, value, false);
+			return;
+		}
 		Object proxiedValue;
 		try {
-			proxiedValue = findProxied(value);
+			proxiedValue = findProxied(value, provider);
 		} catch (Exception e) {
 			throw new JacksonSerializationException(e);
 		}
+		recordProxy(provider, value, proxiedValue != null);
 		if (proxiedValue == null) {
-			provider.defaultSerializeNull(jgen);
+			if (value.isInitialized()) {
+				provider.defaultSerializeNull(jgen);
+			} else {
+				AnterosSerializerProvider.serializeNotLoaded(provider, jgen, value);
+			}
 			return;
 		}
 		findSerializer(provider, proxiedValue).serialize(proxiedValue, jgen, provider);
@@ -68,14 +93,24 @@ public class AnterosProxySerializer extends JsonSerializer<AnterosProxyObject> {
 	@Override
 	public void serializeWithType(AnterosProxyObject value, JsonGenerator jgen, SerializerProvider provider,
 			TypeSerializer typeSer) throws IOException, JsonProcessingException {
+		if (_referenceWriter != null && !value.isInitialized()) {
+			_referenceWriter.write(value, jgen, provider, typeSer);
+			recordProxy(provider, value, false);
+			return;
+		}
 		Object proxiedValue;
 		try {
-			proxiedValue = findProxied(value);
+			proxiedValue = findProxied(value, provider);
 		} catch (Exception e) {
 			throw new JacksonSerializationException(e);
 		}
+		recordProxy(provider, value, proxiedValue != null);
 		if (proxiedValue == null) {
-			provider.defaultSerializeNull(jgen);
+			if (value.isInitialized()) {
+				provider.defaultSerializeNull(jgen);
+			} else {
+				AnterosSerializerProvider.serializeNotLoaded(provider, jgen, value);
+			}
 			return;
 		}
 		findSerializer(provider, proxiedValue).serializeWithType(proxiedValue, jgen, provider, typeSer);
@@ -84,6 +119,9 @@ public class AnterosProxySerializer extends JsonSerializer<AnterosProxyObject> {
 	protected JsonSerializer<Object> findSerializer(SerializerProvider provider, Object value) throws IOException,
 			JsonProcessingException {
 		Class<?> type = value.getClass();
+		if (provider instanceof AnterosSerializerProvider) {
+			return ((AnterosSerializerProvider) provider).findProxyTargetSerializer(type);
+		}
 		PropertySerializerMap.SerializerAndMapResult result = _dynamicSerializers.findAndAddPrimarySerializer(type,
 				provider, _property);
 		if (_dynamicSerializers != result.map) {
@@ -92,6 +130,24 @@ public class AnterosProxySerializer extends JsonSerializer<AnterosProxyObject> {
 		return result.serializer;
 	}
 
+	protected void recordProxy(SerializerProvider provider, AnterosProxyObject value, boolean initialized) {
+		AnterosSerializationMetrics metrics = AnterosSerializerProvider.metricsOf(provider);
+		if (metrics != null) {
+			if (initialized) {
+				metrics.proxyInitialized(value);
+			} else {
+				metrics.proxySkipped(value);
+			}
+		}
+	}
+
+	protected Object findProxied(AnterosProxyObject value, SerializerProvider provider) throws Exception {
+		if (_forceLazyLoading && provider instanceof AnterosSerializerProvider) {
+			((AnterosSerializerProvider) provider).awaitLazyLoad(value);
+		}
+		return findProxied(value);
+	}
+
 	protected Object findProxied(AnterosProxyObject value) throws Exception {
 		if (value instanceof AnterosProxyObject) {
 			if (!_forceLazyLoading && !((AnterosProxyObject) (value)).isInitialized()) {
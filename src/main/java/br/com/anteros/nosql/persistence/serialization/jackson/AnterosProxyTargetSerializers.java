@@ -0,0 +1,78 @@
+/*******************************************************************************
+ * Copyright 2012 Anteros Tecnologia
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package br.com.anteros.nosql.persistence.serialization.jackson;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.SerializerProvider;
+
+/**
+ * Serializadores dos objetos alvo de proxies, por classe, compartilhados por
+ * todas as escritas de uma mesma configuração do mapper (veja
+ * {@link AnterosSerializerProvider}).
+ * <p>
+ * A busca não usa bloqueio: um {@link ConcurrentHashMap} guarda os
+ * serializadores já resolvidos e a última classe resolvida fica num campo
+ * volátil, de modo que, no caso comum de uma única classe alvo, a busca é uma
+ * leitura e uma comparação. O campo só é escrito quando uma classe nova é
+ * resolvida, portanto não há escrita compartilhada depois do aquecimento.
+ */
+public class AnterosProxyTargetSerializers {
+
+	private final ConcurrentMap<Class<?>, JsonSerializer<Object>> serializers = new ConcurrentHashMap<Class<?>, JsonSerializer<Object>>();
+
+	private volatile Entry last;
+
+	public JsonSerializer<Object> find(Class<?> type, SerializerProvider provider) throws JsonMappingException {
+		Entry entry = last;
+		if (entry != null && entry.type == type) {
+			return entry.serializer;
+		}
+		JsonSerializer<Object> serializer = serializers.get(type);
+		if (serializer == null) {
+			serializer = provider.findPrimaryPropertySerializer(type, null);
+			JsonSerializer<Object> previous = serializers.putIfAbsent(type, serializer);
+			if (previous != null) {
+				serializer = previous;
+			}
+			last = new Entry(type, serializer);
+		}
+		return serializer;
+	}
+
+	public int size() {
+		return serializers.size();
+	}
+
+	public void clear() {
+		last = null;
+		serializers.clear();
+	}
+
+	private static final class Entry {
+
+		final Class<?> type;
+		final JsonSerializer<Object> serializer;
+
+		Entry(Class<?> type, JsonSerializer<Object> serializer) {
+			this.type = type;
+			this.serializer = serializer;
+		}
+	}
+}
@@ -0,0 +1,74 @@
+/*******************************************************************************
+ * Copyright 2012 Anteros Tecnologia
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package br.com.anteros.nosql.persistence.serialization.jackson;
+
+import br.com.anteros.nosql.persistence.proxy.AnterosPersistentCollection;
+import br.com.anteros.nosql.persistence.proxy.AnterosProxyObject;
+
+/**
+ * Recebe os eventos de instrumentação da serialização (veja
+ * {@link AnterosPersistenceJacksonModule#setSerializationMetrics(AnterosSerializationMetrics)}).
+ * Os métodos são chamados na thread de serialização, possivelmente por várias
+ * threads ao mesmo tempo, e devem ser rápidos e não lançar exceções.
+ * {@link AnterosSerializationStatistics} é a implementação padrão.
+ */
+public interface AnterosSerializationMetrics {
+
+	/**
+	 * Um valor raiz foi escrito.
+	 * 
+	 * @param entityClass
+	 *            classe do valor, ou dos elementos quando o valor é uma coleção
+	 *            ou array
+	 * @param documents
+	 *            1 para um objeto, número de elementos para coleções e arrays
+	 * @param bytes
+	 *            bytes (caracteres, na saída textual) produzidos, ou -1 se a
+	 *            saída não é contada
+	 * @param nanos
+	 *            tempo de escrita, incluindo carregamentos lazy feitos durante
+	 *            ela
+	 */
+	void documentWritten(Class<?> entityClass, int documents, long bytes, long nanos);
+
+	/**
+	 * Um proxy foi escrito com o conteúdo do objeto, carregado pela
+	 * serialização ou já inicializado.
+	 */
+	void proxyInitialized(AnterosProxyObject proxy);
+
+	/**
+	 * Um proxy não inicializado foi escrito como nulo ou como referência, sem
+	 * ser carregado.
+	 */
+	void proxySkipped(AnterosProxyObject proxy);
+
+	/**
+	 * Uma coleção persistente foi escrita com seus elementos, carregada pela
+	 * serialização (inteira ou em páginas) ou já inicializada.
+	 */
+	void collectionInitialized(AnterosPersistentCollection collection);
+
+	/**
+	 * Uma coleção persistente não inicializada foi escrita como nula.
+	 */
+	void collectionSkipped(AnterosPersistentCollection collection);
+
+	/**
+	 * Um serializador teve de ser construído por não estar no cache.
+	 */
+	void serializerCacheMiss(Class<?> type);
+}
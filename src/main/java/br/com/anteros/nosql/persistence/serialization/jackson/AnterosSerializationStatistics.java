@@ -0,0 +1,307 @@
+/*******************************************************************************
+ * Copyright 2012 Anteros Tecnologia
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package br.com.anteros.nosql.persistence.serialization.jackson;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import br.com.anteros.nosql.persistence.proxy.AnterosPersistentCollection;
+import br.com.anteros.nosql.persistence.proxy.AnterosProxyObject;
+
+/**
+ * Implementação padrão de {@link AnterosSerializationMetrics}: contadores
+ * {@link LongAdder}, totais por entidade e um histograma do tempo de escrita em
+ * faixas de potência de dois (os percentis retornam o limite superior da
+ * faixa). Pode ser publicada no JMX com {@link #registerMBean(String)}.
+ */
+public class AnterosSerializationStatistics
+		implements AnterosSerializationMetrics, AnterosSerializationStatisticsMXBean {
+
+	public static final String OBJECT_NAME_PREFIX = "br.com.anteros.nosql.persistence.serialization:type=SerializationStatistics,name=";
+
+	private static final int BUCKETS = 64;
+
+	private final LongAdder documents = new LongAdder();
+	private final LongAdder bytes = new LongAdder();
+	private final LongAdder nanos = new LongAdder();
+	private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+	private final LongAdder[] histogram = new LongAdder[BUCKETS];
+	private final LongAdder proxiesInitialized = new LongAdder();
+	private final LongAdder proxiesSkipped = new LongAdder();
+	private final LongAdder collectionsInitialized = new LongAdder();
+	private final LongAdder collectionsSkipped = new LongAdder();
+	private final LongAdder serializerCacheMisses = new LongAdder();
+	private final ConcurrentMap<Class<?>, EntityCounters> entities = new ConcurrentHashMap<Class<?>, EntityCounters>();
+
+	public AnterosSerializationStatistics() {
+		for (int i = 0; i < BUCKETS; i++) {
+			histogram[i] = new LongAdder();
+		}
+	}
+
+	@Override
+	public void documentWritten(Class<?> entityClass, int documents, long bytes, long nanos) {
+		this.documents.add(documents);
+		this.nanos.add(nanos);
+		maxNanos.accumulate(nanos);
+		histogram[BUCKETS - Long.numberOfLeadingZeros(Math.max(nanos, 1L))].increment();
+		EntityCounters counters = entities.get(entityClass);
+		if (counters == null) {
+			counters = new EntityCounters();
+			EntityCounters previous = entities.putIfAbsent(entityClass, counters);
+			if (previous != null) {
+				counters = previous;
+			}
+		}
+		counters.documents.add(documents);
+		counters.nanos.add(nanos);
+		if (bytes >= 0) {
+			this.bytes.add(bytes);
+			counters.bytes.add(bytes);
+		}
+	}
+
+	@Override
+	public void proxyInitialized(AnterosProxyObject proxy) {
+		proxiesInitialized.increment();
+	}
+
+	@Override
+	public void proxySkipped(AnterosProxyObject proxy) {
+		proxiesSkipped.increment();
+	}
+
+	@Override
+	public void collectionInitialized(AnterosPersistentCollection collection) {
+		collectionsInitialized.increment();
+	}
+
+	@Override
+	public void collectionSkipped(AnterosPersistentCollection collection) {
+		collectionsSkipped.increment();
+	}
+
+	@Override
+	public void serializerCacheMiss(Class<?> type) {
+		serializerCacheMisses.increment();
+	}
+
+	@Override
+	public long getDocumentsWritten() {
+		return documents.sum();
+	}
+
+	/**
+	 * Bytes produzidos; caracteres, na saída textual. Só inclui as escritas
+	 * cuja saída é contada (veja {@link AnterosCountingOutputDecorator}).
+	 */
+	@Override
+	public long getBytesWritten() {
+		return bytes.sum();
+	}
+
+	public long getSerializationTime(TimeUnit unit) {
+		return unit.convert(nanos.sum(), TimeUnit.NANOSECONDS);
+	}
+
+	@Override
+	public long getSerializationTimeMicros() {
+		return getSerializationTime(TimeUnit.MICROSECONDS);
+	}
+
+	/**
+	 * Retorna o limite superior da faixa do histograma que contém o percentil
+	 * informado (entre 0 e 100) do tempo de escrita, ou 0 sem escritas.
+	 */
+	public long getSerializationTimePercentile(double percentile, TimeUnit unit) {
+		long[] counts = new long[BUCKETS];
+		long total = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			counts[i] = histogram[i].sum();
+			total += counts[i];
+		}
+		if (total == 0) {
+			return 0;
+		}
+		long rank = (long) Math.ceil(total * Math.min(Math.max(percentile, 0), 100) / 100d);
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += counts[i];
+			if (seen >= Math.max(rank, 1)) {
+				long upper = i >= BUCKETS - 1 ? Long.MAX_VALUE : (1L << i) - 1;
+				return unit.convert(Math.min(upper, maxNanos.get()), TimeUnit.NANOSECONDS);
+			}
+		}
+		return unit.convert(maxNanos.get(), TimeUnit.NANOSECONDS);
+	}
+
+	@Override
+	public long getSerializationTimeP50Micros() {
+		return getSerializationTimePercentile(50, TimeUnit.MICROSECONDS);
+	}
+
+	@Override
+	public long getSerializationTimeP99Micros() {
+		return getSerializationTimePercentile(99, TimeUnit.MICROSECONDS);
+	}
+
+	@Override
+	public long getSerializationTimeMaxMicros() {
+		return TimeUnit.NANOSECONDS.toMicros(maxNanos.get());
+	}
+
+	@Override
+	public long getProxiesInitialized() {
+		return proxiesInitialized.sum();
+	}
+
+	@Override
+	public long getProxiesSkipped() {
+		return proxiesSkipped.sum();
+	}
+
+	@Override
+	public long getCollectionsInitialized() {
+		return collectionsInitialized.sum();
+	}
+
+	@Override
+	public long getCollectionsSkipped() {
+		return collectionsSkipped.sum();
+	}
+
+	@Override
+	public long getSerializerCacheMisses() {
+		return serializerCacheMisses.sum();
+	}
+
+	public long getDocumentsWritten(Class<?> entityClass) {
+		EntityCounters counters = entities.get(entityClass);
+		return counters == null ? 0 : counters.documents.sum();
+	}
+
+	public long getBytesWritten(Class<?> entityClass) {
+		EntityCounters counters = entities.get(entityClass);
+		return counters == null ? 0 : counters.bytes.sum();
+	}
+
+	public long getSerializationTime(Class<?> entityClass, TimeUnit unit) {
+		EntityCounters counters = entities.get(entityClass);
+		return counters == null ? 0 : unit.convert(counters.nanos.sum(), TimeUnit.NANOSECONDS);
+	}
+
+	@Override
+	public Map<String, Long> getDocumentsWrittenByEntity() {
+		Map<String, Long> result = new TreeMap<String, Long>();
+		for (Map.Entry<Class<?>, EntityCounters> entry : entities.entrySet()) {
+			result.put(entry.getKey().getName(), entry.getValue().documents.sum());
+		}
+		return result;
+	}
+
+	@Override
+	public Map<String, Long> getBytesWrittenByEntity() {
+		Map<String, Long> result = new TreeMap<String, Long>();
+		for (Map.Entry<Class<?>, EntityCounters> entry : entities.entrySet()) {
+			result.put(entry.getKey().getName(), entry.getValue().bytes.sum());
+		}
+		return result;
+	}
+
+	@Override
+	public Map<String, Long> getSerializationTimeMicrosByEntity() {
+		Map<String, Long> result = new TreeMap<String, Long>();
+		for (Map.Entry<Class<?>, EntityCounters> entry : entities.entrySet()) {
+			result.put(entry.getKey().getName(), TimeUnit.NANOSECONDS.toMicros(entry.getValue().nanos.sum()));
+		}
+		return result;
+	}
+
+	@Override
+	public void reset() {
+		documents.reset();
+		bytes.reset();
+		nanos.reset();
+		maxNanos.reset();
+		for (LongAdder bucket : histogram) {
+			bucket.reset();
+		}
+		proxiesInitialized.reset();
+		proxiesSkipped.reset();
+		collectionsInitialized.reset();
+		collectionsSkipped.reset();
+		serializerCacheMisses.reset();
+		entities.clear();
+	}
+
+	/**
+	 * Publica as estatísticas no MBeanServer da plataforma com o nome
+	 * {@value #OBJECT_NAME_PREFIX}&lt;name&gt;. Remova com
+	 * {@link #unregisterMBean(String)}, ou com
+	 * {@link #unregisterMBean(MBeanServer, String)} se publicou em outro
+	 * servidor.
+	 */
+	public ObjectName registerMBean(String name) {
+		return registerMBean(ManagementFactory.getPlatformMBeanServer(), name);
+	}
+
+	public ObjectName registerMBean(MBeanServer server, String name) {
+		try {
+			ObjectName objectName = new ObjectName(OBJECT_NAME_PREFIX + ObjectName.quote(name));
+			server.registerMBean(this, objectName);
+			return objectName;
+		} catch (JMException e) {
+			throw new JacksonSerializationException(e);
+		}
+	}
+
+	public void unregisterMBean(String name) {
+		unregisterMBean(ManagementFactory.getPlatformMBeanServer(), name);
+	}
+
+	public void unregisterMBean(MBeanServer server, String name) {
+		try {
+			server.unregisterMBean(new ObjectName(OBJECT_NAME_PREFIX + ObjectName.quote(name)));
+		} catch (JMException e) {
+			throw new JacksonSerializationException(e);
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "AnterosSerializationStatistics [documents=" + getDocumentsWritten() + ", bytes=" + getBytesWritten()
+				+ ", timeMicros=" + getSerializationTimeMicros() + ", p99Micros=" + getSerializationTimeP99Micros()
+				+ ", proxiesInitialized=" + getProxiesInitialized() + ", proxiesSkipped=" + getProxiesSkipped()
+				+ ", collectionsInitialized=" + getCollectionsInitialized() + ", collectionsSkipped="
+				+ getCollectionsSkipped() + ", serializerCacheMisses=" + getSerializerCacheMisses() + "]";
+	}
+
+	private static class EntityCounters {
+		final LongAdder documents = new LongAdder();
+		final LongAdder bytes = new LongAdder();
+		final LongAdder nanos = new LongAdder();
+	}
+}
@@ -0,0 +1,55 @@
+/*******************************************************************************
+ * Copyright 2012 Anteros Tecnologia
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package br.com.anteros.nosql.persistence.serialization.jackson;
+
+import java.util.Map;
+
+/**
+ * Interface JMX do {@link AnterosSerializationStatistics}. Tempos em
+ * microssegundos.
+ */
+public interface AnterosSerializationStatisticsMXBean {
+
+	long getDocumentsWritten();
+
+	long getBytesWritten();
+
+	long getSerializationTimeMicros();
+
+	long getSerializationTimeP50Micros();
+
+	long getSerializationTimeP99Micros();
+
+	long getSerializationTimeMaxMicros();
+
+	long getProxiesInitialized();
+
+	long getProxiesSkipped();
+
+	long getCollectionsInitialized();
+
+	long getCollectionsSkipped();
+
+	long getSerializerCacheMisses();
+
+	Map<String, Long> getDocumentsWrittenByEntity();
+
+	Map<String, Long> getBytesWrittenByEntity();
+
+	Map<String, Long> getSerializationTimeMicrosByEntity();
+
+	void reset();
+}
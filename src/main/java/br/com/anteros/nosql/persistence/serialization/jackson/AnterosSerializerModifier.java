@@ -15,42 +15,79 @@
  *******************************************************************************/
 package br.com.anteros.nosql.persistence.serialization.jackson;
 
+import java.util.List;
+
 import com.fasterxml.jackson.databind.BeanDescription;
 import com.fasterxml.jackson.databind.JsonSerializer;
 import com.fasterxml.jackson.databind.SerializationConfig;
+import com.fasterxml.jackson.databind.ser.BeanPropertyWriter;
 import com.fasterxml.jackson.databind.ser.BeanSerializerModifier;
 import com.fasterxml.jackson.databind.type.CollectionType;
 import com.fasterxml.jackson.databind.type.MapType;
 
+import br.com.anteros.nosql.persistence.metadata.annotations.Entity;
 import br.com.anteros.nosql.persistence.session.NoSQLSessionFactory;
 
+/**
+ * Envolve os serializadores de coleções e mapas com o
+ * {@link AnterosProxyCollectionSerializer}, usando as features em vigor
+ * na configuração (veja {@link AnterosPersistenceJacksonModule#FEATURES_ATTRIBUTE}),
+ * e as propriedades das entidades com o {@link AnterosProjectedPropertyWriter},
+ * que aplica a projeção de cada escrita. Beans que não são entidades ficam com
+ * as propriedades originais.
+ */
 public class AnterosSerializerModifier extends BeanSerializerModifier {
-	protected int _features;
+	protected final int _features;
+	protected final AnterosPersistenceJacksonModule _module;
 	protected final NoSQLSessionFactory _sessionFactory;
 
 	public AnterosSerializerModifier(int features, NoSQLSessionFactory sessionFactory) {
 		_features = features;
+		_module = null;
 		_sessionFactory = sessionFactory;
 	}
 
+	public AnterosSerializerModifier(AnterosPersistenceJacksonModule module, NoSQLSessionFactory sessionFactory) {
+		_features = module.getFeatures();
+		_module = module;
+		_sessionFactory = sessionFactory;
+	}
+
+	@Override
+	public List<BeanPropertyWriter> changeProperties(SerializationConfig config, BeanDescription beanDesc,
+			List<BeanPropertyWriter> beanProperties) {
+		if (!beanDesc.getClassInfo().hasAnnotation(Entity.class)) {
+			return beanProperties;
+		}
+		for (int i = 0; i < beanProperties.size(); i++) {
+			BeanPropertyWriter writer = beanProperties.get(i);
+			if (!(writer instanceof AnterosProjectedPropertyWriter)) {
+				beanProperties.set(i, new AnterosProjectedPropertyWriter(writer));
+			}
+		}
+		return beanProperties;
+	}
+
 	@Override
 	public JsonSerializer<?> modifyCollectionSerializer(SerializationConfig config, CollectionType valueType,
 			BeanDescription beanDesc, JsonSerializer<?> serializer) {
-		return new AnterosProxyCollectionSerializer(serializer, _features, _sessionFactory);
+		return new AnterosProxyCollectionSerializer(serializer, featuresOf(config), _sessionFactory);
 	}
 
 	@Override
 	public JsonSerializer<?> modifyMapSerializer(SerializationConfig config, MapType valueType,
 			BeanDescription beanDesc, JsonSerializer<?> serializer) {
-		return new AnterosProxyCollectionSerializer(serializer, _features, _sessionFactory);
+		return new AnterosProxyCollectionSerializer(serializer, featuresOf(config), _sessionFactory);
 	}
 
+	protected int featuresOf(SerializationConfig config) {
+		if (_module != null) {
+			return _module.featuresOf(config);
+		}
+		return AnterosPersistenceJacksonModule.featuresOf(config, _features);
+	}
 
 	public int getFeatures() {
 		return _features;
 	}
-
-	public void setFeatures(int _features) {
-		this._features = _features;
-	}
 }
\ No newline at end of file
@@ -0,0 +1,472 @@
+/*******************************************************************************
+ * Copyright 2012 Anteros Tecnologia
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package br.com.anteros.nosql.persistence.serialization.jackson;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.fasterxml.jackson.annotation.ObjectIdGenerator;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.SerializationConfig;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.jsontype.TypeSerializer;
+import com.fasterxml.jackson.databind.ser.DefaultSerializerProvider;
+import com.fasterxml.jackson.databind.ser.SerializerFactory;
+import com.fasterxml.jackson.databind.ser.impl.WritableObjectId;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+
+import br.com.anteros.nosql.persistence.proxy.AnterosProxyObject;
+import br.com.anteros.nosql.persistence.serialization.jackson.AnterosPersistenceJacksonModule.Feature;
+
+/**
+ * {@link DefaultSerializerProvider} do {@link AnterosNoSQLObjectMapper}. Como
+ * o Jackson cria uma instância por chamada de escrita, é aqui que fica o estado
+ * de cada escrita e o trabalho feito uma vez antes de serializar o objeto raiz,
+ * como o carregamento em lote ou assíncrono das referências lazy.
+ * <p>
+ * As {@link Feature}s de cada escrita são lidas uma vez, da configuração (veja
+ * {@link AnterosPersistenceJacksonModule#FEATURES_ATTRIBUTE}), e não mudam
+ * durante a escrita. Cada combinação de features tem seu próprio cache de
+ * serializadores, pois os serializadores do módulo são construídos para uma
+ * combinação específica; assim, trocar de combinação por chamada não descarta
+ * nem mistura serializadores já criados.
+ */
+public class AnterosSerializerProvider extends DefaultSerializerProvider {
+
+	private static final long serialVersionUID = 1L;
+
+	protected final AnterosPersistenceJacksonModule _module;
+
+	protected final int _features;
+
+	/**
+	 * Provedores-modelo, um por combinação de features; existe apenas no
+	 * provedor registrado no mapper.
+	 */
+	protected final transient ConcurrentMap<Integer, AnterosSerializerProvider> _blueprints;
+
+	/**
+	 * Serializadores dos alvos de proxies, compartilhados pelas escritas desta
+	 * combinação de features.
+	 */
+	protected final transient AnterosProxyTargetSerializers _proxyTargetSerializers;
+
+	protected transient AnterosLazyPrefetcher _prefetcher;
+
+	/**
+	 * Métricas lidas do módulo ao criar o provedor da chamada; null quando a
+	 * instrumentação está desligada.
+	 */
+	protected final transient AnterosSerializationMetrics _metrics;
+
+	protected transient long _metricsStartNanos;
+
+	protected transient long _metricsStartBytes;
+
+	/**
+	 * Nó da {@link AnterosProjection} do objeto sendo escrito; null quando
+	 * não há projeção ou o objeto foi selecionado inteiro.
+	 */
+	protected transient AnterosProjection _projection;
+
+	/**
+	 * Se proxies e coleções não carregados são escritos como
+	 * {@link AnterosSnapshot#NOT_LOADED} (veja
+	 * {@link AnterosPersistenceJacksonModule#DELTA_ATTRIBUTE}).
+	 */
+	protected final transient boolean _marksNotLoaded;
+
+	/**
+	 * Rastreador dos object ids da escrita em andamento, obtido na primeira
+	 * entidade com identidade e devolvido ao final do valor raiz.
+	 */
+	protected transient AnterosIdentityTracker _identityTracker;
+
+	public AnterosSerializerProvider(AnterosPersistenceJacksonModule module) {
+		super();
+		_module = module;
+		_features = module.getFeatures();
+		_blueprints = new ConcurrentHashMap<Integer, AnterosSerializerProvider>();
+		_proxyTargetSerializers = new AnterosProxyTargetSerializers();
+		_metrics = null;
+		_marksNotLoaded = false;
+	}
+
+	protected AnterosSerializerProvider(AnterosSerializerProvider src) {
+		super(src);
+		_module = src._module;
+		_features = src._features;
+		_blueprints = new ConcurrentHashMap<Integer, AnterosSerializerProvider>();
+		_proxyTargetSerializers = new AnterosProxyTargetSerializers();
+		_metrics = null;
+		_marksNotLoaded = false;
+	}
+
+	protected AnterosSerializerProvider(AnterosSerializerProvider src, int features) {
+		super(src);
+		_module = src._module;
+		_features = features;
+		_blueprints = null;
+		_proxyTargetSerializers = new AnterosProxyTargetSerializers();
+		_metrics = null;
+		_marksNotLoaded = false;
+	}
+
+	protected AnterosSerializerProvider(AnterosSerializerProvider src, SerializationConfig config,
+			SerializerFactory f, int features) {
+		super(src, config, f);
+		_module = src._module;
+		_features = features;
+		_blueprints = null;
+		_proxyTargetSerializers = src._proxyTargetSerializers;
+		_metrics = _module == null ? null : _module.getSerializationMetrics();
+		Object projection = config.getAttributes().getAttribute(AnterosPersistenceJacksonModule.PROJECTION_ATTRIBUTE);
+		if (projection instanceof AnterosProjection && !((AnterosProjection) projection).isAll()) {
+			_projection = (AnterosProjection) projection;
+		}
+		_marksNotLoaded = Boolean.TRUE
+				.equals(config.getAttributes().getAttribute(AnterosPersistenceJacksonModule.DELTA_ATTRIBUTE));
+	}
+
+	@Override
+	public DefaultSerializerProvider copy() {
+		if (getClass() != AnterosSerializerProvider.class) {
+			return super.copy();
+		}
+		return new AnterosSerializerProvider(this);
+	}
+
+	@Override
+	public AnterosSerializerProvider createInstance(SerializationConfig config, SerializerFactory jsf) {
+		int features = _module.featuresOf(config);
+		return new AnterosSerializerProvider(blueprintFor(features), config, jsf, features);
+	}
+
+	protected AnterosSerializerProvider blueprintFor(int features) {
+		if (_blueprints == null) {
+			return this;
+		}
+		AnterosSerializerProvider blueprint = _blueprints.get(features);
+		if (blueprint == null) {
+			blueprint = new AnterosSerializerProvider(this, features);
+			AnterosSerializerProvider previous = _blueprints.putIfAbsent(features, blueprint);
+			if (previous != null) {
+				blueprint = previous;
+			}
+		}
+		return blueprint;
+	}
+
+	@Override
+	public int cachedSerializersCount() {
+		int count = super.cachedSerializersCount();
+		if (_blueprints != null) {
+			for (AnterosSerializerProvider blueprint : _blueprints.values()) {
+				count += blueprint.cachedSerializersCount();
+			}
+		}
+		return count;
+	}
+
+	@Override
+	public void flushCachedSerializers() {
+		super.flushCachedSerializers();
+		if (_proxyTargetSerializers != null) {
+			_proxyTargetSerializers.clear();
+		}
+		if (_blueprints != null) {
+			for (AnterosSerializerProvider blueprint : _blueprints.values()) {
+				blueprint.flushCachedSerializers();
+			}
+		}
+	}
+
+	public AnterosPersistenceJacksonModule getModule() {
+		return _module;
+	}
+
+	/**
+	 * Retorna o serializador da classe alvo de um proxy, a partir do cache
+	 * compartilhado desta combinação de features.
+	 */
+	public JsonSerializer<Object> findProxyTargetSerializer(Class<?> type) throws JsonMappingException {
+		if (_proxyTargetSerializers == null) {
+			return findPrimaryPropertySerializer(type, null);
+		}
+		return _proxyTargetSerializers.find(type, this);
+	}
+
+	/**
+	 * Máscara de {@link Feature}s desta escrita.
+	 */
+	public int getFeatures() {
+		return _features;
+	}
+
+	public boolean isEnabled(Feature feature) {
+		return feature.enabledIn(_features);
+	}
+
+	@Override
+	public void serializeValue(JsonGenerator gen, Object value) throws IOException {
+		beforeSerialize(gen, value);
+		try {
+			super.serializeValue(gen, value);
+		} finally {
+			afterSerialize(gen, value);
+		}
+	}
+
+	@Override
+	public void serializeValue(JsonGenerator gen, Object value, JavaType rootType) throws IOException {
+		beforeSerialize(gen, value);
+		try {
+			super.serializeValue(gen, value, rootType);
+		} finally {
+			afterSerialize(gen, value);
+		}
+	}
+
+	@Override
+	public void serializeValue(JsonGenerator gen, Object value, JavaType rootType, JsonSerializer<Object> ser)
+			throws IOException {
+		beforeSerialize(gen, value);
+		try {
+			super.serializeValue(gen, value, rootType, ser);
+		} finally {
+			afterSerialize(gen, value);
+		}
+	}
+
+	@Override
+	public void serializePolymorphic(JsonGenerator gen, Object value, JavaType rootType,
+			JsonSerializer<Object> valueSer, TypeSerializer typeSer) throws IOException {
+		beforeSerialize(gen, value);
+		try {
+			super.serializePolymorphic(gen, value, rootType, valueSer, typeSer);
+		} finally {
+			afterSerialize(gen, value);
+		}
+	}
+
+	protected void beforeSerialize(JsonGenerator gen, Object value) {
+		if (_metrics != null) {
+			_metricsStartBytes = AnterosCountingOutputDecorator.countOf(gen);
+			_metricsStartNanos = System.nanoTime();
+		}
+		if (value == null || _module == null) {
+			return;
+		}
+		if (!isEnabled(Feature.FORCE_LAZY_LOADING)) {
+			return;
+		}
+		boolean streamsCollections = isEnabled(Feature.STREAM_LAZY_COLLECTIONS)
+				&& _module.getCollectionPageLoader() != null;
+		boolean writesReferences = isEnabled(Feature.SERIALIZE_IDENTIFIER_FOR_LAZY_NOT_LOADED_OBJECTS);
+		if (_module.getLoadingExecutor() != null) {
+			_prefetcher = new AnterosLazyPrefetcher(_module.getLoadingExecutor(), _module.getMaxConcurrentLoads(),
+					_module.getBatchLoader(), _module.getBatchSize(), _module.getBatchLoadingStatistics(),
+					!writesReferences, !streamsCollections, _projection);
+			try {
+				_prefetcher.start(value, this);
+			} catch (Exception e) {
+				closePrefetcher();
+				throw new JacksonSerializationException(e);
+			}
+		} else if (_module.getBatchLoader() != null) {
+			try {
+				new AnterosBatchInitializer(_module.getBatchLoader(), _module.getBatchSize(),
+						_module.getBatchLoadingStatistics(), !writesReferences, !streamsCollections, _projection)
+						.initialize(value, this);
+			} catch (Exception e) {
+				throw new JacksonSerializationException(e);
+			}
+		}
+	}
+
+	protected void afterSerialize(JsonGenerator gen, Object value) {
+		releaseIdentityTracker();
+		closePrefetcher();
+		if (_metrics != null && value != null) {
+			long nanos = System.nanoTime() - _metricsStartNanos;
+			long bytes = _metricsStartBytes < 0 ? -1 : AnterosCountingOutputDecorator.countOf(gen) - _metricsStartBytes;
+			recordDocument(value, bytes, nanos);
+		}
+	}
+
+	/**
+	 * Usa o {@link AnterosIdentityTracker} no lugar do mapa de object ids do
+	 * Jackson. Os ids valem para um valor raiz: num
+	 * {@link com.fasterxml.jackson.databind.SequenceWriter} cada valor é
+	 * escrito de forma independente dos anteriores. Com
+	 * {@link SerializationFeature#USE_EQUALITY_FOR_OBJECT_ID} a comparação é
+	 * por igualdade e o mapa do Jackson continua sendo usado.
+	 */
+	@Override
+	public WritableObjectId findObjectId(Object forPojo, ObjectIdGenerator<?> generatorType) {
+		if (isEnabled(SerializationFeature.USE_EQUALITY_FOR_OBJECT_ID)) {
+			return super.findObjectId(forPojo, generatorType);
+		}
+		if (_identityTracker == null) {
+			_identityTracker = AnterosIdentityTracker.acquire();
+		}
+		return _identityTracker.find(forPojo, generatorType, this);
+	}
+
+	protected void releaseIdentityTracker() {
+		if (_identityTracker != null) {
+			_identityTracker.release();
+			_identityTracker = null;
+		}
+	}
+
+	protected void closePrefetcher() {
+		if (_prefetcher != null) {
+			_prefetcher.close();
+			_prefetcher = null;
+		}
+	}
+
+	/**
+	 * Registra a escrita de um valor raiz nas métricas, pela classe do valor
+	 * ou, em coleções e arrays, pela classe do primeiro elemento.
+	 */
+	protected void recordDocument(Object value, long bytes, long nanos) {
+		Class<?> entityClass = value.getClass();
+		int documents = 1;
+		if (value instanceof Collection) {
+			Collection<?> collection = (Collection<?>) value;
+			documents = collection.size();
+			Iterator<?> it = collection.iterator();
+			Object first = it.hasNext() ? it.next() : null;
+			if (first != null) {
+				entityClass = first.getClass();
+			}
+		} else if (entityClass.isArray() && !entityClass.getComponentType().isPrimitive()) {
+			Object[] array = (Object[]) value;
+			documents = array.length;
+			if (array.length > 0 && array[0] != null) {
+				entityClass = array[0].getClass();
+			}
+		}
+		_metrics.documentWritten(entityClass, documents, bytes, nanos);
+	}
+
+	/**
+	 * Métricas da escrita em andamento, ou null se a instrumentação está
+	 * desligada.
+	 */
+	public AnterosSerializationMetrics getMetrics() {
+		return _metrics;
+	}
+
+	/**
+	 * Retorna as métricas da escrita feita com o provedor, ou null se ele não é
+	 * um {@link AnterosSerializerProvider} ou a instrumentação está desligada.
+	 */
+	public static AnterosSerializationMetrics metricsOf(SerializerProvider provider) {
+		return provider instanceof AnterosSerializerProvider ? ((AnterosSerializerProvider) provider)._metrics
+				: null;
+	}
+
+	public AnterosProjection getProjection() {
+		return _projection;
+	}
+
+	/**
+	 * Chamado por {@link AnterosProjectedPropertyWriter} ao entrar e sair de
+	 * uma propriedade selecionada.
+	 */
+	public void setProjection(AnterosProjection projection) {
+		_projection = projection;
+	}
+
+	/**
+	 * Retorna o nó corrente da projeção da escrita feita com o provedor, ou
+	 * null se não há projeção.
+	 */
+	public static AnterosProjection projectionOf(SerializerProvider provider) {
+		return provider instanceof AnterosSerializerProvider ? ((AnterosSerializerProvider) provider)._projection
+				: null;
+	}
+
+	/**
+	 * Escreve um proxy ou coleção persistente que não foi carregado: nulo ou,
+	 * nas escritas com {@link AnterosPersistenceJacksonModule#DELTA_ATTRIBUTE},
+	 * o marcador {@link AnterosSnapshot#NOT_LOADED}.
+	 */
+	public static void serializeNotLoaded(SerializerProvider provider, JsonGenerator gen) throws IOException {
+		if (provider instanceof AnterosSerializerProvider && ((AnterosSerializerProvider) provider)._marksNotLoaded) {
+			gen.writeEmbeddedObject(AnterosSnapshot.NOT_LOADED);
+		} else {
+			provider.defaultSerializeNull(gen);
+		}
+	}
+
+	/**
+	 * Como {@link #serializeNotLoaded(SerializerProvider, JsonGenerator)},
+	 * mas nas escritas de delta o marcador leva a referência do proxy (veja
+	 * {@link AnterosProxyReferenceWriter}), usada quando o array em que ele está
+	 * precisa ser gravado inteiro.
+	 */
+	public static void serializeNotLoaded(SerializerProvider provider, JsonGenerator gen, AnterosProxyObject proxy)
+			throws IOException {
+		if (!(provider instanceof AnterosSerializerProvider) || !((AnterosSerializerProvider) provider)._marksNotLoaded
+				|| gen.getCodec() == null) {
+			serializeNotLoaded(provider, gen);
+			return;
+		}
+		TokenBuffer buffer = new TokenBuffer(gen.getCodec(), false);
+		((AnterosSerializerProvider) provider)._module.getProxyReferenceWriter().write(proxy, buffer, provider, null);
+		JsonNode reference = buffer.asParser().readValueAsTree();
+		gen.writeEmbeddedObject(new AnterosSnapshot.NotLoadedReference(reference));
+	}
+
+	@Override
+	protected JsonSerializer<Object> _createAndCacheUntypedSerializer(Class<?> rawType) throws JsonMappingException {
+		if (_metrics != null) {
+			_metrics.serializerCacheMiss(rawType);
+		}
+		return super._createAndCacheUntypedSerializer(rawType);
+	}
+
+	@Override
+	protected JsonSerializer<Object> _createAndCacheUntypedSerializer(JavaType type) throws JsonMappingException {
+		if (_metrics != null) {
+			_metrics.serializerCacheMiss(type.getRawClass());
+		}
+		return super._createAndCacheUntypedSerializer(type);
+	}
+
+	/**
+	 * Chamado pelos serializadores antes de inicializar um proxy ou coleção
+	 * persistente: espera o carregamento assíncrono já iniciado para ele, se
+	 * houver.
+	 */
+	public void awaitLazyLoad(Object lazy) {
+		if (_prefetcher != null) {
+			_prefetcher.await(lazy);
+		}
+	}
+}
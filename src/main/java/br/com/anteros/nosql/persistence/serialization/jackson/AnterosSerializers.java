@@ -24,12 +24,43 @@ import com.fasterxml.jackson.databind.ser.Serializers;
 import br.com.anteros.nosql.persistence.proxy.AnterosProxyObject;
 import br.com.anteros.nosql.persistence.serialization.jackson.AnterosPersistenceJacksonModule.Feature;
 
+/**
+ * Fornece o {@link AnterosProxySerializer} para proxies, configurado com as
+ * {@link Feature}s em vigor na configuração (veja
+ * {@link AnterosPersistenceJacksonModule#FEATURES_ATTRIBUTE}), e o
+ * {@link AnterosDocumentViewSerializer} para as visões de documentos.
+ */
 public class AnterosSerializers extends Serializers.Base
 {
-    protected boolean _forceLoading;
+    protected final int _features;
+
+    protected final AnterosPersistenceJacksonModule _module;
+
+    protected final AnterosProxyReferenceWriter _referenceWriter;
+
+    /**
+     * Um serializador por combinação de carregamento forçado e escrita de
+     * referências; eles não guardam estado por classe alvo (veja
+     * {@link AnterosProxyTargetSerializers}), portanto podem ser compartilhados.
+     */
+    protected final AnterosProxySerializer[] _proxySerializers = new AnterosProxySerializer[4];
     
     public AnterosSerializers(int features) {
-        _forceLoading = Feature.FORCE_LAZY_LOADING.enabledIn(features);
+        this(features, null, null);
+    }
+
+    public AnterosSerializers(AnterosPersistenceJacksonModule module, AnterosProxyReferenceWriter referenceWriter) {
+        this(module.getFeatures(), module, referenceWriter);
+    }
+
+    protected AnterosSerializers(int features, AnterosPersistenceJacksonModule module,
+            AnterosProxyReferenceWriter referenceWriter) {
+        _features = features;
+        _module = module;
+        _referenceWriter = referenceWriter;
+        for (int i = 0; i < _proxySerializers.length; i++) {
+            _proxySerializers[i] = new AnterosProxySerializer((i & 1) != 0, (i & 2) != 0 ? referenceWriter : null);
+        }
     }
 
     public JsonSerializer<?> findSerializer(SerializationConfig config,
@@ -37,12 +68,16 @@ public class AnterosSerializers extends Serializers.Base
     {
         Class<?> raw = type.getRawClass();
         if (AnterosProxyObject.class.isAssignableFrom(raw)) {
-            return new AnterosProxySerializer(_forceLoading);
+            int features = (_module != null) ? _module.featuresOf(config)
+                    : AnterosPersistenceJacksonModule.featuresOf(config, _features);
+            boolean writeReferences = _referenceWriter != null
+                    && Feature.SERIALIZE_IDENTIFIER_FOR_LAZY_NOT_LOADED_OBJECTS.enabledIn(features);
+            return _proxySerializers[(Feature.FORCE_LAZY_LOADING.enabledIn(features) ? 1 : 0)
+                    | (writeReferences ? 2 : 0)];
+        }
+        if (AnterosDocumentView.class.isAssignableFrom(raw)) {
+            return AnterosDocumentViewSerializer.INSTANCE;
         }
         return null;
     }
-
-	public void setForceLoading(boolean _forceLoading) {
-		this._forceLoading = _forceLoading;
-	}
-}
\ No newline at end of file
+}
@@ -0,0 +1,368 @@
+/*******************************************************************************
+ * Copyright 2012 Anteros Tecnologia
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package br.com.anteros.nosql.persistence.serialization.jackson;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.util.ByteArrayBuilder;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.databind.node.POJONode;
+
+import br.com.anteros.nosql.persistence.proxy.AnterosPersistentCollection;
+import br.com.anteros.nosql.persistence.proxy.AnterosProxyObject;
+
+/**
+ * Estado de uma entidade no momento em que foi carregada, guardado como um
+ * hash de 64 bits por propriedade: objetos embutidos viram snapshots aninhados
+ * e os demais valores (inclusive arrays) um único hash. Criado por
+ * {@link AnterosNoSQLObjectMapper#snapshot(Object)} e comparado por
+ * {@link AnterosNoSQLObjectMapper#delta(Object, AnterosSnapshot)}.
+ * <p>
+ * Proxies e coleções persistentes não carregados não são lidos nem
+ * inicializados; ficam marcados como {@link #NOT_LOADED}. Arrays com algum
+ * elemento não carregado guardam o estado de cada posição, para que as
+ * demais possam ser comparadas.
+ */
+public final class AnterosSnapshot {
+
+	/**
+	 * Marcador escrito no lugar de um {@link AnterosProxyObject} ou
+	 * {@link AnterosPersistentCollection} não carregado nas escritas com
+	 * {@link AnterosPersistenceJacksonModule#DELTA_ATTRIBUTE}, e guardado no
+	 * snapshot no lugar do hash.
+	 */
+	public static final Object NOT_LOADED = new Object() {
+		@Override
+		public String toString() {
+			return "NOT_LOADED";
+		}
+	};
+
+	private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+	static final AnterosSnapshot EMPTY = new AnterosSnapshot(Collections.<String, Object> emptyMap());
+
+	private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+	private static final long FNV_PRIME = 0x100000001b3L;
+
+	/**
+	 * Valor de cada propriedade: {@link Long} com o hash, outro
+	 * {@link AnterosSnapshot}, {@link #NOT_LOADED} ou, para arrays com
+	 * elementos não carregados, um {@code Object[]} com o valor de cada
+	 * posição.
+	 */
+	private final Map<String, Object> fields;
+
+	AnterosSnapshot(Map<String, Object> fields) {
+		this.fields = fields;
+	}
+
+	static AnterosSnapshot of(ObjectNode node, ObjectMapper mapper) {
+		Map<String, Object> fields = new HashMap<String, Object>(capacityFor(node.size()));
+		Iterator<Map.Entry<String, JsonNode>> it = node.fields();
+		while (it.hasNext()) {
+			Map.Entry<String, JsonNode> field = it.next();
+			fields.put(field.getKey(), valueOf(field.getValue(), mapper));
+		}
+		return new AnterosSnapshot(fields);
+	}
+
+	static Object valueOf(JsonNode node, ObjectMapper mapper) {
+		if (node.isObject()) {
+			return of((ObjectNode) node, mapper);
+		}
+		if (isNotLoaded(node)) {
+			return NOT_LOADED;
+		}
+		if (node.isArray() && containsNotLoaded(node)) {
+			Object[] elements = new Object[node.size()];
+			for (int i = 0; i < elements.length; i++) {
+				JsonNode element = node.get(i);
+				elements[i] = containsNotLoaded(element) ? valueOf(element, mapper) : hash(element, mapper);
+			}
+			return elements;
+		}
+		return hash(node, mapper);
+	}
+
+	/**
+	 * Indica se o valor atual (de {@link #valueOf(JsonNode, ObjectMapper)})
+	 * pode ser considerado igual ao anterior: as posições não carregadas agora
+	 * são iguais à mesma posição de antes; as que foram carregadas desde então
+	 * são diferentes.
+	 */
+	static boolean matches(Object current, Object previous) {
+		if (current == NOT_LOADED) {
+			return previous != null;
+		}
+		if (current instanceof Long) {
+			return current.equals(previous);
+		}
+		if (current instanceof Object[]) {
+			if (!(previous instanceof Object[]) || ((Object[]) previous).length != ((Object[]) current).length) {
+				return false;
+			}
+			for (int i = 0; i < ((Object[]) current).length; i++) {
+				if (!matches(((Object[]) current)[i], ((Object[]) previous)[i])) {
+					return false;
+				}
+			}
+			return true;
+		}
+		if (!(previous instanceof AnterosSnapshot)) {
+			return false;
+		}
+		AnterosSnapshot snapshot = (AnterosSnapshot) current;
+		AnterosSnapshot other = (AnterosSnapshot) previous;
+		if (snapshot.size() != other.size()) {
+			return false;
+		}
+		for (Map.Entry<String, Object> field : snapshot.fields.entrySet()) {
+			if (!matches(field.getValue(), other.get(field.getKey()))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * O valor atual com as posições não carregadas preenchidas pelo valor
+	 * anterior, que continua valendo para elas. Só deve ser chamado quando
+	 * {@link #matches(Object, Object)}.
+	 */
+	static Object merge(Object current, Object previous) {
+		if (current == NOT_LOADED) {
+			return previous;
+		}
+		if (current instanceof Object[]) {
+			Object[] elements = ((Object[]) current).clone();
+			for (int i = 0; i < elements.length; i++) {
+				elements[i] = merge(elements[i], ((Object[]) previous)[i]);
+			}
+			return elements;
+		}
+		if (current instanceof AnterosSnapshot) {
+			Map<String, Object> fields = new HashMap<String, Object>(capacityFor(((AnterosSnapshot) current).size()));
+			for (Map.Entry<String, Object> field : ((AnterosSnapshot) current).fields.entrySet()) {
+				fields.put(field.getKey(), merge(field.getValue(), ((AnterosSnapshot) previous).get(field.getKey())));
+			}
+			return new AnterosSnapshot(fields);
+		}
+		return current;
+	}
+
+	/**
+	 * Cópia do valor com cada proxy não carregado trocado pela sua referência
+	 * (veja {@link AnterosProxyReferenceWriter}), para gravar um array
+	 * inteiro; null se há algo não carregado sem referência, como uma coleção
+	 * persistente.
+	 */
+	static JsonNode withReferences(JsonNode node) {
+		if (isNotLoaded(node)) {
+			Object pojo = ((POJONode) node).getPojo();
+			return pojo instanceof NotLoadedReference ? ((NotLoadedReference) pojo).reference.deepCopy() : null;
+		}
+		if (node.isArray()) {
+			ArrayNode result = JsonNodeFactory.instance.arrayNode(node.size());
+			for (JsonNode element : node) {
+				JsonNode copy = withReferences(element);
+				if (copy == null) {
+					return null;
+				}
+				result.add(copy);
+			}
+			return result;
+		}
+		if (node.isObject()) {
+			ObjectNode result = JsonNodeFactory.instance.objectNode();
+			Iterator<Map.Entry<String, JsonNode>> it = node.fields();
+			while (it.hasNext()) {
+				Map.Entry<String, JsonNode> field = it.next();
+				JsonNode copy = withReferences(field.getValue());
+				if (copy == null) {
+					return null;
+				}
+				result.set(field.getKey(), copy);
+			}
+			return result;
+		}
+		return node;
+	}
+
+	Object get(String name) {
+		return fields.get(name);
+	}
+
+	Iterable<String> names() {
+		return fields.keySet();
+	}
+
+	public int size() {
+		return fields.size();
+	}
+
+	static int capacityFor(int size) {
+		return size < 3 ? 4 : (int) (size / 0.75f) + 1;
+	}
+
+	static boolean isNotLoaded(JsonNode node) {
+		if (!(node instanceof POJONode)) {
+			return false;
+		}
+		Object pojo = ((POJONode) node).getPojo();
+		return pojo == NOT_LOADED || pojo instanceof NotLoadedReference;
+	}
+
+	static boolean containsNotLoaded(JsonNode node) {
+		if (isNotLoaded(node)) {
+			return true;
+		}
+		if (node.isContainerNode()) {
+			for (JsonNode child : node) {
+				if (containsNotLoaded(child)) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Hash FNV-1a de 64 bits do valor, incluindo o tipo do nó, de modo que
+	 * {@code "1"} e {@code 1} sejam diferentes. Objetos embutidos na árvore
+	 * (como um {@code ObjectId}) entram pelo JSON que o mapper escreve para
+	 * eles.
+	 */
+	static long hash(JsonNode node, ObjectMapper mapper) {
+		return hash(FNV_OFFSET, node, mapper);
+	}
+
+	private static long hash(long h, JsonNode node, ObjectMapper mapper) {
+		h = mix(h, node.getNodeType().ordinal());
+		switch (node.getNodeType()) {
+		case OBJECT:
+			Iterator<Map.Entry<String, JsonNode>> it = node.fields();
+			while (it.hasNext()) {
+				Map.Entry<String, JsonNode> field = it.next();
+				h = mix(h, field.getKey());
+				h = hash(h, field.getValue(), mapper);
+			}
+			return mix(h, node.size());
+		case ARRAY:
+			for (JsonNode element : node) {
+				h = hash(h, element, mapper);
+			}
+			return mix(h, node.size());
+		case NUMBER:
+			if (node.isIntegralNumber() && node.canConvertToLong()) {
+				return mix(h, node.longValue());
+			}
+			if (node.isDouble() || node.isFloat()) {
+				return mix(h, Double.doubleToLongBits(node.doubleValue()));
+			}
+			return mix(h, node.asText());
+		case BOOLEAN:
+			return mix(h, node.booleanValue() ? 1 : 0);
+		case BINARY:
+			try {
+				return mix(h, node.binaryValue());
+			} catch (IOException e) {
+				throw new JacksonSerializationException(e);
+			}
+		case POJO:
+			return mix(h, contentOf(((POJONode) node).getPojo(), mapper));
+		case STRING:
+			return mix(h, node.textValue());
+		default:
+			return h;
+		}
+	}
+
+	private static long mix(long h, long value) {
+		for (int i = 0; i < 8; i++) {
+			h = (h ^ (value & 0xff)) * FNV_PRIME;
+			value >>>= 8;
+		}
+		return h;
+	}
+
+	private static long mix(long h, byte[] value) {
+		for (byte b : value) {
+			h = (h ^ (b & 0xff)) * FNV_PRIME;
+		}
+		return mix(h, value.length);
+	}
+
+	private static byte[] contentOf(Object pojo, ObjectMapper mapper) {
+		if (pojo == null) {
+			return new byte[0];
+		}
+		if (pojo instanceof byte[]) {
+			return (byte[]) pojo;
+		}
+		ByteArrayBuilder out = new ByteArrayBuilder();
+		try (JsonGenerator gen = JSON_FACTORY.createGenerator(out)) {
+			mapper.writer().without(SerializationFeature.INDENT_OUTPUT).writeValue(gen, pojo);
+		} catch (IOException e) {
+			throw new JacksonSerializationException(e);
+		}
+		return out.toByteArray();
+	}
+
+	private static long mix(long h, String value) {
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			h = (h ^ (c & 0xff)) * FNV_PRIME;
+			h = (h ^ (c >>> 8)) * FNV_PRIME;
+		}
+		return mix(h, value.length());
+	}
+
+	@Override
+	public String toString() {
+		return "AnterosSnapshot" + fields;
+	}
+
+	/**
+	 * Marcador de um proxy não carregado nas escritas com
+	 * {@link AnterosPersistenceJacksonModule#DELTA_ATTRIBUTE}, com a
+	 * referência que o substitui quando o array em que está é gravado inteiro.
+	 */
+	static final class NotLoadedReference {
+
+		final JsonNode reference;
+
+		NotLoadedReference(JsonNode reference) {
+			this.reference = reference;
+		}
+
+		@Override
+		public String toString() {
+			return "NOT_LOADED" + reference;
+		}
+	}
+}
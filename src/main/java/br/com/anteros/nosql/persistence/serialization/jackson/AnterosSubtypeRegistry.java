@@ -0,0 +1,172 @@
+/*******************************************************************************
+ * Copyright 2012 Anteros Tecnologia
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package br.com.anteros.nosql.persistence.serialization.jackson;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.fasterxml.jackson.annotation.JsonSubTypes;
+import com.fasterxml.jackson.databind.jsontype.NamedType;
+
+import br.com.anteros.nosql.persistence.metadata.NoSQLDescriptionEntity;
+import br.com.anteros.nosql.persistence.session.NoSQLSessionFactory;
+
+/**
+ * Registro dos subtipos das hierarquias com
+ * {@link br.com.anteros.nosql.persistence.metadata.annotations.DiscriminatorValue}.
+ * <p>
+ * Cada {@link AnterosPersistenceJacksonModule} tem o seu registro (veja
+ * {@link AnterosPersistenceJacksonModule#getSubtypeRegistry()}), que vive
+ * enquanto o módulo viver. As hierarquias são montadas sob demanda, na
+ * primeira consulta a cada raiz, a partir do {@link AnterosEntityIndex} e do
+ * gerenciador de descrição de entidades, que completa o índice com as classes
+ * que ele não tem (de jars compilados sem o processador ou registradas em
+ * tempo de execução); depois de montada uma hierarquia não
+ * muda, e as consultas devolvem sempre as mesmas listas e arrays imutáveis,
+ * sem nenhuma alocação.
+ */
+public class AnterosSubtypeRegistry {
+
+	private final NoSQLSessionFactory sessionFactory;
+
+	private final ConcurrentMap<Class<?>, Class<?>> rootEntities = new ConcurrentHashMap<Class<?>, Class<?>>();
+
+	private final ConcurrentMap<Class<?>, Hierarchy> hierarchies = new ConcurrentHashMap<Class<?>, Hierarchy>();
+
+	public AnterosSubtypeRegistry(NoSQLSessionFactory sessionFactory) {
+		this.sessionFactory = sessionFactory;
+	}
+
+	public NoSQLSessionFactory getSessionFactory() {
+		return sessionFactory;
+	}
+
+	/**
+	 * Retorna a classe da entidade raiz da hierarquia a que o tipo pertence.
+	 */
+	public Class<?> getRootEntity(Class<?> type) {
+		Class<?> root = rootEntities.get(type);
+		if (root == null) {
+			root = AnterosEntityIndex.forClass(type).getRootEntity(type);
+			if (root == null) {
+				NoSQLDescriptionEntity descriptionEntity = sessionFactory.getDescriptionEntityManager()
+						.getEntitySuperClass(type);
+				root = (descriptionEntity == null ? type : descriptionEntity.getEntityClass());
+			}
+			Class<?> previous = rootEntities.putIfAbsent(type, root);
+			if (previous != null) {
+				root = previous;
+			}
+		}
+		return root;
+	}
+
+	/**
+	 * Retorna os subtipos (com seus valores discriminadores) da hierarquia a que
+	 * o tipo pertence. A lista é imutável e compartilhada.
+	 */
+	public List<NamedType> getSubtypes(Class<?> type) {
+		return getHierarchy(getRootEntity(type)).namedTypes;
+	}
+
+	/**
+	 * Mesmo conteúdo de {@link #getSubtypes(Class)}, na forma esperada por
+	 * {@link JsonSubTypes#value()}. O array é compartilhado e não deve ser
+	 * alterado.
+	 */
+	public JsonSubTypes.Type[] getSubtypeAnnotations(Class<?> type) {
+		return getHierarchy(getRootEntity(type)).annotations;
+	}
+
+	/**
+	 * Retorna a tabela de discriminadores da hierarquia a que o tipo pertence.
+	 */
+	public AnterosDiscriminatorTable getDiscriminatorTable(Class<?> type) {
+		return getHierarchy(getRootEntity(type)).table;
+	}
+
+	protected Hierarchy getHierarchy(Class<?> rootEntity) {
+		Hierarchy hierarchy = hierarchies.get(rootEntity);
+		if (hierarchy == null) {
+			Map<Class<?>, String> discriminators = new LinkedHashMap<Class<?>, String>();
+			addIndexedHierarchy(rootEntity, discriminators);
+			NoSQLDescriptionEntity[] entities = sessionFactory.getDescriptionEntityManager()
+					.getEntitiesBySuperClass(rootEntity);
+			if (entities != null) {
+				for (NoSQLDescriptionEntity entity : entities) {
+					discriminators.put(entity.getEntityClass(), entity.getDiscriminatorValue());
+				}
+			}
+			hierarchy = new Hierarchy(discriminators.keySet().toArray(new Class<?>[discriminators.size()]),
+					discriminators.values().toArray(new String[discriminators.size()]));
+			Hierarchy previous = hierarchies.putIfAbsent(rootEntity, hierarchy);
+			if (previous != null) {
+				hierarchy = previous;
+			}
+		}
+		return hierarchy;
+	}
+
+	/**
+	 * Acrescenta as classes da hierarquia que estão no índice, com seus
+	 * discriminadores; as que não podem ser carregadas são ignoradas.
+	 */
+	protected void addIndexedHierarchy(Class<?> rootEntity, Map<Class<?>, String> discriminators) {
+		AnterosEntityIndex index = indexOf(rootEntity);
+		List<String> names = index.getHierarchy(rootEntity);
+		if (names == null) {
+			return;
+		}
+		for (int i = 0; i < names.size(); i++) {
+			try {
+				Class<?> type = i == 0 ? rootEntity : Class.forName(names.get(i), false, rootEntity.getClassLoader());
+				discriminators.put(type, index.get(type).getDiscriminator());
+			} catch (ClassNotFoundException e) {
+			}
+		}
+	}
+
+	protected AnterosEntityIndex indexOf(Class<?> rootEntity) {
+		return AnterosEntityIndex.forClass(rootEntity);
+	}
+
+	static class Hierarchy {
+
+		final List<NamedType> namedTypes;
+		final JsonSubTypes.Type[] annotations;
+		final AnterosDiscriminatorTable table;
+
+		Hierarchy(Class<?>[] entityClasses, String[] discriminatorValues) {
+			List<NamedType> types = new ArrayList<NamedType>(entityClasses.length);
+			Map<String, Class<?>> discriminators = new LinkedHashMap<String, Class<?>>();
+			annotations = new JsonSubTypes.Type[entityClasses.length];
+			for (int i = 0; i < entityClasses.length; i++) {
+				types.add(new NamedType(entityClasses[i], discriminatorValues[i]));
+				annotations[i] = new AnterosAnnotatedAdapter.TypeImpl(entityClasses[i], discriminatorValues[i]);
+				if (discriminatorValues[i] != null && !discriminatorValues[i].isEmpty()) {
+					discriminators.put(discriminatorValues[i], entityClasses[i]);
+				}
+			}
+			namedTypes = Collections.unmodifiableList(types);
+			table = AnterosDiscriminatorTable.build(discriminators);
+		}
+	}
+}
@@ -0,0 +1,132 @@
+/*******************************************************************************
+ * Copyright 2012 Anteros Tecnologia
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package br.com.anteros.nosql.persistence.serialization.jackson;
+
+import java.util.Collection;
+
+import com.fasterxml.jackson.annotation.JsonTypeInfo.As;
+import com.fasterxml.jackson.annotation.JsonTypeInfo.Id;
+import com.fasterxml.jackson.databind.DeserializationConfig;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.jsontype.NamedType;
+import com.fasterxml.jackson.databind.jsontype.TypeDeserializer;
+import com.fasterxml.jackson.databind.jsontype.TypeIdResolver;
+import com.fasterxml.jackson.databind.jsontype.impl.AsPropertyTypeDeserializer;
+import com.fasterxml.jackson.databind.jsontype.impl.StdTypeResolverBuilder;
+
+/**
+ * {@link StdTypeResolverBuilder} que pode ser congelado depois de configurado,
+ * para ser guardado em cache e compartilhado entre threads. Depois de
+ * {@link #freeze()} os métodos de configuração não alteram mais esta
+ * instância: devolvem uma cópia com a alteração aplicada.
+ */
+public class AnterosTypeResolverBuilder extends StdTypeResolverBuilder {
+
+	private boolean _frozen;
+
+	protected AnterosSubtypeRegistry _subtypeRegistry;
+
+	public AnterosTypeResolverBuilder() {
+	}
+
+	protected AnterosTypeResolverBuilder(AnterosTypeResolverBuilder src) {
+		_idType = src._idType;
+		_includeAs = src._includeAs;
+		_typeProperty = src._typeProperty;
+		_typeIdVisible = src._typeIdVisible;
+		_defaultImpl = src._defaultImpl;
+		_customIdResolver = src._customIdResolver;
+		_subtypeRegistry = src._subtypeRegistry;
+	}
+
+	/**
+	 * Associa o builder a uma hierarquia com {@code @DiscriminatorValue}: os
+	 * deserializadores de tipo criados passam a usar a
+	 * {@link AnterosDiscriminatorTable} do registro.
+	 */
+	public AnterosTypeResolverBuilder subtypeRegistry(AnterosSubtypeRegistry subtypeRegistry) {
+		if (_frozen) {
+			return copy().subtypeRegistry(subtypeRegistry);
+		}
+		_subtypeRegistry = subtypeRegistry;
+		return this;
+	}
+
+	@Override
+	public TypeDeserializer buildTypeDeserializer(DeserializationConfig config, JavaType baseType,
+			Collection<NamedType> subtypes) {
+		TypeDeserializer deserializer = super.buildTypeDeserializer(config, baseType, subtypes);
+		if (_subtypeRegistry == null || _customIdResolver != null || _idType != Id.NAME
+				|| deserializer == null || deserializer.getClass() != AsPropertyTypeDeserializer.class) {
+			return deserializer;
+		}
+		return new AnterosDiscriminatorTypeDeserializer((AsPropertyTypeDeserializer) deserializer,
+				_subtypeRegistry.getDiscriminatorTable(baseType.getRawClass()));
+	}
+
+	public AnterosTypeResolverBuilder freeze() {
+		_frozen = true;
+		return this;
+	}
+
+	public boolean isFrozen() {
+		return _frozen;
+	}
+
+	protected AnterosTypeResolverBuilder copy() {
+		return new AnterosTypeResolverBuilder(this);
+	}
+
+	@Override
+	public StdTypeResolverBuilder init(Id idType, TypeIdResolver idRes) {
+		if (_frozen) {
+			return copy().init(idType, idRes);
+		}
+		return super.init(idType, idRes);
+	}
+
+	@Override
+	public StdTypeResolverBuilder inclusion(As includeAs) {
+		if (_frozen) {
+			return copy().inclusion(includeAs);
+		}
+		return super.inclusion(includeAs);
+	}
+
+	@Override
+	public StdTypeResolverBuilder typeProperty(String typeIdPropName) {
+		if (_frozen) {
+			return copy().typeProperty(typeIdPropName);
+		}
+		return super.typeProperty(typeIdPropName);
+	}
+
+	@Override
+	public StdTypeResolverBuilder defaultImpl(Class<?> defaultImpl) {
+		if (_frozen) {
+			return copy().defaultImpl(defaultImpl);
+		}
+		return super.defaultImpl(defaultImpl);
+	}
+
+	@Override
+	public StdTypeResolverBuilder typeIdVisibility(boolean isVisible) {
+		if (_frozen) {
+			return copy().typeIdVisibility(isVisible);
+		}
+		return super.typeIdVisibility(isVisible);
+	}
+}
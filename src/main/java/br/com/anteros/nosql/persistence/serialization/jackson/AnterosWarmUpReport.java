@@ -0,0 +1,98 @@
+/*******************************************************************************
+ * Copyright 2012 Anteros Tecnologia
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package br.com.anteros.nosql.persistence.serialization.jackson;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Resultado do aquecimento dos serializadores e deserializadores das entidades
+ * (veja {@link AnterosNoSQLObjectMapper#warmUp(java.util.concurrent.ForkJoinPool)}):
+ * tempo total, tempo de cada entidade e as entidades que falharam.
+ */
+public class AnterosWarmUpReport {
+
+	private final Map<Class<?>, Long> entityNanos;
+	private final Map<Class<?>, Throwable> failures;
+	private final long elapsedNanos;
+
+	public AnterosWarmUpReport(Map<Class<?>, Long> entityNanos, Map<Class<?>, Throwable> failures,
+			long elapsedNanos) {
+		this.entityNanos = Collections.unmodifiableMap(new LinkedHashMap<Class<?>, Long>(entityNanos));
+		this.failures = Collections.unmodifiableMap(new LinkedHashMap<Class<?>, Throwable>(failures));
+		this.elapsedNanos = elapsedNanos;
+	}
+
+	/**
+	 * Indica se todas as entidades foram aquecidas sem erro.
+	 */
+	public boolean isSuccessful() {
+		return failures.isEmpty();
+	}
+
+	public int getEntityCount() {
+		return entityNanos.size() + failures.size();
+	}
+
+	public long getElapsedTime(TimeUnit unit) {
+		return unit.convert(elapsedNanos, TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * Retorna o tempo gasto com a entidade, ou -1 se ela não foi aquecida.
+	 */
+	public long getEntityTime(Class<?> entityClass, TimeUnit unit) {
+		Long nanos = entityNanos.get(entityClass);
+		return nanos == null ? -1 : unit.convert(nanos, TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * Retorna a entidade mais lenta de aquecer, ou null se nenhuma foi
+	 * aquecida.
+	 */
+	public Class<?> getSlowestEntity() {
+		Class<?> slowest = null;
+		long max = -1;
+		for (Map.Entry<Class<?>, Long> entry : entityNanos.entrySet()) {
+			if (entry.getValue() > max) {
+				max = entry.getValue();
+				slowest = entry.getKey();
+			}
+		}
+		return slowest;
+	}
+
+	public Map<Class<?>, Long> getEntityNanos() {
+		return entityNanos;
+	}
+
+	public Map<Class<?>, Throwable> getFailures() {
+		return failures;
+	}
+
+	@Override
+	public String toString() {
+		Class<?> slowest = getSlowestEntity();
+		return "AnterosWarmUpReport [entities=" + getEntityCount() + ", failures=" + failures.size() + ", elapsed="
+				+ getElapsedTime(TimeUnit.MILLISECONDS) + "ms"
+				+ (slowest == null ? ""
+						: ", slowest=" + slowest.getName() + " ("
+								+ getEntityTime(slowest, TimeUnit.MILLISECONDS) + "ms)")
+				+ "]";
+	}
+}
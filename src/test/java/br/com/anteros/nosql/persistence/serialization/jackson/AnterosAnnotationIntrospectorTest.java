@@ -0,0 +1,123 @@
+/*******************************************************************************
+ * Copyright 2012 Anteros Tecnologia
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package br.com.anteros.nosql.persistence.serialization.jackson;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.annotation.JsonSubTypes;
+import com.fasterxml.jackson.annotation.JsonTypeInfo;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.PropertyNamingStrategy;
+
+import br.com.anteros.nosql.persistence.serialization.jackson.model.Vendor;
+import br.com.anteros.nosql.persistence.serialization.jackson.model.Warehouse;
+
+public class AnterosAnnotationIntrospectorTest {
+
+	private AnterosNoSQLObjectMapper mapper;
+
+	@Before
+	public void setUp() {
+		mapper = new AnterosNoSQLObjectMapper(
+				new TestSessionFactory().entity(Vendor.class).entity(Warehouse.class).build());
+		mapper.setIdentityStrategy(AnterosIdentityStrategy.ENTITY_ID);
+	}
+
+	@Test
+	public void usesTheExplicitJsonNameOfTheIdAsObjectId() throws Exception {
+		Vendor vendor = new Vendor("v1", "Acme");
+
+		String json = mapper.writeValueAsString(Arrays.asList(vendor, vendor));
+		List<Vendor> read = mapper.readValue(json, new TypeReference<List<Vendor>>() {
+		});
+
+		assertTrue(json, json.contains("\"code\""));
+		assertEquals("v1", read.get(0).getId());
+		assertSame(read.get(0), read.get(1));
+	}
+
+	@Test
+	public void usesTheNamingStrategyForTheObjectId() throws Exception {
+		mapper.setPropertyNamingStrategy(PropertyNamingStrategy.SNAKE_CASE);
+		Warehouse warehouse = new Warehouse("w1", "Central");
+
+		String json = mapper.writeValueAsString(Arrays.asList(warehouse, warehouse));
+		List<Warehouse> read = mapper.readValue(json, new TypeReference<List<Warehouse>>() {
+		});
+
+		assertTrue(json, json.contains("\"warehouse_id\""));
+		assertEquals("w1", read.get(0).getWarehouseId());
+		assertSame(read.get(0), read.get(1));
+	}
+
+	@Test
+	public void keepsTheMixInsOfEachCopy() throws Exception {
+		Shape circle = new Circle();
+		assertTrue(mapper.writerFor(Shape.class).writeValueAsString(circle).contains("$Circle"));
+
+		AnterosNoSQLObjectMapper copy = mapper.copy();
+		copy.addMixIn(Shape.class, ShapeNames.class);
+
+		assertTrue(copy.writerFor(Shape.class).writeValueAsString(circle).contains("\"circle\""));
+		assertTrue(mapper.writerFor(Shape.class).writeValueAsString(circle).contains("$Circle"));
+	}
+
+	@Test
+	public void keepsTheOriginalWithoutTheMixInsOfACopy() throws Exception {
+		Shape circle = new Circle();
+		AnterosNoSQLObjectMapper copy = mapper.copy();
+		copy.addMixIn(Shape.class, ShapeNames.class);
+		assertTrue(copy.writerFor(Shape.class).writeValueAsString(circle).contains("\"circle\""));
+
+		assertTrue(mapper.writerFor(Shape.class).writeValueAsString(circle).contains("$Circle"));
+	}
+
+	@JsonTypeInfo(use = JsonTypeInfo.Id.NAME)
+	public static class Shape {
+	}
+
+	public static class Circle extends Shape {
+	}
+
+	@JsonSubTypes(@JsonSubTypes.Type(value = Circle.class, name = "circle"))
+	abstract static class ShapeNames {
+	}
+
+	@Test
+	public void copiesOnlyWhenTheSettingsChange() {
+		AnterosAnnotationIntrospector introspector = new AnterosAnnotationIntrospector(
+				new AnterosSubtypeRegistry(new TestSessionFactory().build()));
+		AnterosAnnotationIntrospector.Settings settings = introspector.getSettings();
+
+		AnterosAnnotationIntrospector copy = introspector
+				.withSettings(settings.withIdentityStrategy(AnterosIdentityStrategy.SEQUENCE).withUseTransient(true));
+
+		assertSame(introspector, introspector.withSettings(settings.withUseTransient(false)));
+		assertNotSame(introspector, copy);
+		assertEquals(AnterosIdentityStrategy.SEQUENCE, copy.getIdentityStrategy());
+		assertTrue(copy.isUseTransient());
+		assertEquals(AnterosIdentityStrategy.UUID, introspector.getIdentityStrategy());
+	}
+}
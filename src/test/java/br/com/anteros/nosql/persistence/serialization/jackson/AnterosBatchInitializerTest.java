@@ -0,0 +1,121 @@
+/*******************************************************************************
+ * Copyright 2012 Anteros Tecnologia
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package br.com.anteros.nosql.persistence.serialization.jackson;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import br.com.anteros.nosql.persistence.proxy.AnterosPersistentCollection;
+import br.com.anteros.nosql.persistence.proxy.AnterosProxyObject;
+import br.com.anteros.nosql.persistence.serialization.jackson.AnterosPersistenceJacksonModule.Feature;
+import br.com.anteros.nosql.persistence.serialization.jackson.model.Customer;
+import br.com.anteros.nosql.persistence.serialization.jackson.model.Invoice;
+import br.com.anteros.nosql.persistence.serialization.jackson.model.Item;
+
+public class AnterosBatchInitializerTest {
+
+	private AnterosNoSQLObjectMapper mapper;
+	private RecordingBatchLoader loader;
+	private TestProxies.Load customerLoad;
+	private TestProxies.Load auditorLoad;
+	private TestProxies.Load approverLoad;
+	private TestProxies.Load reviewerLoad;
+	private TestProxies.Load itemsLoad;
+	private Invoice invoice;
+
+	@Before
+	public void setUp() throws Exception {
+		mapper = new AnterosNoSQLObjectMapper(
+				new TestSessionFactory().entity(Invoice.class).entity(Customer.class).build());
+		loader = new RecordingBatchLoader();
+		mapper.getModule().setBatchLoader(loader);
+
+		customerLoad = new TestProxies.Load();
+		auditorLoad = new TestProxies.Load();
+		approverLoad = new TestProxies.Load();
+		reviewerLoad = new TestProxies.Load();
+		itemsLoad = new TestProxies.Load();
+		invoice = new Invoice("i1");
+		invoice.setCustomer(TestProxies.proxyOf(new Customer("c1", "Ana", null), customerLoad));
+		invoice.setAuditor(TestProxies.proxyOf(new Customer("c2", "Bia", null), auditorLoad));
+		invoice.setApprover(TestProxies.proxyOf(new Customer("c3", "Caio", null), approverLoad));
+		invoice.setReviewer(TestProxies.proxyOf(new Customer("c4", "Davi", null), reviewerLoad));
+		invoice.setItems(TestProxies.persistentListOf(
+				new ArrayList<Item>(Arrays.asList(new Item("p1", 1, null))), itemsLoad));
+	}
+
+	@Test
+	public void batchLoadsOnlyTheReferencesThatAreWritten() throws Exception {
+		String json = mapper.writerWith(Feature.FORCE_LAZY_LOADING).writeValueAsString(invoice);
+
+		assertEquals(Arrays.asList("c1", "c4"), loader.proxyIds.get(Customer.class));
+		assertEquals(Arrays.asList(1), loader.collectionSizes.get(Invoice.class.getDeclaredField("items")));
+		assertTrue(customerLoad.isLoaded());
+		assertFalse(auditorLoad.isLoaded());
+		assertFalse(approverLoad.isLoaded());
+		assertTrue(json.contains("\"Ana\""));
+		assertFalse(json.contains("\"Bia\""));
+		assertFalse(json.contains("\"Caio\""));
+	}
+
+	@Test
+	public void skipsReferencesOutsideTheActiveView() throws Exception {
+		mapper.writerWith(Feature.FORCE_LAZY_LOADING).withView(Object.class).writeValueAsString(invoice);
+
+		assertEquals(Arrays.asList("c1"), loader.proxyIds.get(Customer.class));
+		assertFalse(reviewerLoad.isLoaded());
+	}
+
+	@Test
+	public void collectsByJsonPropertyName() throws Exception {
+		AnterosLazyGraphCollector collector = new AnterosLazyGraphCollector(mapper.getSerializerProviderInstance(),
+				true, true, AnterosProjection.of("customer")).collect(invoice);
+
+		assertEquals(1, collector.getProxies().get(Customer.class).size());
+		assertTrue(collector.getCollections().isEmpty());
+	}
+
+	static class RecordingBatchLoader implements AnterosBatchLoader {
+
+		final Map<Class<?>, List<Object>> proxyIds = new LinkedHashMap<Class<?>, List<Object>>();
+		final Map<Field, List<Integer>> collectionSizes = new LinkedHashMap<Field, List<Integer>>();
+
+		public void loadProxies(Class<?> entityClass, List<AnterosProxyObject> proxies) throws Exception {
+			List<Object> ids = AnterosLazyGraphCollector.group(proxyIds, entityClass);
+			for (AnterosProxyObject proxy : proxies) {
+				ids.add(((Customer) proxy.initializeAndReturnObject()).getId());
+			}
+		}
+
+		public void loadCollections(Field field, List<AnterosPersistentCollection> collections) throws Exception {
+			for (AnterosPersistentCollection collection : collections) {
+				collection.initialize();
+				AnterosLazyGraphCollector.group(collectionSizes, field).add(((List<?>) collection).size());
+			}
+		}
+	}
+}
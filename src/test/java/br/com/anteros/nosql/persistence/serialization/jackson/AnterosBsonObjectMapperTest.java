@@ -0,0 +1,176 @@
+/*******************************************************************************
+ * Copyright 2012 Anteros Tecnologia
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package br.com.anteros.nosql.persistence.serialization.jackson;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import br.com.anteros.nosql.persistence.serialization.jackson.AnterosPersistenceJacksonModule.Feature;
+import br.com.anteros.nosql.persistence.serialization.jackson.model.Attachment;
+import br.com.anteros.nosql.persistence.serialization.jackson.model.CardPayment;
+import br.com.anteros.nosql.persistence.serialization.jackson.model.Customer;
+import br.com.anteros.nosql.persistence.serialization.jackson.model.Item;
+import br.com.anteros.nosql.persistence.serialization.jackson.model.Order;
+import br.com.anteros.nosql.persistence.serialization.jackson.model.Payment;
+import br.com.anteros.nosql.persistence.session.NoSQLSessionFactory;
+import de.undercouch.bson4jackson.types.ObjectId;
+
+public class AnterosBsonObjectMapperTest {
+
+	private NoSQLSessionFactory sessionFactory;
+	private AnterosBsonObjectMapper mapper;
+
+	@Before
+	public void setUp() {
+		sessionFactory = new TestSessionFactory().entity(Customer.class).entity(Order.class)
+				.entity(Attachment.class).hierarchy(Payment.class, CardPayment.class).build();
+		mapper = new AnterosBsonObjectMapper(sessionFactory);
+	}
+
+	@Test
+	public void writesABsonDocumentAndReadsItBack() throws Exception {
+		byte[] document = mapper.writeValueAsBytes(newOrder(new Customer("c1", "Ana", "ana@anteros.com.br")));
+
+		assertEquals(document.length, ByteBuffer.wrap(document).order(ByteOrder.LITTLE_ENDIAN).getInt());
+		Order order = mapper.readValue(document, Order.class);
+		assertEquals("o1", order.getId());
+		assertEquals(new Date(1546300800000L), order.getCreatedAt());
+		assertEquals("Ana", order.getCustomer().getName());
+		assertEquals(2, order.getItems().size());
+		assertEquals(new BigDecimal("7.50"), order.getItems().get(1).getPrice());
+		assertTrue(order.getPayment() instanceof CardPayment);
+		assertEquals("Ana", ((CardPayment) order.getPayment()).getCardHolder());
+	}
+
+	@Test
+	public void readsTheSameEntityAsTheJsonPath() throws Exception {
+		Order order = newOrder(new Customer("c1", "Ana", "ana@anteros.com.br"));
+		AnterosNoSQLObjectMapper jsonMapper = new AnterosNoSQLObjectMapper(sessionFactory);
+
+		Order fromBson = mapper.readValue(mapper.writeValueAsBytes(order), Order.class);
+		Order fromJson = jsonMapper.readValue(jsonMapper.writeValueAsBytes(order), Order.class);
+
+		assertEquals(jsonMapper.writeValueAsString(fromJson).replaceAll("\"@id\"\\s*:\\s*\"[^\"]*\"", ""),
+				jsonMapper.writeValueAsString(fromBson).replaceAll("\"@id\"\\s*:\\s*\"[^\"]*\"", ""));
+	}
+
+	@Test
+	public void writesObjectIdAndBinaryAsNativeBsonTypes() throws Exception {
+		Attachment attachment = new Attachment();
+		attachment.setId(new ObjectId(1546300800, 42, 7));
+		attachment.setName("nota.pdf");
+		attachment.setUploadedAt(new Date(1546300800000L));
+		attachment.setContent(new byte[] { 1, 2, 3, (byte) 0xff });
+
+		byte[] document = mapper.writeValueAsBytes(attachment);
+
+		JsonParser parser = mapper.getFactory().createParser(document);
+		Object id = null;
+		Object content = null;
+		while (parser.nextToken() != null) {
+			if (parser.currentToken() == JsonToken.FIELD_NAME && "id".equals(parser.getCurrentName())) {
+				parser.nextToken();
+				id = parser.getEmbeddedObject();
+			} else if (parser.currentToken() == JsonToken.FIELD_NAME && "content".equals(parser.getCurrentName())) {
+				parser.nextToken();
+				content = parser.getEmbeddedObject();
+			}
+		}
+		assertTrue(id instanceof ObjectId);
+		assertTrue(content instanceof byte[]);
+
+		Attachment result = mapper.readValue(document, Attachment.class);
+		assertEquals(1546300800, result.getId().getTime());
+		assertEquals(42, result.getId().getMachine());
+		assertEquals(7, result.getId().getInc());
+		assertEquals(new Date(1546300800000L), result.getUploadedAt());
+		assertArrayEquals(attachment.getContent(), result.getContent());
+	}
+
+	@Test
+	public void writesUninitializedLazyReferencesAsNull() throws Exception {
+		TestProxies.Load load = new TestProxies.Load();
+		Order order = newOrder(TestProxies.proxyOf(new Customer("c1", "Ana", null), load));
+
+		Order result = mapper.readValue(mapper.writeValueAsBytes(order), Order.class);
+
+		assertFalse(load.isLoaded());
+		assertNull(result.getCustomer());
+		assertEquals("o1", result.getId());
+	}
+
+	@Test
+	public void writesLazyReferencesAsStubsWhenRequested() throws Exception {
+		TestProxies.Load load = new TestProxies.Load();
+		Order order = newOrder(TestProxies.proxyOf(new Customer("c1", "Ana", null), load));
+
+		byte[] document = mapper.writerWith(Feature.SERIALIZE_IDENTIFIER_FOR_LAZY_NOT_LOADED_OBJECTS)
+				.writeValueAsBytes(order);
+		Order result = mapper.readValue(document, Order.class);
+
+		assertFalse(load.isLoaded());
+		assertEquals("c1", result.getCustomer().getId());
+		assertNull(result.getCustomer().getName());
+	}
+
+	@Test
+	public void loadsLazyReferencesAndCollectionsWithForceLazyLoading() throws Exception {
+		TestProxies.Load customerLoad = new TestProxies.Load();
+		TestProxies.Load itemsLoad = new TestProxies.Load();
+		Order order = newOrder(TestProxies.proxyOf(new Customer("c1", "Ana", null), customerLoad));
+		order.setItems(TestProxies.persistentListOf(new ArrayList<Item>(order.getItems()), itemsLoad));
+
+		byte[] document = mapper.writerWith(Feature.FORCE_LAZY_LOADING).writeValueAsBytes(order);
+		Order result = mapper.readValue(document, Order.class);
+
+		assertTrue(customerLoad.isLoaded());
+		assertTrue(itemsLoad.isLoaded());
+		assertEquals("Ana", result.getCustomer().getName());
+		assertEquals(2, result.getItems().size());
+		assertEquals("p1", result.getItems().get(0).getProduct());
+	}
+
+	private Order newOrder(Customer customer) {
+		Order order = new Order();
+		order.setId("o1");
+		order.setCreatedAt(new Date(1546300800000L));
+		order.setCustomer(customer);
+		order.setItems(Arrays.asList(new Item("p1", 1, new BigDecimal("19.90")), new Item("p2", 2, new BigDecimal("7.50"))));
+		CardPayment payment = new CardPayment();
+		payment.setId("pay1");
+		payment.setAmount(new BigDecimal("34.90"));
+		payment.setCardHolder("Ana");
+		payment.setInstallments(2);
+		order.setPayment(payment);
+		return order;
+	}
+}
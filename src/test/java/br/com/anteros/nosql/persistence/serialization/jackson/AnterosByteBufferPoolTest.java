@@ -0,0 +1,72 @@
+/*******************************************************************************
+ * Copyright 2012 Anteros Tecnologia
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package br.com.anteros.nosql.persistence.serialization.jackson;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+public class AnterosByteBufferPoolTest {
+
+	@Test
+	public void keepsABufferReleasedTwiceOnlyOnce() {
+		AnterosByteBufferPool pool = new AnterosByteBufferPool();
+		ByteBuffer buffer = pool.acquire(1000);
+
+		pool.release(buffer);
+		pool.release(buffer);
+
+		assertEquals(1, pool.getFreeCount());
+		assertEquals(buffer.capacity(), pool.getRetainedBytes());
+		pool.acquire(1000);
+		assertNotSame(buffer, pool.acquire(1000));
+	}
+
+	@Test
+	public void discardsBuffersBeyondTheRetainedBytesLimit() {
+		AnterosByteBufferPool pool = new AnterosByteBufferPool(false, 16, 3 * 1024);
+		ByteBuffer[] buffers = new ByteBuffer[4];
+		for (int i = 0; i < buffers.length; i++) {
+			buffers[i] = pool.acquire(1024);
+		}
+
+		for (ByteBuffer buffer : buffers) {
+			pool.release(buffer);
+		}
+
+		assertEquals(3, pool.getFreeCount());
+		assertEquals(3 * 1024, pool.getRetainedBytes());
+	}
+
+	@Test
+	public void releasesTheRetainedBytesOnAcquireAndClear() {
+		AnterosByteBufferPool pool = new AnterosByteBufferPool();
+		ByteBuffer small = pool.acquire(512);
+		ByteBuffer large = pool.acquire(4096);
+		pool.release(small);
+		pool.release(large);
+
+		pool.acquire(4096);
+		assertEquals(512, pool.getRetainedBytes());
+
+		pool.clear();
+		assertEquals(0, pool.getRetainedBytes());
+		assertEquals(0, pool.getFreeCount());
+	}
+}
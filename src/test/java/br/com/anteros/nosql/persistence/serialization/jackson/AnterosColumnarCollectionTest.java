@@ -0,0 +1,226 @@
+/*******************************************************************************
+ * Copyright 2012 Anteros Tecnologia
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package br.com.anteros.nosql.persistence.serialization.jackson;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.annotation.JsonInclude.Include;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectWriter;
+
+import br.com.anteros.nosql.persistence.proxy.AnterosPersistentCollection;
+import br.com.anteros.nosql.persistence.serialization.jackson.AnterosPersistenceJacksonModule.Feature;
+import br.com.anteros.nosql.persistence.serialization.jackson.TestProxies.Load;
+import br.com.anteros.nosql.persistence.serialization.jackson.model.BoletoPayment;
+import br.com.anteros.nosql.persistence.serialization.jackson.model.CardPayment;
+import br.com.anteros.nosql.persistence.serialization.jackson.model.Customer;
+import br.com.anteros.nosql.persistence.serialization.jackson.model.DiscountedItem;
+import br.com.anteros.nosql.persistence.serialization.jackson.model.Item;
+import br.com.anteros.nosql.persistence.serialization.jackson.model.Mailing;
+import br.com.anteros.nosql.persistence.serialization.jackson.model.Payment;
+import br.com.anteros.nosql.persistence.serialization.jackson.model.Tag;
+
+public class AnterosColumnarCollectionTest {
+
+	private static final TypeReference<List<Customer>> CUSTOMERS = new TypeReference<List<Customer>>() {
+	};
+	private static final TypeReference<List<Payment>> PAYMENTS = new TypeReference<List<Payment>>() {
+	};
+	private static final TypeReference<List<Item>> ITEMS = new TypeReference<List<Item>>() {
+	};
+	private static final TypeReference<List<Tag>> TAGS = new TypeReference<List<Tag>>() {
+	};
+
+	private AnterosNoSQLObjectMapper mapper;
+
+	@Before
+	public void setUp() {
+		mapper = newMapper();
+	}
+
+	private static AnterosNoSQLObjectMapper newMapper() {
+		AnterosNoSQLObjectMapper mapper = new AnterosNoSQLObjectMapper(new TestSessionFactory().entity(Customer.class)
+				.entity(Mailing.class).hierarchy(Payment.class, CardPayment.class, BoletoPayment.class).build());
+		mapper.setIdentityStrategy(AnterosIdentityStrategy.NONE);
+		return mapper;
+	}
+
+	private ObjectWriter columnar(TypeReference<?> type) {
+		return mapper.writerWith(Feature.COLUMNAR_COLLECTIONS).forType(type);
+	}
+
+	@Test
+	public void keepsExplicitNullsApartFromOmittedProperties() throws Exception {
+		List<Customer> customers = Arrays.asList(new Customer("c1", "Ana", "ana@x.com"),
+				new Customer("c2", null, null));
+
+		JsonNode omitted = mapper.readTree(columnar(CUSTOMERS).writeValueAsString(customers));
+		assertFalse(omitted.has(AnterosPersistenceJacksonModule.COLUMNAR_NULLS_FIELD));
+		assertEquals(1, omitted.get("@rows").get(1).size());
+
+		mapper = newMapper();
+		mapper.setSerializationInclusion(Include.ALWAYS);
+		String json = columnar(CUSTOMERS).writeValueAsString(customers);
+		JsonNode explicit = mapper.readTree(json);
+		assertEquals(3, explicit.get(AnterosPersistenceJacksonModule.COLUMNAR_NULLS_FIELD).size());
+
+		Customer managed = new Customer("c2", "Bia", "old@x.com");
+		List<Customer> read = mapper.readerForManaged(CUSTOMERS, resolverOf(managed)).readValue(json);
+		assertSame(managed, read.get(1));
+		assertNull(managed.getName());
+		assertNull(managed.getEmail());
+		assertEquals("ana@x.com", read.get(0).getEmail());
+	}
+
+	@Test
+	public void skipsOmittedPropertiesOnManagedEntities() throws Exception {
+		String json = columnar(CUSTOMERS).writeValueAsString(
+				Arrays.asList(new Customer("c1", "Ana", "ana@x.com"), new Customer("c2", null, "bia@x.com")));
+		Customer managed = new Customer("c2", "Bia", "old@x.com");
+
+		List<Customer> read = mapper.readerForManaged(CUSTOMERS, resolverOf(managed)).readValue(json);
+
+		assertTrue(mapper.readTree(json).get("@rows").get(1).get(1).isNull());
+		assertSame(managed, read.get(1));
+		assertEquals("Bia", managed.getName());
+		assertEquals("bia@x.com", managed.getEmail());
+	}
+
+	@Test
+	public void readsPolymorphicRowsAndElementsOfOtherClasses() throws Exception {
+		CardPayment first = new CardPayment();
+		first.setId("p1");
+		first.setCardHolder("Ana");
+		first.setInstallments(3);
+		CardPayment second = new CardPayment();
+		second.setId("p2");
+		second.setAmount(BigDecimal.TEN);
+		BoletoPayment boleto = new BoletoPayment();
+		boleto.setId("p3");
+		boleto.setBarcode("123");
+
+		String json = columnar(PAYMENTS).writeValueAsString(Arrays.<Payment> asList(first, second, boleto));
+		List<Payment> read = mapper.readValue(json, PAYMENTS);
+
+		assertEquals("CARD", mapper.readTree(json).get("@type").asText());
+		assertEquals(3, read.size());
+		assertEquals("Ana", ((CardPayment) read.get(0)).getCardHolder());
+		assertEquals(3, ((CardPayment) read.get(0)).getInstallments());
+		assertEquals(BigDecimal.TEN, read.get(1).getAmount());
+		assertEquals("123", ((BoletoPayment) read.get(2)).getBarcode());
+	}
+
+	@Test
+	public void readsRowsWrittenAsObjectIds() throws Exception {
+		mapper.setIdentityStrategy(AnterosIdentityStrategy.ENTITY_ID);
+		Customer ana = new Customer("c1", "Ana", "ana@x.com");
+
+		String json = columnar(CUSTOMERS)
+				.writeValueAsString(Arrays.asList(ana, new Customer("c2", "Bia", "bia@x.com"), ana));
+		List<Customer> read = mapper.readValue(json, CUSTOMERS);
+
+		assertEquals("c1", mapper.readTree(json).get("@rows").get(2).asText());
+		assertEquals("Ana", read.get(0).getName());
+		assertSame(read.get(0), read.get(2));
+	}
+
+	@Test
+	public void fillsManagedCollectionsInPlace() throws Exception {
+		Mailing detached = new Mailing("m1", "Promo", Arrays.asList(new Customer("c1", "Ana", "ana@x.com"),
+				new Customer("c2", "Bia", "bia@x.com")));
+		String json = mapper.writerWith(Feature.COLUMNAR_COLLECTIONS).writeValueAsString(detached);
+		assertTrue(mapper.readTree(json).get("recipients").has("@rows"));
+		Customer ana = new Customer("c1", "Ana Maria", "old@x.com");
+		List<Customer> recipients = TestProxies.persistentListOf(new ArrayList<Customer>(Arrays.asList(ana)),
+				new Load());
+		((AnterosPersistentCollection) recipients).initialize();
+		Mailing managed = new Mailing("m1", "Old", recipients);
+
+		Mailing read = mapper.readerForManaged(Mailing.class, resolverOf(managed, ana)).readValue(json);
+
+		assertSame(managed, read);
+		assertSame(recipients, managed.getRecipients());
+		assertEquals(2, recipients.size());
+		assertSame(ana, recipients.get(0));
+		assertEquals("ana@x.com", ana.getEmail());
+		assertEquals("Bia", recipients.get(1).getName());
+	}
+
+	@Test
+	public void writesArraysForRowsOfUndeclaredSubclasses() throws Exception {
+		DiscountedItem discounted = new DiscountedItem();
+		discounted.setProduct("pen");
+		discounted.setDiscount(BigDecimal.ONE);
+
+		JsonNode tree = mapper
+				.readTree(columnar(ITEMS).writeValueAsString(Arrays.<Item> asList(discounted, new Item("ink", 1, null))));
+
+		assertTrue(tree.isArray());
+		assertEquals(1, tree.get(0).get("discount").asInt());
+	}
+
+	@Test
+	public void rejectsTypeIdsForElementTypesWithoutTypeInformation() throws Exception {
+		try {
+			mapper.readValue("{\"@type\":\"X\",\"@columns\":[\"product\"],\"@rows\":[[\"pen\"]]}", ITEMS);
+			fail();
+		} catch (com.fasterxml.jackson.databind.exc.MismatchedInputException e) {
+			assertTrue(e.getMessage(), e.getMessage().contains("'X'"));
+		}
+	}
+
+	@Test
+	public void writesArraysForBeansWithAnyGetters() throws Exception {
+		Tag first = new Tag("a");
+		first.setAttribute("color", "blue");
+		Tag second = new Tag("b");
+
+		String json = columnar(TAGS).writeValueAsString(Arrays.asList(first, second));
+		List<Tag> read = mapper.readValue(json, TAGS);
+
+		assertTrue(mapper.readTree(json).isArray());
+		assertEquals("blue", read.get(0).getAttributes().get("color"));
+	}
+
+	private static AnterosManagedEntityResolver resolverOf(Object... entities) throws Exception {
+		final Map<Object, Object> managed = new HashMap<Object, Object>();
+		for (Object entity : entities) {
+			managed.put(entity.getClass().getMethod("getId").invoke(entity), entity);
+		}
+		return new AnterosManagedEntityResolver() {
+			@Override
+			public Object findManagedEntity(Class<?> entityClass, Object id) {
+				return managed.get(id);
+			}
+		};
+	}
+}
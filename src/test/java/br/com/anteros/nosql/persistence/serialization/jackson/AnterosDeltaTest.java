@@ -0,0 +1,109 @@
+/*******************************************************************************
+ * Copyright 2012 Anteros Tecnologia
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package br.com.anteros.nosql.persistence.serialization.jackson;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import br.com.anteros.nosql.persistence.serialization.jackson.TestProxies.Load;
+import br.com.anteros.nosql.persistence.serialization.jackson.model.Customer;
+import br.com.anteros.nosql.persistence.serialization.jackson.model.Label;
+import br.com.anteros.nosql.persistence.serialization.jackson.model.Mailing;
+
+public class AnterosDeltaTest {
+
+	private AnterosNoSQLObjectMapper mapper;
+	private Load load;
+	private Mailing mailing;
+	private AnterosSnapshot snapshot;
+
+	@Before
+	public void setUp() throws Exception {
+		mapper = new AnterosNoSQLObjectMapper(
+				new TestSessionFactory().entity(Mailing.class).entity(Customer.class).build());
+		load = new Load();
+		Customer lazy = TestProxies.proxyOf(new Customer("c1", "Ana", "ana@x.com"), load);
+		mailing = new Mailing("m1", "Promo",
+				new ArrayList<Customer>(Arrays.asList(lazy, new Customer("c2", "Bia", "bia@x.com"))));
+		mailing.setLabel(new Label("blue"));
+		snapshot = mapper.snapshot(mailing);
+	}
+
+	@Test
+	public void keepsUnchangedListsWithLazyElementsOutOfTheUpdate() {
+		mailing.setLabel(new Label("blue"));
+
+		AnterosDelta delta = mapper.delta(mailing, snapshot);
+
+		assertTrue(delta.toString(), delta.isEmpty());
+		assertEquals(0, load.getCount());
+	}
+
+	@Test
+	public void writesTheWholeListWhenAnElementIsAdded() {
+		mailing.getRecipients().add(new Customer("c3", "Carla", "carla@x.com"));
+
+		AnterosDelta delta = mapper.delta(mailing, snapshot);
+
+		JsonNode recipients = delta.getValue("recipients");
+		assertEquals(Collections.singleton("recipients"), delta.getSetPaths());
+		assertEquals(3, recipients.size());
+		assertEquals("c1", recipients.get(0).get("id").asText());
+		assertEquals(1, recipients.get(0).size());
+		assertEquals("Bia", recipients.get(1).get("name").asText());
+		assertEquals("Carla", recipients.get(2).get("name").asText());
+		assertEquals(0, load.getCount());
+	}
+
+	@Test
+	public void writesTheWholeListWhenAnElementIsRemoved() {
+		mailing.getRecipients().remove(1);
+
+		AnterosDelta delta = mapper.delta(mailing, snapshot);
+
+		JsonNode recipients = delta.getValue("recipients");
+		assertEquals(1, recipients.size());
+		assertEquals("c1", recipients.get(0).get("id").asText());
+	}
+
+	@Test
+	public void writesTheWholeListWhenAnElementNextToALazyOneChanges() {
+		mailing.getRecipients().get(1).setName("Beatriz");
+
+		AnterosDelta delta = mapper.delta(mailing, snapshot);
+
+		assertEquals("Beatriz", delta.getValue("recipients").get(1).get("name").asText());
+		assertTrue(mapper.delta(mailing, delta.getSnapshot()).isEmpty());
+	}
+
+	@Test
+	public void comparesEmbeddedObjectsByContent() {
+		mailing.setLabel(new Label("red"));
+
+		AnterosDelta delta = mapper.delta(mailing, snapshot);
+
+		assertEquals(Collections.singleton("label"), delta.getSetPaths());
+	}
+}
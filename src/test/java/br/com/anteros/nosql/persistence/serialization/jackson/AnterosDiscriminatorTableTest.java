@@ -0,0 +1,92 @@
+/*******************************************************************************
+ * Copyright 2012 Anteros Tecnologia
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package br.com.anteros.nosql.persistence.serialization.jackson;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.exc.InvalidTypeIdException;
+
+import br.com.anteros.nosql.persistence.serialization.jackson.model.BoletoPayment;
+import br.com.anteros.nosql.persistence.serialization.jackson.model.CardPayment;
+import br.com.anteros.nosql.persistence.serialization.jackson.model.Payment;
+
+public class AnterosDiscriminatorTableTest {
+
+	@Test
+	public void findsEveryDiscriminatorWithAPerfectHash() {
+		Map<String, Class<?>> discriminators = new LinkedHashMap<String, Class<?>>();
+		for (int i = 0; i < 500; i++) {
+			discriminators.put("TYPE_" + i, i % 2 == 0 ? CardPayment.class : BoletoPayment.class);
+		}
+
+		AnterosDiscriminatorTable table = AnterosDiscriminatorTable.build(discriminators);
+
+		assertTrue(table.isPerfect());
+		for (Map.Entry<String, Class<?>> entry : discriminators.entrySet()) {
+			assertSame(entry.getValue(), table.getType(table.find(entry.getKey())));
+			char[] buffer = ("\"" + entry.getKey() + "\"").toCharArray();
+			assertSame(entry.getValue(), table.getType(table.find(buffer, 1, buffer.length - 2)));
+		}
+		assertEquals(-1, table.find("TYPE_500"));
+		assertEquals(-1, table.find(""));
+	}
+
+	@Test(timeout = 5000)
+	public void fallsBackWhenDiscriminatorsShareTheHash() {
+		assertEquals("Aa".hashCode(), "BB".hashCode());
+		Map<String, Class<?>> discriminators = new LinkedHashMap<String, Class<?>>();
+		discriminators.put("Aa", CardPayment.class);
+		discriminators.put("BB", BoletoPayment.class);
+		discriminators.put("PAYMENT", Payment.class);
+
+		AnterosDiscriminatorTable table = AnterosDiscriminatorTable.build(discriminators);
+
+		assertFalse(table.isPerfect());
+		assertSame(CardPayment.class, table.getType(table.find("Aa")));
+		assertSame(BoletoPayment.class, table.getType(table.find("BB")));
+		assertSame(BoletoPayment.class, table.getType(table.find("xBBx".toCharArray(), 1, 2)));
+		assertSame(Payment.class, table.getType(table.find("PAYMENT")));
+		assertEquals(-1, table.find("Ab"));
+	}
+
+	@Test
+	public void resolvesSubtypesWhenReading() throws Exception {
+		AnterosNoSQLObjectMapper mapper = new AnterosNoSQLObjectMapper(
+				new TestSessionFactory().hierarchy(Payment.class, CardPayment.class, BoletoPayment.class).build());
+
+		Payment card = mapper.readValue("{\"type\":\"CARD\",\"cardHolder\":\"Ana\"}", Payment.class);
+		Payment boleto = mapper.readValue("{\"barcode\":\"123\",\"type\":\"BOLETO\"}", Payment.class);
+
+		assertEquals("Ana", ((CardPayment) card).getCardHolder());
+		assertEquals("123", ((BoletoPayment) boleto).getBarcode());
+		try {
+			mapper.readValue("{\"type\":\"PIX\"}", Payment.class);
+		} catch (InvalidTypeIdException e) {
+			assertEquals("PIX", e.getTypeId());
+			return;
+		}
+		throw new AssertionError();
+	}
+}
@@ -0,0 +1,130 @@
+/*******************************************************************************
+ * Copyright 2012 Anteros Tecnologia
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package br.com.anteros.nosql.persistence.serialization.jackson;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.TimeZone;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+import br.com.anteros.nosql.persistence.serialization.jackson.model.Contract;
+import br.com.anteros.nosql.persistence.serialization.jackson.model.Customer;
+import br.com.anteros.nosql.persistence.serialization.jackson.model.Employee;
+
+public class AnterosDocumentViewTest {
+
+	private static final String DOCUMENT = "{\"id\":\"c1\",\"name\":\"Ana\",\"email\":\"ana@x.com\"}";
+
+	private AnterosNoSQLObjectMapper mapper;
+	private AnterosDocumentView<Customer> view;
+
+	@Before
+	public void setUp() {
+		mapper = new AnterosNoSQLObjectMapper(new TestSessionFactory().entity(Customer.class).build());
+		mapper.setIdentityStrategy(AnterosIdentityStrategy.NONE);
+		mapper.disable(SerializationFeature.INDENT_OUTPUT);
+		mapper.enable(DeserializationFeature.FAIL_ON_TRAILING_TOKENS);
+		view = mapper.readView(("  " + DOCUMENT + " ").getBytes(), Customer.class);
+	}
+
+	@Test
+	public void readsPropertiesFollowedByOtherFields() {
+		assertEquals("c1", view.get("id"));
+		assertEquals("Ana", view.get("name"));
+		assertEquals("ana@x.com", view.get("email"));
+		assertEquals(3, view.getParsedCount());
+		assertFalse(view.isInitialized());
+	}
+
+	@Test
+	public void writesTheDocumentWithoutParsingIt() throws Exception {
+		assertEquals(DOCUMENT, mapper.writeValueAsString(view));
+		assertEquals("[" + DOCUMENT + "]", mapper.writeValueAsString(Collections.singletonList(view)));
+		assertEquals(mapper.readTree(DOCUMENT), mapper.valueToTree(view));
+		assertEquals(0, view.getParsedCount());
+		assertFalse(view.isInitialized());
+	}
+
+	@Test
+	public void writesTheEntityOnceInitialized() throws Exception {
+		view.initializeAndReturnObject().setName("Bia");
+
+		assertEquals(mapper.writeValueAsString(view.initializeAndReturnObject()), mapper.writeValueAsString(view));
+		assertEquals("Bia", mapper.readTree(mapper.writeValueAsString(view)).get("name").asText());
+	}
+
+	@Test
+	public void readsPropertiesWithTheirAnnotations() throws Exception {
+		AnterosNoSQLObjectMapper contracts = new AnterosNoSQLObjectMapper(
+				new TestSessionFactory().entity(Contract.class).build());
+		AnterosDocumentView<Contract> contract = contracts.readView(
+				"{\"id\":\"k1\",\"signedAt\":\"25/12/2020\",\"clauses\":[\"a\",\"b\"]}".getBytes(), Contract.class);
+
+		SimpleDateFormat format = new SimpleDateFormat("dd/MM/yyyy");
+		format.setTimeZone(TimeZone.getTimeZone("UTC"));
+		assertEquals(format.parse("25/12/2020"), contract.get("signedAt"));
+		assertEquals(LinkedList.class, contract.get("clauses").getClass());
+		assertEquals(Arrays.asList("a", "b"), contract.get("clauses"));
+		assertFalse(contract.isInitialized());
+	}
+
+	@Test
+	public void readsTheEntityForReferencesToTheRestOfTheDocument() throws Exception {
+		AnterosNoSQLObjectMapper employees = new AnterosNoSQLObjectMapper(
+				new TestSessionFactory().entity(Employee.class).build());
+		employees.setIdentityStrategy(AnterosIdentityStrategy.SEQUENCE);
+		Employee boss = new Employee("e1", "Boss");
+		Employee clerk = new Employee("e2", "Clerk");
+		clerk.setManager(boss);
+		boss.setManager(clerk);
+		AnterosDocumentView<Employee> employee = employees.readView(employees.writeValueAsBytes(clerk),
+				Employee.class);
+
+		Employee manager = (Employee) employee.get("manager");
+
+		assertTrue(employee.isInitialized());
+		assertSame(employee.initializeAndReturnObject(), manager.getManager());
+	}
+
+	@Test
+	public void returnsDefaultValuesForMissingPrimitiveProperties() {
+		CustomerSummary summary = view.as(CustomerSummary.class);
+
+		assertEquals("Ana", summary.getName());
+		assertEquals(0, summary.getVisits());
+		assertFalse(summary.isVip());
+	}
+
+	public interface CustomerSummary {
+		String getName();
+
+		int getVisits();
+
+		boolean isVip();
+	}
+}
@@ -0,0 +1,234 @@
+/*******************************************************************************
+ * Copyright 2012 Anteros Tecnologia
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package br.com.anteros.nosql.persistence.serialization.jackson;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.StandardLocation;
+import javax.tools.ToolProvider;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.fasterxml.jackson.databind.BeanProperty;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.introspect.BeanPropertyDefinition;
+
+import br.com.anteros.nosql.persistence.metadata.annotations.Entity;
+import br.com.anteros.nosql.persistence.serialization.jackson.AnterosPersistenceJacksonModule.Feature;
+
+public class AnterosEntityIndexProcessorTest {
+
+	private static final String IMPORTS = "package sample;\n"
+			+ "import br.com.anteros.nosql.persistence.metadata.annotations.*;\n";
+
+	private static final String ANIMAL = IMPORTS + "@Entity public class Animal {\n"
+			+ "  @Id public String code;\n"
+			+ "  @Transient public String cache;\n"
+			+ "  @Reference(lazy = true) public java.util.List<Animal> children;\n"
+			+ "  @Reference public java.util.List<Animal> parents;\n"
+			+ "}\n";
+
+	private static final String DOG = IMPORTS + "@Entity @DiscriminatorValue(\"dog\") public class Dog extends Animal {\n"
+			+ "}\n";
+
+	private static final String SHELTER = IMPORTS + "public class Shelter {\n"
+			+ "  @Entity public static class Kennel { @Id public String number; @Transient public String note; }\n"
+			+ "}\n";
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void indexesTheEntityMetadata() throws Exception {
+		File output = folder.newFolder();
+		compile(output, "Animal", ANIMAL, "Dog", DOG, "Shelter", SHELTER);
+
+		AnterosEntityIndex index = new AnterosEntityIndex(indexOf(output));
+		AnterosEntityIndex.Entry animal = index.get(loaderOf(output).loadClass("sample.Animal"));
+		AnterosEntityIndex.Entry dog = index.get(loaderOf(output).loadClass("sample.Dog"));
+
+		assertEquals(3, index.size());
+		assertNull(animal.getSuperEntity());
+		assertTrue(animal.isTransient("cache"));
+		assertFalse(animal.isTransient("code"));
+		assertTrue(animal.isLazyReference("children"));
+		assertTrue(animal.isEagerReference("parents"));
+		assertEquals("sample.Animal", dog.getSuperEntity());
+		assertEquals("dog", dog.getDiscriminator());
+	}
+
+	@Test
+	public void usesBinaryNamesForNestedEntities() throws Exception {
+		File output = folder.newFolder();
+		compile(output, "Shelter", SHELTER);
+		ClassLoader loader = loaderOf(output);
+		Class<?> kennel = loader.loadClass("sample.Shelter$Kennel");
+
+		AnterosEntityIndex.Entry entry = AnterosEntityIndex.load(loader).get(kennel);
+
+		assertEquals("sample.Shelter$Kennel", entry.getName());
+		assertTrue(entry.isTransient("note"));
+		assertEquals("number", entry.findIdField(kennel).getName());
+	}
+
+	@Test
+	public void mergesTheIndexOfThePreviousCompilation() throws Exception {
+		File output = folder.newFolder();
+		compile(output, "Animal", ANIMAL, "Dog", DOG, "Shelter", SHELTER);
+
+		compile(output, "Dog", DOG.replace("{\n", "{ @Transient public String bark;\n"));
+		Properties merged = indexOf(output);
+
+		assertEquals("", merged.getProperty("sample.Animal"));
+		assertEquals("cache", merged.getProperty("sample.Animal#transient"));
+		assertEquals("", merged.getProperty("sample.Shelter$Kennel"));
+		assertEquals("bark", merged.getProperty("sample.Dog#transient"));
+
+		assertTrue(new File(output, "sample/Shelter$Kennel.class").delete());
+		compile(output, "Dog", DOG);
+		Properties pruned = indexOf(output);
+
+		assertNull(pruned.getProperty("sample.Shelter$Kennel"));
+		assertNull(pruned.getProperty("sample.Dog#transient"));
+		assertEquals("sample.Animal", pruned.getProperty("sample.Dog"));
+	}
+
+	@Test
+	public void checksTheAnnotationsOfMembersAStaleIndexDoesNotMark() throws Exception {
+		File output = folder.newFolder();
+		compile(output, "Animal", ANIMAL);
+		Properties stale = new Properties();
+		stale.setProperty("sample.Animal", "");
+		writeIndex(output, stale);
+		Class<?> animal = loaderOf(output).loadClass("sample.Animal");
+		assertNotNull(AnterosEntityIndex.forClass(animal).get(animal));
+
+		ObjectMapper mapper = new ObjectMapper().setAnnotationIntrospector(new AnterosAnnotationIntrospector(
+				new AnterosSubtypeRegistry(new TestSessionFactory().build())).setUseTransient(true));
+		Object instance = animal.newInstance();
+		animal.getField("cache").set(instance, "cached");
+		assertFalse(mapper.writeValueAsString(instance).contains("cached"));
+
+		assertTrue(new AnterosProxyCollectionSerializer(null, Feature.REQUIRE_EXPLICIT_LAZY_LOADING_MARKER.getMask(),
+				null).usesLazyLoading(propertyOf(mapper, animal, "children")));
+		assertFalse(new AnterosProxyCollectionSerializer(null, 0, null)
+				.usesLazyLoading(propertyOf(mapper, animal, "parents")));
+	}
+
+	private static BeanProperty propertyOf(ObjectMapper mapper, Class<?> type, String name) {
+		for (BeanPropertyDefinition definition : mapper.getSerializationConfig()
+				.introspect(mapper.constructType(type)).findProperties()) {
+			if (definition.getName().equals(name)) {
+				return new BeanProperty.Std(definition.getFullName(), definition.getPrimaryType(), null,
+						definition.getField(), definition.getMetadata());
+			}
+		}
+		throw new AssertionError(name);
+	}
+
+	/**
+	 * Compila os fontes (pares nome da classe, código) no diretório, que também
+	 * está no classpath, com o {@link AnterosEntityIndexProcessor}.
+	 */
+	private static void compile(File output, String... sources) throws IOException {
+		JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+		DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<JavaFileObject>();
+		StandardJavaFileManager fileManager = compiler.getStandardFileManager(diagnostics, null, null);
+		try {
+			fileManager.setLocation(StandardLocation.CLASS_OUTPUT, Collections.singleton(output));
+			fileManager.setLocation(StandardLocation.CLASS_PATH, Arrays.asList(output,
+					new File(Entity.class.getProtectionDomain().getCodeSource().getLocation().toURI())));
+			List<JavaFileObject> units = new ArrayList<JavaFileObject>();
+			for (int i = 0; i < sources.length; i += 2) {
+				units.add(new Source(sources[i], sources[i + 1]));
+			}
+			JavaCompiler.CompilationTask task = compiler.getTask(null, fileManager, diagnostics, null, null, units);
+			task.setProcessors(Collections.singleton(new AnterosEntityIndexProcessor()));
+			assertTrue(diagnostics.getDiagnostics().toString(), task.call());
+		} catch (URISyntaxException e) {
+			throw new IOException(e);
+		} finally {
+			fileManager.close();
+		}
+	}
+
+	private static Properties indexOf(File output) throws IOException {
+		Properties properties = new Properties();
+		InputStream in = new FileInputStream(new File(output, AnterosEntityIndex.RESOURCE));
+		try {
+			properties.load(in);
+		} finally {
+			in.close();
+		}
+		return properties;
+	}
+
+	private static void writeIndex(File output, Properties properties) throws IOException {
+		OutputStream out = new FileOutputStream(new File(output, AnterosEntityIndex.RESOURCE));
+		try {
+			properties.store(out, null);
+		} finally {
+			out.close();
+		}
+	}
+
+	private static ClassLoader loaderOf(File output) throws IOException {
+		return new URLClassLoader(new URL[] { output.toURI().toURL() },
+				AnterosEntityIndexProcessorTest.class.getClassLoader());
+	}
+
+	private static final class Source extends SimpleJavaFileObject {
+
+		private final String code;
+
+		Source(String className, String code) {
+			super(URI.create("string:///sample/" + className + Kind.SOURCE.extension), Kind.SOURCE);
+			this.code = code;
+		}
+
+		@Override
+		public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+			return code;
+		}
+	}
+}
@@ -0,0 +1,124 @@
+/*******************************************************************************
+ * Copyright 2012 Anteros Tecnologia
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package br.com.anteros.nosql.persistence.serialization.jackson;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.BeanDescription;
+import com.fasterxml.jackson.databind.DeserializationConfig;
+import com.fasterxml.jackson.databind.JsonDeserializer;
+import com.fasterxml.jackson.databind.deser.BeanDeserializerModifier;
+import com.fasterxml.jackson.databind.deser.std.StringDeserializer;
+import com.fasterxml.jackson.databind.type.CollectionType;
+
+import br.com.anteros.nosql.persistence.serialization.jackson.model.CardPayment;
+import br.com.anteros.nosql.persistence.serialization.jackson.model.Customer;
+import br.com.anteros.nosql.persistence.serialization.jackson.model.Item;
+import br.com.anteros.nosql.persistence.serialization.jackson.model.Order;
+import br.com.anteros.nosql.persistence.serialization.jackson.model.Payment;
+import br.com.anteros.nosql.persistence.session.NoSQLSessionFactory;
+
+public class AnterosGeneratedAccessorsModuleTest {
+
+	private NoSQLSessionFactory sessionFactory;
+	private AnterosNoSQLObjectMapper mapper;
+	private AnterosGeneratedAccessorsModule module;
+
+	@Before
+	public void setUp() {
+		sessionFactory = new TestSessionFactory().entity(Order.class).entity(Customer.class)
+				.hierarchy(Payment.class, CardPayment.class).build();
+		mapper = new AnterosNoSQLObjectMapper(sessionFactory);
+		module = new AnterosGeneratedAccessorsModule(sessionFactory);
+	}
+
+	@Test
+	public void delegatesEveryDeserializerCallbackForEntities() {
+		final JsonDeserializer<?> replaced = StringDeserializer.instance;
+		AnterosGeneratedAccessorsModule.EntityDeserializerModifier modifier = module.new EntityDeserializerModifier(
+				new BeanDeserializerModifier() {
+					@Override
+					public JsonDeserializer<?> modifyDeserializer(DeserializationConfig config,
+							BeanDescription beanDesc, JsonDeserializer<?> deserializer) {
+						return replaced;
+					}
+
+					@Override
+					public JsonDeserializer<?> modifyCollectionDeserializer(DeserializationConfig config,
+							CollectionType valueType, BeanDescription beanDesc, JsonDeserializer<?> deserializer) {
+						return replaced;
+					}
+				});
+		DeserializationConfig config = mapper.getDeserializationConfig();
+		CollectionType orders = mapper.getTypeFactory().constructCollectionType(List.class, Order.class);
+		CollectionType items = mapper.getTypeFactory().constructCollectionType(List.class, Item.class);
+
+		assertSame(replaced, modifier.modifyDeserializer(config, describe(Order.class), null));
+		assertSame(null, modifier.modifyDeserializer(config, describe(Item.class), null));
+		assertSame(replaced, modifier.modifyCollectionDeserializer(config, orders, describe(List.class), null));
+		assertSame(null, modifier.modifyCollectionDeserializer(config, items, describe(List.class), null));
+	}
+
+	@Test
+	public void keepsTheOriginalWhenTheDelegateFails() {
+		AnterosGeneratedAccessorsModule.EntityDeserializerModifier modifier = module.new EntityDeserializerModifier(
+				new BeanDeserializerModifier() {
+					@Override
+					public JsonDeserializer<?> modifyDeserializer(DeserializationConfig config,
+							BeanDescription beanDesc, JsonDeserializer<?> deserializer) {
+						throw new IllegalStateException();
+					}
+				});
+
+		assertSame(StringDeserializer.instance, modifier.modifyDeserializer(mapper.getDeserializationConfig(),
+				describe(Order.class), StringDeserializer.instance));
+	}
+
+	@Test
+	public void roundTripsEntitiesWithGeneratedAccessors() throws Exception {
+		mapper.enableGeneratedAccessors();
+		Order order = new Order();
+		order.setId("o1");
+		order.setCreatedAt(new Date(1546300800000L));
+		order.setCustomer(new Customer("c1", "Ana", "ana@anteros.com.br"));
+		order.setItems(new ArrayList<Item>(Arrays.asList(new Item("p1", 2, new BigDecimal("7.50")))));
+		CardPayment payment = new CardPayment();
+		payment.setCardHolder("Ana");
+		order.setPayment(payment);
+
+		Order result = mapper.readValue(mapper.writeValueAsString(order), Order.class);
+
+		assertEquals("o1", result.getId());
+		assertEquals(order.getCreatedAt(), result.getCreatedAt());
+		assertEquals("Ana", result.getCustomer().getName());
+		assertEquals(2, result.getItems().get(0).getQuantity());
+		assertEquals("Ana", ((CardPayment) result.getPayment()).getCardHolder());
+	}
+
+	private BeanDescription describe(Class<?> type) {
+		return mapper.getDeserializationConfig().introspect(mapper.constructType(type));
+	}
+}
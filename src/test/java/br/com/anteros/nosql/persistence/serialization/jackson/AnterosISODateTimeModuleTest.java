@@ -0,0 +1,156 @@
+/*******************************************************************************
+ * Copyright 2012 Anteros Tecnologia
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package br.com.anteros.nosql.persistence.serialization.jackson;
+
+import static org.junit.Assert.assertEquals;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.Date;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+public class AnterosISODateTimeModuleTest {
+
+	private static final ZoneId ZONE = ZoneId.of("America/Sao_Paulo");
+
+	private static final Instant INSTANT = Instant.parse("2019-01-01T12:30:15.250Z");
+
+	private AnterosNoSQLObjectMapper defaultMapper;
+	private AnterosNoSQLObjectMapper production;
+
+	@Before
+	public void setUp() {
+		defaultMapper = new AnterosNoSQLObjectMapper(new TestSessionFactory().build());
+		defaultMapper.disable(SerializationFeature.INDENT_OUTPUT);
+		production = new AnterosNoSQLObjectMapper(new TestSessionFactory().build());
+		production.disable(SerializationFeature.INDENT_OUTPUT);
+		production.registerModule(new AnterosISODateTimeModule(ZONE));
+	}
+
+	@Test
+	public void writesEveryDateTimeTypeInItsIsoFormat() throws Exception {
+		JsonNode tree = production.readTree(production.writeValueAsString(newSchedule()));
+
+		assertEquals("2019-01-01T10:30:15.250", tree.get("date").asText());
+		assertEquals("2019-01-01", tree.get("localDate").asText());
+		assertEquals("2019-01-01T10:30:15.250", tree.get("localDateTime").asText());
+		assertEquals("2019-01-01T12:30:15.250Z", tree.get("instant").asText());
+		assertEquals("2019-01-01T10:30:15.25-02:00", tree.get("offsetDateTime").asText());
+		assertEquals("2019-01-01T10:30:15.25-02:00[America/Sao_Paulo]", tree.get("zonedDateTime").asText());
+	}
+
+	@Test
+	public void readsBackWhatItWrites() throws Exception {
+		Schedule schedule = newSchedule();
+
+		assertSameValues(schedule, production.readValue(production.writeValueAsString(schedule), Schedule.class));
+	}
+
+	@Test
+	public void defaultProfileReadsWhatProductionWrites() throws Exception {
+		AnterosNoSQLObjectMapper utcProduction = AnterosNoSQLObjectMapper.production(new TestSessionFactory().build());
+		Schedule schedule = newSchedule();
+
+		assertSameValues(schedule, defaultMapper.readValue(utcProduction.writeValueAsString(schedule), Schedule.class));
+	}
+
+	@Test
+	public void honoursJsonFormatOnProperties() throws Exception {
+		FormattedSchedule schedule = new FormattedSchedule();
+		schedule.day = Date.from(INSTANT);
+		schedule.timestamp = Date.from(INSTANT);
+		schedule.localDate = LocalDate.of(2019, 1, 1);
+		schedule.instant = INSTANT;
+
+		String json = production.writeValueAsString(schedule);
+		JsonNode tree = production.readTree(json);
+
+		assertEquals(defaultMapper.writeValueAsString(new DateOnly(schedule)),
+				production.writeValueAsString(new DateOnly(schedule)));
+		assertEquals("01/01/2019", tree.get("day").asText());
+		assertEquals(INSTANT.toEpochMilli(), tree.get("timestamp").asLong());
+		assertEquals("01/01/2019", tree.get("localDate").asText());
+		assertEquals("2019-01-01 12:30", tree.get("instant").asText());
+
+		FormattedSchedule result = production.readValue(json, FormattedSchedule.class);
+		assertEquals(Date.from(INSTANT), result.timestamp);
+		assertEquals(LocalDate.of(2019, 1, 1), result.localDate);
+		assertEquals(Instant.parse("2019-01-01T12:30:00Z"), result.instant);
+	}
+
+	private static Schedule newSchedule() {
+		Schedule schedule = new Schedule();
+		schedule.date = Date.from(INSTANT);
+		schedule.localDate = LocalDate.of(2019, 1, 1);
+		schedule.localDateTime = LocalDateTime.of(2019, 1, 1, 10, 30, 15, 250000000);
+		schedule.instant = INSTANT;
+		schedule.offsetDateTime = OffsetDateTime.of(schedule.localDateTime, ZoneOffset.ofHours(-2));
+		schedule.zonedDateTime = ZonedDateTime.of(schedule.localDateTime, ZONE);
+		return schedule;
+	}
+
+	private static void assertSameValues(Schedule expected, Schedule actual) {
+		assertEquals(expected.date, actual.date);
+		assertEquals(expected.localDate, actual.localDate);
+		assertEquals(expected.localDateTime, actual.localDateTime);
+		assertEquals(expected.instant, actual.instant);
+		assertEquals(expected.offsetDateTime, actual.offsetDateTime);
+		assertEquals(expected.zonedDateTime, actual.zonedDateTime);
+	}
+
+	public static class Schedule {
+		public Date date;
+		public LocalDate localDate;
+		public LocalDateTime localDateTime;
+		public Instant instant;
+		public OffsetDateTime offsetDateTime;
+		public ZonedDateTime zonedDateTime;
+	}
+
+	public static class FormattedSchedule {
+		@JsonFormat(pattern = "dd/MM/yyyy")
+		public Date day;
+		@JsonFormat(shape = JsonFormat.Shape.NUMBER)
+		public Date timestamp;
+		@JsonFormat(pattern = "dd/MM/yyyy")
+		public LocalDate localDate;
+		@JsonFormat(pattern = "yyyy-MM-dd HH:mm", timezone = "UTC")
+		public Instant instant;
+	}
+
+	public static class DateOnly {
+		@JsonFormat(pattern = "dd/MM/yyyy HH:mm")
+		public Date day;
+		@JsonFormat(shape = JsonFormat.Shape.NUMBER)
+		public Date timestamp;
+
+		DateOnly(FormattedSchedule schedule) {
+			day = schedule.day;
+			timestamp = schedule.timestamp;
+		}
+	}
+}
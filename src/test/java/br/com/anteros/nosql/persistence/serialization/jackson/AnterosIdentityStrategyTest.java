@@ -0,0 +1,115 @@
+/*******************************************************************************
+ * Copyright 2012 Anteros Tecnologia
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package br.com.anteros.nosql.persistence.serialization.jackson;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.JsonMappingException;
+
+import br.com.anteros.nosql.persistence.serialization.jackson.model.Employee;
+
+public class AnterosIdentityStrategyTest {
+
+	private AnterosNoSQLObjectMapper mapper;
+
+	private Employee boss;
+
+	private Employee clerk;
+
+	@Before
+	public void setUp() {
+		mapper = new AnterosNoSQLObjectMapper(new TestSessionFactory().entity(Employee.class).build());
+		boss = new Employee("e1", "Boss");
+		clerk = new Employee("e2", "Clerk");
+		clerk.setManager(boss);
+	}
+
+	@Test
+	public void keepsTheStrategyOfTheOriginalWhenACopyChangesIt() throws Exception {
+		AnterosNoSQLObjectMapper copy = mapper.copy();
+		copy.setIdentityStrategy(AnterosIdentityStrategy.ENTITY_ID);
+
+		assertEquals(AnterosIdentityStrategy.UUID, mapper.getIdentityStrategy());
+		assertEquals(AnterosIdentityStrategy.ENTITY_ID, copy.getIdentityStrategy());
+		assertTrue(mapper.writeValueAsString(clerk).contains("\"@id\""));
+		assertFalse(copy.writeValueAsString(clerk).contains("\"@id\""));
+		assertTrue(mapper.delta(clerk, mapper.snapshot(clerk)).isEmpty());
+	}
+
+	@Test
+	public void appliesTheStrategyOfTheOriginalAfterACopyChangedIt() throws Exception {
+		mapper.copy().setIdentityStrategy(AnterosIdentityStrategy.ENTITY_ID);
+
+		mapper.setIdentityStrategy(AnterosIdentityStrategy.ENTITY_ID);
+
+		assertEquals(AnterosIdentityStrategy.ENTITY_ID, mapper.getIdentityStrategy());
+		assertFalse(mapper.writeValueAsString(clerk).contains("\"@id\""));
+	}
+
+	@Test
+	public void numbersTheEntitiesOfACycleWithSequence() throws Exception {
+		mapper.setIdentityStrategy(AnterosIdentityStrategy.SEQUENCE);
+		boss.setManager(clerk);
+
+		String json = mapper.writeValueAsString(Arrays.asList(clerk, boss));
+		List<Employee> read = mapper.readValue(json,
+				mapper.getTypeFactory().constructCollectionType(List.class, Employee.class));
+
+		assertTrue(json, json.replaceAll("\\s", "").contains("\"manager\":1"));
+		assertSame(read.get(0), read.get(0).getManager().getManager());
+		assertSame(read.get(1), read.get(0).getManager());
+	}
+
+	@Test
+	public void failsCleanlyOnACycleWithoutIdentity() throws Exception {
+		mapper.setIdentityStrategy(AnterosIdentityStrategy.NONE);
+		boss.setManager(clerk);
+
+		try {
+			mapper.writeValueAsString(clerk);
+			fail("A cycle without object ids must not be written.");
+		} catch (JsonMappingException e) {
+		}
+		assertTrue(mapper.writeValueAsString(new Employee("e3", "Alone")).contains("Alone"));
+	}
+
+	@Test
+	public void keepsTheAcyclicEntitiesOfEachCopy() throws Exception {
+		mapper.setIdentityStrategy(AnterosIdentityStrategy.SEQUENCE);
+		List<Employee> twice = Arrays.asList(boss, boss);
+		AnterosNoSQLObjectMapper copy = mapper.copy();
+		copy.setAcyclicEntities(Employee.class);
+
+		String acyclic = copy.writeValueAsString(twice);
+		String tracked = mapper.writeValueAsString(twice);
+
+		assertEquals(2, acyclic.split("Boss", -1).length - 1);
+		assertFalse(acyclic.contains("\"@id\""));
+		assertEquals(1, tracked.split("Boss", -1).length - 1);
+		assertTrue(mapper.getAcyclicEntities().isEmpty());
+		assertTrue(copy.getAcyclicEntities().contains(Employee.class));
+	}
+}
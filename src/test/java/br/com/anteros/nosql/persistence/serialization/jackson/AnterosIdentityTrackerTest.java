@@ -0,0 +1,185 @@
+/*******************************************************************************
+ * Copyright 2012 Anteros Tecnologia
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package br.com.anteros.nosql.persistence.serialization.jackson;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.annotation.ObjectIdGenerators;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.fasterxml.jackson.databind.ser.DefaultSerializerProvider;
+
+import br.com.anteros.nosql.persistence.serialization.jackson.model.Employee;
+
+public class AnterosIdentityTrackerTest {
+
+	private static final Pattern UUID = Pattern
+			.compile("[0-9a-f]{8}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{12}");
+
+	private static AnterosNoSQLObjectMapper nestedMapper;
+
+	private AnterosNoSQLObjectMapper mapper;
+
+	private Employee boss;
+
+	private Employee clerk;
+
+	@Before
+	public void setUp() {
+		mapper = new AnterosNoSQLObjectMapper(new TestSessionFactory().entity(Employee.class).build());
+		mapper.disable(SerializationFeature.INDENT_OUTPUT);
+		boss = new Employee("e1", "Boss");
+		clerk = new Employee("e2", "Clerk");
+		clerk.setManager(boss);
+		boss.setManager(clerk);
+	}
+
+	@Test
+	public void writesCyclesAndRepetitionsLikeJacksonWithUuid() throws Exception {
+		assertSameOutput(AnterosIdentityStrategy.UUID, Arrays.asList(clerk, boss, clerk));
+	}
+
+	@Test
+	public void writesCyclesAndRepetitionsLikeJacksonWithSequence() throws Exception {
+		assertSameOutput(AnterosIdentityStrategy.SEQUENCE, Arrays.asList(clerk, boss, clerk));
+	}
+
+	@Test
+	public void writesCyclesAndRepetitionsLikeJacksonWithEntityId() throws Exception {
+		assertSameOutput(AnterosIdentityStrategy.ENTITY_ID, Arrays.asList(clerk, boss, clerk));
+	}
+
+	@Test
+	public void keepsTheIdsOfTheOuterWriteAcrossANestedWrite() throws Exception {
+		mapper.setIdentityStrategy(AnterosIdentityStrategy.SEQUENCE);
+		nestedMapper = mapper;
+		Envelope envelope = new Envelope();
+		envelope.first = clerk;
+		envelope.nested = Arrays.asList(clerk, new Employee("e3", "Temp"));
+		envelope.last = clerk;
+
+		String json = mapper.writeValueAsString(envelope);
+
+		assertEquals(normalize(stock(mapper).writeValueAsString(envelope)), normalize(json));
+		AnterosIdentityTracker tracker = AnterosIdentityTracker.acquire();
+		assertEquals(0, tracker.size());
+		tracker.release();
+	}
+
+	@Test
+	public void writesGraphsLargerThanTheRetainedCapacityLikeJackson() throws Exception {
+		List<Employee> employees = new ArrayList<Employee>();
+		for (int i = 0; i < AnterosIdentityTracker.MAX_RETAINED_CAPACITY; i++) {
+			Employee employee = new Employee("e" + i, "Employee " + i);
+			employee.setManager(employees.isEmpty() ? employee : employees.get(i / 2));
+			employees.add(employee);
+		}
+
+		assertSameOutput(AnterosIdentityStrategy.SEQUENCE, employees);
+		assertSameOutput(AnterosIdentityStrategy.SEQUENCE, Arrays.asList(clerk, boss, clerk));
+	}
+
+	@Test
+	public void shrinksAndReusesTheTrackerOfTheThread() {
+		AnterosIdentityTracker tracker = AnterosIdentityTracker.acquire();
+		ObjectIdGenerators.IntSequenceGenerator generator = new ObjectIdGenerators.IntSequenceGenerator();
+		for (int i = 0; i <= AnterosIdentityTracker.MAX_RETAINED_CAPACITY / 2; i++) {
+			tracker.find(new Object(), generator, null);
+		}
+		assertEquals(AnterosIdentityTracker.MAX_RETAINED_CAPACITY << 1, tracker.capacity());
+		AnterosIdentityTracker nested = AnterosIdentityTracker.acquire();
+		assertNotSame(tracker, nested);
+		nested.release();
+
+		tracker.release();
+
+		assertEquals(AnterosIdentityTracker.INITIAL_CAPACITY, tracker.capacity());
+		assertEquals(0, tracker.size());
+		assertSame(tracker, AnterosIdentityTracker.acquire());
+		tracker.release();
+	}
+
+	private void assertSameOutput(AnterosIdentityStrategy identityStrategy, Object value) throws Exception {
+		mapper.setIdentityStrategy(identityStrategy);
+		assertEquals(normalize(stock(mapper).writeValueAsString(value)), normalize(mapper.writeValueAsString(value)));
+	}
+
+	/**
+	 * Cópia do mapper com o provider padrão do Jackson.
+	 */
+	private static AnterosNoSQLObjectMapper stock(AnterosNoSQLObjectMapper mapper) {
+		AnterosNoSQLObjectMapper stock = mapper.copy();
+		stock.setSerializerProvider(new DefaultSerializerProvider.Impl());
+		return stock;
+	}
+
+	/**
+	 * Troca cada UUID por um número na ordem em que aparece.
+	 */
+	private static String normalize(String json) {
+		Map<String, Integer> ids = new HashMap<String, Integer>();
+		Matcher matcher = UUID.matcher(json);
+		StringBuffer result = new StringBuffer();
+		while (matcher.find()) {
+			Integer id = ids.get(matcher.group());
+			if (id == null) {
+				id = ids.size();
+				ids.put(matcher.group(), id);
+			}
+			matcher.appendReplacement(result, "#" + id);
+		}
+		return matcher.appendTail(result).toString();
+	}
+
+	public static class Envelope {
+
+		public Employee first;
+
+		@JsonSerialize(using = NestedWriter.class)
+		public List<Employee> nested;
+
+		public Employee last;
+	}
+
+	/**
+	 * Escreve o valor com outra chamada ao mapper, na mesma thread.
+	 */
+	public static class NestedWriter extends JsonSerializer<List<Employee>> {
+
+		@Override
+		public void serialize(List<Employee> value, JsonGenerator gen, SerializerProvider serializers)
+				throws IOException {
+			gen.writeRawValue(nestedMapper.writeValueAsString(value));
+		}
+	}
+}
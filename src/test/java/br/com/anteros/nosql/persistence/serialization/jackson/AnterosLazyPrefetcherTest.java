@@ -0,0 +1,128 @@
+/*******************************************************************************
+ * Copyright 2012 Anteros Tecnologia
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package br.com.anteros.nosql.persistence.serialization.jackson;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.Field;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import br.com.anteros.nosql.persistence.proxy.AnterosPersistentCollection;
+import br.com.anteros.nosql.persistence.proxy.AnterosProxyObject;
+import br.com.anteros.nosql.persistence.serialization.jackson.model.Customer;
+import br.com.anteros.nosql.persistence.serialization.jackson.model.Invoice;
+
+public class AnterosLazyPrefetcherTest {
+
+	private AnterosNoSQLObjectMapper mapper;
+	private ExecutorService executor;
+	private final CountDownLatch loading = new CountDownLatch(1);
+	private final CountDownLatch proceed = new CountDownLatch(1);
+	private final AtomicInteger finished = new AtomicInteger();
+
+	@Before
+	public void setUp() {
+		mapper = new AnterosNoSQLObjectMapper(
+				new TestSessionFactory().entity(Invoice.class).entity(Customer.class).build());
+		executor = Executors.newFixedThreadPool(2);
+	}
+
+	@After
+	public void tearDown() {
+		executor.shutdownNow();
+	}
+
+	@Test
+	public void closeWaitsForLoadsInFlight() throws Exception {
+		AnterosLazyPrefetcher prefetcher = new AnterosLazyPrefetcher(executor, 1, new BlockingLoader(), 10,
+				new AnterosBatchLoadingStatistics(), true, true, null);
+		prefetcher.start(newInvoice(), mapper.getSerializerProviderInstance());
+		assertTrue(loading.await(5, TimeUnit.SECONDS));
+
+		Thread closer = close(prefetcher);
+		closer.join(200);
+		assertTrue(closer.isAlive());
+		assertEquals(0, finished.get());
+
+		proceed.countDown();
+		closer.join(5000);
+		assertFalse(closer.isAlive());
+		assertEquals(1, finished.get());
+	}
+
+	@Test
+	public void closeDiscardsQueuedLoads() throws Exception {
+		Invoice invoice = newInvoice();
+		TestProxies.Load reviewerLoad = new TestProxies.Load();
+		invoice.setReviewer(TestProxies.proxyOf(new Customer("c2", "Bia", null), reviewerLoad));
+		AnterosLazyPrefetcher prefetcher = new AnterosLazyPrefetcher(executor, 1, new BlockingLoader(), 1,
+				new AnterosBatchLoadingStatistics(), true, true, null);
+		prefetcher.start(invoice, mapper.getSerializerProviderInstance());
+		assertTrue(loading.await(5, TimeUnit.SECONDS));
+
+		Thread closer = close(prefetcher);
+		while (closer.getState() != Thread.State.WAITING) {
+			Thread.sleep(10);
+		}
+		proceed.countDown();
+		closer.join(5000);
+
+		assertEquals(1, finished.get());
+		assertFalse(reviewerLoad.isLoaded());
+	}
+
+	private Thread close(final AnterosLazyPrefetcher prefetcher) {
+		Thread closer = new Thread(new Runnable() {
+			public void run() {
+				prefetcher.close();
+			}
+		});
+		closer.start();
+		return closer;
+	}
+
+	private Invoice newInvoice() throws Exception {
+		Invoice invoice = new Invoice("i1");
+		invoice.setCustomer(TestProxies.proxyOf(new Customer("c1", "Ana", null)));
+		return invoice;
+	}
+
+	class BlockingLoader implements AnterosBatchLoader {
+
+		public void loadProxies(Class<?> entityClass, List<AnterosProxyObject> proxies) throws Exception {
+			loading.countDown();
+			proceed.await();
+			for (AnterosProxyObject proxy : proxies) {
+				proxy.initializeAndReturnObject();
+			}
+			finished.incrementAndGet();
+		}
+
+		public void loadCollections(Field field, List<AnterosPersistentCollection> collections) throws Exception {
+		}
+	}
+}
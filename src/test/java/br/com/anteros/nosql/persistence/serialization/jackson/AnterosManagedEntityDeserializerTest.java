@@ -0,0 +1,92 @@
+/*******************************************************************************
+ * Copyright 2012 Anteros Tecnologia
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package br.com.anteros.nosql.persistence.serialization.jackson;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import br.com.anteros.nosql.persistence.serialization.jackson.model.Customer;
+import br.com.anteros.nosql.persistence.serialization.jackson.model.Device;
+
+public class AnterosManagedEntityDeserializerTest {
+
+	private AnterosNoSQLObjectMapper mapper;
+	private CountingResolver resolver;
+
+	@Before
+	public void setUp() {
+		mapper = new AnterosNoSQLObjectMapper(
+				new TestSessionFactory().entity(Customer.class).entity(Device.class).build());
+		resolver = new CountingResolver();
+	}
+
+	@Test
+	public void updatesTheManagedInstance() throws Exception {
+		Customer managed = new Customer("c1", "Ana", "ana@x.com");
+		resolver.managed.put("c1", managed);
+
+		Customer read = mapper.readerForManaged(Customer.class, resolver)
+				.readValue("{\"name\":\"Ana Maria\",\"id\":\"c1\"}");
+
+		assertSame(managed, read);
+		assertEquals("Ana Maria", managed.getName());
+		assertEquals("ana@x.com", managed.getEmail());
+	}
+
+	@Test
+	public void ignoresTheResolverOutsideManagedReaders() throws Exception {
+		resolver.managed.put("c1", new Customer("c1", "Ana", "ana@x.com"));
+
+		Customer read = mapper.readerFor(Customer.class)
+				.withAttribute(AnterosPersistenceJacksonModule.MANAGED_ENTITY_RESOLVER_ATTRIBUTE, resolver)
+				.readValue("{\"id\":\"c1\",\"name\":\"Bia\"}");
+
+		assertNotSame(resolver.managed.get("c1"), read);
+		assertEquals("Bia", read.getName());
+		assertEquals(0, resolver.calls);
+	}
+
+	@Test
+	public void readsEntitiesWhoseIdIsNotDeserializable() throws Exception {
+		resolver.managed.put("d1", new Device("d1", "Old"));
+
+		Device read = mapper.readerForManaged(Device.class, resolver).readValue("{\"serial\":\"d1\",\"name\":\"New\"}");
+
+		assertNotSame(resolver.managed.get("d1"), read);
+		assertNull(read.getSerial());
+		assertEquals("New", read.getName());
+		assertEquals(0, resolver.calls);
+	}
+
+	static class CountingResolver implements AnterosManagedEntityResolver {
+		final Map<Object, Object> managed = new HashMap<Object, Object>();
+		int calls;
+
+		@Override
+		public Object findManagedEntity(Class<?> entityClass, Object id) {
+			calls++;
+			return managed.get(id);
+		}
+	}
+}
@@ -0,0 +1,173 @@
+/*******************************************************************************
+ * Copyright 2012 Anteros Tecnologia
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package br.com.anteros.nosql.persistence.serialization.jackson;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+import br.com.anteros.nosql.persistence.serialization.jackson.AnterosPersistenceJacksonModule.Feature;
+import br.com.anteros.nosql.persistence.serialization.jackson.model.Customer;
+
+public class AnterosNdjsonExporterTest {
+
+	private AnterosNoSQLObjectMapper mapper;
+	private ForkJoinPool pool;
+
+	@Before
+	public void setUp() {
+		mapper = new AnterosNoSQLObjectMapper(new TestSessionFactory().entity(Customer.class).build());
+		mapper.setIdentityStrategy(AnterosIdentityStrategy.NONE);
+		pool = new ForkJoinPool(2);
+	}
+
+	@After
+	public void tearDown() {
+		pool.shutdownNow();
+	}
+
+	@Test
+	public void writesOneCompactDocumentPerLine() throws Exception {
+		List<Customer> customers = customers(5);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+		long count = mapper.ndjsonExporter().setPool(pool).setChunkSize(2).export(customers, out);
+
+		assertEquals(5, count);
+		assertEquals(expectedLines(customers), new String(out.toByteArray(), StandardCharsets.UTF_8));
+	}
+
+	@Test
+	public void writesGzipMembersThatReadAsOneStream() throws Exception {
+		List<Customer> customers = customers(5);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+		mapper.ndjsonExporter().setPool(pool).setChunkSize(2).setGzip(true).export(customers, out);
+
+		StringBuilder read = new StringBuilder();
+		BufferedReader reader = new BufferedReader(new InputStreamReader(
+				new GZIPInputStream(new ByteArrayInputStream(out.toByteArray())), StandardCharsets.UTF_8));
+		for (String line; (line = reader.readLine()) != null;) {
+			read.append(line).append('\n');
+		}
+		assertEquals(expectedLines(customers), read.toString());
+	}
+
+	@Test
+	public void stopsEveryChunkBeforeReturningFromAFailure() throws Exception {
+		AtomicInteger written = new AtomicInteger();
+		List<Object> rows = new ArrayList<Object>();
+		rows.add(new FailingRow());
+		for (int i = 0; i < 20; i++) {
+			rows.add(new SlowRow(written));
+		}
+
+		try {
+			mapper.ndjsonExporter().setPool(pool).setChunkSize(2).setMaxChunksInFlight(8).export(rows,
+					new ByteArrayOutputStream());
+			fail();
+		} catch (IOException e) {
+		}
+		int afterExport = written.get();
+		TimeUnit.MILLISECONDS.sleep(200);
+
+		assertEquals(afterExport, written.get());
+		assertEquals(true, afterExport < 20);
+	}
+
+	@Test
+	public void loadsLazilyOnlyOnTheCallingThread() throws Exception {
+		Set<Thread> threads = ConcurrentHashMap.newKeySet();
+		List<ThreadRow> rows = Arrays.asList(new ThreadRow(threads), new ThreadRow(threads), new ThreadRow(threads));
+
+		new AnterosNdjsonExporter(mapper.writerWith(Feature.FORCE_LAZY_LOADING)).setPool(pool).setChunkSize(1)
+				.export(rows, new ByteArrayOutputStream());
+
+		assertEquals(1, threads.size());
+		assertSame(Thread.currentThread(), threads.iterator().next());
+	}
+
+	private List<Customer> customers(int count) {
+		List<Customer> customers = new ArrayList<Customer>();
+		for (int i = 0; i < count; i++) {
+			customers.add(new Customer("c" + i, "Customer " + i, "c" + i + "@x.com"));
+		}
+		return customers;
+	}
+
+	private String expectedLines(List<Customer> customers) throws Exception {
+		StringBuilder expected = new StringBuilder();
+		for (Customer customer : customers) {
+			expected.append(mapper.writer().without(SerializationFeature.INDENT_OUTPUT).writeValueAsString(customer))
+					.append('\n');
+		}
+		return expected.toString();
+	}
+
+	public static class FailingRow {
+		public String getValue() {
+			throw new IllegalStateException("failed");
+		}
+	}
+
+	public static class SlowRow {
+		private final AtomicInteger written;
+
+		SlowRow(AtomicInteger written) {
+			this.written = written;
+		}
+
+		public int getValue() throws InterruptedException {
+			TimeUnit.MILLISECONDS.sleep(20);
+			return written.incrementAndGet();
+		}
+	}
+
+	public static class ThreadRow {
+		private final Set<Thread> threads;
+
+		ThreadRow(Set<Thread> threads) {
+			this.threads = threads;
+		}
+
+		public String getThread() {
+			threads.add(Thread.currentThread());
+			return Thread.currentThread().getName();
+		}
+	}
+}
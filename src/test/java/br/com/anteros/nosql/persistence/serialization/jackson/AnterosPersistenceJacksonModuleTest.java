@@ -0,0 +1,119 @@
+/*******************************************************************************
+ * Copyright 2012 Anteros Tecnologia
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package br.com.anteros.nosql.persistence.serialization.jackson;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import br.com.anteros.nosql.persistence.proxy.AnterosPersistentCollection;
+import br.com.anteros.nosql.persistence.serialization.jackson.AnterosPersistenceJacksonModule.Feature;
+import br.com.anteros.nosql.persistence.serialization.jackson.model.Customer;
+import br.com.anteros.nosql.persistence.serialization.jackson.model.Invoice;
+import br.com.anteros.nosql.persistence.session.NoSQLSessionFactory;
+
+public class AnterosPersistenceJacksonModuleTest {
+
+	private NoSQLSessionFactory sessionFactory;
+	private Invoice invoice;
+	private TestProxies.Load load;
+
+	@Before
+	public void setUp() throws Exception {
+		sessionFactory = new TestSessionFactory().entity(Invoice.class).entity(Customer.class).build();
+		load = new TestProxies.Load();
+		invoice = new Invoice("i1");
+		invoice.setCustomer(TestProxies.proxyOf(new Customer("c1", "Ana", null), load));
+	}
+
+	@Test
+	public void featuresEnabledBeforeRegistrationAreUsed() throws Exception {
+		ObjectMapper mapper = new ObjectMapper().registerModule(
+				new AnterosPersistenceJacksonModule(sessionFactory, null).enable(Feature.FORCE_LAZY_LOADING));
+
+		JsonNode tree = mapper.readTree(mapper.writeValueAsString(invoice));
+
+		assertTrue(load.isLoaded());
+		assertEquals("Ana", tree.get("customer").get("name").asText());
+	}
+
+	@Test
+	public void moduleFeatureChangesAfterRegistrationKeepTheMapperFeatures() throws Exception {
+		AnterosNoSQLObjectMapper mapper = new AnterosNoSQLObjectMapper(sessionFactory);
+
+		mapper.getModule().enable(Feature.FORCE_LAZY_LOADING);
+		mapper.getModule().configure(Feature.FORCE_LAZY_LOADING, true);
+
+		assertFalse(mapper.isEnabled(Feature.FORCE_LAZY_LOADING));
+		assertFalse(mapper.readTree(mapper.writeValueAsString(invoice)).get("customer").has("name"));
+		assertFalse(load.isLoaded());
+		assertTrue(new AnterosNoSQLObjectMapper(sessionFactory) {
+			@Override
+			protected void createModule() {
+				super.createModule();
+				getModule().enable(Feature.FORCE_LAZY_LOADING);
+			}
+		}.isEnabled(Feature.FORCE_LAZY_LOADING));
+	}
+
+	@Test
+	public void mapperFeaturesDoNotChangeTheSharedModule() throws Exception {
+		AnterosNoSQLObjectMapper mapper = new AnterosNoSQLObjectMapper(sessionFactory);
+		AnterosNoSQLObjectMapper copy = mapper.copy();
+
+		mapper.enable(Feature.FORCE_LAZY_LOADING);
+
+		assertTrue(mapper.getModule().isEnabled(mapper.getSerializationConfig(), Feature.FORCE_LAZY_LOADING));
+		assertFalse(copy.getModule().isEnabled(copy.getSerializationConfig(), Feature.FORCE_LAZY_LOADING));
+		assertFalse(copy.isEnabled(Feature.FORCE_LAZY_LOADING));
+		assertFalse(mapper.getModule().getFeatures() == mapper.getFeatures());
+		assertEquals("Ana", mapper.readTree(mapper.writeValueAsString(invoice)).get("customer").get("name").asText());
+
+		mapper.disable(Feature.FORCE_LAZY_LOADING);
+
+		assertFalse(mapper.getModule().isEnabled(mapper.getSerializationConfig(), Feature.FORCE_LAZY_LOADING));
+	}
+
+	@Test
+	public void reportsStreamingOfLazyCollections() {
+		AnterosNoSQLObjectMapper mapper = new AnterosNoSQLObjectMapper(sessionFactory);
+		AnterosPersistenceJacksonModule module = mapper.getModule();
+		mapper.enable(Feature.STREAM_LAZY_COLLECTIONS);
+		assertFalse(module.isStreamingLazyCollections(mapper.getSerializationConfig()));
+
+		module.setCollectionPageLoader(new AnterosCollectionPageLoader() {
+			public List<?> loadPage(AnterosPersistentCollection collection, int firstResult, int maxResults) {
+				return Collections.emptyList();
+			}
+		});
+
+		assertTrue(module.isStreamingLazyCollections(mapper.getSerializationConfig()));
+		assertFalse(module.isStreamingLazyCollections(
+				mapper.writerWithout(Feature.STREAM_LAZY_COLLECTIONS).getConfig()));
+		mapper.disable(Feature.STREAM_LAZY_COLLECTIONS);
+		assertFalse(module.isStreamingLazyCollections(mapper.getSerializationConfig()));
+		assertTrue(module.isStreamingLazyCollections(mapper.writerWith(Feature.STREAM_LAZY_COLLECTIONS).getConfig()));
+	}
+}
@@ -0,0 +1,108 @@
+/*******************************************************************************
+ * Copyright 2012 Anteros Tecnologia
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package br.com.anteros.nosql.persistence.serialization.jackson;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Iterator;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.PropertyNamingStrategy;
+import com.fasterxml.jackson.databind.ser.PropertyWriter;
+import com.fasterxml.jackson.databind.ser.std.BeanSerializerBase;
+
+import br.com.anteros.nosql.persistence.serialization.jackson.model.CardPayment;
+import br.com.anteros.nosql.persistence.serialization.jackson.model.Customer;
+import br.com.anteros.nosql.persistence.serialization.jackson.model.Item;
+import br.com.anteros.nosql.persistence.serialization.jackson.model.Order;
+import br.com.anteros.nosql.persistence.serialization.jackson.model.Payment;
+
+public class AnterosProjectionTest {
+
+	private AnterosNoSQLObjectMapper mapper;
+	private Order order;
+
+	@Before
+	public void setUp() {
+		mapper = new AnterosNoSQLObjectMapper(new TestSessionFactory().entity(Order.class).entity(Customer.class)
+				.hierarchy(Payment.class, CardPayment.class).build());
+		mapper.setPropertyNamingStrategy(PropertyNamingStrategy.SNAKE_CASE);
+		order = new Order();
+		order.setId("o1");
+		order.setCreatedAt(new Date(0));
+		order.setCustomer(new Customer("c1", "Ana", "ana@anteros.com.br"));
+		order.setItems(new ArrayList<Item>(Arrays.asList(new Item("p1", 2, new BigDecimal("7.50")))));
+	}
+
+	@Test
+	public void selectsPropertiesByJsonName() throws Exception {
+		JsonNode tree = mapper.readTree(
+				mapper.writerWithProjection("created_at", "customer.name").writeValueAsString(order));
+
+		assertTrue(tree.has("created_at"));
+		assertFalse(tree.has("id"));
+		assertFalse(tree.has("items"));
+		assertEquals("Ana", tree.get("customer").get("name").asText());
+		assertFalse(tree.get("customer").has("email"));
+	}
+
+	@Test
+	public void writesEmbeddedObjectsWhole() throws Exception {
+		JsonNode tree = mapper.readTree(mapper.writerWithProjection("items.quantity").writeValueAsString(order));
+
+		JsonNode item = tree.get("items").get(0);
+		assertEquals(2, item.get("quantity").asInt());
+		assertEquals("p1", item.get("product").asText());
+		assertEquals(0, new BigDecimal("7.50").compareTo(item.get("price").decimalValue()));
+	}
+
+	@Test
+	public void wrapsOnlyEntityProperties() throws Exception {
+		assertTrue(allProjected(Order.class));
+		assertFalse(anyProjected(Item.class));
+	}
+
+	private boolean allProjected(Class<?> type) throws Exception {
+		for (Iterator<PropertyWriter> it = properties(type); it.hasNext();) {
+			if (!(it.next() instanceof AnterosProjectedPropertyWriter)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private boolean anyProjected(Class<?> type) throws Exception {
+		for (Iterator<PropertyWriter> it = properties(type); it.hasNext();) {
+			if (it.next() instanceof AnterosProjectedPropertyWriter) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private Iterator<PropertyWriter> properties(Class<?> type) throws Exception {
+		return ((BeanSerializerBase) mapper.getSerializerProviderInstance().findValueSerializer(type)).properties();
+	}
+}
@@ -0,0 +1,77 @@
+/*******************************************************************************
+ * Copyright 2012 Anteros Tecnologia
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package br.com.anteros.nosql.persistence.serialization.jackson;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import br.com.anteros.nosql.persistence.proxy.AnterosPersistentCollection;
+import br.com.anteros.nosql.persistence.serialization.jackson.AnterosPersistenceJacksonModule.Feature;
+import br.com.anteros.nosql.persistence.serialization.jackson.model.Item;
+import br.com.anteros.nosql.persistence.serialization.jackson.model.Shipment;
+
+public class AnterosProxyCollectionSerializerTest {
+
+	private AnterosNoSQLObjectMapper mapper;
+	private List<Item> items;
+	private TestProxies.Load load;
+
+	@Before
+	public void setUp() {
+		mapper = new AnterosNoSQLObjectMapper(new TestSessionFactory().entity(Shipment.class).build());
+		items = Arrays.asList(new Item("p1", 1, null), new Item("p2", 2, null), new Item("p3", 3, null));
+		load = new TestProxies.Load();
+		mapper.getModule().setCollectionPageSize(2).setCollectionPageLoader(new AnterosCollectionPageLoader() {
+			public List<?> loadPage(AnterosPersistentCollection collection, int firstResult, int maxResults) {
+				return items.subList(Math.min(firstResult, items.size()),
+						Math.min(firstResult + maxResults, items.size()));
+			}
+		});
+	}
+
+	@Test
+	public void streamedElementsUseTheContentSerializer() throws Exception {
+		Shipment shipment = new Shipment("s1");
+		shipment.setItems(TestProxies.persistentListOf(new ArrayList<Item>(items), load));
+
+		JsonNode tree = mapper.readTree(mapper.writerWith(Feature.FORCE_LAZY_LOADING, Feature.STREAM_LAZY_COLLECTIONS)
+				.writeValueAsString(shipment));
+
+		assertFalse(load.isLoaded());
+		assertEquals("[\"p1\",\"p2\",\"p3\"]", tree.get("items").toString());
+	}
+
+	@Test
+	public void streamedAndLoadedCollectionsAreWrittenAlike() throws Exception {
+		Shipment streamed = new Shipment("s1");
+		streamed.setItems(TestProxies.persistentListOf(new ArrayList<Item>(items), load));
+		Shipment loaded = new Shipment("s1");
+		loaded.setItems(new ArrayList<Item>(items));
+
+		assertEquals(mapper.readTree(mapper.writeValueAsString(loaded)).get("items"),
+				mapper.readTree(mapper.writerWith(Feature.FORCE_LAZY_LOADING, Feature.STREAM_LAZY_COLLECTIONS)
+						.writeValueAsString(streamed)).get("items"));
+	}
+}
@@ -0,0 +1,83 @@
+/*******************************************************************************
+ * Copyright 2012 Anteros Tecnologia
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package br.com.anteros.nosql.persistence.serialization.jackson;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.PropertyNamingStrategy;
+
+import br.com.anteros.nosql.persistence.serialization.jackson.AnterosPersistenceJacksonModule.Feature;
+import br.com.anteros.nosql.persistence.serialization.jackson.model.Customer;
+import br.com.anteros.nosql.persistence.serialization.jackson.model.Invoice;
+import br.com.anteros.nosql.persistence.serialization.jackson.model.Vendor;
+
+public class AnterosProxyReferenceWriterTest {
+
+	private AnterosNoSQLObjectMapper mapper;
+	private TestProxies.Load load;
+	private Invoice invoice;
+
+	@Before
+	public void setUp() throws Exception {
+		mapper = new AnterosNoSQLObjectMapper(new TestSessionFactory().entity(Invoice.class).entity(Customer.class)
+				.entity(Vendor.class).build());
+		load = new TestProxies.Load();
+		invoice = new Invoice("i1");
+		invoice.setCustomer(TestProxies.proxyOf(new Customer("c1", "Ana", null), load));
+		invoice.setVendor(TestProxies.proxyOf(new Vendor("v1", "Anteros"), load));
+	}
+
+	@Test
+	public void writesTheIdentifierUnderItsJsonName() throws Exception {
+		JsonNode tree = write();
+
+		assertEquals("v1", tree.get("vendor").get("code").asText());
+		assertFalse(tree.get("vendor").has("id"));
+		assertEquals("c1", tree.get("customer").get("id").asText());
+		assertFalse(load.isLoaded());
+	}
+
+	@Test
+	public void followsTheNamingStrategy() throws Exception {
+		mapper.setPropertyNamingStrategy(PropertyNamingStrategy.UPPER_CAMEL_CASE);
+
+		JsonNode tree = write();
+
+		assertEquals("c1", tree.get("Customer").get("Id").asText());
+		assertEquals("v1", tree.get("Vendor").get("code").asText());
+	}
+
+	@Test
+	public void referenceMatchesTheLoadedEntity() throws Exception {
+		Invoice loaded = new Invoice("i1");
+		loaded.setVendor(new Vendor("v1", "Anteros"));
+
+		JsonNode reference = write().get("vendor");
+		JsonNode entity = mapper.readTree(mapper.writeValueAsString(loaded)).get("vendor");
+
+		assertEquals(entity.get("code"), reference.get("code"));
+	}
+
+	private JsonNode write() throws Exception {
+		return mapper.readTree(
+				mapper.writerWith(Feature.SERIALIZE_IDENTIFIER_FOR_LAZY_NOT_LOADED_OBJECTS).writeValueAsString(invoice));
+	}
+}
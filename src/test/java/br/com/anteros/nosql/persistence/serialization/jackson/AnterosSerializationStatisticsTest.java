@@ -0,0 +1,78 @@
+/*******************************************************************************
+ * Copyright 2012 Anteros Tecnologia
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package br.com.anteros.nosql.persistence.serialization.jackson;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import javax.management.MBeanServer;
+import javax.management.MBeanServerFactory;
+import javax.management.ObjectName;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import br.com.anteros.nosql.persistence.serialization.jackson.AnterosPersistenceJacksonModule.Feature;
+import br.com.anteros.nosql.persistence.serialization.jackson.model.Customer;
+
+public class AnterosSerializationStatisticsTest {
+
+	private AnterosNoSQLObjectMapper mapper;
+	private AnterosSerializationStatistics statistics;
+	private Customer customer;
+
+	@Before
+	public void setUp() {
+		mapper = new AnterosNoSQLObjectMapper(new TestSessionFactory().entity(Customer.class).build());
+		statistics = new AnterosSerializationStatistics();
+		customer = new Customer();
+		customer.setId("c1");
+		customer.setName("Maria");
+	}
+
+	@Test
+	public void registersAndUnregistersOnTheSameServer() {
+		MBeanServer server = MBeanServerFactory.newMBeanServer();
+
+		ObjectName name = statistics.registerMBean(server, "test");
+		assertTrue(server.isRegistered(name));
+
+		statistics.unregisterMBean(server, "test");
+		assertFalse(server.isRegistered(name));
+	}
+
+	@Test
+	public void countsBytesOfMappersDerivedBeforeTheMetrics() throws Exception {
+		int features = mapper.getFeatures() ^ Feature.USE_TRANSIENT_ANNOTATION.getMask();
+		mapper.writerWithFeatures(features).writeValueAsBytes(customer);
+
+		mapper.setSerializationMetrics(statistics);
+		byte[] json = mapper.writerWithFeatures(features).writeValueAsBytes(customer);
+
+		assertEquals(1, statistics.getDocumentsWritten());
+		assertEquals(json.length, statistics.getBytesWritten());
+	}
+
+	@Test
+	public void copiesShareTheMetrics() throws Exception {
+		mapper.setSerializationMetrics(statistics);
+		byte[] json = mapper.copy().writeValueAsBytes(customer);
+
+		assertEquals(1, statistics.getDocumentsWritten());
+		assertEquals(json.length, statistics.getBytesWritten());
+	}
+}
@@ -0,0 +1,166 @@
+/*******************************************************************************
+ * Copyright 2012 Anteros Tecnologia
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package br.com.anteros.nosql.persistence.serialization.jackson;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.lang.ref.WeakReference;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.AnnotationIntrospector;
+import com.fasterxml.jackson.databind.jsontype.NamedType;
+
+import br.com.anteros.nosql.persistence.metadata.annotations.DiscriminatorValue;
+import br.com.anteros.nosql.persistence.serialization.jackson.model.BoletoPayment;
+import br.com.anteros.nosql.persistence.serialization.jackson.model.CardPayment;
+import br.com.anteros.nosql.persistence.serialization.jackson.model.Payment;
+import br.com.anteros.nosql.persistence.session.NoSQLSessionFactory;
+
+public class AnterosSubtypeRegistryTest {
+
+	@Test
+	public void resolvesTheHierarchyOnceAndSharesIt() {
+		NoSQLSessionFactory sessionFactory = new TestSessionFactory()
+				.hierarchy(Payment.class, CardPayment.class, BoletoPayment.class).build();
+		AnterosSubtypeRegistry registry = new AnterosSubtypeRegistry(sessionFactory);
+
+		List<NamedType> subtypes = registry.getSubtypes(CardPayment.class);
+
+		assertEquals(Payment.class, registry.getRootEntity(BoletoPayment.class));
+		assertEquals(3, subtypes.size());
+		assertEquals("CARD", subtypes.get(1).getName());
+		AnterosDiscriminatorTable table = registry.getDiscriminatorTable(Payment.class);
+		assertEquals(BoletoPayment.class, table.getType(table.find("BOLETO")));
+		assertSame(subtypes, registry.getSubtypes(BoletoPayment.class));
+		assertSame(registry.getSubtypeAnnotations(Payment.class), registry.getSubtypeAnnotations(CardPayment.class));
+		verify(sessionFactory.getDescriptionEntityManager(), times(1)).getEntitiesBySuperClass(Payment.class);
+	}
+
+	@Test
+	public void completesAnIncompleteIndexWithTheDescriptionManager() {
+		NoSQLSessionFactory sessionFactory = new TestSessionFactory()
+				.hierarchy(Payment.class, CardPayment.class, BoletoPayment.class).build();
+		AnterosSubtypeRegistry registry = registryWithIndex(sessionFactory, Payment.class, CardPayment.class);
+
+		AnterosDiscriminatorTable table = registry.getDiscriminatorTable(Payment.class);
+
+		assertEquals(3, registry.getSubtypes(Payment.class).size());
+		assertEquals(BoletoPayment.class, table.getType(table.find("BOLETO")));
+		assertEquals(CardPayment.class, table.getType(table.find("CARD")));
+	}
+
+	@Test
+	public void keepsIndexedClassesTheDescriptionManagerDoesNotKnow() {
+		NoSQLSessionFactory sessionFactory = new TestSessionFactory().hierarchy(Payment.class, CardPayment.class)
+				.build();
+		AnterosSubtypeRegistry registry = registryWithIndex(sessionFactory, Payment.class, CardPayment.class,
+				BoletoPayment.class);
+
+		AnterosDiscriminatorTable table = registry.getDiscriminatorTable(Payment.class);
+
+		assertEquals(3, registry.getSubtypes(Payment.class).size());
+		assertEquals(BoletoPayment.class, table.getType(table.find("BOLETO")));
+	}
+
+	private AnterosSubtypeRegistry registryWithIndex(NoSQLSessionFactory sessionFactory, Class<?> root,
+			Class<?>... subClasses) {
+		final Properties properties = new Properties();
+		properties.setProperty(root.getName(), "");
+		for (Class<?> subClass : subClasses) {
+			properties.setProperty(subClass.getName(), root.getName());
+			properties.setProperty(subClass.getName() + AnterosEntityIndex.SEPARATOR + AnterosEntityIndex.DISCRIMINATOR,
+					subClass.getAnnotation(DiscriminatorValue.class).value());
+		}
+		return new AnterosSubtypeRegistry(sessionFactory) {
+			@Override
+			protected AnterosEntityIndex indexOf(Class<?> rootEntity) {
+				return new AnterosEntityIndex(properties);
+			}
+		};
+	}
+
+	@Test(expected = UnsupportedOperationException.class)
+	public void subtypeListsAreImmutable() {
+		NoSQLSessionFactory sessionFactory = new TestSessionFactory().hierarchy(Payment.class, CardPayment.class)
+				.build();
+		new AnterosSubtypeRegistry(sessionFactory).getSubtypes(Payment.class).clear();
+	}
+
+	@Test
+	public void eachModuleOwnsItsRegistry() {
+		NoSQLSessionFactory sessionFactory = new TestSessionFactory().hierarchy(Payment.class, CardPayment.class)
+				.build();
+		AnterosNoSQLObjectMapper mapper = new AnterosNoSQLObjectMapper(sessionFactory);
+
+		assertSame(sessionFactory, mapper.getModule().getSubtypeRegistry().getSessionFactory());
+		assertNotSame(mapper.getModule().getSubtypeRegistry(),
+				new AnterosNoSQLObjectMapper(sessionFactory).getModule().getSubtypeRegistry());
+	}
+
+	@Test
+	public void introspectorsOfTheMapperAndItsCopiesUseTheModuleRegistry() {
+		NoSQLSessionFactory sessionFactory = new TestSessionFactory().hierarchy(Payment.class, CardPayment.class)
+				.build();
+		AnterosNoSQLObjectMapper mapper = new AnterosNoSQLObjectMapper(sessionFactory);
+		AnterosNoSQLObjectMapper copy = mapper.copy().setIdentityStrategy(AnterosIdentityStrategy.SEQUENCE);
+
+		for (AnterosNoSQLObjectMapper current : Arrays.asList(mapper, copy)) {
+			for (AnnotationIntrospector introspector : current.getSerializationConfig().getAnnotationIntrospector()
+					.allIntrospectors()) {
+				if (introspector instanceof AnterosAnnotationIntrospector) {
+					assertSame(mapper.getModule().getSubtypeRegistry(),
+							((AnterosAnnotationIntrospector) introspector).getSubtypeRegistry());
+				}
+			}
+		}
+	}
+
+	@Test
+	public void doesNotRetainTheSessionFactoryAfterTheMapperIsGone() throws InterruptedException {
+		WeakReference<NoSQLSessionFactory> reference = createAndDiscardMapper();
+
+		for (int i = 0; i < 50 && reference.get() != null; i++) {
+			System.gc();
+			Thread.sleep(10);
+		}
+
+		assertNull(reference.get());
+	}
+
+	private WeakReference<NoSQLSessionFactory> createAndDiscardMapper() {
+		NoSQLSessionFactory sessionFactory = (NoSQLSessionFactory) Proxy.newProxyInstance(
+				getClass().getClassLoader(), new Class<?>[] { NoSQLSessionFactory.class }, new InvocationHandler() {
+					@Override
+					public Object invoke(Object proxy, Method method, Object[] args) {
+						return null;
+					}
+				});
+		new AnterosNoSQLObjectMapper(sessionFactory);
+		return new WeakReference<NoSQLSessionFactory>(sessionFactory);
+	}
+}
@@ -0,0 +1,106 @@
+/*******************************************************************************
+ * Copyright 2012 Anteros Tecnologia
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package br.com.anteros.nosql.persistence.serialization.jackson;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectWriter;
+
+import br.com.anteros.nosql.persistence.serialization.jackson.AnterosPersistenceJacksonModule.Feature;
+import br.com.anteros.nosql.persistence.serialization.jackson.model.CardPayment;
+import br.com.anteros.nosql.persistence.serialization.jackson.model.Customer;
+import br.com.anteros.nosql.persistence.serialization.jackson.model.Item;
+import br.com.anteros.nosql.persistence.serialization.jackson.model.Order;
+import br.com.anteros.nosql.persistence.serialization.jackson.model.Payment;
+
+public class AnterosWarmUpTest {
+
+	private AnterosNoSQLObjectMapper mapper;
+	private Order order;
+
+	@Before
+	public void setUp() {
+		mapper = new AnterosNoSQLObjectMapper(new TestSessionFactory().entity(Order.class).entity(Customer.class)
+				.hierarchy(Payment.class, CardPayment.class).build());
+		order = new Order();
+		order.setId("o1");
+		order.setCreatedAt(new Date(0));
+		order.setItems(new ArrayList<Item>(Arrays.asList(new Item("p1", 1, null))));
+	}
+
+	@Test
+	public void warmsUpEveryEntity() throws Exception {
+		AnterosWarmUpReport report = mapper.warmUp(ForkJoinPool.commonPool()).get();
+
+		assertTrue(report.getFailures().toString(), report.isSuccessful());
+		assertEquals(4, report.getEntityCount());
+	}
+
+	@Test
+	public void warmsUpCollectionsMapsAndArraysOfEntities() throws Exception {
+		mapper.warmUp(ForkJoinPool.commonPool()).get();
+		mapper.writeValueAsString(new ArrayList<Object>());
+		int cached = cachedSerializers();
+
+		writeContainers(mapper.writer());
+
+		assertEquals(cached, cachedSerializers());
+	}
+
+	@Test
+	public void warmsUpTheRequestedFeatureCombinations() throws Exception {
+		int features = mapper.getFeatures() | Feature.FORCE_LAZY_LOADING.getMask();
+		mapper.warmUp(ForkJoinPool.commonPool(), features).get();
+		mapper.writerWithFeatures(features).writeValueAsString(new ArrayList<Object>());
+		int cached = cachedSerializers();
+
+		writeContainers(mapper.writerWithFeatures(features));
+		writeContainers(mapper.writerWithFeatures(features).withAttribute(
+				AnterosPersistenceJacksonModule.PROJECTION_ATTRIBUTE, AnterosProjection.of("id", "items")));
+
+		assertEquals(cached, cachedSerializers());
+	}
+
+	private int cachedSerializers() {
+		return ((AnterosSerializerProvider) mapper.getSerializerProvider()).cachedSerializersCount();
+	}
+
+	private void writeContainers(ObjectWriter writer) throws Exception {
+		writer.writeValueAsString(order);
+		writer.forType(new TypeReference<List<Order>>() {
+		}).writeValueAsString(Collections.singletonList(order));
+		writer.forType(new TypeReference<Set<Order>>() {
+		}).writeValueAsString(new LinkedHashSet<Order>(Collections.singleton(order)));
+		writer.forType(new TypeReference<Map<String, Order>>() {
+		}).writeValueAsString(Collections.singletonMap("o1", order));
+		writer.forType(Order[].class).writeValueAsString(new Order[] { order });
+	}
+}
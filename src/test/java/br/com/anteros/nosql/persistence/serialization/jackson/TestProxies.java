@@ -0,0 +1,151 @@
+/*******************************************************************************
+ * Copyright 2012 Anteros Tecnologia
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package br.com.anteros.nosql.persistence.serialization.jackson;
+
+import static org.mockito.Mockito.CALLS_REAL_METHODS;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.withSettings;
+
+import java.lang.reflect.Field;
+import java.util.AbstractList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import br.com.anteros.nosql.persistence.metadata.annotations.Id;
+import br.com.anteros.nosql.persistence.proxy.AnterosPersistentCollection;
+import br.com.anteros.nosql.persistence.proxy.AnterosProxyObject;
+
+/**
+ * Proxies e coleções persistentes de teste, não inicializados até o primeiro
+ * acesso. Criados com Mockito porque as implementações reais dependem de uma
+ * sessão ativa.
+ */
+public class TestProxies {
+
+	/**
+	 * Estado de carregamento compartilhado por um proxy ou coleção.
+	 */
+	public static class Load {
+
+		private volatile boolean loaded;
+		private final AtomicInteger count = new AtomicInteger();
+
+		public boolean isLoaded() {
+			return loaded;
+		}
+
+		public synchronized void load() {
+			if (!loaded) {
+				count.incrementAndGet();
+				loaded = true;
+			}
+		}
+
+		public int getCount() {
+			return count.get();
+		}
+	}
+
+	/**
+	 * Cria um proxy não inicializado do objeto, com o identificador (campo
+	 * anotado com {@link Id}) já preenchido, como os proxies reais.
+	 */
+	@SuppressWarnings("unchecked")
+	public static <T> T proxyOf(final T target, final Load load) throws Exception {
+		T proxy = (T) mock(target.getClass(),
+				withSettings().withoutAnnotations().extraInterfaces(AnterosProxyObject.class));
+		for (Class<?> type = target.getClass(); type != Object.class; type = type.getSuperclass()) {
+			for (Field field : type.getDeclaredFields()) {
+				if (field.isAnnotationPresent(Id.class)) {
+					field.setAccessible(true);
+					field.set(proxy, field.get(target));
+				}
+			}
+		}
+		AnterosProxyObject proxyObject = (AnterosProxyObject) proxy;
+		doAnswer(invocation -> load.isLoaded()).when(proxyObject).isInitialized();
+		doAnswer(invocation -> {
+			load.load();
+			return target;
+		}).when(proxyObject).initializeAndReturnObject();
+		return proxy;
+	}
+
+	public static <T> T proxyOf(T target) throws Exception {
+		return proxyOf(target, new Load());
+	}
+
+	@SuppressWarnings("unchecked")
+	public static <E> List<E> persistentListOf(List<E> elements, Load load) {
+		return mock(PersistentList.class, withSettings().useConstructor(elements, load).defaultAnswer(CALLS_REAL_METHODS));
+	}
+
+	/**
+	 * Lista persistente: os elementos só ficam disponíveis depois do
+	 * carregamento, disparado pelo primeiro acesso ou por {@link #initialize()}.
+	 */
+	public static abstract class PersistentList<E> extends AbstractList<E> implements AnterosPersistentCollection {
+
+		private final List<E> elements;
+		private final Load load;
+
+		public PersistentList(List<E> elements, Load load) {
+			this.elements = elements;
+			this.load = load;
+		}
+
+		@Override
+		public boolean isInitialized() {
+			return load.isLoaded();
+		}
+
+		@Override
+		public void initialize() {
+			load.load();
+		}
+
+		@Override
+		public E get(int index) {
+			load.load();
+			return elements.get(index);
+		}
+
+		@Override
+		public int size() {
+			load.load();
+			return elements.size();
+		}
+
+		@Override
+		public E set(int index, E element) {
+			load.load();
+			return elements.set(index, element);
+		}
+
+		@Override
+		public void add(int index, E element) {
+			load.load();
+			elements.add(index, element);
+		}
+
+		@Override
+		public E remove(int index) {
+			load.load();
+			return elements.remove(index);
+		}
+	}
+}
@@ -0,0 +1,114 @@
+/*******************************************************************************
+ * Copyright 2012 Anteros Tecnologia
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package br.com.anteros.nosql.persistence.serialization.jackson.model;
+
+import java.util.List;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonView;
+
+import br.com.anteros.nosql.persistence.metadata.annotations.Entity;
+import br.com.anteros.nosql.persistence.metadata.annotations.Id;
+import br.com.anteros.nosql.persistence.metadata.annotations.Reference;
+import br.com.anteros.nosql.persistence.metadata.annotations.Transient;
+
+@Entity
+public class Invoice {
+
+	public interface Internal {
+	}
+
+	@Id
+	private String id;
+	@Reference(lazy = true)
+	private Customer customer;
+	@JsonIgnore
+	@Reference(lazy = true)
+	private Customer auditor;
+	@Transient
+	@Reference(lazy = true)
+	private Customer approver;
+	@JsonView(Internal.class)
+	@Reference(lazy = true)
+	private Customer reviewer;
+	@Reference(lazy = true)
+	private List<Item> items;
+	@Reference(lazy = true)
+	private Vendor vendor;
+
+	public Invoice() {
+	}
+
+	public Invoice(String id) {
+		this.id = id;
+	}
+
+	public String getId() {
+		return id;
+	}
+
+	public void setId(String id) {
+		this.id = id;
+	}
+
+	public Customer getCustomer() {
+		return customer;
+	}
+
+	public void setCustomer(Customer customer) {
+		this.customer = customer;
+	}
+
+	public Customer getAuditor() {
+		return auditor;
+	}
+
+	public void setAuditor(Customer auditor) {
+		this.auditor = auditor;
+	}
+
+	public Customer getApprover() {
+		return approver;
+	}
+
+	public void setApprover(Customer approver) {
+		this.approver = approver;
+	}
+
+	public Customer getReviewer() {
+		return reviewer;
+	}
+
+	public void setReviewer(Customer reviewer) {
+		this.reviewer = reviewer;
+	}
+
+	public List<Item> getItems() {
+		return items;
+	}
+
+	public void setItems(List<Item> items) {
+		this.items = items;
+	}
+
+	public Vendor getVendor() {
+		return vendor;
+	}
+
+	public void setVendor(Vendor vendor) {
+		this.vendor = vendor;
+	}
+}
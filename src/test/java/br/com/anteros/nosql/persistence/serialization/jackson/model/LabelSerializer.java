@@ -0,0 +1,45 @@
+/*******************************************************************************
+ * Copyright 2012 Anteros Tecnologia
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package br.com.anteros.nosql.persistence.serialization.jackson.model;
+
+import java.io.IOException;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+
+/**
+ * Escreve o rótulo como objeto embutido nos buffers de tokens, como fazem os
+ * serializadores de tipos nativos do BSON, e como texto nos demais geradores.
+ */
+public class LabelSerializer extends StdSerializer<Label> {
+
+	private static final long serialVersionUID = 1L;
+
+	public LabelSerializer() {
+		super(Label.class);
+	}
+
+	@Override
+	public void serialize(Label value, JsonGenerator gen, SerializerProvider provider) throws IOException {
+		if (gen instanceof TokenBuffer) {
+			gen.writeEmbeddedObject(value);
+		} else {
+			gen.writeString(value.getValue());
+		}
+	}
+}
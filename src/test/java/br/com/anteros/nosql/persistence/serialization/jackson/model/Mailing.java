@@ -0,0 +1,77 @@
+/*******************************************************************************
+ * Copyright 2012 Anteros Tecnologia
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package br.com.anteros.nosql.persistence.serialization.jackson.model;
+
+import java.util.List;
+
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+
+import br.com.anteros.nosql.persistence.metadata.annotations.Entity;
+import br.com.anteros.nosql.persistence.metadata.annotations.Id;
+import br.com.anteros.nosql.persistence.metadata.annotations.Reference;
+
+@Entity
+public class Mailing {
+
+	@Id
+	private String id;
+	private String subject;
+	@Reference(lazy = true)
+	private List<Customer> recipients;
+	@JsonSerialize(using = LabelSerializer.class)
+	private Label label;
+
+	public Mailing() {
+	}
+
+	public Mailing(String id, String subject, List<Customer> recipients) {
+		this.id = id;
+		this.subject = subject;
+		this.recipients = recipients;
+	}
+
+	public String getId() {
+		return id;
+	}
+
+	public void setId(String id) {
+		this.id = id;
+	}
+
+	public String getSubject() {
+		return subject;
+	}
+
+	public void setSubject(String subject) {
+		this.subject = subject;
+	}
+
+	public List<Customer> getRecipients() {
+		return recipients;
+	}
+
+	public void setRecipients(List<Customer> recipients) {
+		this.recipients = recipients;
+	}
+
+	public Label getLabel() {
+		return label;
+	}
+
+	public void setLabel(Label label) {
+		this.label = label;
+	}
+}